@@ -33,6 +33,7 @@ android {
 
 dependencies {
 
+    implementation(project(":Pixel_Pipeline"))
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation(libs.activity)
@@ -0,0 +1,215 @@
+package com.example.myapplication;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Shader;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * Encode throughput for every {@link ScreenshotEncoder} on synthetic screens that resemble
+ * real captures. Results are logged under the EncoderBenchmark tag and reported as
+ * instrumentation status, so they show up in the output of {@code ./gradlew connectedAndroidTest}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EncoderBenchmarkTest {
+    private static final String TAG = "EncoderBenchmark";
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 2400;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 5;
+
+    @Test
+    public void benchmarkEncoders() throws Exception {
+        String[] imageNames = {"text_ui", "flat_ui", "photo"};
+        Bitmap[] images = {createTextScreen(), createFlatScreen(), createPhotoScreen()};
+        ScreenshotEncoder[] encoders = {
+                ScreenshotEncoders.create(ScreenshotEncoders.FORMAT_PNG, ScreenshotEncoders.DEFAULT_QUALITY),
+                ScreenshotEncoders.create(ScreenshotEncoders.FORMAT_PNG_PARALLEL, ScreenshotEncoders.DEFAULT_QUALITY),
+                ScreenshotEncoders.create(ScreenshotEncoders.FORMAT_WEBP_LOSSLESS, 0),
+                ScreenshotEncoders.create(ScreenshotEncoders.FORMAT_WEBP_LOSSLESS, ScreenshotEncoders.DEFAULT_QUALITY),
+                ScreenshotEncoders.create(ScreenshotEncoders.FORMAT_WEBP, ScreenshotEncoders.DEFAULT_QUALITY),
+                ScreenshotEncoders.create(ScreenshotEncoders.FORMAT_JPEG, ScreenshotEncoders.DEFAULT_QUALITY),
+        };
+
+        Bundle results = new Bundle();
+        for (int i = 0; i < images.length; i++) {
+            for (ScreenshotEncoder encoder : encoders) {
+                long[] stats = measure(encoder, images[i]);
+                String line = String.format(Locale.US, "%-8s %-20s %8.1f ms/frame %10d bytes/frame",
+                        imageNames[i], encoder, stats[0] / 1e6, stats[1]);
+                Log.i(TAG, line);
+                results.putString(imageNames[i] + "/" + encoder, line);
+                assertTrue(stats[1] > 0);
+            }
+            images[i].recycle();
+        }
+
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+    }
+
+    @Test
+    public void benchmarkParallelPngScaling() throws Exception {
+        Bitmap image = createTextScreen();
+        int[] pixels = new int[WIDTH * HEIGHT];
+        image.getPixels(pixels, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+
+        // Baseline is what the service used to do: Bitmap.compress(PNG, 100)
+        long[] baseline = measure(new PngEncoder(), image);
+        image.recycle();
+
+        Bundle results = new Bundle();
+        results.putString("baseline", String.format(Locale.US, "Bitmap.compress PNG %8.1f ms/frame %10d bytes/frame",
+                baseline[0] / 1e6, baseline[1]));
+        Log.i(TAG, results.getString("baseline"));
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads++) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                ParallelPngWriter writer = new ParallelPngWriter(pool, Deflater.DEFAULT_COMPRESSION);
+                long[] stats = measure(writer, pixels);
+                String line = String.format(Locale.US, "ParallelPngWriter x%-2d %8.1f ms/frame %10d bytes/frame %5.2fx baseline",
+                        threads, stats[0] / 1e6, stats[1], (double) baseline[0] / stats[0]);
+                Log.i(TAG, line);
+                results.putString("parallel_png_" + threads, line);
+                assertTrue(stats[1] > 0);
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+    }
+
+    private static long[] measure(ParallelPngWriter writer, int[] pixels) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(WIDTH * HEIGHT);
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            out.reset();
+            writer.write(pixels, WIDTH, HEIGHT, out);
+        }
+
+        long total = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            out.reset();
+            long start = System.nanoTime();
+            writer.write(pixels, WIDTH, HEIGHT, out);
+            total += System.nanoTime() - start;
+        }
+        return new long[] {total / MEASURED_ROUNDS, out.size()};
+    }
+
+    // Returns {mean encode nanos, encoded bytes}
+    private static long[] measure(ScreenshotEncoder encoder, Bitmap image) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(WIDTH * HEIGHT);
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            out.reset();
+            encoder.encode(image, out);
+        }
+
+        long total = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            out.reset();
+            long start = System.nanoTime();
+            encoder.encode(image, out);
+            total += System.nanoTime() - start;
+        }
+        return new long[] {total / MEASURED_ROUNDS, out.size()};
+    }
+
+    // A chat or settings screen: lots of small glyphs on a plain background
+    private static Bitmap createTextScreen() {
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(Color.WHITE);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(42);
+        paint.setColor(Color.DKGRAY);
+        Random random = new Random(1);
+        for (int y = 220; y < HEIGHT - 200; y += 64) {
+            StringBuilder line = new StringBuilder();
+            int words = 4 + random.nextInt(6);
+            for (int w = 0; w < words; w++) {
+                int length = 2 + random.nextInt(8);
+                for (int c = 0; c < length; c++) {
+                    line.append((char) ('a' + random.nextInt(26)));
+                }
+                line.append(' ');
+            }
+            canvas.drawText(line.toString(), 48, y, paint);
+        }
+        drawSystemBars(canvas);
+        return bitmap;
+    }
+
+    // A launcher or settings list: flat cards and icons, few distinct colours
+    private static Bitmap createFlatScreen() {
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(Color.rgb(246, 242, 250));
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        for (int y = 200; y < HEIGHT - 300; y += 260) {
+            paint.setColor(Color.WHITE);
+            canvas.drawRoundRect(32, y, WIDTH - 32, y + 220, 36, 36, paint);
+            paint.setColor(Color.rgb(103, 80, 164));
+            canvas.drawCircle(140, y + 110, 60, paint);
+            paint.setColor(Color.LTGRAY);
+            canvas.drawRect(240, y + 70, WIDTH - 120, y + 100, paint);
+            canvas.drawRect(240, y + 130, WIDTH - 320, y + 150, paint);
+        }
+        drawSystemBars(canvas);
+        return bitmap;
+    }
+
+    // A photo or video frame: smooth gradients with sensor-like noise
+    private static Bitmap createPhotoScreen() {
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint();
+        paint.setShader(new LinearGradient(0, 0, WIDTH, HEIGHT,
+                Color.rgb(20, 60, 120), Color.rgb(230, 150, 60), Shader.TileMode.CLAMP));
+        canvas.drawRect(0, 0, WIDTH, HEIGHT, paint);
+
+        int[] row = new int[WIDTH];
+        Random random = new Random(2);
+        for (int y = 0; y < HEIGHT; y++) {
+            bitmap.getPixels(row, 0, WIDTH, 0, y, WIDTH, 1);
+            for (int x = 0; x < WIDTH; x++) {
+                int noise = random.nextInt(17) - 8;
+                int c = row[x];
+                row[x] = Color.rgb(clamp(Color.red(c) + noise), clamp(Color.green(c) + noise), clamp(Color.blue(c) + noise));
+            }
+            bitmap.setPixels(row, 0, WIDTH, 0, y, WIDTH, 1);
+        }
+        drawSystemBars(canvas);
+        return bitmap;
+    }
+
+    private static void drawSystemBars(Canvas canvas) {
+        Paint paint = new Paint();
+        paint.setColor(Color.BLACK);
+        canvas.drawRect(0, 0, WIDTH, 96, paint);
+        canvas.drawRect(0, HEIGHT - 120, WIDTH, HEIGHT, paint);
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(value, 255));
+    }
+}
@@ -0,0 +1,368 @@
+package com.example.myapplication;
+
+import android.content.ClipData;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import androidx.core.content.FileProvider;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Gallery actions on many screenshots at once, run off the main thread. Deleting hides the rows
+ * straight away and only removes the files, in one storage batch, when the returned
+ * {@link PendingDelete} is committed, so it can be undone until then. Sharing and copying to a
+ * folder the user picked or into a ZIP archive report progress per file and can be cancelled
+ * between files. Results are delivered on the main thread.
+ */
+public class BatchOperations {
+    private static final String TAG = "BatchOperations";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    public interface Listener {
+        void onProgress(int done, int total);
+
+        /** {@code succeeded} of {@code total} screenshots were handled. */
+        void onFinished(int succeeded, int total, boolean cancelled);
+    }
+
+    public interface ShareListener extends Listener {
+        /** The chooser intent, once every screenshot has a content URI. Not called when cancelled. */
+        void onShareReady(Intent intent);
+    }
+
+    /** A running batch, cancelled at the next file boundary or copy chunk. */
+    public static final class Task {
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        public void cancel() {
+            cancelled.set(true);
+        }
+
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+    }
+
+    private final Context context;
+    private final ScreenshotIndex index;
+    private final GalleryPager pager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Index and storage writes for deletes, kept in order so a commit never overtakes its hide
+    private final ExecutorService deleteExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "batch-delete"));
+    // Shares and copies, which can take a while and must not hold up deletes
+    private final ExecutorService transferExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "batch-transfer"));
+    private boolean released;
+
+    public BatchOperations(Context context, ScreenshotIndex index, GalleryPager pager) {
+        this.context = context.getApplicationContext();
+        this.index = index;
+        this.pager = pager;
+    }
+
+    /**
+     * Hides the screenshots from the gallery in one index transaction and one list change. The
+     * files stay until {@link PendingDelete#commit} and come back on {@link PendingDelete#undo}.
+     */
+    public PendingDelete delete(List<Screenshot> screenshots, Listener listener) {
+        PendingDelete pending = new PendingDelete(pathsOf(screenshots), listener);
+        deleteExecutor.execute(() -> {
+            index.setPendingDelete(pending.paths, true);
+            post(() -> pager.removeAll(new HashSet<>(pending.paths)));
+        });
+        return pending;
+    }
+
+    /** Builds a share intent for all the screenshots; see {@link ShareListener#onShareReady}. */
+    public Task share(List<Screenshot> screenshots, ShareListener listener) {
+        Task task = new Task();
+        List<String> paths = pathsOf(screenshots);
+        transferExecutor.execute(() -> {
+            ArrayList<Uri> uris = new ArrayList<>(paths.size());
+            for (int i = 0; i < paths.size() && !task.isCancelled(); i++) {
+                String path = paths.get(i);
+                try {
+                    uris.add(FileProvider.getUriForFile(context, context.getPackageName() + ".fileprovider", new File(path)));
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "Not shareable: " + path, e);
+                }
+                int done = i + 1;
+                post(() -> listener.onProgress(done, paths.size()));
+            }
+            boolean cancelled = task.isCancelled();
+            Intent chooser = cancelled || uris.isEmpty() ? null : shareIntent(uris);
+            post(() -> {
+                if (chooser != null) {
+                    listener.onShareReady(chooser);
+                }
+                listener.onFinished(chooser != null ? uris.size() : 0, paths.size(), cancelled);
+            });
+        });
+        return task;
+    }
+
+    /**
+     * Copies the screenshots into the document tree the user picked, then, if {@code move},
+     * deletes the ones that were copied in one storage batch. Moves cannot be undone.
+     */
+    public Task export(List<Screenshot> screenshots, Uri tree, boolean move, Listener listener) {
+        Task task = new Task();
+        List<String> paths = pathsOf(screenshots);
+        transferExecutor.execute(() -> {
+            ContentResolver resolver = context.getContentResolver();
+            Uri parent = DocumentsContract.buildDocumentUriUsingTree(tree, DocumentsContract.getTreeDocumentId(tree));
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            List<String> copied = new ArrayList<>(paths.size());
+            for (int i = 0; i < paths.size() && !task.isCancelled(); i++) {
+                String path = paths.get(i);
+                try {
+                    if (copy(resolver, parent, new File(path), buffer, task)) {
+                        copied.add(path);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Log.w(TAG, "Failed to export " + path, e);
+                }
+                int done = i + 1;
+                post(() -> listener.onProgress(done, paths.size()));
+            }
+            int succeeded = copied.size();
+            if (move && !copied.isEmpty()) {
+                // Files copied before a cancel are still moved, so nothing ends up in both places
+                List<String> deleted = deleteNow(copied);
+                succeeded = deleted.size();
+                post(() -> pager.removeAll(new HashSet<>(deleted)));
+            }
+            int result = succeeded;
+            boolean cancelled = task.isCancelled();
+            post(() -> listener.onFinished(result, paths.size(), cancelled));
+        });
+        return task;
+    }
+
+    /**
+     * Streams the screenshots into a new ZIP archive at {@code target}, a document the user
+     * created. Images are stored as they are, since deflating PNG or WebP again gains nothing;
+     * anything else is deflated across cores. A cancelled or failed archive is deleted.
+     */
+    public Task exportZip(List<Screenshot> screenshots, Uri target, Listener listener) {
+        Task task = new Task();
+        List<String> paths = pathsOf(screenshots);
+        transferExecutor.execute(() -> {
+            ContentResolver resolver = context.getContentResolver();
+            int archived = 0;
+            boolean complete = false;
+            try (ParcelFileDescriptor descriptor = resolver.openFileDescriptor(target, "w")) {
+                if (descriptor == null) {
+                    throw new IOException("Could not open " + target);
+                }
+                FileOutputStream out = new FileOutputStream(descriptor.getFileDescriptor());
+                ZipArchiveWriter writer = new ZipArchiveWriter(out.getChannel());
+                writer.setProgressListener(bytesRead -> {
+                    if (task.isCancelled()) {
+                        writer.cancel();
+                    }
+                });
+                for (int i = 0; i < paths.size() && !task.isCancelled(); i++) {
+                    File file = new File(paths.get(i));
+                    try (FileInputStream in = new FileInputStream(file)) {
+                        if (ZipArchiveWriter.isCompressed(file.getName())) {
+                            writer.addStored(file.getName(), file.lastModified(), in.getChannel());
+                        } else {
+                            writer.addDeflated(file.getName(), file.lastModified(), in.getChannel());
+                        }
+                        archived++;
+                    } catch (FileNotFoundException e) {
+                        // Nothing was written for it yet, so the archive can go on without it
+                        Log.w(TAG, "Not archived: " + file, e);
+                    }
+                    int done = i + 1;
+                    post(() -> listener.onProgress(done, paths.size()));
+                }
+                if (!task.isCancelled()) {
+                    writer.finish();
+                    complete = true;
+                }
+            } catch (InterruptedIOException e) {
+                // Cancelled part way through a screenshot
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Failed to write " + target, e);
+            }
+            if (!complete) {
+                deleteDocument(resolver, target);
+            }
+            int result = complete ? archived : 0;
+            boolean cancelled = task.isCancelled();
+            post(() -> listener.onFinished(result, paths.size(), cancelled));
+        });
+        return task;
+    }
+
+    /** Lets queued work finish, including commits, but stops delivering results. */
+    public void release() {
+        released = true;
+        mainHandler.removeCallbacksAndMessages(null);
+        deleteExecutor.shutdown();
+        transferExecutor.shutdown();
+    }
+
+    // Returns false if cancelled mid-file, after removing the partial copy
+    private static boolean copy(ContentResolver resolver, Uri parent, File source, byte[] buffer, Task task) throws IOException {
+        Uri target = DocumentsContract.createDocument(resolver, parent, mimeTypeOf(source.getName()), source.getName());
+        if (target == null) {
+            throw new IOException("Could not create " + source.getName());
+        }
+        boolean complete = false;
+        try (InputStream in = new FileInputStream(source); OutputStream out = resolver.openOutputStream(target)) {
+            if (out == null) {
+                throw new IOException("Could not open " + target);
+            }
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                if (task.isCancelled()) {
+                    return false;
+                }
+                out.write(buffer, 0, n);
+            }
+            complete = true;
+        } finally {
+            if (!complete) {
+                DocumentsContract.deleteDocument(resolver, target);
+            }
+        }
+        return true;
+    }
+
+    private static void deleteDocument(ContentResolver resolver, Uri document) {
+        try {
+            DocumentsContract.deleteDocument(resolver, document);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Could not remove incomplete " + document, e);
+        }
+    }
+
+    private List<String> deleteNow(List<String> paths) {
+        List<String> deleted = ScreenshotStorages.getDefault(context).delete(paths);
+        index.recordDeleted(deleted);
+        DuplicateDetector duplicates = DuplicateDetector.getInstance(context);
+        for (String path : deleted) {
+            duplicates.remove(path);
+        }
+        return deleted;
+    }
+
+    private Intent shareIntent(ArrayList<Uri> uris) {
+        Intent intent = new Intent(Intent.ACTION_SEND_MULTIPLE);
+        intent.setType("image/*");
+        intent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, uris);
+        // The grant only reaches every URI when they are also in the clip data
+        ClipData clip = ClipData.newRawUri(null, uris.get(0));
+        for (int i = 1; i < uris.size(); i++) {
+            clip.addItem(new ClipData.Item(uris.get(i)));
+        }
+        intent.setClipData(clip);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        return Intent.createChooser(intent, null);
+    }
+
+    private static String mimeTypeOf(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".jpg")) {
+            return "image/jpeg";
+        }
+        return lower.endsWith(".webp") ? "image/webp" : "image/png";
+    }
+
+    private static List<String> pathsOf(List<Screenshot> screenshots) {
+        List<String> paths = new ArrayList<>(screenshots.size());
+        for (Screenshot screenshot : screenshots) {
+            paths.add(screenshot.getFilePath());
+        }
+        return paths;
+    }
+
+    private void post(Runnable action) {
+        mainHandler.post(() -> {
+            if (!released) {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Screenshots hidden from the gallery and waiting to be deleted. Exactly one of
+     * {@link #commit} and {@link #undo} takes effect; later calls do nothing. Main thread only.
+     */
+    public final class PendingDelete {
+        private final List<String> paths;
+        private final Listener listener;
+        private boolean settled;
+
+        private PendingDelete(List<String> paths, Listener listener) {
+            this.paths = paths;
+            this.listener = listener;
+        }
+
+        public int size() {
+            return paths.size();
+        }
+
+        /** Deletes the files in one storage batch; any that could not be deleted are shown again. */
+        public void commit() {
+            if (settled) {
+                return;
+            }
+            settled = true;
+            listener.onProgress(0, paths.size());
+            deleteExecutor.execute(() -> {
+                List<String> deleted = deleteNow(paths);
+                List<String> failed = new ArrayList<>(paths);
+                failed.removeAll(new HashSet<>(deleted));
+                if (!failed.isEmpty()) {
+                    index.setPendingDelete(failed, false);
+                }
+                post(() -> {
+                    if (!failed.isEmpty()) {
+                        pager.refresh();
+                    }
+                    listener.onFinished(deleted.size(), paths.size(), false);
+                });
+            });
+        }
+
+        public void undo() {
+            if (settled) {
+                return;
+            }
+            settled = true;
+            deleteExecutor.execute(() -> {
+                index.setPendingDelete(paths, false);
+                // The rows come back wherever they sort, so the view is reloaded from the index
+                post(() -> {
+                    pager.refresh();
+                    listener.onFinished(0, paths.size(), true);
+                });
+            });
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.myapplication;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Base for the encoders backed by {@link Bitmap#compress}. For lossy formats the quality
+ * setting is the usual 0-100 quality; for lossless WebP it is the effort (0 fastest).
+ */
+public abstract class BitmapCompressEncoder implements ScreenshotEncoder {
+    private final int quality;
+
+    protected BitmapCompressEncoder(int quality) {
+        this.quality = Math.max(0, Math.min(quality, 100));
+    }
+
+    protected abstract Bitmap.CompressFormat getCompressFormat();
+
+    public int getQuality() {
+        return quality;
+    }
+
+    @Override
+    public void encode(Bitmap bitmap, OutputStream out) throws IOException {
+        if (!bitmap.compress(getCompressFormat(), getQuality(), out)) {
+            throw new IOException("Failed to encode screenshot as " + getName());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getName() + "@" + getQuality();
+    }
+}
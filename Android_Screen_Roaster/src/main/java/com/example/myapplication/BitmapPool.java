@@ -0,0 +1,40 @@
+package com.example.myapplication;
+
+import android.graphics.Bitmap;
+
+public class BitmapPool extends SizedPool<Bitmap> {
+
+    public BitmapPool(long maxBytes) {
+        super(maxBytes);
+    }
+
+    public Bitmap acquire(int width, int height) {
+        Bitmap bitmap = take(key(width, height));
+        return bitmap != null ? bitmap : Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    public void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        if (!bitmap.isMutable() || bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            bitmap.recycle();
+            return;
+        }
+        put(key(bitmap.getWidth(), bitmap.getHeight()), bitmap);
+    }
+
+    @Override
+    protected long sizeOf(Bitmap bitmap) {
+        return bitmap.getAllocationByteCount();
+    }
+
+    @Override
+    protected void onEvicted(Bitmap bitmap) {
+        bitmap.recycle();
+    }
+
+    private static long key(int width, int height) {
+        return ((long) width << 32) | (height & 0xFFFFFFFFL);
+    }
+}
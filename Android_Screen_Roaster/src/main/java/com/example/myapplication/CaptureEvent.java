@@ -0,0 +1,77 @@
+package com.example.myapplication;
+
+/** Something the capture service reports to the UI, delivered through the {@link CaptureEventBus}. Immutable. */
+public final class CaptureEvent {
+
+    public enum Type {
+        /** A screenshot was saved to {@link #getPath()}. */
+        SAVED,
+        /** A duplicate of {@link #getPath()}, or of a frame still being saved if null, was not saved. */
+        SKIPPED,
+        /** A capture failed; {@link #getMessage()} says why. */
+        FAILED,
+        /** A timelapse ended; {@link #getMessage()} is its report. */
+        TIMELAPSE_FINISHED
+    }
+
+    private final Type type;
+    private final String path;
+    private final String message;
+    // When the frame was taken and when its last stage finished, for SAVED events from the pipeline
+    private final long startNanos;
+    private final long completedNanos;
+
+    private CaptureEvent(Type type, String path, String message, long startNanos, long completedNanos) {
+        this.type = type;
+        this.path = path;
+        this.message = message;
+        this.startNanos = startNanos;
+        this.completedNanos = completedNanos;
+    }
+
+    public static CaptureEvent saved(String path) {
+        return new CaptureEvent(Type.SAVED, path, null, 0, 0);
+    }
+
+    /** A save from the pipeline, whose delivery time is recorded in the capture metrics. */
+    public static CaptureEvent saved(String path, long startNanos, long completedNanos) {
+        return new CaptureEvent(Type.SAVED, path, null, startNanos, completedNanos);
+    }
+
+    public static CaptureEvent skipped(String duplicateOf) {
+        return new CaptureEvent(Type.SKIPPED, duplicateOf, null, 0, 0);
+    }
+
+    public static CaptureEvent failed(String message) {
+        return new CaptureEvent(Type.FAILED, null, message, 0, 0);
+    }
+
+    public static CaptureEvent timelapseFinished(String report) {
+        return new CaptureEvent(Type.TIMELAPSE_FINISHED, null, report, 0, 0);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public long getCompletedNanos() {
+        return completedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return type + (path != null ? " " + path : "") + (message != null ? ": " + message : "");
+    }
+}
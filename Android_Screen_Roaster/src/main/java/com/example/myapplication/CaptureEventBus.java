@@ -0,0 +1,131 @@
+package com.example.myapplication;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide stream of {@link CaptureEvent}s from the capture service to any number of
+ * subscribers. Events published within {@link #BATCH_WINDOW_MS} of each other are delivered
+ * together on the main thread, so a burst costs subscribers one update rather than one per
+ * shot. Events published while nobody is subscribed, such as while the activity is stopped, are
+ * kept, up to {@link #MAX_MISSED_EVENTS}, and replayed to the next subscriber. Publishing is
+ * thread-safe; subscribing and delivery happen on the main thread.
+ */
+public class CaptureEventBus {
+    /** About one display frame. */
+    public static final long BATCH_WINDOW_MS = 16;
+    static final int MAX_MISSED_EVENTS = 100;
+
+    public interface Listener {
+        /** A batch of one or more events, oldest first. */
+        void onCaptureEvents(List<CaptureEvent> events);
+    }
+
+    // Handler.postDelayed on the main thread, replaced in tests
+    interface Scheduler {
+        void schedule(Runnable task, long delayMs);
+    }
+
+    private static CaptureEventBus instance;
+
+    private final Scheduler scheduler;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Runnable flushTask = this::flush;
+    private final ArrayDeque<CaptureEvent> missed = new ArrayDeque<>();
+    private List<CaptureEvent> pending = new ArrayList<>();
+    private boolean flushScheduled;
+    private int missedDropped;
+
+    public static synchronized CaptureEventBus getInstance() {
+        if (instance == null) {
+            Handler mainHandler = new Handler(Looper.getMainLooper());
+            instance = new CaptureEventBus(mainHandler::postDelayed);
+        }
+        return instance;
+    }
+
+    CaptureEventBus(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public void publish(CaptureEvent event) {
+        synchronized (this) {
+            pending.add(event);
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        scheduler.schedule(flushTask, BATCH_WINDOW_MS);
+    }
+
+    /**
+     * Subscribes {@code listener}. Events nobody was subscribed for are replayed to it before
+     * this returns; events still waiting for their batch window follow as usual.
+     */
+    public void register(Listener listener) {
+        List<CaptureEvent> replay;
+        synchronized (this) {
+            listeners.add(listener);
+            if (missed.isEmpty()) {
+                return;
+            }
+            replay = new ArrayList<>(missed);
+            missed.clear();
+        }
+        listener.onCaptureEvents(Collections.unmodifiableList(replay));
+    }
+
+    public void unregister(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Events dropped from the replay buffer because it was full, since the process started. */
+    public synchronized int getMissedDropped() {
+        return missedDropped;
+    }
+
+    void flush() {
+        List<CaptureEvent> batch;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+            recordDelivery(batch);
+            if (listeners.isEmpty()) {
+                for (CaptureEvent event : batch) {
+                    if (missed.size() == MAX_MISSED_EVENTS) {
+                        missed.removeFirst();
+                        missedDropped++;
+                    }
+                    missed.addLast(event);
+                }
+                return;
+            }
+        }
+        List<CaptureEvent> events = Collections.unmodifiableList(batch);
+        for (Listener listener : listeners) {
+            listener.onCaptureEvents(events);
+        }
+    }
+
+    // Measured to the batch reaching the main thread, whether or not anyone is subscribed
+    private static void recordDelivery(List<CaptureEvent> batch) {
+        CaptureMetrics metrics = CaptureMetrics.getInstance();
+        for (CaptureEvent event : batch) {
+            if (event.getCompletedNanos() != 0) {
+                metrics.recordSince(CaptureMetrics.Stage.CALLBACK, event.getCompletedNanos());
+                metrics.recordSince(CaptureMetrics.Stage.END_TO_END, event.getStartNanos());
+            }
+        }
+    }
+}
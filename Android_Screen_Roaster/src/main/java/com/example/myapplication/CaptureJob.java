@@ -0,0 +1,130 @@
+package com.example.myapplication;
+
+import android.graphics.Bitmap;
+
+public class CaptureJob {
+    private final long captureTime;
+    // System.nanoTime() when the frame was taken, for latency metrics
+    private final long startNanos;
+    private final int width;
+    private final int height;
+    private final ScreenshotEncoder encoder;
+    private int[] pixels;
+    private Bitmap bitmap;
+    private Bitmap thumbnail;
+    private ScreenshotStorage.PendingWrite pendingWrite;
+    private String filePath;
+    private long hash;
+    private boolean duplicate;
+    // Null when the frame duplicates one still in flight
+    private String duplicateOf;
+    private boolean skipped;
+    // Set for frames taken by a timelapse, which keeps count of them
+    private TimelapseScheduler timelapse;
+
+    public CaptureJob(long captureTime, long startNanos, int width, int height, int[] pixels, ScreenshotEncoder encoder) {
+        this.captureTime = captureTime;
+        this.startNanos = startNanos;
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+        this.encoder = encoder;
+    }
+
+    public long getCaptureTime() {
+        return captureTime;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public ScreenshotEncoder getEncoder() {
+        return encoder;
+    }
+
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public void setPixels(int[] pixels) {
+        this.pixels = pixels;
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    public void setBitmap(Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    public Bitmap getThumbnail() {
+        return thumbnail;
+    }
+
+    public void setThumbnail(Bitmap thumbnail) {
+        this.thumbnail = thumbnail;
+    }
+
+    public ScreenshotStorage.PendingWrite getPendingWrite() {
+        return pendingWrite;
+    }
+
+    public void setPendingWrite(ScreenshotStorage.PendingWrite pendingWrite) {
+        this.pendingWrite = pendingWrite;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    public void setHash(long hash) {
+        this.hash = hash;
+    }
+
+    public boolean isDuplicate() {
+        return duplicate;
+    }
+
+    public String getDuplicateOf() {
+        return duplicateOf;
+    }
+
+    public void setDuplicateOf(boolean duplicate, String duplicateOf) {
+        this.duplicate = duplicate;
+        this.duplicateOf = duplicateOf;
+    }
+
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    public void setSkipped(boolean skipped) {
+        this.skipped = skipped;
+    }
+
+    public TimelapseScheduler getTimelapse() {
+        return timelapse;
+    }
+
+    public void setTimelapse(TimelapseScheduler timelapse) {
+        this.timelapse = timelapse;
+    }
+}
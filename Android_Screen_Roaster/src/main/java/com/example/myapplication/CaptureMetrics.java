@@ -0,0 +1,196 @@
+package com.example.myapplication;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide capture latency and throughput counters. Stages record nanosecond durations into
+ * {@link LatencyHistogram}s; the totals can be read as a text dump (the debug screen and
+ * {@code dumpsys}) or as JSON for pulling off test devices.
+ */
+public final class CaptureMetrics {
+
+    public enum Stage {
+        /** Obtaining the MediaProjection from the consent result. */
+        PROJECTION_START("projection_start"),
+        /** Creating the VirtualDisplay that mirrors into the ImageReader. */
+        VIRTUAL_DISPLAY("virtual_display"),
+        /** From VirtualDisplay creation to the first frame arriving. */
+        FIRST_FRAME("first_frame"),
+        /** Copying the frame out of the ImageReader buffer, trimming the row stride padding. */
+        BUFFER_COPY("buffer_copy"),
+        /** Building the bitmap for the encoder and the gallery thumbnail. */
+        CONVERT("convert"),
+        ENCODE("encode"),
+        /** Writing the encoded file and recording it in the index. */
+        FILE_WRITE("file_write"),
+        /** From the last stage finishing to the capture event reaching the main thread. */
+        CALLBACK("callback"),
+        /** From the frame being taken to the capture event reaching the main thread. */
+        END_TO_END("end_to_end"),
+        /** From process start on a cold start, or activity creation otherwise, to the first gallery row drawn. */
+        FIRST_ROW("first_row");
+
+        private final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+    private static final CaptureMetrics INSTANCE = new CaptureMetrics();
+
+    private final EnumMap<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+    private final AtomicLong framesWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesFailed = new AtomicLong();
+    private final AtomicLong framesSkipped = new AtomicLong();
+    private volatile long sinceMillis = System.currentTimeMillis();
+
+    public static CaptureMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    CaptureMetrics() {
+        // Filled once and never modified, so reads need no locking
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms.get(stage).record(nanos);
+    }
+
+    public void recordSince(Stage stage, long startNanos) {
+        record(stage, System.nanoTime() - startNanos);
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms.get(stage);
+    }
+
+    public void onFrameWritten(long bytes) {
+        framesWritten.incrementAndGet();
+        bytesWritten.addAndGet(bytes);
+    }
+
+    public void onFrameDropped() {
+        framesDropped.incrementAndGet();
+    }
+
+    public void onFrameFailed() {
+        framesFailed.incrementAndGet();
+    }
+
+    public void onFrameSkipped() {
+        framesSkipped.incrementAndGet();
+    }
+
+    public long getFramesWritten() {
+        return framesWritten.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    public long getFramesFailed() {
+        return framesFailed.get();
+    }
+
+    public long getFramesSkipped() {
+        return framesSkipped.get();
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        framesWritten.set(0);
+        bytesWritten.set(0);
+        framesDropped.set(0);
+        framesFailed.set(0);
+        framesSkipped.set(0);
+        sinceMillis = System.currentTimeMillis();
+    }
+
+    /** Human-readable table, milliseconds with microsecond precision. */
+    public void dump(PrintWriter out) {
+        out.printf(Locale.US, "Capture metrics since %tF %<tT%n", sinceMillis);
+        out.printf(Locale.US, "  frames written %d, dropped %d, failed %d, skipped %d, bytes written %d%n",
+                getFramesWritten(), getFramesDropped(), getFramesFailed(), getFramesSkipped(), getBytesWritten());
+        out.printf(Locale.US, "  %-17s %7s %10s %10s %10s %10s %10s%n",
+                "stage (ms)", "count", "mean", "p50", "p95", "p99", "max");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = histograms.get(stage);
+            out.printf(Locale.US, "  %-17s %7d %10.3f %10.3f %10.3f %10.3f %10.3f%n",
+                    stage.getKey(), histogram.getCount(), millis(histogram.getMean()),
+                    millis(histogram.getPercentile(QUANTILES[0])), millis(histogram.getPercentile(QUANTILES[1])),
+                    millis(histogram.getPercentile(QUANTILES[2])), millis(histogram.getMax()));
+        }
+        out.flush();
+    }
+
+    /** Flat JSON object; durations in nanoseconds. */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\"since_ms\":").append(sinceMillis)
+                .append(",\"frames_written\":").append(getFramesWritten())
+                .append(",\"frames_dropped\":").append(getFramesDropped())
+                .append(",\"frames_failed\":").append(getFramesFailed())
+                .append(",\"frames_skipped\":").append(getFramesSkipped())
+                .append(",\"bytes_written\":").append(getBytesWritten())
+                .append(",\"stages\":{");
+        Stage[] stages = Stage.values();
+        for (int i = 0; i < stages.length; i++) {
+            LatencyHistogram histogram = histograms.get(stages[i]);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('"').append(stages[i].getKey()).append("\":{")
+                    .append("\"count\":").append(histogram.getCount())
+                    .append(",\"mean_ns\":").append(histogram.getMean())
+                    .append(",\"p50_ns\":").append(histogram.getPercentile(QUANTILES[0]))
+                    .append(",\"p95_ns\":").append(histogram.getPercentile(QUANTILES[1]))
+                    .append(",\"p99_ns\":").append(histogram.getPercentile(QUANTILES[2]))
+                    .append(",\"max_ns\":").append(histogram.getMax())
+                    .append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    /** Writes {@link #toJson()} to the file, replacing it atomically. */
+    public void writeJson(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            writer.write(toJson());
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Failed to write " + file);
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
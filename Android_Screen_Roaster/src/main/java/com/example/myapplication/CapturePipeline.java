@@ -0,0 +1,198 @@
+package com.example.myapplication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs capture jobs through a fixed chain of stages, each on its own worker thread.
+ * Stages are connected by bounded queues; what happens when a queue is full is decided
+ * by the {@link BackpressurePolicy}.
+ */
+public class CapturePipeline<T> {
+
+    public enum BackpressurePolicy {
+        /** Evict the oldest queued job to make room for the new one. */
+        DROP_OLDEST,
+        /** Block the producer until the next stage has room. */
+        BLOCK,
+        /** Drop the new job and keep the queued ones. */
+        REJECT
+    }
+
+    public interface Stage<T> {
+        void process(T job) throws Exception;
+    }
+
+    public interface Listener<T> {
+        void onCompleted(T job);
+        void onFailed(T job, Exception error);
+        void onDropped(T job);
+    }
+
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private final int queueCapacity;
+    private final BackpressurePolicy policy;
+    private final Listener<T> listener;
+    private final List<Worker> workers = new ArrayList<>();
+    private final AtomicInteger droppedCount = new AtomicInteger();
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    public CapturePipeline(int queueCapacity, BackpressurePolicy policy, Listener<T> listener) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1");
+        }
+        this.queueCapacity = queueCapacity;
+        this.policy = policy;
+        this.listener = listener;
+    }
+
+    public CapturePipeline<T> addStage(String name, Stage<T> stage) {
+        if (started) {
+            throw new IllegalStateException("Stages must be added before start()");
+        }
+        workers.add(new Worker(name, stage, workers.isEmpty() ? null : workers.get(workers.size() - 1)));
+        return this;
+    }
+
+    public void start() {
+        if (workers.isEmpty()) {
+            throw new IllegalStateException("Pipeline has no stages");
+        }
+        started = true;
+        for (int i = 0; i < workers.size(); i++) {
+            Worker worker = workers.get(i);
+            worker.next = i + 1 < workers.size() ? workers.get(i + 1) : null;
+            worker.start();
+        }
+    }
+
+    /**
+     * Hands a job to the first stage. Returns false if the job was not accepted,
+     * in which case {@link Listener#onDropped} has already been called for it.
+     */
+    public boolean submit(T job) {
+        if (!started || closed) {
+            drop(job);
+            return false;
+        }
+        return enqueue(workers.get(0).queue, job);
+    }
+
+    /** Stops accepting jobs; already queued jobs are still run to completion. */
+    public void shutdown() {
+        closed = true;
+    }
+
+    /** Stops accepting jobs and drops everything that is still queued. */
+    public void shutdownNow() {
+        closed = true;
+        for (Worker worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    public void awaitTermination(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (Worker worker : workers) {
+            worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+    }
+
+    public int getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public BackpressurePolicy getPolicy() {
+        return policy;
+    }
+
+    private boolean enqueue(BlockingQueue<T> queue, T job) {
+        switch (policy) {
+            case BLOCK:
+                try {
+                    queue.put(job);
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    drop(job);
+                    return false;
+                }
+            case REJECT:
+                if (queue.offer(job)) {
+                    return true;
+                }
+                drop(job);
+                return false;
+            case DROP_OLDEST:
+            default:
+                while (!queue.offer(job)) {
+                    T oldest = queue.poll();
+                    if (oldest != null) {
+                        drop(oldest);
+                    }
+                }
+                return true;
+        }
+    }
+
+    private void drop(T job) {
+        droppedCount.incrementAndGet();
+        listener.onDropped(job);
+    }
+
+    private class Worker extends Thread {
+        private final Stage<T> stage;
+        private final Worker upstream;
+        private final BlockingQueue<T> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private Worker next;
+
+        Worker(String name, Stage<T> stage, Worker upstream) {
+            super("capture-" + name);
+            this.stage = stage;
+            this.upstream = upstream;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    T job = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    if (job == null) {
+                        // Upstream's last hand-off happens before it terminates, so re-check the queue
+                        if (closed && (upstream == null || !upstream.isAlive()) && queue.isEmpty()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    runStage(job);
+                }
+            } catch (InterruptedException e) {
+                T job;
+                while ((job = queue.poll()) != null) {
+                    drop(job);
+                }
+            }
+        }
+
+        private void runStage(T job) {
+            try {
+                stage.process(job);
+            } catch (Exception e) {
+                listener.onFailed(job, e);
+                return;
+            }
+
+            if (next == null) {
+                listener.onCompleted(job);
+            } else {
+                enqueue(next.queue, job);
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.myapplication;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * What part of the screen a session captures, and at what scale. Scaling is done by the
+ * compositor, which mirrors the screen into a smaller virtual display, so the frames arrive at
+ * the reduced size. The crop is then taken when a frame is copied out of the image, so the
+ * pixels outside it are never copied, encoded or written. Kept free of Android types.
+ */
+public final class CaptureProfile {
+    public static final String PROFILE_FULL = "full";
+    public static final String PROFILE_HALF = "half";
+    /** The screen without the status and navigation bars. */
+    public static final String PROFILE_CONTENT = "content";
+    public static final String PROFILE_HALF_CONTENT = "half_content";
+    /** Crop extra value for the screen without the system bars. */
+    public static final String CROP_CONTENT = "content";
+
+    public static final float MIN_SCALE = 0.1f;
+
+    public static final CaptureProfile FULL = new CaptureProfile(1f, null, false);
+
+    private final float scale;
+    // left, top, right, bottom in screen pixels, or null
+    private final int[] crop;
+    private final boolean excludeSystemBars;
+
+    /**
+     * {@code crop} is left, top, right and bottom in full-size screen pixels, or null for the
+     * whole screen; {@code excludeSystemBars} crops the bars off instead.
+     */
+    public CaptureProfile(float scale, int[] crop, boolean excludeSystemBars) {
+        if (!(scale >= MIN_SCALE && scale <= 1f)) {
+            throw new IllegalArgumentException("Scale " + scale + " is outside " + MIN_SCALE + "-1");
+        }
+        if (crop != null && (crop.length != 4 || crop[0] < 0 || crop[1] < 0 || crop[2] <= crop[0] || crop[3] <= crop[1])) {
+            throw new IllegalArgumentException("Invalid crop " + Arrays.toString(crop));
+        }
+        if (crop != null && excludeSystemBars) {
+            throw new IllegalArgumentException("Either a crop or the system bars, not both");
+        }
+        this.scale = scale;
+        this.crop = crop != null ? crop.clone() : null;
+        this.excludeSystemBars = excludeSystemBars;
+    }
+
+    public static CaptureProfile preset(String name) {
+        switch (name) {
+            case PROFILE_FULL:
+                return FULL;
+            case PROFILE_HALF:
+                return new CaptureProfile(0.5f, null, false);
+            case PROFILE_CONTENT:
+                return new CaptureProfile(1f, null, true);
+            case PROFILE_HALF_CONTENT:
+                return new CaptureProfile(0.5f, null, true);
+            default:
+                throw new IllegalArgumentException("Unknown capture profile " + name);
+        }
+    }
+
+    /** Parses {@code "left,top,right,bottom"} in screen pixels, or {@link #CROP_CONTENT}. */
+    public CaptureProfile withCrop(String spec) {
+        if (CROP_CONTENT.equals(spec)) {
+            return new CaptureProfile(scale, null, true);
+        }
+        String[] parts = spec.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Crop needs left,top,right,bottom: " + spec);
+        }
+        int[] rect = new int[4];
+        for (int i = 0; i < 4; i++) {
+            rect[i] = Integer.parseInt(parts[i].trim());
+        }
+        return new CaptureProfile(scale, rect, false);
+    }
+
+    public CaptureProfile withScale(float scale) {
+        return new CaptureProfile(scale, crop, excludeSystemBars);
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    /**
+     * Works out the virtual display and the crop within its frames for a screen of the given
+     * size. The navigation bar is taken to be at the bottom in portrait and on the right in
+     * landscape.
+     */
+    public Layout resolve(int screenWidth, int screenHeight, int densityDpi, int statusBarHeight, int navigationBarSize) {
+        int displayWidth = Math.max(1, Math.round(screenWidth * scale));
+        int displayHeight = Math.max(1, Math.round(screenHeight * scale));
+        int left = 0;
+        int top = 0;
+        int right = screenWidth;
+        int bottom = screenHeight;
+        if (excludeSystemBars) {
+            top = statusBarHeight;
+            if (screenHeight >= screenWidth) {
+                bottom -= navigationBarSize;
+            } else {
+                right -= navigationBarSize;
+            }
+        } else if (crop != null) {
+            left = crop[0];
+            top = crop[1];
+            right = Math.min(crop[2], screenWidth);
+            bottom = Math.min(crop[3], screenHeight);
+        }
+        if (right <= left || bottom <= top) {
+            throw new IllegalArgumentException("Crop lies outside the " + screenWidth + "x" + screenHeight + " screen");
+        }
+        // Rounded outwards so that scaling never cuts into the region
+        int frameLeft = (int) Math.floor(left * (double) displayWidth / screenWidth);
+        int frameTop = (int) Math.floor(top * (double) displayHeight / screenHeight);
+        int frameRight = Math.min(displayWidth, (int) Math.ceil(right * (double) displayWidth / screenWidth));
+        int frameBottom = Math.min(displayHeight, (int) Math.ceil(bottom * (double) displayHeight / screenHeight));
+        return new Layout(displayWidth, displayHeight, Math.max(1, Math.round(densityDpi * scale)),
+                frameLeft, frameTop, frameRight - frameLeft, frameBottom - frameTop);
+    }
+
+    @Override
+    public String toString() {
+        String region = excludeSystemBars ? CROP_CONTENT
+                : crop != null ? crop[0] + "," + crop[1] + "," + crop[2] + "," + crop[3] : "full";
+        return String.format(Locale.US, "%.2fx %s", scale, region);
+    }
+
+    /** Sizes for one session: the virtual display, and the region of its frames to keep. */
+    public static final class Layout {
+        private final int displayWidth;
+        private final int displayHeight;
+        private final int densityDpi;
+        private final int left;
+        private final int top;
+        private final int width;
+        private final int height;
+
+        Layout(int displayWidth, int displayHeight, int densityDpi, int left, int top, int width, int height) {
+            this.displayWidth = displayWidth;
+            this.displayHeight = displayHeight;
+            this.densityDpi = densityDpi;
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+        }
+
+        public int getDisplayWidth() {
+            return displayWidth;
+        }
+
+        public int getDisplayHeight() {
+            return displayHeight;
+        }
+
+        public int getDensityDpi() {
+            return densityDpi;
+        }
+
+        public int getLeft() {
+            return left;
+        }
+
+        public int getTop() {
+            return top;
+        }
+
+        /** Width of the frames handed to the encoders. */
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "display %dx%d, frame %dx%d at %d,%d",
+                    displayWidth, displayHeight, width, height, left, top);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.myapplication;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records timelapse frames into one {@link DeltaCaptureWriter} file instead of one image each.
+ * The capture thread takes tile checksums while copying a frame; a background thread compares
+ * them with the frame before and writes nothing for an unchanged frame, the changed tiles for a
+ * partly changed one, and a keyframe at the start, every {@link #KEYFRAME_INTERVAL} frames and
+ * whenever most of the screen changed. The file is written under a temporary name and renamed
+ * when the recording finishes.
+ */
+class DeltaRecorder {
+    private static final String TAG = "DeltaRecorder";
+    static final String FILE_EXTENSION = "srdc";
+    private static final int TILE_SIZE = 64;
+    // Bounds how many deltas a reader applies to rebuild one frame
+    static final int KEYFRAME_INTERVAL = 60;
+
+    interface Listener {
+        void onFinished(File file, String report);
+        void onFailed(Exception error);
+    }
+
+    private final int width;
+    private final int height;
+    private final IntArrayPool pixelPool;
+    private final CaptureMetrics metrics;
+    private final File partFile;
+    private final File file;
+    private final DeltaCaptureWriter writer;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "delta-record"));
+    private final ConcurrentLinkedQueue<TileChecksums> spareChecksums = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    // Owned by the record thread
+    private TileChecksums previous;
+    private final int[] changed;
+    private int sinceKeyframe;
+    private int keyframes;
+    private int deltas;
+    private int unchanged;
+    private IOException writeError;
+
+    DeltaRecorder(int width, int height, File file, IntArrayPool pixelPool, CaptureMetrics metrics) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.pixelPool = pixelPool;
+        this.metrics = metrics;
+        this.file = file;
+        this.partFile = new File(file.getPath() + ".part");
+        this.writer = new DeltaCaptureWriter(new FileOutputStream(partFile), width, height, TILE_SIZE);
+        this.changed = new int[new TileChecksums(width, height, TILE_SIZE).getCount()];
+    }
+
+    /** Checksums for the capture thread to fill while copying the next frame. */
+    TileChecksums acquireChecksums() {
+        TileChecksums tiles = spareChecksums.poll();
+        return tiles != null ? tiles : new TileChecksums(width, height, TILE_SIZE);
+    }
+
+    /** Frames handed over and not yet written or skipped. */
+    int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Hands over a frame and its checksums; the pixels go back to the pool once recorded.
+     * {@code scheduler} hears whether the frame was kept.
+     */
+    void offer(int[] pixels, TileChecksums tiles, long timestamp, TimelapseScheduler scheduler) {
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                record(pixels, tiles, timestamp);
+                scheduler.onFrameSaved(SystemClock.uptimeMillis());
+            } catch (IOException | RuntimeException e) {
+                if (writeError == null) {
+                    Log.e(TAG, "Failed to record frame", e);
+                    writeError = e instanceof IOException ? (IOException) e : new IOException(e);
+                }
+                metrics.onFrameFailed();
+                scheduler.onFrameDropped();
+            } finally {
+                pixelPool.release(pixels);
+                pending.decrementAndGet();
+            }
+        });
+    }
+
+    private void record(int[] pixels, TileChecksums tiles, long timestamp) throws IOException {
+        if (writeError != null) {
+            spareChecksums.add(tiles);
+            throw writeError;
+        }
+        long before = writer.getBytesWritten();
+        int count = previous != null ? tiles.diff(previous, changed) : changed.length;
+        if (previous != null && count == 0) {
+            // The frame before stands for this one
+            unchanged++;
+            spareChecksums.add(tiles);
+            metrics.onFrameSkipped();
+            return;
+        }
+        if (previous == null || sinceKeyframe + 1 >= KEYFRAME_INTERVAL || count * 2 >= changed.length) {
+            writer.writeKeyframe(timestamp, pixels);
+            keyframes++;
+            sinceKeyframe = 0;
+        } else {
+            writer.writeDelta(timestamp, pixels, changed, count);
+            deltas++;
+            sinceKeyframe++;
+        }
+        if (previous != null) {
+            spareChecksums.add(previous);
+        }
+        previous = tiles;
+        metrics.onFrameWritten(writer.getBytesWritten() - before);
+    }
+
+    /** Closes the file once the frames handed over are recorded, then reports from the record thread. */
+    void finish(Listener listener) {
+        executor.execute(() -> {
+            try {
+                writer.close();
+                if (writeError != null) {
+                    throw writeError;
+                }
+                if (writer.getFrameCount() == 0) {
+                    throw new IOException("No frames recorded");
+                }
+                if (!partFile.renameTo(file)) {
+                    throw new IOException("Failed to rename " + partFile + " to " + file);
+                }
+                listener.onFinished(file, toString());
+            } catch (IOException e) {
+                partFile.delete();
+                listener.onFailed(e);
+            }
+        });
+        executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s: %d keyframes, %d deltas, %d unchanged, %d bytes",
+                file.getName(), keyframes, deltas, unchanged, writer.getBytesWritten());
+    }
+}
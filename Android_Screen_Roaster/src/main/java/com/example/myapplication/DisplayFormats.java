@@ -0,0 +1,62 @@
+package com.example.myapplication;
+
+import java.text.DecimalFormatSymbols;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe formatters for gallery display strings, built once per locale and shared by every
+ * thread that reads rows from the index. Sizes are formatted by hand to avoid String.format.
+ */
+public final class DisplayFormats {
+    private static final String DATE_PATTERN = "MMM d, yyyy • h:mm a";
+    private static final ConcurrentHashMap<Locale, DisplayFormats> CACHE = new ConcurrentHashMap<>();
+
+    private final DateTimeFormatter dateFormatter;
+    private final char decimalSeparator;
+    private final char zeroDigit;
+
+    public static DisplayFormats forDefaultLocale() {
+        return forLocale(Locale.getDefault());
+    }
+
+    public static DisplayFormats forLocale(Locale locale) {
+        return CACHE.computeIfAbsent(locale, DisplayFormats::new);
+    }
+
+    private DisplayFormats(Locale locale) {
+        dateFormatter = DateTimeFormatter.ofPattern(DATE_PATTERN, locale);
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+        decimalSeparator = symbols.getDecimalSeparator();
+        zeroDigit = symbols.getZeroDigit();
+    }
+
+    public String formatDate(long epochMillis) {
+        return dateFormatter.format(Instant.ofEpochMilli(epochMillis).atZone(ZoneId.systemDefault()));
+    }
+
+    /** Same output as {@code String.format("%.1f KB")} and friends, rounded half up. */
+    public String formatSize(long bytes) {
+        StringBuilder out = new StringBuilder(12);
+        if (bytes < 1024) {
+            appendDigits(out, bytes);
+            return out.append(" B").toString();
+        }
+        boolean megabytes = bytes >= 1024 * 1024;
+        long tenths = Math.round(bytes * 10.0 / (megabytes ? 1024.0 * 1024.0 : 1024.0));
+        appendDigits(out, tenths / 10);
+        out.append(decimalSeparator).append((char) (zeroDigit + tenths % 10));
+        return out.append(megabytes ? " MB" : " KB").toString();
+    }
+
+    private void appendDigits(StringBuilder out, long value) {
+        int start = out.length();
+        do {
+            out.insert(start, (char) (zeroDigit + value % 10));
+            value /= 10;
+        } while (value > 0);
+    }
+}
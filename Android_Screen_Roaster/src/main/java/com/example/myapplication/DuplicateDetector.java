@@ -0,0 +1,217 @@
+package com.example.myapplication;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Finds near-identical captures by their {@link PerceptualHash}. The hashes of the whole library
+ * are held in a {@link HashIndex}, loaded from the {@link ScreenshotIndex} on first use. Files
+ * indexed before hashing existed, or added by other apps, are hashed by {@link #startBackfill}
+ * on a fork-join pool spanning all cores.
+ */
+public class DuplicateDetector {
+    private static final String TAG = "DuplicateDetector";
+    // Same screen with a changed clock, badge or cursor; unrelated screens differ in far more bits
+    public static final int MAX_DISTANCE = 4;
+    private static final int BACKFILL_BATCH_SIZE = 256;
+    // Files per fork-join leaf; decoding dominates, so leaves stay small
+    private static final int BACKFILL_LEAF_SIZE = 2;
+    private static final long NOT_FOUND = 0;
+
+    /** What the service does with a capture that duplicates an existing screenshot. */
+    public enum Policy {
+        /** Save it like any other capture. */
+        KEEP,
+        /** Save it and mark it as a duplicate in the gallery. */
+        FLAG,
+        /** Do not save it. */
+        SKIP
+    }
+
+    private static DuplicateDetector instance;
+
+    private final ScreenshotIndex index;
+    private final ThumbnailStore thumbnailStore;
+    private final HashIndex hashes = new HashIndex();
+    // Path for each id in the hash index; ids are path hashes, which are never 0 in practice
+    private final Map<Long, String> paths = new HashMap<>();
+    private final ExecutorService backfillDriver = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean backfillRunning = new AtomicBoolean();
+    private boolean loaded;
+
+    public static synchronized DuplicateDetector getInstance(Context context) {
+        if (instance == null) {
+            instance = new DuplicateDetector(ScreenshotIndex.getInstance(context), ThumbnailStore.getInstance(context));
+        }
+        return instance;
+    }
+
+    private DuplicateDetector(ScreenshotIndex index, ThumbnailStore thumbnailStore) {
+        this.index = index;
+        this.thumbnailStore = thumbnailStore;
+    }
+
+    /**
+     * Returns the path of a saved screenshot within {@link #MAX_DISTANCE} of the hash, or null.
+     * Entries deleted since they were added are dropped on the way.
+     */
+    public synchronized String findDuplicate(long hash) {
+        ensureLoaded();
+        while (true) {
+            long id = hashes.nearest(hash, MAX_DISTANCE, NOT_FOUND);
+            if (id == NOT_FOUND) {
+                return null;
+            }
+            String path = paths.get(id);
+            if (path != null && index.query(path) != null) {
+                return path;
+            }
+            hashes.remove(id);
+            paths.remove(id);
+        }
+    }
+
+    public synchronized void add(String path, long hash) {
+        ensureLoaded();
+        long id = Screenshot.hashPath(path);
+        if (paths.put(id, path) != null) {
+            hashes.remove(id);
+        }
+        hashes.add(hash, id);
+    }
+
+    public synchronized void remove(String path) {
+        long id = Screenshot.hashPath(path);
+        if (paths.remove(id) != null) {
+            hashes.remove(id);
+        }
+    }
+
+    /** Hashes every indexed screenshot that has no hash yet, unless a backfill is already running. */
+    public void startBackfill() {
+        if (!backfillRunning.compareAndSet(false, true)) {
+            return;
+        }
+        backfillDriver.execute(() -> {
+            ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                    DuplicateDetector::newBackfillThread, null, false);
+            try {
+                int hashed = 0;
+                List<Screenshot> batch;
+                while (!(batch = index.queryUnhashed(BACKFILL_BATCH_SIZE)).isEmpty()) {
+                    long[] batchHashes = new long[batch.size()];
+                    boolean[] readable = new boolean[batch.size()];
+                    pool.invoke(new HashTask(batch, batchHashes, readable, 0, batch.size()));
+                    index.recordHashes(batch, batchHashes, readable);
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (readable[i]) {
+                            add(batch.get(i).getFilePath(), batchHashes[i]);
+                        }
+                    }
+                    hashed += batch.size();
+                }
+                if (hashed > 0) {
+                    Log.i(TAG, "Hashed " + hashed + " existing screenshots");
+                }
+            } finally {
+                pool.shutdown();
+                backfillRunning.set(false);
+            }
+        });
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            loaded = true;
+            index.forEachHash((path, hash) -> {
+                long id = Screenshot.hashPath(path);
+                paths.put(id, path);
+                hashes.add(hash, id);
+            });
+        }
+    }
+
+    private static ForkJoinWorkerThread newBackfillThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("hash-backfill-" + thread.getPoolIndex());
+        // Behind anything the user is waiting for
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    }
+
+    // Prefers the cached thumbnail, which is far cheaper to decode and hashes like the original
+    private int[] decodeForHash(Screenshot screenshot, int[] size) {
+        Bitmap bitmap = null;
+        File thumbnail = thumbnailStore.lookup(screenshot.getThumbnailKey());
+        if (thumbnail != null) {
+            bitmap = BitmapFactory.decodeFile(thumbnail.getPath());
+        }
+        if (bitmap == null) {
+            bitmap = ThumbnailStore.decodeSampled(screenshot.getFilePath());
+        }
+        if (bitmap == null) {
+            return null;
+        }
+        try {
+            size[0] = bitmap.getWidth();
+            size[1] = bitmap.getHeight();
+            int[] pixels = new int[size[0] * size[1]];
+            bitmap.getPixels(pixels, 0, size[0], 0, 0, size[0], size[1]);
+            return pixels;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    private class HashTask extends RecursiveAction {
+        private final List<Screenshot> screenshots;
+        private final long[] results;
+        private final boolean[] readable;
+        private final int from;
+        private final int to;
+
+        HashTask(List<Screenshot> screenshots, long[] results, boolean[] readable, int from, int to) {
+            this.screenshots = screenshots;
+            this.results = results;
+            this.readable = readable;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BACKFILL_LEAF_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new HashTask(screenshots, results, readable, from, middle),
+                        new HashTask(screenshots, results, readable, middle, to));
+                return;
+            }
+            int[] size = new int[2];
+            for (int i = from; i < to; i++) {
+                int[] pixels = decodeForHash(screenshots.get(i), size);
+                if (pixels == null) {
+                    continue;
+                }
+                try {
+                    results[i] = PerceptualHash.dHash(pixels, size[0], size[1]);
+                    readable[i] = true;
+                } catch (IllegalArgumentException e) {
+                    // Smaller than the hash grid; counted as unreadable like a file that fails to decode
+                }
+            }
+        }
+    }
+}
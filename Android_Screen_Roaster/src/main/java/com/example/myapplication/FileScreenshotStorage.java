@@ -0,0 +1,162 @@
+package com.example.myapplication;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plain files in the screenshots directory. Works on every API level, but nothing shows up in
+ * the system media index until the media scanner gets to it, and listing stats every file.
+ * A capture is written to a hidden temp file and renamed into place on commit, so a crash
+ * mid-write never leaves a truncated screenshot where the gallery would list it.
+ */
+public class FileScreenshotStorage implements ScreenshotStorage {
+    // Large enough that a typical compressed screen goes to the channel in a handful of writes
+    private static final int BUFFER_SIZE = 256 * 1024;
+    // Dot-prefixed, so the index and the change feed ignore it
+    private static final String TEMP_PREFIX = ".tmp_";
+    private static final int MAX_NAME_ATTEMPTS = 1000;
+    // Shared by every instance, since one built before a durability change may still be committing
+    private static final Object COMMIT_LOCK = new Object();
+
+    private final File directory;
+    private final Durability durability;
+
+    public FileScreenshotStorage(File directory, Durability durability) {
+        this.directory = directory;
+        this.durability = durability;
+    }
+
+    @Override
+    public String getName() {
+        return ScreenshotStorages.BACKEND_FILE;
+    }
+
+    @Override
+    public PendingWrite create(String displayName, String mimeType, long captureTime, int width, int height)
+            throws IOException {
+        directory.mkdirs();
+        // Unique even for burst frames captured in the same millisecond
+        File temp = File.createTempFile(TEMP_PREFIX, ".tmp", directory);
+        FileChannel channel = new FileOutputStream(temp).getChannel();
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        return new PendingWrite() {
+            @Override
+            public OutputStream getOutputStream() {
+                return out;
+            }
+
+            @Override
+            public Entry commit() throws IOException {
+                out.flush();
+                if (durability != Durability.NONE) {
+                    channel.force(durability == Durability.FULL);
+                }
+                out.close();
+
+                File file;
+                synchronized (COMMIT_LOCK) {
+                    file = claimName(displayName);
+                    if (!temp.renameTo(file)) {
+                        throw new IOException("Failed to move " + temp + " to " + file);
+                    }
+                }
+                return new Entry(file.getAbsolutePath(), file.lastModified(), file.length(), width, height);
+            }
+
+            @Override
+            public void abort() {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // The temp file is deleted either way
+                }
+                temp.delete();
+            }
+        };
+    }
+
+    // Rename replaces an existing file, so the target has to be free. The capture pipeline, scroll
+    // capture and recompression commit from different threads, so callers hold COMMIT_LOCK from
+    // this check through the rename.
+    private File claimName(String displayName) throws IOException {
+        File file = new File(directory, displayName);
+        int dot = displayName.lastIndexOf('.');
+        String base = dot >= 0 ? displayName.substring(0, dot) : displayName;
+        String extension = dot >= 0 ? displayName.substring(dot) : "";
+        for (int i = 1; file.exists(); i++) {
+            if (i > MAX_NAME_ATTEMPTS) {
+                throw new IOException("No free name for " + displayName);
+            }
+            file = new File(directory, base + "_" + i + extension);
+        }
+        return file;
+    }
+
+    @Override
+    public Entry query(String path) {
+        File file = new File(path);
+        return file.isFile() ? entryOf(file) : null;
+    }
+
+    @Override
+    public List<Entry> list() {
+        List<Entry> entries = new ArrayList<>();
+        String[] names = directory.isDirectory() ? directory.list() : null;
+        if (names != null) {
+            for (String name : names) {
+                if (ScreenshotIndex.isScreenshotFile(name)) {
+                    entries.add(entryOf(new File(directory, name)));
+                }
+            }
+        }
+        return entries;
+    }
+
+    // Adding, removing or renaming a file touches the directory; rewriting one in place does not
+    @Override
+    public String getGeneration() {
+        return directory.isDirectory() ? String.valueOf(directory.lastModified()) : GENERATION_UNKNOWN;
+    }
+
+    @Override
+    public boolean delete(String path) {
+        return new File(path).delete();
+    }
+
+    @Override
+    public List<String> delete(List<String> paths) {
+        List<String> deleted = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            if (delete(path)) {
+                deleted.add(path);
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public int sweepOrphans(long startedBefore) {
+        File[] orphans = directory.listFiles((dir, name) -> name.startsWith(TEMP_PREFIX));
+        int removed = 0;
+        if (orphans != null) {
+            for (File orphan : orphans) {
+                if (orphan.lastModified() < startedBefore && orphan.delete()) {
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    private static Entry entryOf(File file) {
+        // Dimensions are read lazily from the headers by the index
+        return new Entry(file.getAbsolutePath(), file.lastModified(), file.length(), 0, 0);
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.myapplication;
+
+import android.os.Build;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Emits add/remove/modify deltas for the screenshots directory. Changes come from a
+ * {@link FileObserver} on the directory, which covers other apps and the file manager, and
+ * from the service publishing its own saves. The same file can therefore be reported twice;
+ * listeners must apply deltas idempotently. Listeners are called on the main thread.
+ */
+public class GalleryChangeFeed {
+
+    public enum ChangeType {
+        ADDED,
+        MODIFIED,
+        REMOVED
+    }
+
+    public interface Listener {
+        void onGalleryChanged(ChangeType type, String path);
+    }
+
+    private static final int OBSERVED_EVENTS = FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO
+            | FileObserver.DELETE | FileObserver.MOVED_FROM;
+
+    private static GalleryChangeFeed instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final File directory;
+    private FileObserver observer;
+
+    public static synchronized GalleryChangeFeed getInstance() {
+        if (instance == null) {
+            instance = new GalleryChangeFeed(ScreenshotIndex.getScreenshotsDir());
+        }
+        return instance;
+    }
+
+    private GalleryChangeFeed(File directory) {
+        this.directory = directory;
+    }
+
+    public synchronized void register(Listener listener) {
+        listeners.add(listener);
+        if (observer == null) {
+            startObserving();
+        }
+    }
+
+    public synchronized void unregister(Listener listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty() && observer != null) {
+            observer.stopWatching();
+            observer = null;
+        }
+    }
+
+    public void publish(ChangeType type, String path) {
+        mainHandler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onGalleryChanged(type, path);
+            }
+        });
+    }
+
+    private void startObserving() {
+        // FileObserver can only watch a directory that exists
+        directory.mkdirs();
+        observer = createObserver();
+        observer.startWatching();
+    }
+
+    @SuppressWarnings("deprecation")
+    private FileObserver createObserver() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return new FileObserver(directory, OBSERVED_EVENTS) {
+                @Override
+                public void onEvent(int event, String name) {
+                    handleEvent(event, name);
+                }
+            };
+        }
+        return new FileObserver(directory.getAbsolutePath(), OBSERVED_EVENTS) {
+            @Override
+            public void onEvent(int event, String name) {
+                handleEvent(event, name);
+            }
+        };
+    }
+
+    private void handleEvent(int event, String name) {
+        if (name == null || !ScreenshotIndex.isScreenshotFile(name)) {
+            return;
+        }
+        String path = new File(directory, name).getAbsolutePath();
+        switch (event & FileObserver.ALL_EVENTS) {
+            case FileObserver.MOVED_TO:
+                publish(ChangeType.ADDED, path);
+                break;
+            case FileObserver.CLOSE_WRITE:
+                publish(ChangeType.MODIFIED, path);
+                break;
+            case FileObserver.DELETE:
+            case FileObserver.MOVED_FROM:
+                publish(ChangeType.REMOVED, path);
+                break;
+            default:
+                break;
+        }
+    }
+}
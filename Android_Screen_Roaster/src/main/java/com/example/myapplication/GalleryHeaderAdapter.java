@@ -0,0 +1,57 @@
+package com.example.myapplication;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+/** The welcome card and section title, shown as the first item of the gallery list. */
+public class GalleryHeaderAdapter extends RecyclerView.Adapter<GalleryHeaderAdapter.ViewHolder> {
+    private static final long HEADER_ID = Long.MIN_VALUE;
+
+    private boolean empty = true;
+
+    public GalleryHeaderAdapter() {
+        setHasStableIds(true);
+    }
+
+    public void setEmpty(boolean empty) {
+        if (this.empty != empty) {
+            this.empty = empty;
+            notifyItemChanged(0);
+        }
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_gallery_header, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        holder.emptyStateLayout.setVisibility(empty ? View.VISIBLE : View.GONE);
+    }
+
+    @Override
+    public int getItemCount() {
+        return 1;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return HEADER_ID;
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        View emptyStateLayout;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            emptyStateLayout = itemView.findViewById(R.id.emptyStateLayout);
+        }
+    }
+}
@@ -0,0 +1,553 @@
+package com.example.myapplication;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Windowed view of the screenshot index for the gallery. There is one slot per indexed
+ * screenshot, but only the pages around the last bound position hold rows; the others are null
+ * until the user scrolls to them, and pages that fall out of the window are released again.
+ * The stable id of every slot is known from the start, whether its row is loaded or not.
+ * Pages are queried on the given executor. Everything else runs on the main thread.
+ *
+ * <p>On a cold start the rows of a {@link GallerySnapshot} can be shown before the index has
+ * been read; the first refresh then applies only the differences to them.
+ */
+public class GalleryPager {
+    public static final int PAGE_SIZE = 50;
+    // Pages kept on each side of the one being viewed
+    private static final int WINDOW_RADIUS = 3;
+    // How close to the edge of a loaded page binding gets before the next page is requested
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 2;
+    // Grace period for a change notification to catch up before deferred pages force a resync
+    private static final long RESYNC_DELAY_MS = 500;
+
+    public interface Callback {
+        void onReset();
+        /** A refresh found changes on disk, or ran for the first time, and the rows now match. */
+        void onSynced();
+        void onItemRangeChanged(int start, int count);
+        void onItemInserted(int position);
+        void onItemRangeInserted(int start, int count);
+        void onItemRemoved(int position);
+        void onItemRangeRemoved(int start, int count);
+    }
+
+    private final ScreenshotIndex index;
+    private final Executor executor;
+    private final Callback callback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ArrayList<Screenshot> slots = new ArrayList<>();
+    // Stable id of each slot, read from the index along with the count
+    private final ArrayList<Long> ids = new ArrayList<>();
+    private final Set<Integer> loadingPages = new HashSet<>();
+    // Pages whose result did not match the current count; retried after the next change
+    private final Set<Integer> deferredPages = new HashSet<>();
+    // Bumped on every structural change so that in-flight page results can be recognised as stale
+    private int generation;
+    private int windowStart;
+    private int windowEnd;
+    private int lastAccessed;
+    private boolean initialized;
+    // The rows are still the ones from a snapshot, which the next refresh diffs against the index
+    private boolean restored;
+    private boolean released;
+
+    public GalleryPager(ScreenshotIndex index, Executor executor, Callback callback) {
+        this.index = index;
+        this.executor = executor;
+        this.callback = callback;
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    /** Whether the rows have been read from the index at least once, rather than only restored. */
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    /** Returns the row at the position, loading its page if needed. Null means not loaded yet. */
+    public Screenshot get(int position) {
+        lastAccessed = position;
+        moveWindow(position / PAGE_SIZE);
+
+        int page = position / PAGE_SIZE;
+        ensureLoaded(page);
+        int offsetInPage = position % PAGE_SIZE;
+        if (offsetInPage < PREFETCH_DISTANCE && page > 0) {
+            ensureLoaded(page - 1);
+        } else if (offsetInPage >= PAGE_SIZE - PREFETCH_DISTANCE) {
+            ensureLoaded(page + 1);
+        }
+        return slots.get(position);
+    }
+
+    /**
+     * Shows the rows of a snapshot until the first {@link #refresh}, which then changes only the
+     * rows that differ and adds the ones below them. Does nothing once rows were read from the index.
+     */
+    public void restore(GallerySnapshot snapshot) {
+        if (initialized) {
+            return;
+        }
+        // Ids below the snapshot's rows are not known before the index is read, so neither are their slots
+        List<Screenshot> rows = snapshot.getRows();
+        long[] rowIds = new long[rows.size()];
+        for (int i = 0; i < rowIds.length; i++) {
+            rowIds[i] = rows.get(i).getStableId();
+        }
+        applyReset(rowIds, 0, rows);
+        initialized = false;
+        restored = true;
+    }
+
+    /** The loaded rows from the top down to the first one that is not loaded, at most {@code max}. */
+    public List<Screenshot> getLeadingRows(int max) {
+        List<Screenshot> rows = new ArrayList<>(Math.min(max, slots.size()));
+        for (int i = 0; i < Math.min(max, slots.size()) && slots.get(i) != null; i++) {
+            rows.add(slots.get(i));
+        }
+        return rows;
+    }
+
+    /** The {@link Screenshot#getStableId() stable id} of the row at the position, loaded or not. */
+    public long getStableId(int position) {
+        return ids.get(position);
+    }
+
+    /**
+     * Syncs the index with the directory and, if anything changed behind our back, reloads the
+     * page being viewed. Dimensions missing from the index are filled in afterwards.
+     */
+    public void refresh() {
+        int knownCount = slots.size();
+        boolean wasInitialized = initialized;
+        int anchorPage = lastAccessed / PAGE_SIZE;
+        executor.execute(() -> {
+            boolean changed = index.reconcile();
+            int count = index.count();
+            if (changed || !wasInitialized || count != knownCount) {
+                long[] stableIds = index.queryStableIds();
+                int page = Math.min(anchorPage, Math.max(0, (stableIds.length - 1) / PAGE_SIZE));
+                List<Screenshot> rows = index.queryPage(page * PAGE_SIZE, PAGE_SIZE);
+                post(() -> {
+                    if (restored && page == 0) {
+                        applyDifferences(stableIds, rows);
+                    } else {
+                        applyReset(stableIds, page, rows);
+                    }
+                    callback.onSynced();
+                });
+            }
+
+            // Rows show up first; dimensions of files added behind our back follow
+            if (index.loadMissingDimensions() > 0) {
+                post(this::reloadWindow);
+            }
+        });
+    }
+
+    /** Applies a change reported by the {@link GalleryChangeFeed}. */
+    public void onGalleryChanged(String path) {
+        executor.execute(() -> {
+            // Where the entry was before this change, if the index knew it
+            Screenshot before = index.query(path);
+            int beforePosition = before != null ? index.positionOf(before) : -1;
+
+            // Saves by the service are already indexed and come back unchanged
+            Screenshot after = index.refresh(path);
+            int afterPosition = after != null ? index.positionOf(after) : -1;
+            int count = index.count();
+            post(() -> applyChange(path, beforePosition, after, afterPosition, count));
+        });
+    }
+
+    /**
+     * Drops rows the app itself already hid or removed in the index, as one change per run of
+     * adjacent rows. Rows outside the window cannot be located here, so if any of them are among
+     * the paths the view is reloaded from the index instead.
+     */
+    public void removeAll(Set<String> paths) {
+        int[] positions = new int[paths.size()];
+        int found = 0;
+        for (int i = windowStart; i < Math.min(windowEnd, slots.size()) && found < positions.length; i++) {
+            Screenshot screenshot = slots.get(i);
+            if (screenshot != null && paths.contains(screenshot.getFilePath())) {
+                positions[found++] = i;
+            }
+        }
+        if (found < positions.length) {
+            refreshNow();
+            return;
+        }
+        // Back to front, so the runs still to go keep their positions
+        int end = found;
+        while (end > 0) {
+            int start = end - 1;
+            while (start > 0 && positions[start - 1] == positions[start] - 1) {
+                start--;
+            }
+            removeRange(positions[start], end - start);
+            end = start;
+        }
+    }
+
+    /** Stops delivering results; call when the owner is destroyed. */
+    public void release() {
+        released = true;
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    private void ensureLoaded(int page) {
+        int start = page * PAGE_SIZE;
+        if (page < 0 || start >= slots.size() || loadingPages.contains(page) || deferredPages.contains(page)) {
+            return;
+        }
+        int end = Math.min(start + PAGE_SIZE, slots.size());
+        for (int i = start; i < end; i++) {
+            if (slots.get(i) == null) {
+                load(page);
+                return;
+            }
+        }
+    }
+
+    private void load(int page) {
+        loadingPages.add(page);
+        int requestGeneration = generation;
+        executor.execute(() -> {
+            List<Screenshot> rows = index.queryPage(page * PAGE_SIZE, PAGE_SIZE);
+            int count = index.count();
+            post(() -> applyPage(page, rows, count, requestGeneration));
+        });
+    }
+
+    private void applyPage(int page, List<Screenshot> rows, int count, int requestGeneration) {
+        loadingPages.remove(page);
+        if (requestGeneration != generation) {
+            // Positions moved while the page was being read
+            if (isInWindow(page)) {
+                ensureLoaded(page);
+            }
+            return;
+        }
+        int start = page * PAGE_SIZE;
+        if (count != slots.size() || !matchesIds(start, rows)) {
+            // The index is ahead of a change notification that has not arrived yet
+            if (deferredPages.isEmpty()) {
+                int deferredGeneration = generation;
+                mainHandler.postDelayed(() -> {
+                    if (!released && generation == deferredGeneration && !deferredPages.isEmpty()) {
+                        refreshNow();
+                    }
+                }, RESYNC_DELAY_MS);
+            }
+            deferredPages.add(page);
+            return;
+        }
+        if (!isInWindow(page)) {
+            return;
+        }
+
+        int filled = Math.min(rows.size(), slots.size() - start);
+        for (int i = 0; i < filled; i++) {
+            slots.set(start + i, rows.get(i));
+        }
+        callback.onItemRangeChanged(start, filled);
+    }
+
+    private void applyReset(long[] stableIds, int page, List<Screenshot> rows) {
+        int count = stableIds.length;
+        generation++;
+        initialized = true;
+        restored = false;
+        loadingPages.clear();
+        deferredPages.clear();
+
+        slots.clear();
+        slots.ensureCapacity(count);
+        slots.addAll(Collections.nCopies(count, null));
+        setIds(stableIds);
+        int start = page * PAGE_SIZE;
+        for (int i = 0; i < rows.size() && start + i < count; i++) {
+            slots.set(start + i, rows.get(i));
+        }
+        windowStart = Math.max(0, page - WINDOW_RADIUS) * PAGE_SIZE;
+        windowEnd = Math.min(count, (page + WINDOW_RADIUS + 1) * PAGE_SIZE);
+        callback.onReset();
+    }
+
+    // Turns the snapshot rows at the top into the index's first page, notifying only what differs
+    private void applyDifferences(long[] stableIds, List<Screenshot> rows) {
+        int count = stableIds.length;
+        initialized = true;
+        restored = false;
+        List<Screenshot> before = getLeadingRows(PAGE_SIZE);
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return before.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return rows.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return before.get(oldPosition).getFilePath().equals(rows.get(newPosition).getFilePath());
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                Screenshot old = before.get(oldPosition);
+                Screenshot row = rows.get(newPosition);
+                return old.getDateCreated() == row.getDateCreated() && old.getFileSize() == row.getFileSize()
+                        && old.getWidth() == row.getWidth() && old.getHeight() == row.getHeight()
+                        && old.isDuplicate() == row.isDuplicate();
+            }
+        }, false);
+
+        boolean[] moved = new boolean[1];
+        diff.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int n) {
+                slots.addAll(position, Collections.nCopies(n, null));
+                moved[0] = true;
+                callback.onItemRangeInserted(position, n);
+            }
+
+            @Override
+            public void onRemoved(int position, int n) {
+                slots.subList(position, position + n).clear();
+                moved[0] = true;
+                callback.onItemRangeRemoved(position, n);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                // Not reported without move detection
+            }
+
+            @Override
+            public void onChanged(int position, int n, Object payload) {
+                callback.onItemRangeChanged(position, n);
+            }
+        });
+        for (int i = 0; i < rows.size(); i++) {
+            slots.set(i, rows.get(i));
+        }
+
+        // Below the first page only the count matters; those rows are read when scrolled to
+        int size = slots.size();
+        if (count > size) {
+            slots.addAll(Collections.nCopies(count - size, null));
+            moved[0] = true;
+            callback.onItemRangeInserted(size, count - size);
+        } else if (count < size) {
+            slots.subList(count, size).clear();
+            moved[0] = true;
+            callback.onItemRangeRemoved(count, size - count);
+        }
+        setIds(stableIds);
+        windowStart = 0;
+        windowEnd = Math.min(count, (WINDOW_RADIUS + 1) * PAGE_SIZE);
+        if (moved[0]) {
+            onStructureChanged();
+            // Rows read below the first page before the refresh may now sit in the wrong place
+            for (int page = 1; page * PAGE_SIZE < windowEnd; page++) {
+                if (hasLoadedRows(page) && !loadingPages.contains(page)) {
+                    load(page);
+                }
+            }
+        }
+    }
+
+    private void applyChange(String path, int beforePosition, Screenshot after, int afterPosition, int count) {
+        int resident = findResident(path);
+        int known = slots.size();
+
+        if (after == null) {
+            if (count == known - 1) {
+                int position = resident >= 0 ? resident : beforePosition;
+                if (position >= 0 && position < known) {
+                    removeAt(position);
+                    return;
+                }
+            } else if (count == known && resident < 0 && beforePosition < 0) {
+                // Already applied, e.g. a delete from the gallery itself
+                return;
+            }
+        } else if (count == known + 1 && resident < 0) {
+            // New to us; the index may have recorded it before this notification was handled
+            insertAt(afterPosition, after);
+            return;
+        } else if (count == known && resident >= 0) {
+            // Same entry reported again or modified in place; it may have moved
+            if (resident == afterPosition) {
+                slots.set(resident, after);
+                callback.onItemRangeChanged(resident, 1);
+            } else {
+                removeAt(resident);
+                insertAt(afterPosition, after);
+            }
+            return;
+        } else if (count == known && resident < 0 && beforePosition == afterPosition && beforePosition >= 0) {
+            // A row outside the window changed without moving; it is read again when scrolled to
+            return;
+        }
+
+        // The local view cannot be patched safely; start over from the index
+        refreshNow();
+    }
+
+    private void refreshNow() {
+        int anchorPage = lastAccessed / PAGE_SIZE;
+        executor.execute(() -> {
+            long[] stableIds = index.queryStableIds();
+            int page = Math.min(anchorPage, Math.max(0, (stableIds.length - 1) / PAGE_SIZE));
+            List<Screenshot> rows = index.queryPage(page * PAGE_SIZE, PAGE_SIZE);
+            post(() -> applyReset(stableIds, page, rows));
+        });
+    }
+
+    private void insertAt(int position, Screenshot screenshot) {
+        position = Math.max(0, Math.min(position, slots.size()));
+        slots.add(position, screenshot);
+        ids.add(position, screenshot.getStableId());
+        if (position < windowStart) {
+            windowStart++;
+        }
+        if (position <= windowEnd) {
+            windowEnd++;
+        }
+        onStructureChanged();
+        callback.onItemInserted(position);
+    }
+
+    private void removeAt(int position) {
+        slots.remove(position);
+        ids.remove(position);
+        if (position < windowStart) {
+            windowStart--;
+        }
+        if (position < windowEnd) {
+            windowEnd--;
+        }
+        onStructureChanged();
+        callback.onItemRemoved(position);
+    }
+
+    // Only called for rows inside the window
+    private void removeRange(int start, int count) {
+        slots.subList(start, start + count).clear();
+        ids.subList(start, start + count).clear();
+        windowEnd -= count;
+        onStructureChanged();
+        callback.onItemRangeRemoved(start, count);
+    }
+
+    private void onStructureChanged() {
+        generation++;
+        // In-flight pages notice the new generation themselves; deferred ones are retried now
+        Set<Integer> retry = new HashSet<>(deferredPages);
+        deferredPages.clear();
+        for (int page : retry) {
+            if (isInWindow(page)) {
+                ensureLoaded(page);
+            }
+        }
+    }
+
+    // Releases rows that left the window; only the difference between the two windows is touched
+    private void moveWindow(int page) {
+        int start = Math.max(0, page - WINDOW_RADIUS) * PAGE_SIZE;
+        int end = Math.min(slots.size(), (page + WINDOW_RADIUS + 1) * PAGE_SIZE);
+        if (start == windowStart && end == windowEnd) {
+            return;
+        }
+        int oldEnd = Math.min(windowEnd, slots.size());
+        for (int i = windowStart; i < Math.min(start, oldEnd); i++) {
+            slots.set(i, null);
+        }
+        for (int i = Math.max(end, windowStart); i < oldEnd; i++) {
+            slots.set(i, null);
+        }
+        windowStart = start;
+        windowEnd = end;
+    }
+
+    private void reloadWindow() {
+        int firstPage = windowStart / PAGE_SIZE;
+        int lastPage = (Math.max(windowEnd, 1) - 1) / PAGE_SIZE;
+        for (int page = firstPage; page <= lastPage; page++) {
+            if (!loadingPages.contains(page) && page * PAGE_SIZE < slots.size()) {
+                load(page);
+            }
+        }
+    }
+
+    private void setIds(long[] stableIds) {
+        ids.clear();
+        ids.ensureCapacity(stableIds.length);
+        for (long id : stableIds) {
+            ids.add(id);
+        }
+    }
+
+    // Whether the rows of a page are the ones the slots' ids expect there
+    private boolean matchesIds(int start, List<Screenshot> rows) {
+        for (int i = 0; i < rows.size() && start + i < ids.size(); i++) {
+            if (rows.get(i).getStableId() != ids.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasLoadedRows(int page) {
+        int start = page * PAGE_SIZE;
+        for (int i = start; i < Math.min(start + PAGE_SIZE, slots.size()); i++) {
+            if (slots.get(i) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isInWindow(int page) {
+        int start = page * PAGE_SIZE;
+        return start < windowEnd && start + PAGE_SIZE > windowStart;
+    }
+
+    private int findResident(String path) {
+        for (int i = windowStart; i < Math.min(windowEnd, slots.size()); i++) {
+            Screenshot screenshot = slots.get(i);
+            if (screenshot != null && screenshot.getFilePath().equals(path)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void post(Runnable action) {
+        mainHandler.post(() -> {
+            if (!released) {
+                action.run();
+            }
+        });
+    }
+}
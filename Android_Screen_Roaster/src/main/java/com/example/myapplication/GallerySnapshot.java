@@ -0,0 +1,177 @@
+package com.example.myapplication;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The top of the gallery as it was last shown, kept in a small file so that a cold start can
+ * draw rows before the index is even opened. The format:
+ *
+ * <pre>
+ * header: magic "GSNP", version, screenshot count, row count (ints)
+ * row:    path (UTF-8, int length first), date (long), size (long), width, height (ints),
+ *         format (UTF-8, int length first), flags (byte)
+ * footer: CRC32 of everything before it (int)
+ * </pre>
+ *
+ * Flag {@link #FLAG_DUPLICATE} marks a duplicate capture and {@link #FLAG_THUMBNAIL} a row whose
+ * thumbnail was in the {@link ThumbnailStore}; the thumbnail key itself follows from the path
+ * and date. Numbers are big-endian. The file is read through a memory map and replaced
+ * atomically when written.
+ */
+public final class GallerySnapshot {
+    static final int MAGIC = 0x47534e50;
+    static final int VERSION = 1;
+    static final int FLAG_DUPLICATE = 1;
+    static final int FLAG_THUMBNAIL = 2;
+    // A path longer than this means the file is not what it claims to be
+    private static final int MAX_STRING_BYTES = 4096;
+
+    private final int count;
+    private final List<Screenshot> rows;
+    private final List<String> thumbnailKeys;
+
+    GallerySnapshot(int count, List<Screenshot> rows, List<String> thumbnailKeys) {
+        this.count = count;
+        this.rows = rows;
+        this.thumbnailKeys = thumbnailKeys;
+    }
+
+    /** How many screenshots the gallery had; more than {@link #getRows} when it was scrolled past the top. */
+    public int getCount() {
+        return count;
+    }
+
+    /** The first rows of the gallery, newest first. */
+    public List<Screenshot> getRows() {
+        return rows;
+    }
+
+    /** Thumbnail keys of the rows that had a thumbnail. */
+    public List<String> getThumbnailKeys() {
+        return thumbnailKeys;
+    }
+
+    /** Reads a snapshot, or returns null if there is none or it cannot be trusted. */
+    public static GallerySnapshot read(File file, DisplayFormats formats) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), formats);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot of a gallery holding {@code count} screenshots whose first rows are
+     * {@code rows}. {@code hasThumbnail} tells, row by row, whether the thumbnail was cached.
+     */
+    public static void write(File file, int count, List<Screenshot> rows, boolean[] hasThumbnail) throws IOException {
+        byte[] data = encode(count, rows, hasThumbnail);
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(data);
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Failed to write " + file);
+        }
+    }
+
+    static byte[] encode(int count, List<Screenshot> rows, boolean[] hasThumbnail) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + rows.size() * 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            out.writeInt(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                Screenshot row = rows.get(i);
+                writeString(out, row.getFilePath());
+                out.writeLong(row.getDateCreated());
+                out.writeLong(row.getFileSize());
+                out.writeInt(row.getWidth());
+                out.writeInt(row.getHeight());
+                writeString(out, row.getFormat());
+                out.writeByte((row.isDuplicate() ? FLAG_DUPLICATE : 0) | (hasThumbnail[i] ? FLAG_THUMBNAIL : 0));
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            // Writes to a byte array do not fail
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static GallerySnapshot decode(ByteBuffer buffer, DisplayFormats formats) {
+        try {
+            int length = buffer.remaining() - 4;
+            if (length < 16) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            ByteBuffer body = buffer.duplicate();
+            body.limit(body.position() + length);
+            crc.update(body);
+            if (buffer.getInt(buffer.position() + length) != (int) crc.getValue()
+                    || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            int count = buffer.getInt();
+            int rowCount = buffer.getInt();
+            if (count < 0 || rowCount < 0 || rowCount > count) {
+                return null;
+            }
+            List<Screenshot> rows = new ArrayList<>(rowCount);
+            List<String> thumbnailKeys = new ArrayList<>(rowCount);
+            for (int i = 0; i < rowCount; i++) {
+                String path = readString(buffer);
+                long date = buffer.getLong();
+                long size = buffer.getLong();
+                int width = buffer.getInt();
+                int height = buffer.getInt();
+                String format = readString(buffer);
+                int flags = buffer.get();
+                Screenshot row = new Screenshot(path, date, size, width, height, format,
+                        (flags & FLAG_DUPLICATE) != 0, formats);
+                rows.add(row);
+                if ((flags & FLAG_THUMBNAIL) != 0) {
+                    thumbnailKeys.add(row.getThumbnailKey());
+                }
+            }
+            return new GallerySnapshot(count, Collections.unmodifiableList(rows), thumbnailKeys);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.myapplication;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads image dimensions from PNG, JPEG and WebP headers without decoding any pixels.
+ * Only the bytes up to the dimension fields are read (for JPEG, the segment headers are
+ * skipped until the first SOF marker).
+ */
+public final class ImageHeaderParser {
+
+    private static final int HEADER_BUFFER_SIZE = 512;
+
+    private ImageHeaderParser() {
+    }
+
+    /** Returns {width, height}, or null if the format is unknown or the header is damaged. */
+    public static int[] readDimensions(File file) {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), HEADER_BUFFER_SIZE)) {
+            return readDimensions(in);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public static int[] readDimensions(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        int first = in.readUnsignedByte();
+        int second = in.readUnsignedByte();
+
+        if (first == 0x89 && second == 'P') {
+            return readPng(in);
+        }
+        if (first == 0xFF && second == 0xD8) {
+            return readJpeg(in);
+        }
+        if (first == 'R' && second == 'I') {
+            return readWebp(in);
+        }
+        return null;
+    }
+
+    private static int[] readPng(DataInputStream in) throws IOException {
+        // Rest of the signature, then the IHDR length and type
+        byte[] rest = new byte[14];
+        in.readFully(rest);
+        if (rest[0] != 'N' || rest[1] != 'G' || rest[10] != 'I' || rest[11] != 'H' || rest[12] != 'D' || rest[13] != 'R') {
+            return null;
+        }
+        return valid(in.readInt(), in.readInt());
+    }
+
+    private static int[] readJpeg(DataInputStream in) throws IOException {
+        while (true) {
+            int marker = in.readUnsignedByte();
+            if (marker != 0xFF) {
+                return null;
+            }
+            // Any number of 0xFF fill bytes may precede the marker code
+            do {
+                marker = in.readUnsignedByte();
+            } while (marker == 0xFF);
+
+            if (marker == 0xD9 || marker == 0xDA) {
+                // End of image or start of scan before any frame header
+                return null;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                continue;
+            }
+
+            int length = in.readUnsignedShort();
+            if (length < 2) {
+                return null;
+            }
+            boolean startOfFrame = marker >= 0xC0 && marker <= 0xCF
+                    && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+            if (startOfFrame) {
+                in.readUnsignedByte();
+                int height = in.readUnsignedShort();
+                int width = in.readUnsignedShort();
+                return valid(width, height);
+            }
+            skipFully(in, length - 2);
+        }
+    }
+
+    private static int[] readWebp(DataInputStream in) throws IOException {
+        byte[] header = new byte[28];
+        in.readFully(header);
+        // header[0..1] = "FF", [2..5] = RIFF size, [6..9] = "WEBP", [10..13] = chunk type, [14..17] = chunk size
+        if (header[0] != 'F' || header[1] != 'F' || header[6] != 'W' || header[7] != 'E'
+                || header[8] != 'B' || header[9] != 'P') {
+            return null;
+        }
+        String chunk = new String(header, 10, 4, "US-ASCII");
+        int payload = 18;
+        switch (chunk) {
+            case "VP8X":
+                // Flags byte and three reserved bytes, then 24-bit canvas width-1 and height-1
+                return valid(1 + littleEndian(header, payload + 4, 3), 1 + littleEndian(header, payload + 7, 3));
+            case "VP8L": {
+                if ((header[payload] & 0xFF) != 0x2F) {
+                    return null;
+                }
+                int bits = littleEndian(header, payload + 1, 4);
+                return valid(1 + (bits & 0x3FFF), 1 + ((bits >>> 14) & 0x3FFF));
+            }
+            case "VP8 ": {
+                // Three-byte frame tag, start code 9D 01 2A, then 14-bit width and height
+                if ((header[payload + 3] & 0xFF) != 0x9D || (header[payload + 4] & 0xFF) != 0x01
+                        || (header[payload + 5] & 0xFF) != 0x2A) {
+                    return null;
+                }
+                return valid(littleEndian(header, payload + 6, 2) & 0x3FFF, littleEndian(header, payload + 8, 2) & 0x3FFF);
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static int littleEndian(byte[] data, int offset, int length) {
+        int value = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    private static int[] valid(int width, int height) {
+        return width > 0 && height > 0 ? new int[] {width, height} : null;
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.myapplication;
+
+import android.graphics.Bitmap;
+
+public class JpegEncoder extends BitmapCompressEncoder {
+
+    public JpegEncoder(int quality) {
+        super(quality);
+    }
+
+    @Override
+    protected Bitmap.CompressFormat getCompressFormat() {
+        return Bitmap.CompressFormat.JPEG;
+    }
+
+    @Override
+    public String getName() {
+        return ScreenshotEncoders.FORMAT_JPEG;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return "jpg";
+    }
+
+    @Override
+    public String getMimeType() {
+        return "image/jpeg";
+    }
+}
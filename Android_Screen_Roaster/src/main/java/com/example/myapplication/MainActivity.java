@@ -6,56 +6,95 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.media.projection.MediaProjectionManager;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Environment;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
-import android.widget.LinearLayout;
+import android.view.ViewTreeObserver;
 import android.widget.Toast;
 
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.view.ActionMode;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.ConcatAdapter;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
+import com.google.android.material.snackbar.Snackbar;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class MainActivity extends AppCompatActivity implements ScreenshotService.ScreenshotCallback, ScreenshotAdapter.OnScreenshotActionListener {
+public class MainActivity extends AppCompatActivity implements CaptureEventBus.Listener,
+        ScreenshotAdapter.OnScreenshotActionListener, GalleryChangeFeed.Listener {
 
+    private static final String TAG = "MainActivity";
+    private static final String SNAPSHOT_FILE_NAME = "gallery_snapshot";
     private static final int REQUEST_MEDIA_PROJECTION = 1000;
     private static final int REQUEST_STORAGE_PERMISSION = 1001;
+    // A process started longer ago than this was started for something else, such as the service
+    private static final long COLD_START_WINDOW_MS = 5_000;
+
+    // Outlives the activity, so that a snapshot taken as it finishes is still written
+    private static final ExecutorService snapshotExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "gallery-snapshot"));
+    // Only the first activity of a process can be timed from process start
+    private static boolean firstActivity = true;
 
     private MediaProjectionManager mediaProjectionManager;
     private RecyclerView recyclerViewScreenshots;
     private ScreenshotAdapter screenshotAdapter;
-    private LinearLayout emptyStateLayout;
-    private List<Screenshot> screenshots;
+    private GalleryHeaderAdapter headerAdapter;
+    private GalleryPager pager;
+    private BatchOperations batchOperations;
+    private ActionMode selectionMode;
+    // Rows hidden by the last delete, deleted for good when its undo snackbar goes away
+    private BatchOperations.PendingDelete pendingDelete;
+    // The selection being copied, moved or archived while a picker is up
+    private List<Screenshot> transferSelection;
+    private boolean transferMoves;
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor();
+    private ViewTreeObserver.OnPreDrawListener firstRowListener;
+    private final Runnable updateUiTask = this::updateUI;
 
     private ActivityResultLauncher<Intent> mediaProjectionLauncher;
     private ActivityResultLauncher<String> permissionLauncher;
+    private ActivityResultLauncher<Uri> folderLauncher;
+    private ActivityResultLauncher<String> zipLauncher;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long now = SystemClock.uptimeMillis();
+        boolean coldStart = firstActivity && now - Process.getStartUptimeMillis() < COLD_START_WINDOW_MS;
+        long startUptime = coldStart ? Process.getStartUptimeMillis() : now;
+        firstActivity = false;
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
         initializeViews();
         setupRecyclerView();
+        // The index is read once, by onResume; until then the last gallery state is shown
+        boolean restored = restoreSnapshot();
+        measureFirstRow(startUptime, restored);
         setupMediaProjection();
         setupPermissionLaunchers();
-        loadScreenshots();
-
-        ScreenshotService.setCallback(this);
+        // The job is persisted, so this does nothing unless the system dropped it
+        MaintenanceJobService.schedule(this, RetentionEngine.getPolicy(this));
     }
 
     private void initializeViews() {
@@ -63,19 +102,87 @@ public class MainActivity extends AppCompatActivity implements ScreenshotService
         setSupportActionBar(toolbar);
 
         recyclerViewScreenshots = findViewById(R.id.recyclerViewScreenshots);
-        emptyStateLayout = findViewById(R.id.emptyStateLayout);
 
         FloatingActionButton fabCapture = findViewById(R.id.fabCapture);
-        fabCapture.setOnClickListener(v -> requestScreenshotPermission());
+        fabCapture.setOnClickListener(v -> captureScreenshot());
+        fabCapture.setOnLongClickListener(v -> {
+            stopCaptureSession();
+            return true;
+        });
     }
 
     private void setupRecyclerView() {
-        screenshots = new ArrayList<>();
-        screenshotAdapter = new ScreenshotAdapter(this, screenshots);
+        pager = new GalleryPager(ScreenshotIndex.getInstance(this), loadExecutor, new GalleryPager.Callback() {
+            @Override
+            public void onReset() {
+                screenshotAdapter.notifyDataSetChanged();
+                updateUI();
+            }
+
+            @Override
+            public void onSynced() {
+                updateUI();
+                if (pager.size() == 0) {
+                    stopMeasuringFirstRow();
+                }
+                // Files found by the sync are hashed so that later captures can be matched against them
+                DuplicateDetector.getInstance(MainActivity.this).startBackfill();
+            }
+
+            @Override
+            public void onItemRangeChanged(int start, int count) {
+                screenshotAdapter.notifyItemRangeChanged(start, count);
+            }
+
+            @Override
+            public void onItemInserted(int position) {
+                screenshotAdapter.notifyItemInserted(position);
+                scheduleUpdateUI();
+            }
+
+            @Override
+            public void onItemRangeInserted(int start, int count) {
+                screenshotAdapter.notifyItemRangeInserted(start, count);
+                scheduleUpdateUI();
+            }
+
+            @Override
+            public void onItemRemoved(int position) {
+                screenshotAdapter.notifyItemRemoved(position);
+                scheduleUpdateUI();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int start, int count) {
+                screenshotAdapter.notifyItemRangeRemoved(start, count);
+                scheduleUpdateUI();
+            }
+        });
+        batchOperations = new BatchOperations(this, ScreenshotIndex.getInstance(this), pager);
+        screenshotAdapter = new ScreenshotAdapter(this, pager);
         screenshotAdapter.setOnScreenshotActionListener(this);
-        
+        headerAdapter = new GalleryHeaderAdapter();
+
+        ConcatAdapter.Config config = new ConcatAdapter.Config.Builder()
+                .setStableIdMode(ConcatAdapter.Config.StableIdMode.ISOLATED_STABLE_IDS)
+                .build();
         recyclerViewScreenshots.setLayoutManager(new LinearLayoutManager(this));
-        recyclerViewScreenshots.setAdapter(screenshotAdapter);
+        recyclerViewScreenshots.setAdapter(new ConcatAdapter(config, headerAdapter, screenshotAdapter));
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main_menu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_metrics) {
+            startActivity(new Intent(this, MetricsActivity.class));
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
     }
 
     private void setupMediaProjection() {
@@ -107,6 +214,48 @@ public class MainActivity extends AppCompatActivity implements ScreenshotService
                     }
                 }
         );
+
+        folderLauncher = registerForActivityResult(
+                new ActivityResultContracts.OpenDocumentTree(),
+                tree -> {
+                    List<Screenshot> selection = transferSelection;
+                    transferSelection = null;
+                    if (tree != null && selection != null) {
+                        startTransfer(selection, tree, transferMoves);
+                    }
+                }
+        );
+
+        zipLauncher = registerForActivityResult(
+                new ActivityResultContracts.CreateDocument("application/zip"),
+                document -> {
+                    List<Screenshot> selection = transferSelection;
+                    transferSelection = null;
+                    if (document != null && selection != null) {
+                        startZipExport(selection, document);
+                    }
+                }
+        );
+    }
+
+    private void captureScreenshot() {
+        if (ScreenshotService.isSessionActive()) {
+            // Reuse the warm projection instead of asking for consent again
+            Intent captureIntent = new Intent(this, ScreenshotService.class);
+            captureIntent.setAction(ScreenshotService.ACTION_CAPTURE);
+            startService(captureIntent);
+        } else {
+            requestScreenshotPermission();
+        }
+    }
+
+    private void stopCaptureSession() {
+        if (ScreenshotService.isSessionActive()) {
+            Intent stopIntent = new Intent(this, ScreenshotService.class);
+            stopIntent.setAction(ScreenshotService.ACTION_STOP_SESSION);
+            startService(stopIntent);
+            Toast.makeText(this, "Capture session stopped", Toast.LENGTH_SHORT).show();
+        }
     }
 
     private void requestScreenshotPermission() {
@@ -128,6 +277,8 @@ public class MainActivity extends AppCompatActivity implements ScreenshotService
 
     private void startScreenshotService(int resultCode, Intent data) {
         Intent serviceIntent = new Intent(this, ScreenshotService.class);
+        serviceIntent.setAction(ScreenshotService.ACTION_START_SESSION);
+        serviceIntent.putExtra(ScreenshotService.EXTRA_BURST_COUNT, 1);
         serviceIntent.putExtra("resultCode", resultCode);
         serviceIntent.putExtra("data", data);
         
@@ -139,61 +290,302 @@ public class MainActivity extends AppCompatActivity implements ScreenshotService
     }
 
     private void loadScreenshots() {
-        screenshots.clear();
-        
-        File picturesDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
-        File screenshotsDir = new File(picturesDir, "Screenshots");
-        
-        if (screenshotsDir.exists() && screenshotsDir.isDirectory()) {
-            File[] files = screenshotsDir.listFiles((dir, name) -> 
-                    name.toLowerCase().endsWith(".png") || name.toLowerCase().endsWith(".jpg"));
-            
-            if (files != null && files.length > 0) {
-                // Sort files by last modified date (newest first)
-                Arrays.sort(files, (f1, f2) -> Long.compare(f2.lastModified(), f1.lastModified()));
-                
-                for (File file : files) {
-                    screenshots.add(new Screenshot(file.getAbsolutePath()));
-                }
+        // Only the page being viewed is read; the rest follows as the list is scrolled
+        pager.refresh();
+    }
+
+    private File snapshotFile() {
+        return new File(getCacheDir(), SNAPSHOT_FILE_NAME);
+    }
+
+    // Shows the rows of the last snapshot straight away; the first refresh then applies the differences
+    private boolean restoreSnapshot() {
+        GallerySnapshot snapshot = GallerySnapshot.read(snapshotFile(), DisplayFormats.forDefaultLocale());
+        if (snapshot == null) {
+            return false;
+        }
+        ThumbnailStore.getInstance(this).seed(snapshot.getThumbnailKeys());
+        pager.restore(snapshot);
+        return true;
+    }
+
+    private void saveSnapshot() {
+        int count = pager.size();
+        List<Screenshot> rows = pager.getLeadingRows(GalleryPager.PAGE_SIZE);
+        // Before the first refresh the old snapshot is still right, and far down the list the top is not loaded
+        if (!pager.isInitialized() || rows.size() < Math.min(count, GalleryPager.PAGE_SIZE)) {
+            return;
+        }
+        ThumbnailStore thumbnails = ThumbnailStore.getInstance(this);
+        boolean[] hasThumbnail = new boolean[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            hasThumbnail[i] = thumbnails.lookup(rows.get(i).getThumbnailKey()) != null;
+        }
+        File file = snapshotFile();
+        snapshotExecutor.execute(() -> {
+            try {
+                GallerySnapshot.write(file, count, rows, hasThumbnail);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write the gallery snapshot", e);
+            }
+        });
+    }
+
+    // Time to the first frame with a gallery row in it, into the capture metrics as first_row
+    private void measureFirstRow(long startUptime, boolean fromSnapshot) {
+        firstRowListener = () -> {
+            if (!hasRowOnScreen()) {
+                return true;
             }
+            stopMeasuringFirstRow();
+            long millis = SystemClock.uptimeMillis() - startUptime;
+            CaptureMetrics.getInstance().record(CaptureMetrics.Stage.FIRST_ROW, millis * 1_000_000);
+            Log.i(TAG, "First gallery row drawn after " + millis + " ms, " + (fromSnapshot ? "from the snapshot" : "from the index"));
+            return true;
+        };
+        recyclerViewScreenshots.getViewTreeObserver().addOnPreDrawListener(firstRowListener);
+    }
+
+    private void stopMeasuringFirstRow() {
+        if (firstRowListener != null) {
+            recyclerViewScreenshots.getViewTreeObserver().removeOnPreDrawListener(firstRowListener);
+            firstRowListener = null;
         }
-        
-        updateUI();
+    }
+
+    private boolean hasRowOnScreen() {
+        for (int i = 0; i < recyclerViewScreenshots.getChildCount(); i++) {
+            View child = recyclerViewScreenshots.getChildAt(i);
+            RecyclerView.ViewHolder holder = recyclerViewScreenshots.getChildViewHolder(child);
+            if (holder instanceof ScreenshotAdapter.ViewHolder && ((ScreenshotAdapter.ViewHolder) holder).screenshot != null) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private void updateUI() {
-        if (screenshots.isEmpty()) {
-            recyclerViewScreenshots.setVisibility(View.GONE);
-            emptyStateLayout.setVisibility(View.VISIBLE);
-        } else {
-            recyclerViewScreenshots.setVisibility(View.VISIBLE);
-            emptyStateLayout.setVisibility(View.GONE);
+        headerAdapter.setEmpty(pager.size() == 0);
+    }
+
+    // Rows of a burst arrive one by one within a frame; the header only needs the final count
+    private void scheduleUpdateUI() {
+        recyclerViewScreenshots.removeCallbacks(updateUiTask);
+        recyclerViewScreenshots.postOnAnimation(updateUiTask);
+    }
+
+    // One toast per batch, however many shots it covers
+    @Override
+    public void onCaptureEvents(List<CaptureEvent> events) {
+        int saved = 0;
+        int skipped = 0;
+        String failure = null;
+        for (CaptureEvent event : events) {
+            switch (event.getType()) {
+                case SAVED:
+                    // The row itself arrives through the change feed
+                    saved++;
+                    break;
+                case SKIPPED:
+                    skipped++;
+                    break;
+                case FAILED:
+                    failure = event.getMessage();
+                    break;
+                case TIMELAPSE_FINISHED:
+                    Toast.makeText(this, getString(R.string.timelapse_finished, event.getMessage()),
+                            Toast.LENGTH_LONG).show();
+                    break;
+            }
+        }
+        if (failure != null) {
+            Toast.makeText(this, getString(R.string.screenshot_failed) + ": " + failure, Toast.LENGTH_LONG).show();
+        } else if (saved > 0) {
+            Toast.makeText(this, saved == 1 ? getString(R.string.screenshot_saved)
+                    : getString(R.string.screenshots_saved, saved), Toast.LENGTH_SHORT).show();
+        } else if (skipped > 0) {
+            Toast.makeText(this, skipped == 1 ? getString(R.string.screenshot_skipped_duplicate)
+                    : getString(R.string.screenshots_skipped_duplicate, skipped), Toast.LENGTH_SHORT).show();
         }
-        
-        screenshotAdapter.updateScreenshots(screenshots);
     }
 
     @Override
-    public void onScreenshotTaken(String filePath) {
-        runOnUiThread(() -> {
-            Toast.makeText(this, getString(R.string.screenshot_saved), Toast.LENGTH_SHORT).show();
-            
-            // Add the new screenshot to the list
-            screenshots.add(0, new Screenshot(filePath));
-            updateUI();
-        });
+    public void onGalleryChanged(GalleryChangeFeed.ChangeType type, String path) {
+        pager.onGalleryChanged(path);
+    }
+
+    @Override
+    public void onSelectionChanged(int count) {
+        if (count == 0) {
+            if (selectionMode != null) {
+                selectionMode.finish();
+            }
+            return;
+        }
+        if (selectionMode == null) {
+            selectionMode = startSupportActionMode(selectionCallback);
+        }
+        if (selectionMode != null) {
+            selectionMode.setTitle(getString(R.string.selected_count, count));
+        }
+    }
+
+    // Viewed screenshots go to the back of the line for retention
+    @Override
+    public void onScreenshotOpened(Screenshot screenshot) {
+        ScreenshotIndex index = ScreenshotIndex.getInstance(this);
+        long now = System.currentTimeMillis();
+        loadExecutor.execute(() -> index.recordViewed(screenshot.getFilePath(), now));
     }
 
+    // The rows disappear at once; the files go when the undo snackbar does
     @Override
-    public void onScreenshotFailed(String error) {
-        runOnUiThread(() -> {
-            Toast.makeText(this, getString(R.string.screenshot_failed) + ": " + error, Toast.LENGTH_LONG).show();
+    public void onDeleteRequested(List<Screenshot> screenshots) {
+        // Only one undo window at a time
+        commitPendingDelete();
+        BatchOperations.PendingDelete pending = batchOperations.delete(screenshots, new BatchOperations.Listener() {
+            @Override
+            public void onProgress(int done, int total) {
+            }
+
+            @Override
+            public void onFinished(int succeeded, int total, boolean cancelled) {
+                if (!cancelled && succeeded < total) {
+                    Toast.makeText(MainActivity.this, getString(R.string.screenshots_delete_failed, total - succeeded),
+                            Toast.LENGTH_SHORT).show();
+                }
+            }
         });
+        pendingDelete = pending;
+        Snackbar.make(recyclerViewScreenshots, getString(R.string.screenshots_deleted, screenshots.size()), Snackbar.LENGTH_LONG)
+                .setAction(R.string.undo, v -> pending.undo())
+                .addCallback(new Snackbar.Callback() {
+                    @Override
+                    public void onDismissed(Snackbar snackbar, int event) {
+                        // Does nothing after an undo
+                        pending.commit();
+                        if (pendingDelete == pending) {
+                            pendingDelete = null;
+                        }
+                    }
+                })
+                .show();
+    }
+
+    private void commitPendingDelete() {
+        if (pendingDelete != null) {
+            pendingDelete.commit();
+            pendingDelete = null;
+        }
+    }
+
+    private void startShare(List<Screenshot> screenshots) {
+        BatchProgress progress = new BatchProgress(0);
+        progress.task = batchOperations.share(screenshots, progress);
+    }
+
+    private void startTransfer(List<Screenshot> screenshots, Uri tree, boolean move) {
+        BatchProgress progress = new BatchProgress(move ? R.string.screenshots_moved : R.string.screenshots_copied);
+        progress.task = batchOperations.export(screenshots, tree, move, progress);
+    }
+
+    private void startZipExport(List<Screenshot> screenshots, Uri document) {
+        BatchProgress progress = new BatchProgress(R.string.screenshots_zipped);
+        progress.task = batchOperations.exportZip(screenshots, document, progress);
+    }
+
+    private final ActionMode.Callback selectionCallback = new ActionMode.Callback() {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            mode.getMenuInflater().inflate(R.menu.selection_menu, menu);
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            List<Screenshot> selection = screenshotAdapter.getSelection();
+            int itemId = item.getItemId();
+            if (itemId == R.id.action_share_selected) {
+                startShare(selection);
+            } else if (itemId == R.id.action_delete_selected) {
+                onDeleteRequested(selection);
+            } else if (itemId == R.id.action_copy_selected || itemId == R.id.action_move_selected) {
+                transferSelection = selection;
+                transferMoves = itemId == R.id.action_move_selected;
+                folderLauncher.launch(null);
+            } else if (itemId == R.id.action_zip_selected) {
+                transferSelection = selection;
+                String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+                zipLauncher.launch("Screenshots_" + timestamp + ".zip");
+            } else {
+                return false;
+            }
+            mode.finish();
+            return true;
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            selectionMode = null;
+            screenshotAdapter.clearSelection();
+        }
+    };
+
+    // Progress of a share or transfer in a snackbar that can cancel it
+    private class BatchProgress implements BatchOperations.ShareListener {
+        private final Snackbar snackbar;
+        // Shown with the counts when the batch finishes, or 0 for nothing
+        private final int resultMessage;
+        BatchOperations.Task task;
+
+        BatchProgress(int resultMessage) {
+            this.resultMessage = resultMessage;
+            snackbar = Snackbar.make(recyclerViewScreenshots, R.string.batch_progress_starting, Snackbar.LENGTH_INDEFINITE)
+                    .setAction(R.string.cancel, v -> task.cancel());
+            snackbar.show();
+        }
+
+        @Override
+        public void onProgress(int done, int total) {
+            snackbar.setText(getString(R.string.batch_progress, done, total));
+        }
+
+        @Override
+        public void onShareReady(Intent intent) {
+            startActivity(intent);
+        }
+
+        @Override
+        public void onFinished(int succeeded, int total, boolean cancelled) {
+            snackbar.dismiss();
+            if (cancelled) {
+                Toast.makeText(MainActivity.this, R.string.batch_cancelled, Toast.LENGTH_SHORT).show();
+            } else if (resultMessage != 0) {
+                Toast.makeText(MainActivity.this, getString(resultMessage, succeeded, total), Toast.LENGTH_SHORT).show();
+            }
+        }
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        GalleryChangeFeed.getInstance().register(this);
+        // Events from while the activity was stopped are replayed here
+        CaptureEventBus.getInstance().register(this);
     }
 
     @Override
-    public void onScreenshotDeleted(Screenshot screenshot) {
-        updateUI();
+    protected void onStop() {
+        commitPendingDelete();
+        saveSnapshot();
+        CaptureEventBus.getInstance().unregister(this);
+        GalleryChangeFeed.getInstance().unregister(this);
+        super.onStop();
     }
 
     @Override
@@ -201,4 +593,13 @@ public class MainActivity extends AppCompatActivity implements ScreenshotService
         super.onResume();
         loadScreenshots();
     }
+
+    @Override
+    protected void onDestroy() {
+        pager.release();
+        batchOperations.release();
+        recyclerViewScreenshots.removeCallbacks(updateUiTask);
+        loadExecutor.shutdownNow();
+        super.onDestroy();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+package com.example.myapplication;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Daily housekeeping while the device is idle and charging: expires screenshots past the
+ * retention age and recompresses old captures. Stops between screenshots when the system asks,
+ * and picks up where it left off the next time.
+ */
+public class MaintenanceJobService extends JobService {
+    private static final int JOB_ID = 1;
+    private static final long PERIOD_MS = TimeUnit.DAYS.toMillis(1);
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "maintenance"));
+    private volatile AtomicBoolean stop;
+
+    /**
+     * Schedules the job if the policy has anything for it to do, and cancels it otherwise. A job
+     * that is already pending is left alone, since it reads the policy when it runs.
+     */
+    public static void schedule(Context context, RetentionPolicy policy) {
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        if (policy.getMaxAgeMs() == 0 && policy.getRecompressAfterMs() == 0) {
+            scheduler.cancel(JOB_ID);
+            return;
+        }
+        if (scheduler.getPendingJob(JOB_ID) != null) {
+            return;
+        }
+        scheduler.schedule(new JobInfo.Builder(JOB_ID, new ComponentName(context, MaintenanceJobService.class))
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .setPeriodic(PERIOD_MS)
+                .setPersisted(true)
+                .build());
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        AtomicBoolean jobStop = new AtomicBoolean();
+        stop = jobStop;
+        executor.execute(() -> {
+            RetentionEngine engine = RetentionEngine.getInstance(this);
+            engine.enforce(true, jobStop);
+            engine.recompress(jobStop);
+            if (!jobStop.get()) {
+                jobFinished(params, false);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        AtomicBoolean jobStop = stop;
+        if (jobStop != null) {
+            jobStop.set(true);
+        }
+        // Periodic jobs run again anyway; asking for a retry only brings it forward
+        return false;
+    }
+
+    @Override
+    public void onDestroy() {
+        executor.shutdown();
+        super.onDestroy();
+    }
+}
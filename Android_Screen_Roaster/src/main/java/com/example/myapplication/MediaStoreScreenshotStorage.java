@@ -0,0 +1,264 @@
+package com.example.myapplication;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Environment;
+import android.os.RemoteException;
+import android.provider.MediaStore;
+
+import androidx.annotation.RequiresApi;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Screenshots as MediaStore images under Pictures/Screenshots. A capture is inserted as pending
+ * and the encoder streams into the content output stream, so it never exists as a partial file
+ * that other apps can see. Listing is a single cursor over a few columns instead of a stat per
+ * file, and dimensions come from the media index rather than from the image headers.
+ * Pending entries left by a dead process are removed by {@link #sweepOrphans}; the provider
+ * itself only expires them after a week.
+ */
+@RequiresApi(Build.VERSION_CODES.Q)
+public class MediaStoreScreenshotStorage implements ScreenshotStorage {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final String RELATIVE_PATH = Environment.DIRECTORY_PICTURES + "/Screenshots/";
+    private static final String SELECTION = MediaStore.MediaColumns.RELATIVE_PATH + " = ?";
+    private static final String SELECTION_BY_NAME = SELECTION + " AND " + MediaStore.MediaColumns.DISPLAY_NAME + " = ?";
+    private static final String[] PROJECTION = {
+            MediaStore.MediaColumns.DISPLAY_NAME,
+            MediaStore.MediaColumns.DATE_MODIFIED,
+            MediaStore.MediaColumns.SIZE,
+            MediaStore.MediaColumns.WIDTH,
+            MediaStore.MediaColumns.HEIGHT
+    };
+    private static final String[] GENERATION_PROJECTION = {
+            MediaStore.MediaColumns._ID,
+            MediaStore.MediaColumns.DATE_MODIFIED
+    };
+
+    private final Context context;
+    private final ContentResolver resolver;
+    private final Uri collection;
+    private final File directory;
+    private final Durability durability;
+
+    public MediaStoreScreenshotStorage(Context context, File directory, Durability durability) {
+        this.context = context.getApplicationContext();
+        this.resolver = this.context.getContentResolver();
+        this.collection = MediaStore.Images.Media.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY);
+        this.directory = directory;
+        this.durability = durability;
+    }
+
+    @Override
+    public String getName() {
+        return ScreenshotStorages.BACKEND_MEDIA_STORE;
+    }
+
+    @Override
+    public PendingWrite create(String displayName, String mimeType, long captureTime, int width, int height)
+            throws IOException {
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.DISPLAY_NAME, displayName);
+        values.put(MediaStore.MediaColumns.MIME_TYPE, mimeType);
+        values.put(MediaStore.MediaColumns.RELATIVE_PATH, RELATIVE_PATH);
+        values.put(MediaStore.Images.ImageColumns.DATE_TAKEN, captureTime);
+        // Known already, so the gallery has them without waiting for the scanner
+        values.put(MediaStore.MediaColumns.WIDTH, width);
+        values.put(MediaStore.MediaColumns.HEIGHT, height);
+        values.put(MediaStore.MediaColumns.IS_PENDING, 1);
+
+        Uri uri = resolver.insert(collection, values);
+        if (uri == null) {
+            throw new IOException("MediaStore rejected " + displayName);
+        }
+        OutputStream stream;
+        try {
+            stream = resolver.openOutputStream(uri);
+        } catch (IOException | RuntimeException e) {
+            resolver.delete(uri, null, null);
+            throw e;
+        }
+        if (stream == null) {
+            resolver.delete(uri, null, null);
+            throw new IOException("No output stream for " + uri);
+        }
+
+        OutputStream out = new BufferedOutputStream(stream, BUFFER_SIZE);
+        return new PendingWrite() {
+            @Override
+            public OutputStream getOutputStream() {
+                return out;
+            }
+
+            @Override
+            public Entry commit() throws IOException {
+                out.flush();
+                // The provider hands out a file descriptor stream, which can be synced like a file
+                if (durability != Durability.NONE && stream instanceof FileOutputStream) {
+                    ((FileOutputStream) stream).getChannel().force(durability == Durability.FULL);
+                }
+                out.close();
+                ContentValues published = new ContentValues();
+                published.put(MediaStore.MediaColumns.IS_PENDING, 0);
+                resolver.update(uri, published, null, null);
+
+                // The provider may have renamed the file to avoid a clash
+                try (Cursor cursor = resolver.query(uri, PROJECTION, null, null, null)) {
+                    if (cursor != null && cursor.moveToFirst()) {
+                        return entryOf(cursor);
+                    }
+                }
+                throw new IOException("Saved screenshot missing from MediaStore: " + uri);
+            }
+
+            @Override
+            public void abort() {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // The row and its file are deleted either way
+                }
+                resolver.delete(uri, null, null);
+            }
+        };
+    }
+
+    @Override
+    public Entry query(String path) {
+        try (Cursor cursor = resolver.query(collection, PROJECTION, SELECTION_BY_NAME,
+                new String[] {RELATIVE_PATH, new File(path).getName()}, null)) {
+            return cursor != null && cursor.moveToFirst() ? entryOf(cursor) : null;
+        }
+    }
+
+    @Override
+    public List<Entry> list() {
+        List<Entry> entries = new ArrayList<>();
+        try (Cursor cursor = resolver.query(collection, PROJECTION, SELECTION, new String[] {RELATIVE_PATH}, null)) {
+            if (cursor == null) {
+                return entries;
+            }
+            while (cursor.moveToNext()) {
+                if (ScreenshotIndex.isScreenshotFile(cursor.getString(0))) {
+                    entries.add(entryOf(cursor));
+                }
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public String getGeneration() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return String.valueOf(MediaStore.getGeneration(context, MediaStore.VOLUME_EXTERNAL_PRIMARY));
+        }
+        // Android 10 has no generation. Ids are never reused, so an add raises the newest id and a
+        // remove lowers the count, while an edit anywhere moves the sum of modification times; the
+        // three are kept side by side rather than hashed so no two states can collide
+        try (Cursor cursor = resolver.query(collection, GENERATION_PROJECTION, SELECTION, new String[] {RELATIVE_PATH},
+                null)) {
+            if (cursor == null) {
+                return GENERATION_UNKNOWN;
+            }
+            long newestId = 0;
+            long modifiedSum = 0;
+            while (cursor.moveToNext()) {
+                newestId = Math.max(newestId, cursor.getLong(0));
+                modifiedSum += cursor.getLong(1);
+            }
+            return cursor.getCount() + "/" + newestId + "/" + modifiedSum;
+        }
+    }
+
+    @Override
+    public boolean delete(String path) {
+        try {
+            return resolver.delete(collection, SELECTION_BY_NAME,
+                    new String[] {RELATIVE_PATH, new File(path).getName()}) > 0;
+        } catch (SecurityException e) {
+            // Images owned by other apps need the user's consent, which the gallery does not ask for
+            return false;
+        }
+    }
+
+    // One provider transaction for the whole batch instead of a binder call and a media scan each
+    @Override
+    public List<String> delete(List<String> paths) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            operations.add(ContentProviderOperation.newDelete(collection)
+                    .withSelection(SELECTION_BY_NAME, new String[] {RELATIVE_PATH, new File(path).getName()})
+                    .build());
+        }
+        ContentProviderResult[] results;
+        try {
+            results = resolver.applyBatch(collection.getAuthority(), operations);
+        } catch (SecurityException | OperationApplicationException | RemoteException e) {
+            // The batch stops at the first image owned by another app; delete the rest one by one
+            List<String> deleted = new ArrayList<>(paths.size());
+            for (String path : paths) {
+                if (delete(path)) {
+                    deleted.add(path);
+                }
+            }
+            return deleted;
+        }
+        List<String> deleted = new ArrayList<>(paths.size());
+        for (int i = 0; i < results.length; i++) {
+            if (results[i].count != null && results[i].count > 0) {
+                deleted.add(paths.get(i));
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public int sweepOrphans(long startedBefore) {
+        String selection = SELECTION + " AND " + MediaStore.MediaColumns.DATE_ADDED + " < ?";
+        String[] selectionArgs = {RELATIVE_PATH, String.valueOf(startedBefore / 1000)};
+        String[] projection = {MediaStore.MediaColumns._ID};
+        int removed = 0;
+        // Pending entries are only visible to the app that inserted them, so these are all ours
+        try (Cursor cursor = queryPending(projection, selection, selectionArgs)) {
+            while (cursor != null && cursor.moveToNext()) {
+                removed += resolver.delete(ContentUris.withAppendedId(collection, cursor.getLong(0)), null, null);
+            }
+        }
+        return removed;
+    }
+
+    @SuppressWarnings("deprecation")
+    private Cursor queryPending(String[] projection, String selection, String[] selectionArgs) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Bundle args = new Bundle();
+            args.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+            args.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs);
+            args.putInt(MediaStore.QUERY_ARG_MATCH_PENDING, MediaStore.MATCH_ONLY);
+            return resolver.query(collection, projection, args, null);
+        }
+        return resolver.query(MediaStore.setIncludePending(collection), projection,
+                selection + " AND " + MediaStore.MediaColumns.IS_PENDING + " = 1", selectionArgs, null);
+    }
+
+    // DATE_MODIFIED is in seconds
+    private Entry entryOf(Cursor cursor) {
+        return new Entry(new File(directory, cursor.getString(0)).getAbsolutePath(),
+                cursor.getLong(1) * 1000, cursor.getLong(2), cursor.getInt(3), cursor.getInt(4));
+    }
+}
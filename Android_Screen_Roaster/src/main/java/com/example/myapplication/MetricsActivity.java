@@ -0,0 +1,102 @@
+package com.example.myapplication;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.google.android.material.appbar.MaterialToolbar;
+import com.google.android.material.button.MaterialButton;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** Debug screen with the live capture metrics table and a JSON export. */
+public class MetricsActivity extends AppCompatActivity {
+    private static final long REFRESH_INTERVAL_MS = 1000;
+
+    private final CaptureMetrics metrics = CaptureMetrics.getInstance();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService exportExecutor = Executors.newSingleThreadExecutor();
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            showMetrics();
+            handler.postDelayed(this, REFRESH_INTERVAL_MS);
+        }
+    };
+    private TextView textViewMetrics;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+
+        MaterialToolbar toolbar = findViewById(R.id.toolbar);
+        setSupportActionBar(toolbar);
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        }
+        toolbar.setNavigationOnClickListener(v -> finish());
+
+        textViewMetrics = findViewById(R.id.textViewMetrics);
+        MaterialButton buttonReset = findViewById(R.id.buttonReset);
+        MaterialButton buttonExport = findViewById(R.id.buttonExport);
+        buttonReset.setOnClickListener(v -> {
+            metrics.reset();
+            showMetrics();
+        });
+        buttonExport.setOnClickListener(v -> exportJson());
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        handler.post(refresh);
+    }
+
+    @Override
+    protected void onPause() {
+        handler.removeCallbacks(refresh);
+        super.onPause();
+    }
+
+    @Override
+    protected void onDestroy() {
+        exportExecutor.shutdown();
+        super.onDestroy();
+    }
+
+    private void showMetrics() {
+        StringWriter text = new StringWriter();
+        metrics.dump(new PrintWriter(text));
+        textViewMetrics.setText(text.toString());
+    }
+
+    private void exportJson() {
+        File dir = getExternalFilesDir(null);
+        if (dir == null) {
+            Toast.makeText(this, "External storage unavailable", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        File file = new File(dir, ScreenshotService.METRICS_FILE_NAME);
+        exportExecutor.execute(() -> {
+            String message;
+            try {
+                metrics.writeJson(file);
+                message = "Saved " + file.getAbsolutePath();
+            } catch (IOException e) {
+                message = "Export failed: " + e.getMessage();
+            }
+            String result = message;
+            runOnUiThread(() -> Toast.makeText(this, result, Toast.LENGTH_LONG).show());
+        });
+    }
+}
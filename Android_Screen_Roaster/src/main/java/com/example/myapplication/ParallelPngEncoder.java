@@ -0,0 +1,66 @@
+package com.example.myapplication;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+
+public class ParallelPngEncoder implements ScreenshotEncoder {
+
+    // Shared by all instances so repeated captures don't spin up new threads
+    private static class PoolHolder {
+        static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    private final ParallelPngWriter writer;
+    private final int compressionLevel;
+
+    public ParallelPngEncoder(int compressionLevel) {
+        this.compressionLevel = Math.max(0, Math.min(compressionLevel, 9));
+        this.writer = new ParallelPngWriter(PoolHolder.POOL, this.compressionLevel);
+    }
+
+    ParallelPngWriter getWriter() {
+        return writer;
+    }
+
+    @Override
+    public String getName() {
+        return ScreenshotEncoders.FORMAT_PNG_PARALLEL;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return "png";
+    }
+
+    @Override
+    public String getMimeType() {
+        return "image/png";
+    }
+
+    @Override
+    public boolean acceptsPixels() {
+        return true;
+    }
+
+    @Override
+    public void encode(int[] argb, int width, int height, OutputStream out) throws IOException {
+        writer.write(argb, width, height, out);
+    }
+
+    @Override
+    public void encode(Bitmap bitmap, OutputStream out) throws IOException {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] argb = new int[width * height];
+        bitmap.getPixels(argb, 0, width, 0, 0, width, height);
+        writer.write(argb, width, height, out);
+    }
+
+    @Override
+    public String toString() {
+        return getName() + "@" + compressionLevel;
+    }
+}
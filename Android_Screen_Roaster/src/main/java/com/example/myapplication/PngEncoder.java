@@ -0,0 +1,31 @@
+package com.example.myapplication;
+
+import android.graphics.Bitmap;
+
+public class PngEncoder extends BitmapCompressEncoder {
+
+    public PngEncoder() {
+        // PNG is lossless and Bitmap.compress ignores the quality for it
+        super(100);
+    }
+
+    @Override
+    protected Bitmap.CompressFormat getCompressFormat() {
+        return Bitmap.CompressFormat.PNG;
+    }
+
+    @Override
+    public String getName() {
+        return ScreenshotEncoders.FORMAT_PNG;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return "png";
+    }
+
+    @Override
+    public String getMimeType() {
+        return "image/png";
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.myapplication;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Applies the {@link RetentionPolicy} to the screenshots directory. Quotas are checked against
+ * the running totals the index keeps, so a check after every save costs one lookup; only when a
+ * limit is broken are screenshots read, least recently used first, and deleted in one storage
+ * batch. The {@link MaintenanceJobService} also expires old screenshots and recompresses old
+ * PNG captures to lossy WebP while the device is idle.
+ */
+public class RetentionEngine {
+    private static final String TAG = "RetentionEngine";
+    private static final String PREFS_NAME = "retention_settings";
+    private static final String KEY_MAX_BYTES = "max_bytes";
+    private static final String KEY_MAX_COUNT = "max_count";
+    private static final String KEY_MAX_AGE_MS = "max_age_ms";
+    private static final String KEY_RECOMPRESS_AFTER_MS = "recompress_after_ms";
+    // Rows read per eviction or recompression pass
+    private static final int BATCH_SIZE = 64;
+    // Screenshots are text and flat colour, which lossy WebP holds well at this quality
+    private static final int RECOMPRESS_QUALITY = 80;
+
+    private static RetentionEngine instance;
+
+    private final Context context;
+    private final ScreenshotIndex index;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "retention"));
+    private final AtomicBoolean enforceQueued = new AtomicBoolean();
+    // The idle job and evictions after a save must not pick the same screenshots
+    private final Object enforceLock = new Object();
+    private int evicted;
+    private int recompressed;
+    private long bytesSaved;
+
+    public static synchronized RetentionEngine getInstance(Context context) {
+        if (instance == null) {
+            instance = new RetentionEngine(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private RetentionEngine(Context context) {
+        this.context = context;
+        this.index = ScreenshotIndex.getInstance(context);
+    }
+
+    public static RetentionPolicy getPolicy(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        try {
+            return new RetentionPolicy(prefs.getLong(KEY_MAX_BYTES, 0), prefs.getInt(KEY_MAX_COUNT, 0),
+                    prefs.getLong(KEY_MAX_AGE_MS, 0), prefs.getLong(KEY_RECOMPRESS_AFTER_MS, 0));
+        } catch (IllegalArgumentException e) {
+            return RetentionPolicy.NONE;
+        }
+    }
+
+    /** Persists the policy, schedules or cancels the idle job to match, and enforces the quota now. */
+    public static void setPolicy(Context context, RetentionPolicy policy) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putLong(KEY_MAX_BYTES, policy.getMaxBytes())
+                .putInt(KEY_MAX_COUNT, policy.getMaxCount())
+                .putLong(KEY_MAX_AGE_MS, policy.getMaxAgeMs())
+                .putLong(KEY_RECOMPRESS_AFTER_MS, policy.getRecompressAfterMs())
+                .apply();
+        MaintenanceJobService.schedule(context, policy);
+        getInstance(context).onSaved();
+    }
+
+    /**
+     * Call after a screenshot was added. Checks the running totals and, if the quota is broken,
+     * evicts in the background. Calls while an eviction is queued are absorbed by it.
+     */
+    public void onSaved() {
+        RetentionPolicy policy = getPolicy(context);
+        if (!policy.isOverQuota(index.getTotalBytes(), index.getTotalCount()) || !enforceQueued.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            enforceQueued.set(false);
+            enforce(false, null);
+        });
+    }
+
+    /**
+     * Evicts until the totals are within the policy, and with {@code expire} also everything past
+     * the maximum age. Returns how many screenshots were deleted.
+     */
+    public int enforce(boolean expire, AtomicBoolean stop) {
+        synchronized (enforceLock) {
+            return enforceLocked(expire, stop);
+        }
+    }
+
+    private int enforceLocked(boolean expire, AtomicBoolean stop) {
+        // Quota evictions after a save leave expiry to the idle job
+        RetentionPolicy policy = expire ? getPolicy(context) : getPolicy(context).withoutMaxAge();
+        ScreenshotStorage storage = ScreenshotStorages.getDefault(context);
+        int deletedTotal = 0;
+        while (stop == null || !stop.get()) {
+            long bytes = index.getTotalBytes();
+            int count = index.getTotalCount();
+            long now = System.currentTimeMillis();
+            long oldest = expire ? index.oldestLastUsed() : -1;
+            if (!policy.isOverQuota(bytes, count) && (oldest < 0 || !policy.isExpired(oldest, now))) {
+                break;
+            }
+            List<RetentionPolicy.Candidate> candidates = index.queryLeastRecentlyUsed(BATCH_SIZE);
+            List<RetentionPolicy.Candidate> evictions = policy.selectEvictions(bytes, count, candidates, now);
+            if (evictions.isEmpty()) {
+                break;
+            }
+            List<String> paths = new ArrayList<>(evictions.size());
+            for (RetentionPolicy.Candidate candidate : evictions) {
+                paths.add(candidate.getPath());
+            }
+            List<String> deleted = storage.delete(paths);
+            index.recordDeleted(deleted);
+            DuplicateDetector duplicates = DuplicateDetector.getInstance(context);
+            for (String path : deleted) {
+                duplicates.remove(path);
+            }
+            deletedTotal += deleted.size();
+            // Screenshots this app may not delete would otherwise be picked again forever
+            if (deleted.size() < paths.size()) {
+                Log.w(TAG, (paths.size() - deleted.size()) + " screenshots over the quota could not be deleted");
+                break;
+            }
+        }
+        if (deletedTotal > 0) {
+            Log.i(TAG, "Evicted " + deletedTotal + " screenshots");
+            synchronized (this) {
+                evicted += deletedTotal;
+            }
+        }
+        return deletedTotal;
+    }
+
+    /**
+     * Re-encodes PNG screenshots older than the policy's threshold as lossy WebP, keeping a copy
+     * only if it is smaller. Checks {@code stop} between screenshots. Returns how many were
+     * replaced.
+     */
+    public int recompress(AtomicBoolean stop) {
+        RetentionPolicy policy = getPolicy(context);
+        if (policy.getRecompressAfterMs() == 0) {
+            return 0;
+        }
+        ScreenshotStorage storage = ScreenshotStorages.getDefault(context);
+        ScreenshotEncoder encoder = ScreenshotEncoders.create(ScreenshotEncoders.FORMAT_WEBP, RECOMPRESS_QUALITY);
+        long takenBefore = System.currentTimeMillis() - policy.getRecompressAfterMs();
+        int replaced = 0;
+        while (!stop.get()) {
+            List<Screenshot> batch = index.queryRecompressible(takenBefore, BATCH_SIZE);
+            if (batch.isEmpty()) {
+                break;
+            }
+            for (Screenshot screenshot : batch) {
+                if (stop.get()) {
+                    break;
+                }
+                try {
+                    if (recompress(storage, encoder, screenshot)) {
+                        replaced++;
+                    } else {
+                        index.recordRecompressFailed(screenshot.getFilePath());
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Log.w(TAG, "Failed to recompress " + screenshot.getFilePath(), e);
+                    index.recordRecompressFailed(screenshot.getFilePath());
+                }
+            }
+        }
+        if (replaced > 0) {
+            Log.i(TAG, "Recompressed " + replaced + " screenshots");
+        }
+        return replaced;
+    }
+
+    private boolean recompress(ScreenshotStorage storage, ScreenshotEncoder encoder, Screenshot screenshot)
+            throws IOException {
+        String path = screenshot.getFilePath();
+        Bitmap bitmap = BitmapFactory.decodeFile(path);
+        if (bitmap == null) {
+            return false;
+        }
+        ScreenshotStorage.Entry copy;
+        String name = new File(path).getName();
+        name = name.substring(0, name.lastIndexOf('.') + 1) + encoder.getFileExtension();
+        ScreenshotStorage.PendingWrite write = storage.create(name, encoder.getMimeType(),
+                screenshot.getDateCreated(), bitmap.getWidth(), bitmap.getHeight());
+        try {
+            encoder.encode(bitmap, write.getOutputStream());
+            copy = write.commit();
+        } catch (IOException | RuntimeException e) {
+            write.abort();
+            throw e;
+        } finally {
+            bitmap.recycle();
+        }
+        if (copy.getSize() >= screenshot.getFileSize() || !storage.delete(path)) {
+            storage.delete(copy.getPath());
+            return false;
+        }
+        // The index keeps the original's date, so the copy stays in its place in the gallery
+        index.recordRecompressed(screenshot, copy);
+        DuplicateDetector.getInstance(context).remove(path);
+        synchronized (this) {
+            recompressed++;
+            bytesSaved += screenshot.getFileSize() - copy.getSize();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return getPolicy(context) + "; " + index.getTotalCount() + " screenshots, " + index.getTotalBytes()
+                + " bytes; evicted " + evicted + ", recompressed " + recompressed + " saving " + bytesSaved + " bytes";
+    }
+}
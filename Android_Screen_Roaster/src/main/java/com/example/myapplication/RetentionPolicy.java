@@ -0,0 +1,119 @@
+package com.example.myapplication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Limits on what the screenshots directory may hold: total bytes, number of screenshots, and how
+ * long a screenshot is kept after it was last taken or viewed. Screenshots over a limit are
+ * evicted least recently used first. Also carries the age after which lossless captures are
+ * recompressed. A limit of 0 means none. Kept free of Android types.
+ */
+public final class RetentionPolicy {
+    public static final RetentionPolicy NONE = new RetentionPolicy(0, 0, 0, 0);
+
+    private final long maxBytes;
+    private final int maxCount;
+    private final long maxAgeMs;
+    private final long recompressAfterMs;
+
+    public RetentionPolicy(long maxBytes, int maxCount, long maxAgeMs, long recompressAfterMs) {
+        if (maxBytes < 0 || maxCount < 0 || maxAgeMs < 0 || recompressAfterMs < 0) {
+            throw new IllegalArgumentException("Negative retention limit in " + maxBytes + ", " + maxCount
+                    + ", " + maxAgeMs + ", " + recompressAfterMs);
+        }
+        this.maxBytes = maxBytes;
+        this.maxCount = maxCount;
+        this.maxAgeMs = maxAgeMs;
+        this.recompressAfterMs = recompressAfterMs;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public long getMaxAgeMs() {
+        return maxAgeMs;
+    }
+
+    public long getRecompressAfterMs() {
+        return recompressAfterMs;
+    }
+
+    /** This policy with the quota only. */
+    public RetentionPolicy withoutMaxAge() {
+        return new RetentionPolicy(maxBytes, maxCount, 0, recompressAfterMs);
+    }
+
+    /** Whether anything is ever evicted. */
+    public boolean hasLimits() {
+        return maxBytes > 0 || maxCount > 0 || maxAgeMs > 0;
+    }
+
+    /** Whether the totals break the byte or count limit. Cheap enough to ask after every save. */
+    public boolean isOverQuota(long totalBytes, int totalCount) {
+        return (maxBytes > 0 && totalBytes > maxBytes) || (maxCount > 0 && totalCount > maxCount);
+    }
+
+    /** Whether a screenshot last used at {@code lastUsed} is past the maximum age. */
+    public boolean isExpired(long lastUsed, long now) {
+        return maxAgeMs > 0 && now - lastUsed > maxAgeMs;
+    }
+
+    /**
+     * Picks the screenshots to evict from {@code candidates}, which must be least recently used
+     * first, to bring the totals within the limits. Stops at the first candidate that can stay,
+     * since everything after it was used more recently.
+     */
+    public List<Candidate> selectEvictions(long totalBytes, int totalCount, List<Candidate> candidates, long now) {
+        List<Candidate> evictions = new ArrayList<>();
+        long bytes = totalBytes;
+        int count = totalCount;
+        for (Candidate candidate : candidates) {
+            if (!isOverQuota(bytes, count) && !isExpired(candidate.getLastUsed(), now)) {
+                break;
+            }
+            evictions.add(candidate);
+            bytes -= candidate.getSize();
+            count--;
+        }
+        return evictions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "max %d bytes, %d screenshots, %d ms unused; recompress after %d ms",
+                maxBytes, maxCount, maxAgeMs, recompressAfterMs);
+    }
+
+    /** A screenshot as retention sees it. */
+    public static final class Candidate {
+        private final String path;
+        private final long size;
+        private final long lastUsed;
+
+        public Candidate(String path, long size, long lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /** When the screenshot was taken or last viewed, whichever is later. */
+        public long getLastUsed() {
+            return lastUsed;
+        }
+    }
+}
@@ -1,28 +1,66 @@
 package com.example.myapplication;
 
 import java.io.File;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-
-public class Screenshot {
-    private String filePath;
-    private String fileName;
-    private long dateCreated;
-    private long fileSize;
-    private int width;
-    private int height;
-
-    public Screenshot(String filePath) {
+
+/**
+ * One gallery row. Immutable, with every display string formatted when the row is created,
+ * which happens on the loader thread, so that binding it allocates nothing.
+ */
+public final class Screenshot {
+    private final String filePath;
+    private final String fileName;
+    private final long dateCreated;
+    private final long fileSize;
+    private final int width;
+    private final int height;
+    private final String format;
+    private final boolean duplicate;
+    private final long stableId;
+    private final String thumbnailKey;
+    private final String formattedDate;
+    private final String formattedSize;
+    private final String sizeInfo;
+
+    public Screenshot(String filePath, long dateCreated, long fileSize, int width, int height, String format) {
+        this(filePath, dateCreated, fileSize, width, height, format, false, DisplayFormats.forDefaultLocale());
+    }
+
+    public Screenshot(String filePath, long dateCreated, long fileSize, int width, int height, String format,
+                      DisplayFormats formats) {
+        this(filePath, dateCreated, fileSize, width, height, format, false, formats);
+    }
+
+    /** {@code duplicate} marks a capture saved although a near-identical one already existed. */
+    public Screenshot(String filePath, long dateCreated, long fileSize, int width, int height, String format,
+                      boolean duplicate, DisplayFormats formats) {
         this.filePath = filePath;
-        File file = new File(filePath);
-        this.fileName = file.getName();
-        this.dateCreated = file.lastModified();
-        this.fileSize = file.length();
-        
-        // Extract dimensions from file if needed (for now, we'll use default values)
-        this.width = 1080;
-        this.height = 2400;
+        this.fileName = new File(filePath).getName();
+        this.dateCreated = dateCreated;
+        this.fileSize = fileSize;
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.duplicate = duplicate;
+        this.stableId = hashPath(filePath);
+        this.thumbnailKey = ThumbnailStore.keyOf(filePath, dateCreated);
+        this.formattedDate = formats.formatDate(dateCreated);
+        this.formattedSize = formats.formatSize(fileSize);
+        String details = hasDimensions() ? getDimensions() + " • " + formattedSize : formattedSize;
+        this.sizeInfo = duplicate ? "Duplicate • " + details : details;
+    }
+
+    // 64-bit FNV-1a of the path, stable across reloads for RecyclerView stable ids
+    static long hashPath(String path) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < path.length(); i++) {
+            hash ^= path.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public long getStableId() {
+        return stableId;
     }
 
     public String getFilePath() {
@@ -38,8 +76,7 @@ public class Screenshot {
     }
 
     public String getFormattedDate() {
-        SimpleDateFormat sdf = new SimpleDateFormat("MMM d, yyyy • h:mm a", Locale.getDefault());
-        return sdf.format(new Date(dateCreated));
+        return formattedDate;
     }
 
     public long getFileSize() {
@@ -47,13 +84,7 @@ public class Screenshot {
     }
 
     public String getFormattedSize() {
-        if (fileSize < 1024) {
-            return fileSize + " B";
-        } else if (fileSize < 1024 * 1024) {
-            return String.format(Locale.getDefault(), "%.1f KB", fileSize / 1024.0);
-        } else {
-            return String.format(Locale.getDefault(), "%.1f MB", fileSize / (1024.0 * 1024.0));
-        }
+        return formattedSize;
     }
 
     public int getWidth() {
@@ -64,11 +95,29 @@ public class Screenshot {
         return height;
     }
 
+    public String getFormat() {
+        return format;
+    }
+
+    public boolean isDuplicate() {
+        return duplicate;
+    }
+
+    /** Key of this row's entry in the {@link ThumbnailStore}. */
+    public String getThumbnailKey() {
+        return thumbnailKey;
+    }
+
+    // Dimensions are filled in by a background pass over the index; until then they are unknown
+    public boolean hasDimensions() {
+        return width > 0 && height > 0;
+    }
+
     public String getDimensions() {
-        return width + "x" + height;
+        return hasDimensions() ? width + "x" + height : "";
     }
 
     public String getSizeInfo() {
-        return getDimensions() + " • " + getFormattedSize();
+        return sizeInfo;
     }
-}
\ No newline at end of file
+}
@@ -17,22 +17,43 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
 import com.google.android.material.button.MaterialButton;
+import com.google.android.material.card.MaterialCardView;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Gallery rows backed by a {@link GalleryPager}. Rows whose page is not loaded yet are bound as
+ * placeholders and rebound when the pager reports the page. A long press starts selecting rows
+ * for a batch action; while selecting, a tap toggles a row instead of opening it.
+ */
 public class ScreenshotAdapter extends RecyclerView.Adapter<ScreenshotAdapter.ViewHolder> {
-    private List<Screenshot> screenshots;
+    // Rebinds only the checked state of a row
+    private static final Object PAYLOAD_SELECTION = new Object();
+
+    private final GalleryPager pager;
+    private final ThumbnailStore thumbnailStore;
+    // Keyed by path so that the selection survives rows moving and pages being released
+    private final Map<String, Screenshot> selection = new LinkedHashMap<>();
     private Context context;
     private OnScreenshotActionListener listener;
 
     public interface OnScreenshotActionListener {
-        void onScreenshotDeleted(Screenshot screenshot);
+        /** The owner hides the rows and deletes them once the user had a chance to undo. */
+        void onDeleteRequested(List<Screenshot> screenshots);
+        void onSelectionChanged(int count);
+        void onScreenshotOpened(Screenshot screenshot);
     }
 
-    public ScreenshotAdapter(Context context, List<Screenshot> screenshots) {
+    public ScreenshotAdapter(Context context, GalleryPager pager) {
         this.context = context;
-        this.screenshots = screenshots;
+        this.pager = pager;
+        this.thumbnailStore = ThumbnailStore.getInstance(context);
+        setHasStableIds(true);
     }
 
     public void setOnScreenshotActionListener(OnScreenshotActionListener listener) {
@@ -43,34 +64,143 @@ public class ScreenshotAdapter extends RecyclerView.Adapter<ScreenshotAdapter.Vi
     @Override
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(context).inflate(R.layout.item_screenshot, parent, false);
-        return new ViewHolder(view);
+        ViewHolder holder = new ViewHolder(view);
+
+        // Listeners are created once per holder and read the row it is bound to
+        holder.itemView.setOnClickListener(v -> {
+            if (holder.screenshot == null) {
+                return;
+            }
+            if (!selection.isEmpty()) {
+                toggleSelection(holder);
+            } else {
+                openScreenshot(holder.screenshot);
+            }
+        });
+        holder.itemView.setOnLongClickListener(v -> {
+            if (holder.screenshot == null) {
+                return false;
+            }
+            toggleSelection(holder);
+            return true;
+        });
+        holder.buttonMore.setOnClickListener(v -> {
+            if (holder.screenshot != null) {
+                showPopupMenu(v, holder.screenshot);
+            }
+        });
+        holder.backfillCallback = (path, file) -> {
+            // The holder may have been rebound to another row in the meantime
+            if (holder.screenshot != null && path.equals(holder.screenshot.getFilePath())) {
+                loadThumbnail(holder, file);
+            }
+        };
+        return holder;
     }
 
+    // Everything bound here was formatted when the row was read, so binding allocates nothing
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        Screenshot screenshot = screenshots.get(position);
-        
+        Screenshot screenshot = pager.get(position);
+        holder.screenshot = screenshot;
+        if (screenshot == null) {
+            holder.card.setChecked(false);
+            bindPlaceholder(holder);
+            return;
+        }
+        holder.card.setChecked(selection.containsKey(screenshot.getFilePath()));
+
         holder.textViewFileName.setText(screenshot.getFileName());
         holder.textViewDate.setText(screenshot.getFormattedDate());
         holder.textViewSize.setText(screenshot.getSizeInfo());
 
-        // Load thumbnail using Glide
+        // Thumbnails come from the thumbnail store; the full-resolution file is never decoded here
+        File thumbnail = thumbnailStore.lookup(screenshot.getThumbnailKey());
+        if (thumbnail == null) {
+            showPlaceholderThumbnail(holder);
+            thumbnailStore.requestBackfill(screenshot.getFilePath(), screenshot.getDateCreated(), holder.backfillCallback);
+        } else if (!thumbnail.equals(holder.thumbnail)) {
+            loadThumbnail(holder, thumbnail);
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && holder.screenshot != null
+                && Collections.frequency(payloads, PAYLOAD_SELECTION) == payloads.size()) {
+            holder.card.setChecked(selection.containsKey(holder.screenshot.getFilePath()));
+            return;
+        }
+        onBindViewHolder(holder, position);
+    }
+
+    public int getSelectedCount() {
+        return selection.size();
+    }
+
+    /** The selected rows in the order they were selected. */
+    public List<Screenshot> getSelection() {
+        return new ArrayList<>(selection.values());
+    }
+
+    public void clearSelection() {
+        if (selection.isEmpty()) {
+            return;
+        }
+        selection.clear();
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_SELECTION);
+        if (listener != null) {
+            listener.onSelectionChanged(0);
+        }
+    }
+
+    private void toggleSelection(ViewHolder holder) {
+        String path = holder.screenshot.getFilePath();
+        if (selection.remove(path) == null) {
+            selection.put(path, holder.screenshot);
+        }
+        int position = holder.getBindingAdapterPosition();
+        if (position != RecyclerView.NO_POSITION) {
+            notifyItemChanged(position, PAYLOAD_SELECTION);
+        }
+        if (listener != null) {
+            listener.onSelectionChanged(selection.size());
+        }
+    }
+
+    private void bindPlaceholder(ViewHolder holder) {
+        holder.textViewFileName.setText(null);
+        holder.textViewDate.setText(null);
+        holder.textViewSize.setText(null);
+        showPlaceholderThumbnail(holder);
+    }
+
+    private void showPlaceholderThumbnail(ViewHolder holder) {
+        if (holder.thumbnail != null) {
+            Glide.with(context).clear(holder.imageViewThumbnail);
+            holder.thumbnail = null;
+        }
+        holder.imageViewThumbnail.setImageResource(R.drawable.ic_launcher_foreground);
+    }
+
+    private void loadThumbnail(ViewHolder holder, File thumbnail) {
+        holder.thumbnail = thumbnail;
         Glide.with(context)
-                .load(new File(screenshot.getFilePath()))
+                .load(thumbnail)
                 .centerCrop()
                 .placeholder(R.drawable.ic_launcher_foreground)
                 .into(holder.imageViewThumbnail);
-
-        // Set click listener for the item
-        holder.itemView.setOnClickListener(v -> openScreenshot(screenshot));
-
-        // Set click listener for more options
-        holder.buttonMore.setOnClickListener(v -> showPopupMenu(v, screenshot));
     }
 
     @Override
     public int getItemCount() {
-        return screenshots.size();
+        return pager.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        // Known for placeholders too, so a row keeps its id when its page arrives
+        return pager.getStableId(position);
     }
 
     private void openScreenshot(Screenshot screenshot) {
@@ -84,6 +214,9 @@ public class ScreenshotAdapter extends RecyclerView.Adapter<ScreenshotAdapter.Vi
             intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
             
             context.startActivity(Intent.createChooser(intent, "Open with"));
+            if (listener != null) {
+                listener.onScreenshotOpened(screenshot);
+            }
         } catch (Exception e) {
             Toast.makeText(context, "Unable to open screenshot", Toast.LENGTH_SHORT).show();
         }
@@ -99,7 +232,9 @@ public class ScreenshotAdapter extends RecyclerView.Adapter<ScreenshotAdapter.Vi
                 shareScreenshot(screenshot);
                 return true;
             } else if (itemId == R.id.action_delete) {
-                deleteScreenshot(screenshot);
+                if (listener != null) {
+                    listener.onDeleteRequested(Collections.singletonList(screenshot));
+                }
                 return true;
             }
             return false;
@@ -125,41 +260,21 @@ public class ScreenshotAdapter extends RecyclerView.Adapter<ScreenshotAdapter.Vi
         }
     }
 
-    private void deleteScreenshot(Screenshot screenshot) {
-        try {
-            File file = new File(screenshot.getFilePath());
-            if (file.delete()) {
-                int position = screenshots.indexOf(screenshot);
-                screenshots.remove(screenshot);
-                notifyItemRemoved(position);
-                
-                if (listener != null) {
-                    listener.onScreenshotDeleted(screenshot);
-                }
-                
-                Toast.makeText(context, "Screenshot deleted", Toast.LENGTH_SHORT).show();
-            } else {
-                Toast.makeText(context, "Failed to delete screenshot", Toast.LENGTH_SHORT).show();
-            }
-        } catch (Exception e) {
-            Toast.makeText(context, "Error deleting screenshot", Toast.LENGTH_SHORT).show();
-        }
-    }
-
-    public void updateScreenshots(List<Screenshot> newScreenshots) {
-        this.screenshots = newScreenshots;
-        notifyDataSetChanged();
-    }
-
     static class ViewHolder extends RecyclerView.ViewHolder {
+        MaterialCardView card;
         ImageView imageViewThumbnail;
         TextView textViewFileName;
         TextView textViewDate;
         TextView textViewSize;
         MaterialButton buttonMore;
+        Screenshot screenshot;
+        // The thumbnail currently shown, so rebinding the same row does not reload it
+        File thumbnail;
+        ThumbnailStore.BackfillCallback backfillCallback;
 
         ViewHolder(View itemView) {
             super(itemView);
+            card = (MaterialCardView) itemView;
             imageViewThumbnail = itemView.findViewById(R.id.imageViewThumbnail);
             textViewFileName = itemView.findViewById(R.id.textViewFileName);
             textViewDate = itemView.findViewById(R.id.textViewDate);
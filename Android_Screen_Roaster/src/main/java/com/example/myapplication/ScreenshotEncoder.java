@@ -0,0 +1,22 @@
+package com.example.myapplication;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface ScreenshotEncoder {
+    String getName();
+    String getFileExtension();
+    String getMimeType();
+    void encode(Bitmap bitmap, OutputStream out) throws IOException;
+
+    // Encoders that work on raw ARGB pixels let the pipeline skip building a Bitmap
+    default boolean acceptsPixels() {
+        return false;
+    }
+
+    default void encode(int[] argb, int width, int height, OutputStream out) throws IOException {
+        throw new UnsupportedOperationException(getName() + " only encodes bitmaps");
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.myapplication;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+public final class ScreenshotEncoders {
+    public static final String FORMAT_PNG = "png";
+    public static final String FORMAT_WEBP_LOSSLESS = "webp_lossless";
+    public static final String FORMAT_WEBP = "webp";
+    public static final String FORMAT_JPEG = "jpeg";
+    public static final String FORMAT_PNG_PARALLEL = "png_parallel";
+
+    /** Pass as quality to use the format's own default. */
+    public static final int DEFAULT_QUALITY = -1;
+
+    private static final String PREFS_NAME = "encoder_settings";
+    private static final String KEY_FORMAT = "format";
+    private static final String KEY_QUALITY = "quality";
+
+    private ScreenshotEncoders() {
+    }
+
+    public static String[] getFormats() {
+        return new String[] {FORMAT_PNG, FORMAT_PNG_PARALLEL, FORMAT_WEBP_LOSSLESS, FORMAT_WEBP, FORMAT_JPEG};
+    }
+
+    public static ScreenshotEncoder create(String format, int quality) {
+        return create(format, quality, Build.VERSION.SDK_INT);
+    }
+
+    static ScreenshotEncoder create(String format, int quality, int sdkInt) {
+        if (FORMAT_WEBP_LOSSLESS.equals(format) && sdkInt < Build.VERSION_CODES.Q) {
+            // Before Android 10 the only WebP encoder is lossy at every quality, so stay lossless with PNG
+            return new PngEncoder();
+        }
+        int resolvedQuality = quality >= 0 ? quality : defaultQuality(format);
+        switch (format) {
+            case FORMAT_PNG:
+                return new PngEncoder();
+            case FORMAT_PNG_PARALLEL:
+                return new ParallelPngEncoder(resolvedQuality);
+            case FORMAT_WEBP_LOSSLESS:
+                return new WebpEncoder(true, resolvedQuality);
+            case FORMAT_WEBP:
+                return new WebpEncoder(false, resolvedQuality);
+            case FORMAT_JPEG:
+                return new JpegEncoder(resolvedQuality);
+            default:
+                throw new IllegalArgumentException("Unknown screenshot format " + format);
+        }
+    }
+
+    public static int defaultQuality(String format) {
+        switch (format) {
+            case FORMAT_WEBP_LOSSLESS:
+                // Effort, not quality: low effort is several times faster for a few % larger files
+                return 25;
+            case FORMAT_WEBP:
+            case FORMAT_JPEG:
+                return 90;
+            case FORMAT_PNG_PARALLEL:
+                // Deflate level rather than quality
+                return 6;
+            default:
+                return 100;
+        }
+    }
+
+    public static ScreenshotEncoder getDefault(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String format = prefs.getString(KEY_FORMAT, FORMAT_PNG);
+        int quality = prefs.getInt(KEY_QUALITY, DEFAULT_QUALITY);
+        try {
+            return create(format, quality);
+        } catch (IllegalArgumentException e) {
+            return new PngEncoder();
+        }
+    }
+
+    public static void setDefault(Context context, String format, int quality) {
+        // Validate before persisting so a bad value can't break every later capture
+        create(format, quality);
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putString(KEY_FORMAT, format)
+                .putInt(KEY_QUALITY, quality)
+                .apply();
+    }
+}
@@ -0,0 +1,627 @@
+package com.example.myapplication;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Environment;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Persistent metadata for everything in the screenshots directory, so the gallery can be
+ * listed without walking and stat-ing the directory. The service records every save and
+ * {@link BatchOperations} every delete; {@link #reconcile()} picks up changes made by other apps
+ * through the default {@link ScreenshotStorage}.
+ */
+public class ScreenshotIndex extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "screenshot_index.db";
+    private static final int DATABASE_VERSION = 7;
+
+    private static final String TABLE_SCREENSHOTS = "screenshots";
+    private static final String TABLE_META = "meta";
+    private static final String COLUMN_PATH = "path";
+    private static final String COLUMN_TIMESTAMP = "timestamp";
+    // The backend's timestamp when last read, to tell changed files; differs from the gallery's
+    // timestamp only for a recompressed copy, which keeps its original's date
+    private static final String COLUMN_MODIFIED = "modified";
+    private static final String COLUMN_SIZE = "size";
+    private static final String COLUMN_WIDTH = "width";
+    private static final String COLUMN_HEIGHT = "height";
+    private static final String COLUMN_FORMAT = "format";
+    private static final String COLUMN_DHASH = "dhash";
+    private static final String COLUMN_HASH_STATE = "hash_state";
+    private static final String COLUMN_DUPLICATE = "duplicate";
+    private static final String COLUMN_PENDING_DELETE = "pending_delete";
+    private static final String COLUMN_LAST_VIEWED = "last_viewed";
+    private static final String COLUMN_RECOMPRESS_FAILED = "recompress_failed";
+    private static final String COLUMN_KEY = "key";
+    private static final String COLUMN_VALUE = "value";
+    private static final String META_GENERATION = "storage_generation";
+    // Kept up to date by triggers on every change to the screenshots table
+    private static final String META_TOTAL_BYTES = "total_bytes";
+    private static final String META_TOTAL_COUNT = "total_count";
+    private static final int DIMENSIONS_UNKNOWN = 0;
+    private static final int DIMENSIONS_UNREADABLE = -1;
+    private static final int DIMENSION_BATCH_SIZE = 256;
+    private static final int HASH_UNKNOWN = 0;
+    private static final int HASH_PRESENT = 1;
+    private static final int HASH_UNREADABLE = -1;
+    // Gallery order. The path breaks timestamp ties so that positions are well defined, newest
+    // name first since capture names sort by time and MediaStore timestamps are whole seconds
+    private static final String GALLERY_ORDER = COLUMN_TIMESTAMP + " DESC, " + COLUMN_PATH + " DESC";
+    // Rows deleted in the gallery but still inside their undo window are left out of it
+    private static final String VISIBLE = COLUMN_PENDING_DELETE + " = 0";
+    // When a screenshot was last taken or looked at; retention evicts the smallest first
+    private static final String LAST_USED = "MAX(" + COLUMN_TIMESTAMP + ", " + COLUMN_LAST_VIEWED + ")";
+
+    private static final String[] SCREENSHOT_COLUMNS = {
+            COLUMN_PATH, COLUMN_TIMESTAMP, COLUMN_SIZE, COLUMN_WIDTH, COLUMN_HEIGHT, COLUMN_FORMAT, COLUMN_DUPLICATE
+    };
+
+    public interface HashVisitor {
+        void visit(String path, long hash);
+    }
+
+    private static ScreenshotIndex instance;
+
+    private final Context context;
+
+    public static synchronized ScreenshotIndex getInstance(Context context) {
+        if (instance == null) {
+            instance = new ScreenshotIndex(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public static File getScreenshotsDir() {
+        File picturesDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
+        return new File(picturesDir, "Screenshots");
+    }
+
+    public static boolean isScreenshotFile(String name) {
+        // Hidden names are writes still in progress, e.g. pending MediaStore entries
+        if (name.startsWith(".")) {
+            return false;
+        }
+        String lower = name.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".png") || lower.endsWith(".jpg") || lower.endsWith(".webp");
+    }
+
+    private ScreenshotIndex(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_SCREENSHOTS + " ("
+                + COLUMN_PATH + " TEXT PRIMARY KEY, "
+                + COLUMN_TIMESTAMP + " INTEGER NOT NULL, "
+                + COLUMN_MODIFIED + " INTEGER NOT NULL, "
+                + COLUMN_SIZE + " INTEGER NOT NULL, "
+                + COLUMN_WIDTH + " INTEGER NOT NULL, "
+                + COLUMN_HEIGHT + " INTEGER NOT NULL, "
+                + COLUMN_FORMAT + " TEXT NOT NULL, "
+                + COLUMN_DHASH + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_HASH_STATE + " INTEGER NOT NULL DEFAULT " + HASH_UNKNOWN + ", "
+                + COLUMN_DUPLICATE + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_PENDING_DELETE + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_LAST_VIEWED + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_RECOMPRESS_FAILED + " INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX idx_screenshots_order ON " + TABLE_SCREENSHOTS
+                + " (" + GALLERY_ORDER + ")");
+        db.execSQL("CREATE TABLE " + TABLE_META + " ("
+                + COLUMN_KEY + " TEXT PRIMARY KEY, "
+                + COLUMN_VALUE + " INTEGER NOT NULL)");
+        putMeta(db, META_TOTAL_BYTES, 0);
+        putMeta(db, META_TOTAL_COUNT, 0);
+        // Running totals, so that checking a quota never lists storage or scans the table
+        db.execSQL("CREATE TRIGGER totals_insert AFTER INSERT ON " + TABLE_SCREENSHOTS + " BEGIN "
+                + addToMeta(META_TOTAL_BYTES, "NEW." + COLUMN_SIZE) + addToMeta(META_TOTAL_COUNT, "1") + "END");
+        db.execSQL("CREATE TRIGGER totals_delete AFTER DELETE ON " + TABLE_SCREENSHOTS + " BEGIN "
+                + addToMeta(META_TOTAL_BYTES, "-OLD." + COLUMN_SIZE) + addToMeta(META_TOTAL_COUNT, "-1") + "END");
+        db.execSQL("CREATE TRIGGER totals_update AFTER UPDATE OF " + COLUMN_SIZE + " ON " + TABLE_SCREENSHOTS + " BEGIN "
+                + addToMeta(META_TOTAL_BYTES, "NEW." + COLUMN_SIZE + " - OLD." + COLUMN_SIZE) + "END");
+    }
+
+    private static String addToMeta(String key, String delta) {
+        return "UPDATE " + TABLE_META + " SET " + COLUMN_VALUE + " = " + COLUMN_VALUE + " + (" + delta + ")"
+                + " WHERE " + COLUMN_KEY + " = '" + key + "'; ";
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Rows replaced by INSERT OR REPLACE only fire the delete trigger with this on
+        db.execSQL("PRAGMA recursive_triggers = ON");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The index is a cache of the directory; rebuilding it is always safe
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SCREENSHOTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_META);
+        onCreate(db);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        // A process that died during an undo window never deleted the files, so show them again
+        if (!db.isReadOnly()) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_PENDING_DELETE, 0);
+            db.update(TABLE_SCREENSHOTS, values, COLUMN_PENDING_DELETE + " != 0", null);
+        }
+    }
+
+    /** Rows {@code offset} to {@code offset + limit} in gallery order. */
+    public List<Screenshot> queryPage(int offset, int limit) {
+        List<Screenshot> result = new ArrayList<>(limit);
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SCREENSHOTS, SCREENSHOT_COLUMNS,
+                VISIBLE, null, null, null, GALLERY_ORDER, offset + "," + limit)) {
+            while (cursor.moveToNext()) {
+                result.add(fromCursor(cursor));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@link Screenshot#getStableId() Stable ids} of all rows in gallery order, read from the
+     * paths alone so that the gallery knows them before the rows' pages are loaded.
+     */
+    public long[] queryStableIds() {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SCREENSHOTS, new String[] {COLUMN_PATH},
+                VISIBLE, null, null, null, GALLERY_ORDER)) {
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; i < ids.length && cursor.moveToNext(); i++) {
+                ids[i] = Screenshot.hashPath(cursor.getString(0));
+            }
+            return ids;
+        }
+    }
+
+    public int count() {
+        return (int) DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_SCREENSHOTS, VISIBLE);
+    }
+
+    /** Position of an entry in gallery order, answered from the ordering index. */
+    public int positionOf(Screenshot screenshot) {
+        String timestamp = String.valueOf(screenshot.getDateCreated());
+        return (int) DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_SCREENSHOTS,
+                VISIBLE + " AND (" + COLUMN_TIMESTAMP + " > ? OR (" + COLUMN_TIMESTAMP + " = ? AND " + COLUMN_PATH + " > ?))",
+                new String[] {timestamp, timestamp, screenshot.getFilePath()});
+    }
+
+    /** Bytes taken by every indexed screenshot, including those waiting to be deleted. */
+    public long getTotalBytes() {
+        return getMeta(getReadableDatabase(), META_TOTAL_BYTES, 0);
+    }
+
+    /** Number of indexed screenshots, including those waiting to be deleted. */
+    public int getTotalCount() {
+        return (int) getMeta(getReadableDatabase(), META_TOTAL_COUNT, 0);
+    }
+
+    /** Notes that the user opened a screenshot, which puts it last in line for eviction. */
+    public synchronized void recordViewed(String path, long time) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_LAST_VIEWED, time);
+        getWritableDatabase().update(TABLE_SCREENSHOTS, values, COLUMN_PATH + " = ?", new String[] {path});
+    }
+
+    /** The time the least recently used screenshot was taken or last viewed, or -1 without any. */
+    public long oldestLastUsed() {
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT MIN(" + LAST_USED + ") FROM " + TABLE_SCREENSHOTS
+                + " WHERE " + VISIBLE, null)) {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : -1;
+        }
+    }
+
+    /** Up to {@code limit} screenshots, least recently taken or viewed first. */
+    public List<RetentionPolicy.Candidate> queryLeastRecentlyUsed(int limit) {
+        List<RetentionPolicy.Candidate> result = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SCREENSHOTS,
+                new String[] {COLUMN_PATH, COLUMN_SIZE, LAST_USED}, VISIBLE, null, null, null,
+                LAST_USED + " ASC, " + COLUMN_PATH + " ASC", String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                result.add(new RetentionPolicy.Candidate(cursor.getString(0), cursor.getLong(1), cursor.getLong(2)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Up to {@code limit} PNG screenshots taken before {@code takenBefore} that were not found
+     * unsuitable for recompression before, oldest first.
+     */
+    public List<Screenshot> queryRecompressible(long takenBefore, int limit) {
+        List<Screenshot> result = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SCREENSHOTS, SCREENSHOT_COLUMNS,
+                VISIBLE + " AND " + COLUMN_FORMAT + " = 'png' AND " + COLUMN_RECOMPRESS_FAILED + " = 0 AND "
+                        + COLUMN_TIMESTAMP + " < ?", new String[] {String.valueOf(takenBefore)},
+                null, null, COLUMN_TIMESTAMP + " ASC", String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                result.add(fromCursor(cursor));
+            }
+        }
+        return result;
+    }
+
+    /** Keeps a screenshot that could not be made smaller from being tried again. */
+    public synchronized void recordRecompressFailed(String path) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_RECOMPRESS_FAILED, 1);
+        getWritableDatabase().update(TABLE_SCREENSHOTS, values, COLUMN_PATH + " = ?", new String[] {path});
+    }
+
+    /**
+     * Swaps a screenshot for its recompressed copy in one transaction. The copy keeps the date
+     * and the time the original was last viewed, whatever timestamp the backend gave it; its
+     * perceptual hash is taken again by the backfill.
+     */
+    public synchronized void recordRecompressed(Screenshot original, ScreenshotStorage.Entry copy) {
+        String originalPath = original.getFilePath();
+        SQLiteDatabase db = getWritableDatabase();
+        long lastViewed = 0;
+        try (Cursor cursor = db.query(TABLE_SCREENSHOTS, new String[] {COLUMN_LAST_VIEWED}, COLUMN_PATH + " = ?",
+                new String[] {originalPath}, null, null, null)) {
+            if (cursor.moveToFirst()) {
+                lastViewed = cursor.getLong(0);
+            }
+        }
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_SCREENSHOTS, COLUMN_PATH + " = ?", new String[] {originalPath});
+            ContentValues values = valuesOf(copy, copy.getWidth(), copy.getHeight());
+            values.put(COLUMN_TIMESTAMP, original.getDateCreated());
+            values.put(COLUMN_LAST_VIEWED, lastViewed);
+            db.insertWithOnConflict(TABLE_SCREENSHOTS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            putMeta(db, META_GENERATION, storage().getGeneration());
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** Records a screenshot this app just wrote, keeping the storage generation in sync. */
+    public synchronized void recordSaved(ScreenshotStorage.Entry entry) {
+        recordSaved(entry, null);
+    }
+
+    /** As {@link #recordSaved(ScreenshotStorage.Entry)}, with the perceptual hash taken at capture time. */
+    public synchronized void recordSaved(ScreenshotStorage.Entry entry, long hash, boolean duplicate) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_DHASH, hash);
+        values.put(COLUMN_HASH_STATE, HASH_PRESENT);
+        values.put(COLUMN_DUPLICATE, duplicate ? 1 : 0);
+        recordSaved(entry, values);
+    }
+
+    private void recordSaved(ScreenshotStorage.Entry entry, ContentValues extra) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = valuesOf(entry, entry.getWidth(), entry.getHeight());
+            if (extra != null) {
+                values.putAll(extra);
+            }
+            db.insertWithOnConflict(TABLE_SCREENSHOTS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            putMeta(db, META_GENERATION, storage().getGeneration());
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Re-reads one file after a change notification and returns its updated entry,
+     * or null if the file no longer exists or is waiting to be deleted.
+     */
+    public synchronized Screenshot refresh(String path) {
+        if (isPendingDelete(path)) {
+            return null;
+        }
+        ScreenshotStorage.Entry entry = storage().query(path);
+        if (entry == null) {
+            recordDeleted(path);
+            return null;
+        }
+
+        // Unchanged files keep their memoized dimensions
+        Screenshot known = query(path);
+        if (known != null && modifiedOf(path) == entry.getTimestamp() && known.getWidth() != DIMENSIONS_UNKNOWN) {
+            return known;
+        }
+
+        if (entry.getWidth() <= 0 || entry.getHeight() <= 0) {
+            int[] dimensions = readDimensions(new File(path));
+            entry = new ScreenshotStorage.Entry(path, entry.getTimestamp(), entry.getSize(), dimensions[0], dimensions[1]);
+        }
+        recordSaved(entry);
+        return query(path);
+    }
+
+    /**
+     * Fills in dimensions for entries that were indexed without them, reading only the image
+     * headers, in batches of one transaction each. Returns the number of entries updated.
+     */
+    public int loadMissingDimensions() {
+        int updated = 0;
+        while (true) {
+            List<String> paths = new ArrayList<>();
+            try (Cursor cursor = getReadableDatabase().query(TABLE_SCREENSHOTS, new String[] {COLUMN_PATH},
+                    COLUMN_WIDTH + " = " + DIMENSIONS_UNKNOWN, null, null, null,
+                    COLUMN_TIMESTAMP + " DESC", String.valueOf(DIMENSION_BATCH_SIZE))) {
+                while (cursor.moveToNext()) {
+                    paths.add(cursor.getString(0));
+                }
+            }
+            if (paths.isEmpty()) {
+                return updated;
+            }
+
+            Map<String, int[]> dimensions = new HashMap<>();
+            for (String path : paths) {
+                dimensions.put(path, readDimensions(new File(path)));
+            }
+
+            synchronized (this) {
+                SQLiteDatabase db = getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    for (Map.Entry<String, int[]> entry : dimensions.entrySet()) {
+                        ContentValues values = new ContentValues();
+                        values.put(COLUMN_WIDTH, entry.getValue()[0]);
+                        values.put(COLUMN_HEIGHT, entry.getValue()[1]);
+                        db.update(TABLE_SCREENSHOTS, values, COLUMN_PATH + " = ?", new String[] {entry.getKey()});
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+            updated += paths.size();
+        }
+    }
+
+    /** Visits every entry that has a perceptual hash. */
+    public void forEachHash(HashVisitor visitor) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SCREENSHOTS, new String[] {COLUMN_PATH, COLUMN_DHASH},
+                COLUMN_HASH_STATE + " = " + HASH_PRESENT, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                visitor.visit(cursor.getString(0), cursor.getLong(1));
+            }
+        }
+    }
+
+    /** Up to {@code limit} entries that were never hashed, newest first. */
+    public List<Screenshot> queryUnhashed(int limit) {
+        List<Screenshot> result = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SCREENSHOTS, SCREENSHOT_COLUMNS,
+                COLUMN_HASH_STATE + " = " + HASH_UNKNOWN, null, null, null,
+                COLUMN_TIMESTAMP + " DESC", String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                result.add(fromCursor(cursor));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores hashes computed for existing entries in one transaction. Entries whose
+     * {@code hashed} flag is false are marked unreadable so they are not retried.
+     */
+    public synchronized void recordHashes(List<Screenshot> screenshots, long[] hashes, boolean[] hashed) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < screenshots.size(); i++) {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_DHASH, hashed[i] ? hashes[i] : 0);
+                values.put(COLUMN_HASH_STATE, hashed[i] ? HASH_PRESENT : HASH_UNREADABLE);
+                db.update(TABLE_SCREENSHOTS, values, COLUMN_PATH + " = ?", new String[] {screenshots.get(i).getFilePath()});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** The entry for a path as the gallery shows it, or null if it is not shown. */
+    public Screenshot query(String path) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SCREENSHOTS, SCREENSHOT_COLUMNS,
+                COLUMN_PATH + " = ? AND " + VISIBLE, new String[] {path}, null, null, null)) {
+            return cursor.moveToFirst() ? fromCursor(cursor) : null;
+        }
+    }
+
+    private long modifiedOf(String path) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SCREENSHOTS, new String[] {COLUMN_MODIFIED},
+                COLUMN_PATH + " = ?", new String[] {path}, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        }
+    }
+
+    private boolean isPendingDelete(String path) {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_SCREENSHOTS,
+                COLUMN_PATH + " = ? AND " + COLUMN_PENDING_DELETE + " != 0", new String[] {path}) > 0;
+    }
+
+    /**
+     * Hides entries from the gallery while their deletion can still be undone, or shows them
+     * again, in one transaction. The flag does not survive a restart of the process.
+     */
+    public synchronized void setPendingDelete(List<String> paths, boolean pending) {
+        SQLiteDatabase db = getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_PENDING_DELETE, pending ? 1 : 0);
+        db.beginTransaction();
+        try {
+            for (String path : paths) {
+                db.update(TABLE_SCREENSHOTS, values, COLUMN_PATH + " = ?", new String[] {path});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** Removes several deleted entries in one transaction. */
+    public synchronized void recordDeleted(List<String> paths) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String path : paths) {
+                db.delete(TABLE_SCREENSHOTS, COLUMN_PATH + " = ?", new String[] {path});
+            }
+            putMeta(db, META_GENERATION, storage().getGeneration());
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public synchronized void recordDeleted(String path) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_SCREENSHOTS, COLUMN_PATH + " = ?", new String[] {path});
+            putMeta(db, META_GENERATION, storage().getGeneration());
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Brings the index up to date with storage. When the storage generation did not change since
+     * the last sync this costs a single call; only otherwise is storage listed. Returns whether
+     * the index changed.
+     */
+    public synchronized boolean reconcile() {
+        SQLiteDatabase db = getWritableDatabase();
+        ScreenshotStorage storage = storage();
+        String generation = storage.getGeneration();
+        if (generation != null && generation.equals(getMeta(db, META_GENERATION))) {
+            return false;
+        }
+
+        Map<String, Long> indexed = new HashMap<>();
+        try (Cursor cursor = db.query(TABLE_SCREENSHOTS, new String[] {COLUMN_PATH, COLUMN_MODIFIED},
+                null, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                indexed.put(cursor.getString(0), cursor.getLong(1));
+            }
+        }
+
+        boolean changed = false;
+        List<ScreenshotStorage.Entry> entries = storage.list();
+        db.beginTransaction();
+        try {
+            for (ScreenshotStorage.Entry entry : entries) {
+                Long timestamp = indexed.remove(entry.getPath());
+                if (timestamp == null || timestamp != entry.getTimestamp()) {
+                    // Dimensions the backend does not know are read lazily by loadMissingDimensions()
+                    upsert(db, entry, Math.max(entry.getWidth(), DIMENSIONS_UNKNOWN),
+                            Math.max(entry.getHeight(), DIMENSIONS_UNKNOWN));
+                    changed = true;
+                }
+            }
+            // Whatever is left was deleted or moved away by someone else
+            for (String stale : indexed.keySet()) {
+                db.delete(TABLE_SCREENSHOTS, COLUMN_PATH + " = ?", new String[] {stale});
+                changed = true;
+            }
+            putMeta(db, META_GENERATION, generation);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return changed;
+    }
+
+    private ScreenshotStorage storage() {
+        return ScreenshotStorages.getDefault(context);
+    }
+
+    // Replacing the row also resets the hash, which no longer matches a changed file
+    private static void upsert(SQLiteDatabase db, ScreenshotStorage.Entry entry, int width, int height) {
+        db.insertWithOnConflict(TABLE_SCREENSHOTS, null, valuesOf(entry, width, height), SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    private static ContentValues valuesOf(ScreenshotStorage.Entry entry, int width, int height) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_PATH, entry.getPath());
+        values.put(COLUMN_TIMESTAMP, entry.getTimestamp());
+        values.put(COLUMN_MODIFIED, entry.getTimestamp());
+        values.put(COLUMN_SIZE, entry.getSize());
+        values.put(COLUMN_WIDTH, width);
+        values.put(COLUMN_HEIGHT, height);
+        values.put(COLUMN_FORMAT, formatOf(entry.getPath()));
+        return values;
+    }
+
+    private static int[] readDimensions(File file) {
+        int[] dimensions = ImageHeaderParser.readDimensions(file);
+        // Marked unreadable so the file is not retried on every pass
+        return dimensions != null ? dimensions : new int[] {DIMENSIONS_UNREADABLE, DIMENSIONS_UNREADABLE};
+    }
+
+    private static String formatOf(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static Screenshot fromCursor(Cursor cursor) {
+        return new Screenshot(
+                cursor.getString(0),
+                cursor.getLong(1),
+                cursor.getLong(2),
+                cursor.getInt(3),
+                cursor.getInt(4),
+                cursor.getString(5),
+                cursor.getInt(6) != 0,
+                DisplayFormats.forDefaultLocale());
+    }
+
+    private static long getMeta(SQLiteDatabase db, String key, long fallback) {
+        try (Cursor cursor = db.query(TABLE_META, new String[] {COLUMN_VALUE}, COLUMN_KEY + " = ?",
+                new String[] {key}, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : fallback;
+        }
+    }
+
+    private static String getMeta(SQLiteDatabase db, String key) {
+        try (Cursor cursor = db.query(TABLE_META, new String[] {COLUMN_VALUE}, COLUMN_KEY + " = ?",
+                new String[] {key}, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+    // An unknown value clears the key, so the next comparison cannot match it
+    private static void putMeta(SQLiteDatabase db, String key, String value) {
+        if (value == null) {
+            db.delete(TABLE_META, COLUMN_KEY + " = ?", new String[] {key});
+            return;
+        }
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_KEY, key);
+        values.put(COLUMN_VALUE, value);
+        db.insertWithOnConflict(TABLE_META, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    private static void putMeta(SQLiteDatabase db, String key, long value) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_KEY, key);
+        values.put(COLUMN_VALUE, value);
+        db.insertWithOnConflict(TABLE_META, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+}
@@ -3,6 +3,7 @@ package com.example.myapplication;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
+import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
@@ -15,10 +16,12 @@ import android.media.ImageReader;
 import android.media.projection.MediaProjection;
 import android.media.projection.MediaProjectionManager;
 import android.os.Build;
-import android.os.Environment;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.WindowManager;
@@ -26,32 +29,109 @@ import android.view.WindowManager;
 import androidx.core.app.NotificationCompat;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileDescriptor;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
 import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ScreenshotService extends Service {
     private static final String TAG = "ScreenshotService";
     private static final String CHANNEL_ID = "screenshot_service_channel";
     private static final int NOTIFICATION_ID = 1;
 
+    public static final String ACTION_START_SESSION = "com.example.myapplication.action.START_SESSION";
+    public static final String ACTION_CAPTURE = "com.example.myapplication.action.CAPTURE";
+    public static final String ACTION_STOP_SESSION = "com.example.myapplication.action.STOP_SESSION";
+    public static final String ACTION_START_SCROLL_CAPTURE = "com.example.myapplication.action.START_SCROLL_CAPTURE";
+    public static final String ACTION_FINISH_SCROLL_CAPTURE = "com.example.myapplication.action.FINISH_SCROLL_CAPTURE";
+    public static final String ACTION_START_TIMELAPSE = "com.example.myapplication.action.START_TIMELAPSE";
+    public static final String ACTION_STOP_TIMELAPSE = "com.example.myapplication.action.STOP_TIMELAPSE";
+    public static final String ACTION_SET_RETENTION = "com.example.myapplication.action.SET_RETENTION";
+    public static final String EXTRA_BURST_COUNT = "burstCount";
+    public static final String EXTRA_BURST_INTERVAL_MS = "burstIntervalMs";
+    public static final String EXTRA_BACKPRESSURE_POLICY = "backpressurePolicy";
+    public static final String EXTRA_FORMAT = "format";
+    public static final String EXTRA_QUALITY = "quality";
+    public static final String EXTRA_DUPLICATE_POLICY = "duplicatePolicy";
+    public static final String EXTRA_INTERVAL_MS = "intervalMs";
+    public static final String EXTRA_DURATION_MS = "durationMs";
+    public static final String EXTRA_MAX_FRAMES = "maxFrames";
+    public static final String EXTRA_DROP_POLICY = "dropPolicy";
+    public static final String EXTRA_DELTA = "delta";
+    public static final String EXTRA_PROFILE = "profile";
+    public static final String EXTRA_SCALE = "scale";
+    public static final String EXTRA_CROP = "crop";
+    public static final String EXTRA_MAX_BYTES = "maxBytes";
+    public static final String EXTRA_MAX_COUNT = "maxCount";
+    public static final String EXTRA_MAX_AGE_MS = "maxAgeMs";
+    public static final String EXTRA_RECOMPRESS_AFTER_MS = "recompressAfterMs";
+
+    private static final int MAX_BURST_COUNT = 100;
+    private static final long DEFAULT_BURST_INTERVAL_MS = 200;
+    // The consent dialog is still fading out when the first frames of a new display arrive
+    private static final long FIRST_FRAME_SETTLE_MS = 300;
+    private static final int PIPELINE_QUEUE_CAPACITY = 2;
+    // About one display frame; the screen can't change faster than that
+    private static final long MIN_TIMELAPSE_INTERVAL_MS = 16;
+    private static final long DEFAULT_TIMELAPSE_INTERVAL_MS = 1000;
+    // Each pool may retain this fraction of the heap in idle frame buffers
+    private static final int POOL_HEAP_DIVISOR = 8;
+    public static final String METRICS_FILE_NAME = "capture_metrics.json";
+    private static final String SCROLL_SPOOL_NAME = "scroll_capture.raw";
+    public static final String DELTA_CAPTURE_DIR = "captures";
+
+    private static volatile boolean sessionActive;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private HandlerThread captureThread;
+    private Handler captureHandler;
+    private volatile CapturePipeline<CaptureJob> pipeline;
+    private IntArrayPool pixelPool;
+    private BitmapPool bitmapPool;
     private MediaProjection mediaProjection;
     private VirtualDisplay virtualDisplay;
     private ImageReader imageReader;
+    // Set while a projection holds resources that releaseProjection() has not released yet
+    private boolean projectionHeld;
+    private Image latestImage;
+    private final ArrayDeque<ScreenshotEncoder> pendingCaptures = new ArrayDeque<>();
+    private ScreenshotEncoder sessionEncoder;
+    // Owned by the capture thread
+    private ScrollCapture scrollCapture;
+    // The running or last timelapse, kept for its report
+    private volatile TimelapseScheduler timelapse;
+    private final Runnable timelapseTick = this::onTimelapseTick;
+    // Set while a timelapse records into one delta capture file instead of the pipeline
+    private volatile DeltaRecorder deltaRecorder;
+    // Frames submitted to the pipeline and not yet completed, failed or dropped
+    private final AtomicInteger framesInFlight = new AtomicInteger();
+    private ScreenshotStorage storage;
+    private DuplicateDetector duplicateDetector;
+    private volatile DuplicateDetector.Policy duplicatePolicy = DuplicateDetector.Policy.FLAG;
+    // Hash of the last frame the convert stage let through, which may not be indexed yet
+    private long lastConvertedHash;
+    private boolean hasLastConvertedHash;
+    private final CaptureMetrics metrics = CaptureMetrics.getInstance();
+    private final CaptureEventBus events = CaptureEventBus.getInstance();
+    // Set when the virtual display is created and cleared by the first frame
+    private volatile long displayCreatedNanos;
+    // Uptime before which frames may still show the consent dialog and serve no capture
+    private volatile long settledAt;
+    private final Runnable servePendingCapture = this::servePendingCapture;
     private int screenWidth, screenHeight, screenDensity;
+    private CaptureProfile profile = CaptureProfile.FULL;
+    // Set when the session starts; frames are frameWidth by frameHeight once cropped
+    private volatile CaptureProfile.Layout layout;
+    private int frameWidth, frameHeight;
 
-    public interface ScreenshotCallback {
-        void onScreenshotTaken(String filePath);
-        void onScreenshotFailed(String error);
-    }
-
-    private static ScreenshotCallback callback;
-
-    public static void setCallback(ScreenshotCallback cb) {
-        callback = cb;
+    public static boolean isSessionActive() {
+        return sessionActive;
     }
 
     @Override
@@ -59,16 +139,101 @@ public class ScreenshotService extends Service {
         super.onCreate();
         createNotificationChannel();
         getScreenMetrics();
+
+        // Frame callbacks and the acquire stage run here so that the main thread only sees results
+        captureThread = new HandlerThread("capture-acquire", Process.THREAD_PRIORITY_DISPLAY);
+        captureThread.start();
+        captureHandler = new Handler(captureThread.getLooper());
+
+        long poolBytes = Runtime.getRuntime().maxMemory() / POOL_HEAP_DIVISOR;
+        pixelPool = new IntArrayPool(poolBytes);
+        bitmapPool = new BitmapPool(poolBytes);
+        storage = ScreenshotStorages.getDefault(this);
+        duplicateDetector = DuplicateDetector.getInstance(this);
+        captureHandler.post(this::sweepOrphanedWrites);
+    }
+
+    // Extras left out keep their current value; 0 removes a limit
+    private void setRetention(Intent intent) {
+        RetentionPolicy current = RetentionEngine.getPolicy(this);
+        try {
+            RetentionEngine.setPolicy(this, new RetentionPolicy(
+                    intent.getLongExtra(EXTRA_MAX_BYTES, current.getMaxBytes()),
+                    intent.getIntExtra(EXTRA_MAX_COUNT, current.getMaxCount()),
+                    intent.getLongExtra(EXTRA_MAX_AGE_MS, current.getMaxAgeMs()),
+                    intent.getLongExtra(EXTRA_RECOMPRESS_AFTER_MS, current.getRecompressAfterMs())));
+        } catch (IllegalArgumentException e) {
+            notifyFailure(e.getMessage());
+        }
+    }
+
+    // Anything still uncommitted from before this process started belongs to a write that died
+    private void sweepOrphanedWrites() {
+        long processStart = System.currentTimeMillis()
+                - (SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime());
+        int removed = storage.sweepOrphans(processStart);
+        if (removed > 0) {
+            Log.i(TAG, "Removed " + removed + " unfinished screenshot writes");
+        }
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        if (intent != null && intent.hasExtra("resultCode") && intent.hasExtra("data")) {
+        String action = intent != null ? intent.getAction() : null;
+
+        if (ACTION_STOP_SESSION.equals(action)) {
+            stopSession();
+        } else if (ACTION_SET_RETENTION.equals(action)) {
+            setRetention(intent);
+            if (!sessionActive) {
+                stopSelf();
+            }
+        } else if (ACTION_START_SCROLL_CAPTURE.equals(action) || ACTION_FINISH_SCROLL_CAPTURE.equals(action)
+                || ACTION_START_TIMELAPSE.equals(action) || ACTION_STOP_TIMELAPSE.equals(action)) {
+            if (mediaProjection != null) {
+                if (ACTION_START_TIMELAPSE.equals(action)) {
+                    TimelapseScheduler scheduler = createTimelapse(intent);
+                    boolean delta = intent.getBooleanExtra(EXTRA_DELTA, false);
+                    captureHandler.post(() -> startTimelapse(scheduler, delta));
+                } else if (ACTION_STOP_TIMELAPSE.equals(action)) {
+                    captureHandler.post(this::stopTimelapse);
+                } else {
+                    captureHandler.post(ACTION_START_SCROLL_CAPTURE.equals(action)
+                            ? this::startScrollCapture : this::finishScrollCapture);
+                }
+            } else {
+                notifyFailure("No active capture session");
+                if (!sessionActive) {
+                    stopSelf();
+                }
+            }
+        } else if (ACTION_CAPTURE.equals(action)) {
+            if (mediaProjection != null) {
+                requestCapture(intent);
+            } else {
+                notifyFailure("No active capture session");
+                if (!sessionActive) {
+                    stopSelf();
+                }
+            }
+        } else if (intent != null && intent.hasExtra("resultCode") && intent.hasExtra("data")) {
             int resultCode = intent.getIntExtra("resultCode", -1);
             Intent data = intent.getParcelableExtra("data");
-            
-            startForeground(NOTIFICATION_ID, createNotification());
-            startProjection(resultCode, data);
+
+            startForeground(NOTIFICATION_ID, createNotification(false));
+            if (mediaProjection == null) {
+                // Format extras on the session start become the default for the whole session
+                sessionEncoder = resolveEncoder(intent, ScreenshotEncoders.getDefault(this));
+                duplicatePolicy = parseDuplicatePolicy(intent.getStringExtra(EXTRA_DUPLICATE_POLICY));
+                profile = parseProfile(intent);
+                startProjection(resultCode, data, parsePolicy(intent.getStringExtra(EXTRA_BACKPRESSURE_POLICY)));
+            }
+
+            // A bare session start only warms up the projection; anything else also captures
+            boolean captureNow = !ACTION_START_SESSION.equals(action) || intent.hasExtra(EXTRA_BURST_COUNT);
+            if (mediaProjection != null && captureNow) {
+                requestCapture(intent);
+            }
         }
         return START_NOT_STICKY;
     }
@@ -92,164 +257,815 @@ public class ScreenshotService extends Service {
         }
     }
 
-    private Notification createNotification() {
+    private Notification createNotification(boolean scrolling) {
+        Intent captureIntent = new Intent(this, ScreenshotService.class).setAction(ACTION_CAPTURE);
+        Intent stopIntent = new Intent(this, ScreenshotService.class).setAction(ACTION_STOP_SESSION);
+        Intent scrollIntent = new Intent(this, ScreenshotService.class)
+                .setAction(scrolling ? ACTION_FINISH_SCROLL_CAPTURE : ACTION_START_SCROLL_CAPTURE);
+        int pendingFlags = PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE;
+
         return new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setContentTitle("Screen Roaster")
-                .setContentText("Ready to capture screenshots")
+                .setContentText(scrolling ? "Scroll to extend the long screenshot" : "Capture session active")
                 .setSmallIcon(R.drawable.ic_camera)
                 .setPriority(NotificationCompat.PRIORITY_LOW)
+                .setOngoing(true)
+                .addAction(R.drawable.ic_camera, "Capture",
+                        PendingIntent.getService(this, 0, captureIntent, pendingFlags))
+                .addAction(R.drawable.ic_camera, scrolling ? "Finish long" : "Long",
+                        PendingIntent.getService(this, 2, scrollIntent, pendingFlags))
+                .addAction(R.drawable.ic_delete, "Stop",
+                        PendingIntent.getService(this, 1, stopIntent, pendingFlags))
                 .build();
     }
 
+    private void updateNotification(boolean scrolling) {
+        if (sessionActive) {
+            getSystemService(NotificationManager.class).notify(NOTIFICATION_ID, createNotification(scrolling));
+        }
+    }
+
     private void getScreenMetrics() {
         WindowManager windowManager = (WindowManager) getSystemService(Context.WINDOW_SERVICE);
         DisplayMetrics metrics = new DisplayMetrics();
-        windowManager.getDefaultDisplay().getMetrics(metrics);
+        // Real size, bars included: the virtual display mirrors all of it, and crops are given in it
+        windowManager.getDefaultDisplay().getRealMetrics(metrics);
         
         screenWidth = metrics.widthPixels;
         screenHeight = metrics.heightPixels;
         screenDensity = metrics.densityDpi;
     }
 
-    private void startProjection(int resultCode, Intent data) {
+    private CapturePipeline.BackpressurePolicy parsePolicy(String name) {
+        if (name != null) {
+            try {
+                return CapturePipeline.BackpressurePolicy.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Unknown backpressure policy " + name);
+            }
+        }
+        return CapturePipeline.BackpressurePolicy.DROP_OLDEST;
+    }
+
+    private DuplicateDetector.Policy parseDuplicatePolicy(String name) {
+        if (name != null) {
+            try {
+                return DuplicateDetector.Policy.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Unknown duplicate policy " + name);
+            }
+        }
+        return DuplicateDetector.Policy.FLAG;
+    }
+
+    private TimelapseScheduler createTimelapse(Intent intent) {
+        long interval = Math.max(MIN_TIMELAPSE_INTERVAL_MS,
+                intent.getLongExtra(EXTRA_INTERVAL_MS, DEFAULT_TIMELAPSE_INTERVAL_MS));
+        long duration = Math.max(0, intent.getLongExtra(EXTRA_DURATION_MS, 0));
+        int maxFrames = Math.max(0, intent.getIntExtra(EXTRA_MAX_FRAMES, 0));
+        TimelapseScheduler.DropPolicy policy = TimelapseScheduler.DropPolicy.SKIP;
+        String name = intent.getStringExtra(EXTRA_DROP_POLICY);
+        if (name != null) {
+            try {
+                policy = TimelapseScheduler.DropPolicy.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Unknown drop policy " + name);
+            }
+        }
+        return new TimelapseScheduler(SystemClock.uptimeMillis(), interval, duration, maxFrames, policy);
+    }
+
+    // The preset first, then the scale and crop extras on top of it
+    private CaptureProfile parseProfile(Intent intent) {
+        CaptureProfile parsed = CaptureProfile.FULL;
+        try {
+            String name = intent.getStringExtra(EXTRA_PROFILE);
+            if (name != null) {
+                parsed = CaptureProfile.preset(name);
+            }
+            if (intent.hasExtra(EXTRA_SCALE)) {
+                parsed = parsed.withScale(intent.getFloatExtra(EXTRA_SCALE, 1f));
+            }
+            String crop = intent.getStringExtra(EXTRA_CROP);
+            if (crop != null) {
+                parsed = parsed.withCrop(crop);
+            }
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Ignoring capture profile: " + e.getMessage());
+        }
+        return parsed;
+    }
+
+    private void resolveLayout() {
+        try {
+            layout = profile.resolve(screenWidth, screenHeight, screenDensity,
+                    systemDimension("status_bar_height"), systemDimension("navigation_bar_height"));
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Capturing the full screen: " + e.getMessage());
+            profile = CaptureProfile.FULL;
+            layout = profile.resolve(screenWidth, screenHeight, screenDensity, 0, 0);
+        }
+        frameWidth = layout.getWidth();
+        frameHeight = layout.getHeight();
+        Log.i(TAG, "Capture profile " + profile + ": " + layout);
+    }
+
+    private int systemDimension(String name) {
+        int id = getResources().getIdentifier(name, "dimen", "android");
+        return id != 0 ? getResources().getDimensionPixelSize(id) : 0;
+    }
+
+    private ScreenshotEncoder resolveEncoder(Intent intent, ScreenshotEncoder fallback) {
+        String format = intent.getStringExtra(EXTRA_FORMAT);
+        if (format == null) {
+            return fallback;
+        }
+        try {
+            return ScreenshotEncoders.create(format, intent.getIntExtra(EXTRA_QUALITY, ScreenshotEncoders.DEFAULT_QUALITY));
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, e.getMessage());
+            return fallback;
+        }
+    }
+
+    private void startProjection(int resultCode, Intent data, CapturePipeline.BackpressurePolicy policy) {
         MediaProjectionManager projectionManager = 
                 (MediaProjectionManager) getSystemService(Context.MEDIA_PROJECTION_SERVICE);
         
+        long projectionStart = System.nanoTime();
         mediaProjection = projectionManager.getMediaProjection(resultCode, data);
+        metrics.recordSince(CaptureMetrics.Stage.PROJECTION_START, projectionStart);
         
         if (mediaProjection != null) {
+            projectionHeld = true;
+            // The system can revoke the projection at any time, e.g. from the cast tile
+            mediaProjection.registerCallback(new MediaProjection.Callback() {
+                @Override
+                public void onStop() {
+                    stopSession();
+                }
+            }, mainHandler);
+
+            setupPipeline(policy);
+            resolveLayout();
             setupImageReader();
             setupVirtualDisplay();
-            
-            // Take screenshot after a short delay
-            new Handler(Looper.getMainLooper()).postDelayed(this::captureScreenshot, 500);
+            sessionActive = true;
         } else {
-            if (callback != null) {
-                callback.onScreenshotFailed("Failed to start media projection");
-            }
+            notifyFailure("Failed to start media projection");
             stopSelf();
         }
     }
 
     private void setupImageReader() {
-        imageReader = ImageReader.newInstance(screenWidth, screenHeight, PixelFormat.RGBA_8888, 1);
+        // One image is held as the warm frame while the next one is being delivered
+        // At the profile's scale, so the compositor does the downscaling
+        imageReader = ImageReader.newInstance(layout.getDisplayWidth(), layout.getDisplayHeight(),
+                PixelFormat.RGBA_8888, 3);
         imageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
             @Override
             public void onImageAvailable(ImageReader reader) {
-                processImage();
+                onFrameAvailable(reader);
             }
-        }, new Handler(Looper.getMainLooper()));
+        }, captureHandler);
+    }
+
+    private void setupPipeline(CapturePipeline.BackpressurePolicy policy) {
+        hasLastConvertedHash = false;
+        pipeline = new CapturePipeline<>(PIPELINE_QUEUE_CAPACITY, policy, new CapturePipeline.Listener<CaptureJob>() {
+            @Override
+            public void onCompleted(CaptureJob job) {
+                TimelapseScheduler scheduler = job.getTimelapse();
+                if (scheduler != null) {
+                    if (job.isSkipped()) {
+                        scheduler.onFrameDropped();
+                    } else {
+                        scheduler.onFrameSaved(SystemClock.uptimeMillis());
+                    }
+                }
+                if (job.isSkipped()) {
+                    String duplicateOf = job.getDuplicateOf();
+                    metrics.onFrameSkipped();
+                    recycle(job);
+                    events.publish(CaptureEvent.skipped(duplicateOf));
+                    return;
+                }
+                String filePath = job.getFilePath();
+                long startNanos = job.getStartNanos();
+                recycle(job);
+                events.publish(CaptureEvent.saved(filePath, startNanos, System.nanoTime()));
+            }
+
+            @Override
+            public void onFailed(CaptureJob job, Exception error) {
+                Log.e(TAG, "Error processing image", error);
+                metrics.onFrameFailed();
+                if (job.getTimelapse() != null) {
+                    job.getTimelapse().onFrameDropped();
+                }
+                recycle(job);
+                notifyFailure("Error processing screenshot: " + error.getMessage());
+            }
+
+            @Override
+            public void onDropped(CaptureJob job) {
+                Log.w(TAG, "Dropped frame captured at " + job.getCaptureTime() + " (" + policy + ")");
+                metrics.onFrameDropped();
+                if (job.getTimelapse() != null) {
+                    job.getTimelapse().onFrameDropped();
+                }
+                recycle(job);
+            }
+        });
+
+        pipeline.addStage("convert", timed(CaptureMetrics.Stage.CONVERT, this::convertFrame))
+                .addStage("encode", timed(CaptureMetrics.Stage.ENCODE, this::encodeFrame))
+                .addStage("persist", timed(CaptureMetrics.Stage.FILE_WRITE, this::persistFrame))
+                .start();
+    }
+
+    private CapturePipeline.Stage<CaptureJob> timed(CaptureMetrics.Stage stage, CapturePipeline.Stage<CaptureJob> delegate) {
+        return job -> {
+            long start = System.nanoTime();
+            delegate.process(job);
+            metrics.recordSince(stage, start);
+        };
     }
 
     private void setupVirtualDisplay() {
+        long start = System.nanoTime();
         virtualDisplay = mediaProjection.createVirtualDisplay(
                 "ScreenCapture",
-                screenWidth, screenHeight, screenDensity,
+                layout.getDisplayWidth(), layout.getDisplayHeight(), layout.getDensityDpi(),
                 DisplayManager.VIRTUAL_DISPLAY_FLAG_AUTO_MIRROR,
                 imageReader.getSurface(),
                 null, null
         );
+        displayCreatedNanos = System.nanoTime();
+        settledAt = SystemClock.uptimeMillis() + FIRST_FRAME_SETTLE_MS;
+        metrics.record(CaptureMetrics.Stage.VIRTUAL_DISPLAY, displayCreatedNanos - start);
     }
 
-    private void captureScreenshot() {
-        if (imageReader != null) {
-            // The image will be available in the ImageReader callback
-            Log.d(TAG, "Screenshot capture initiated");
+    private void onFrameAvailable(ImageReader reader) {
+        Image image = reader.acquireLatestImage();
+        if (image == null) {
+            return;
+        }
+        if (displayCreatedNanos != 0) {
+            metrics.recordSince(CaptureMetrics.Stage.FIRST_FRAME, displayCreatedNanos);
+            displayCreatedNanos = 0;
+        }
+
+        if (latestImage != null) {
+            latestImage.close();
+        }
+        latestImage = image;
+
+        // Captures requested before the first settled frame arrived are served by this one
+        servePendingCapture();
+        if (scrollCapture != null) {
+            offerScrollFrame(latestImage);
         }
     }
 
-    private void processImage() {
-        Image image = null;
-        try {
-            image = imageReader.acquireLatestImage();
-            if (image != null) {
-                Image.Plane[] planes = image.getPlanes();
-                ByteBuffer buffer = planes[0].getBuffer();
-                int pixelStride = planes[0].getPixelStride();
-                int rowStride = planes[0].getRowStride();
-                int rowPadding = rowStride - pixelStride * screenWidth;
-
-                Bitmap bitmap = Bitmap.createBitmap(
-                        screenWidth + rowPadding / pixelStride,
-                        screenHeight,
-                        Bitmap.Config.ARGB_8888
-                );
-                bitmap.copyPixelsFromBuffer(buffer);
-
-                // Crop the bitmap to remove padding
-                Bitmap croppedBitmap = Bitmap.createBitmap(bitmap, 0, 0, screenWidth, screenHeight);
-                
-                String filePath = saveBitmap(croppedBitmap);
-                
-                if (filePath != null && callback != null) {
-                    callback.onScreenshotTaken(filePath);
-                } else if (callback != null) {
-                    callback.onScreenshotFailed("Failed to save screenshot");
-                }
+    // Replaces a timelapse that is still running
+    private void startTimelapse(TimelapseScheduler scheduler, boolean delta) {
+        if (timelapse != null && !timelapse.isFinished()) {
+            stopTimelapse();
+        }
+        if (delta) {
+            try {
+                deltaRecorder = createDeltaRecorder();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to start delta capture", e);
+                notifyFailure("Error starting delta capture: " + e.getMessage());
+                return;
+            }
+        }
+        timelapse = scheduler;
+        Log.i(TAG, "Timelapse started: " + scheduler.toJson());
+        captureHandler.postAtTime(timelapseTick, scheduler.getStart());
+    }
 
-                bitmap.recycle();
-                croppedBitmap.recycle();
+    private void onTimelapseTick() {
+        TimelapseScheduler scheduler = timelapse;
+        if (scheduler == null || !sessionActive) {
+            return;
+        }
+        DeltaRecorder recorder = deltaRecorder;
+        // Frames beyond what the pipeline queues would only wait to be dropped
+        int inFlight = recorder != null ? recorder.getPending() : framesInFlight.get();
+        boolean busy = inFlight >= PIPELINE_QUEUE_CAPACITY;
+        if (scheduler.onTick(SystemClock.uptimeMillis(), busy)) {
+            if (latestImage != null && recorder != null) {
+                recordDeltaFrame(latestImage, recorder, scheduler);
+            } else if (latestImage != null) {
+                processImage(latestImage, sessionEncoder, scheduler);
+            } else {
+                scheduler.onFrameDropped();
             }
+        }
+        long next = scheduler.getNextTickAt();
+        if (next == TimelapseScheduler.FINISHED) {
+            onTimelapseFinished(scheduler);
+        } else {
+            captureHandler.postAtTime(timelapseTick, next);
+        }
+    }
+
+    private void stopTimelapse() {
+        TimelapseScheduler scheduler = timelapse;
+        if (scheduler == null || scheduler.isFinished()) {
+            return;
+        }
+        captureHandler.removeCallbacks(timelapseTick);
+        scheduler.stop();
+        onTimelapseFinished(scheduler);
+    }
+
+    // Frames still in flight keep updating the report, which dumpsys shows
+    private void onTimelapseFinished(TimelapseScheduler scheduler) {
+        DeltaRecorder recorder = deltaRecorder;
+        if (recorder != null) {
+            deltaRecorder = null;
+            finishDeltaRecording(recorder, scheduler);
+            return;
+        }
+        String report = scheduler.toString();
+        Log.i(TAG, "Timelapse finished: " + report);
+        events.publish(CaptureEvent.timelapseFinished(report));
+    }
+
+    private DeltaRecorder createDeltaRecorder() throws IOException {
+        File dir = getExternalFilesDir(DELTA_CAPTURE_DIR);
+        if (dir == null) {
+            dir = new File(getFilesDir(), DELTA_CAPTURE_DIR);
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir);
+        }
+        File file = new File(dir, fileNameOf(System.currentTimeMillis(), DeltaRecorder.FILE_EXTENSION));
+        return new DeltaRecorder(frameWidth, frameHeight, file, pixelPool, metrics);
+    }
+
+    // Same copy as the acquire stage, with the tile checksums taken on the way
+    private void recordDeltaFrame(Image image, DeltaRecorder recorder, TimelapseScheduler scheduler) {
+        long startNanos = System.nanoTime();
+        int[] pixels = null;
+        try {
+            pixels = pixelPool.acquire(frameWidth * frameHeight);
+            TileChecksums tiles = recorder.acquireChecksums();
+            copyFrame(image, pixels, tiles);
+            metrics.recordSince(CaptureMetrics.Stage.BUFFER_COPY, startNanos);
+            recorder.offer(pixels, tiles, System.currentTimeMillis(), scheduler);
         } catch (Exception e) {
-            Log.e(TAG, "Error processing image", e);
-            if (callback != null) {
-                callback.onScreenshotFailed("Error processing screenshot: " + e.getMessage());
+            pixelPool.release(pixels);
+            scheduler.onFrameDropped();
+            Log.e(TAG, "Error copying delta frame", e);
+        }
+    }
+
+    // The report waits for the frames still being recorded, so it covers the whole file
+    private void finishDeltaRecording(DeltaRecorder recorder, TimelapseScheduler scheduler) {
+        recorder.finish(new DeltaRecorder.Listener() {
+            @Override
+            public void onFinished(File file, String report) {
+                String summary = scheduler + "; " + report;
+                Log.i(TAG, "Timelapse finished: " + summary);
+                events.publish(CaptureEvent.timelapseFinished(summary));
             }
-        } finally {
-            if (image != null) {
-                image.close();
+
+            @Override
+            public void onFailed(Exception error) {
+                Log.e(TAG, "Error saving delta capture", error);
+                notifyFailure("Error saving delta capture: " + error.getMessage());
             }
-            cleanup();
+        });
+    }
+
+    // Long screenshot: every frame from here on is stitched until the capture is finished
+    private void startScrollCapture() {
+        if (scrollCapture != null) {
+            return;
+        }
+        try {
+            scrollCapture = new ScrollCapture(frameWidth, frameHeight,
+                    new File(getCacheDir(), SCROLL_SPOOL_NAME), pixelPool);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to start scroll capture", e);
+            notifyFailure("Error starting long screenshot: " + e.getMessage());
+            return;
+        }
+        if (latestImage != null) {
+            offerScrollFrame(latestImage);
+        }
+        updateNotification(true);
+    }
+
+    private void offerScrollFrame(Image image) {
+        int[] pixels = pixelPool.acquire(frameWidth * frameHeight);
+        copyFrame(image, pixels, null);
+        scrollCapture.offer(pixels);
+    }
+
+    private void finishScrollCapture() {
+        ScrollCapture capture = scrollCapture;
+        if (capture == null) {
+            return;
+        }
+        // The screen at rest may not have produced a frame since the last one was stitched
+        if (latestImage != null) {
+            offerScrollFrame(latestImage);
+        }
+        scrollCapture = null;
+        updateNotification(false);
+
+        long captureTime = System.currentTimeMillis();
+        ParallelPngWriter writer = ((ParallelPngEncoder) ScreenshotEncoders.create(
+                ScreenshotEncoders.FORMAT_PNG_PARALLEL, ScreenshotEncoders.DEFAULT_QUALITY)).getWriter();
+        capture.finish(storage, fileNameOf(captureTime, "png"), captureTime, writer, new ScrollCapture.Listener() {
+            @Override
+            public void onSaved(ScreenshotStorage.Entry entry) {
+                String filePath = entry.getPath();
+                ScreenshotIndex.getInstance(ScreenshotService.this).recordSaved(entry);
+                RetentionEngine.getInstance(ScreenshotService.this).onSaved();
+                metrics.onFrameWritten(entry.getSize());
+                GalleryChangeFeed.getInstance().publish(GalleryChangeFeed.ChangeType.ADDED, filePath);
+                events.publish(CaptureEvent.saved(filePath));
+            }
+
+            @Override
+            public void onFailed(Exception error) {
+                Log.e(TAG, "Error saving long screenshot", error);
+                metrics.onFrameFailed();
+                notifyFailure("Error saving long screenshot: " + error.getMessage());
+            }
+        });
+    }
+
+    private void requestCapture(Intent intent) {
+        int count = Math.max(1, Math.min(intent.getIntExtra(EXTRA_BURST_COUNT, 1), MAX_BURST_COUNT));
+        long intervalMs = intent.getLongExtra(EXTRA_BURST_INTERVAL_MS, DEFAULT_BURST_INTERVAL_MS);
+        if (intervalMs <= 0) {
+            // Shots at the same instant would all be the same frame
+            notifyFailure("Burst interval must be positive, got " + intervalMs + " ms");
+            return;
+        }
+
+        ScreenshotEncoder encoder = resolveEncoder(intent, sessionEncoder);
+
+        for (int i = 0; i < count; i++) {
+            captureHandler.postDelayed(() -> captureScreenshot(encoder), i * intervalMs);
+        }
+    }
+
+    private void captureScreenshot(ScreenshotEncoder encoder) {
+        if (!sessionActive) {
+            return;
         }
+
+        Log.d(TAG, "Screenshot capture initiated");
+        if (latestImage != null && SystemClock.uptimeMillis() >= settledAt) {
+            processImage(latestImage, encoder, null);
+        } else {
+            pendingCaptures.add(encoder);
+            servePendingCapture();
+        }
+    }
+
+    // Serves the oldest waiting capture from the latest frame once the display has settled
+    private void servePendingCapture() {
+        if (latestImage == null || pendingCaptures.isEmpty()) {
+            return;
+        }
+        if (SystemClock.uptimeMillis() < settledAt) {
+            // A still screen sends no further frames, so the settled one is served on a timer
+            captureHandler.removeCallbacks(servePendingCapture);
+            captureHandler.postAtTime(servePendingCapture, settledAt);
+            return;
+        }
+        processImage(latestImage, pendingCaptures.poll(), null);
     }
 
-    private String saveBitmap(Bitmap bitmap) {
+    // Acquire stage: copy the frame out of the ImageReader so the image can be recycled
+    private void processImage(Image image, ScreenshotEncoder encoder, TimelapseScheduler scheduler) {
+        CapturePipeline<CaptureJob> activePipeline = pipeline;
+        if (activePipeline == null) {
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        int[] pixels = null;
+        Bitmap bitmap = null;
         try {
-            File picturesDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
-            File screenshotsDir = new File(picturesDir, "Screenshots");
-            
-            if (!screenshotsDir.exists()) {
-                screenshotsDir.mkdirs();
+            ByteBuffer packed = encoder.acceptsPixels() ? null : packedFrame(image);
+            if (packed != null) {
+                // Bitmap encoders get the frame in a single copy, since RGBA_8888 is ARGB_8888's memory layout
+                bitmap = bitmapPool.acquire(frameWidth, frameHeight);
+                bitmap.copyPixelsFromBuffer(packed);
+            } else {
+                pixels = pixelPool.acquire(frameWidth * frameHeight);
+                // Single row-by-row copy that skips the stride padding, no intermediate bitmap
+                copyFrame(image, pixels, null);
             }
+            metrics.recordSince(CaptureMetrics.Stage.BUFFER_COPY, startNanos);
 
-            String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-            String fileName = "Screenshot_" + timestamp + ".png";
-            File file = new File(screenshotsDir, fileName);
+            CaptureJob job = new CaptureJob(System.currentTimeMillis(), startNanos, frameWidth, frameHeight, pixels, encoder);
+            job.setBitmap(bitmap);
+            job.setTimelapse(scheduler);
+            framesInFlight.incrementAndGet();
+            activePipeline.submit(job);
+        } catch (Exception e) {
+            pixelPool.release(pixels);
+            bitmapPool.release(bitmap);
+            Log.e(TAG, "Error processing image", e);
+            notifyFailure("Error processing screenshot: " + e.getMessage());
+        }
+    }
 
-            FileOutputStream fos = new FileOutputStream(file);
-            bitmap.compress(Bitmap.CompressFormat.PNG, 100, fos);
-            fos.flush();
-            fos.close();
+    // Only the profile's crop is read; the plane is sliced so that it starts at the crop's corner
+    private void copyFrame(Image image, int[] pixels, TileChecksums tiles) {
+        Image.Plane plane = image.getPlanes()[0];
+        ByteBuffer buffer = plane.getBuffer();
+        if (layout.getLeft() != 0 || layout.getTop() != 0) {
+            buffer = buffer.duplicate();
+            buffer.clear();
+            buffer.position(layout.getTop() * plane.getRowStride() + layout.getLeft() * plane.getPixelStride());
+            buffer = buffer.slice();
+        }
+        PixelExtractor.extractArgb(buffer, frameWidth, frameHeight,
+                plane.getPixelStride(), plane.getRowStride(), pixels, tiles);
+    }
 
-            return file.getAbsolutePath();
-        } catch (IOException e) {
-            Log.e(TAG, "Error saving bitmap", e);
+    // The crop as one gap-free run of rows, or null when rows are padded or cut at the sides
+    private ByteBuffer packedFrame(Image image) {
+        Image.Plane plane = image.getPlanes()[0];
+        int rowBytes = frameWidth * plane.getPixelStride();
+        if (plane.getPixelStride() != 4 || plane.getRowStride() != rowBytes) {
             return null;
         }
+        ByteBuffer buffer = plane.getBuffer().duplicate();
+        buffer.clear();
+        buffer.position(layout.getTop() * rowBytes);
+        buffer.limit(buffer.position() + frameHeight * rowBytes);
+        return buffer;
+    }
+
+    private void convertFrame(CaptureJob job) {
+        if (job.getPixels() == null) {
+            convertBitmapFrame(job);
+            return;
+        }
+        // Hashed here rather than on acquire, so the capture thread is never held up by it
+        long hash = PerceptualHash.dHash(job.getPixels(), job.getWidth(), job.getHeight());
+        job.setHash(hash);
+        if (isSkippedDuplicate(job, hash)) {
+            return;
+        }
+        // The gallery thumbnail is taken from the pixels already in memory, not the saved file
+        job.setThumbnail(ThumbnailStore.createThumbnail(job.getPixels(), job.getWidth(), job.getHeight()));
+        if (job.getEncoder().acceptsPixels()) {
+            return;
+        }
+        // Padded rows could not be copied into the bitmap directly on acquire
+        Bitmap bitmap = bitmapPool.acquire(job.getWidth(), job.getHeight());
+        bitmap.setPixels(job.getPixels(), 0, job.getWidth(), 0, 0, job.getWidth(), job.getHeight());
+        job.setBitmap(bitmap);
+        pixelPool.release(job.getPixels());
+        job.setPixels(null);
     }
 
-    private void cleanup() {
+    // The frame only exists as a bitmap, so it is hashed from its thumbnail, which hashes alike
+    private void convertBitmapFrame(CaptureJob job) {
+        Bitmap frame = job.getBitmap();
+        int[] size = ThumbnailStore.thumbnailSize(job.getWidth(), job.getHeight());
+        Bitmap thumbnail = Bitmap.createScaledBitmap(frame, size[0], size[1], true);
+        if (thumbnail == frame) {
+            thumbnail = frame.copy(Bitmap.Config.ARGB_8888, false);
+        }
+        int[] pixels = new int[size[0] * size[1]];
+        thumbnail.getPixels(pixels, 0, size[0], 0, 0, size[0], size[1]);
+        long hash = PerceptualHash.dHash(pixels, size[0], size[1]);
+        job.setHash(hash);
+        job.setThumbnail(thumbnail);
+        isSkippedDuplicate(job, hash);
+    }
+
+    private boolean isSkippedDuplicate(CaptureJob job, long hash) {
+        if (duplicatePolicy != DuplicateDetector.Policy.KEEP) {
+            String duplicateOf = duplicateDetector.findDuplicate(hash);
+            boolean matchesInFlight = hasLastConvertedHash
+                    && PerceptualHash.distance(hash, lastConvertedHash) <= DuplicateDetector.MAX_DISTANCE;
+            if (duplicateOf != null || matchesInFlight) {
+                job.setDuplicateOf(true, duplicateOf);
+                if (duplicatePolicy == DuplicateDetector.Policy.SKIP) {
+                    job.setSkipped(true);
+                    return true;
+                }
+            }
+        }
+        lastConvertedHash = hash;
+        hasLastConvertedHash = true;
+        return false;
+    }
+
+    // Streams straight into storage; the screenshot stays hidden until the persist stage commits it
+    private void encodeFrame(CaptureJob job) throws IOException {
+        if (job.isSkipped()) {
+            return;
+        }
+        ScreenshotEncoder encoder = job.getEncoder();
+        job.setPendingWrite(storage.create(fileNameOf(job.getCaptureTime(), encoder.getFileExtension()),
+                encoder.getMimeType(), job.getCaptureTime(), job.getWidth(), job.getHeight()));
+        OutputStream out = job.getPendingWrite().getOutputStream();
+        if (job.getPixels() != null) {
+            job.getEncoder().encode(job.getPixels(), job.getWidth(), job.getHeight(), out);
+            pixelPool.release(job.getPixels());
+            job.setPixels(null);
+        } else {
+            job.getEncoder().encode(job.getBitmap(), out);
+            bitmapPool.release(job.getBitmap());
+            job.setBitmap(null);
+        }
+    }
+
+    private void recycle(CaptureJob job) {
+        framesInFlight.decrementAndGet();
+        pixelPool.release(job.getPixels());
+        job.setPixels(null);
+        bitmapPool.release(job.getBitmap());
+        job.setBitmap(null);
+        if (job.getThumbnail() != null) {
+            job.getThumbnail().recycle();
+            job.setThumbnail(null);
+        }
+        // Left over when a frame failed or was dropped after encoding started
+        if (job.getPendingWrite() != null) {
+            job.getPendingWrite().abort();
+            job.setPendingWrite(null);
+        }
+    }
+
+    private void persistFrame(CaptureJob job) throws IOException {
+        if (job.isSkipped()) {
+            return;
+        }
+        ScreenshotStorage.Entry entry = job.getPendingWrite().commit();
+        job.setPendingWrite(null);
+        String filePath = entry.getPath();
+        ScreenshotIndex.getInstance(this).recordSaved(entry, job.getHash(), job.isDuplicate());
+        RetentionEngine.getInstance(this).onSaved();
+        duplicateDetector.add(filePath, job.getHash());
+        metrics.onFrameWritten(entry.getSize());
+        try {
+            ThumbnailStore.getInstance(this).put(filePath, entry.getTimestamp(), job.getThumbnail());
+        } catch (IOException e) {
+            // The gallery backfills missing thumbnails, so the capture itself still succeeds
+            Log.w(TAG, "Failed to store thumbnail for " + filePath, e);
+        }
+        GalleryChangeFeed.getInstance().publish(GalleryChangeFeed.ChangeType.ADDED, filePath);
+        job.setFilePath(filePath);
+    }
+
+    private void notifyFailure(String error) {
+        events.publish(CaptureEvent.failed(error));
+    }
+
+    // Millisecond resolution so that burst frames don't overwrite each other
+    private static String fileNameOf(long captureTime, String extension) {
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.getDefault()).format(new Date(captureTime));
+        return "Screenshot_" + timestamp + "." + extension;
+    }
+
+    private void stopSession() {
+        releaseProjection();
+        stopForeground(true);
+        stopSelf();
+    }
+
+    // Runs more than once per stop: from stopSession(), from the projection's onStop callback and
+    // from onDestroy(). Only the first call after a start releases anything, so a later one cannot
+    // drop the release queued on the capture thread before it ran.
+    private void releaseProjection() {
+        sessionActive = false;
+        if (!projectionHeld) {
+            return;
+        }
+        projectionHeld = false;
+
         if (virtualDisplay != null) {
             virtualDisplay.release();
             virtualDisplay = null;
         }
         
-        if (imageReader != null) {
-            imageReader.close();
-            imageReader = null;
-        }
-        
         if (mediaProjection != null) {
-            mediaProjection.stop();
+            MediaProjection projection = mediaProjection;
             mediaProjection = null;
+            projection.stop();
         }
-        
-        stopSelf();
+
+        // Frames are owned by the capture thread, so they are released there
+        ImageReader reader = imageReader;
+        imageReader = null;
+        // Captures and ticks queued by the session; the release itself is queued after them
+        captureHandler.removeCallbacksAndMessages(null);
+        captureHandler.post(() -> releaseFrames(reader));
+        captureHandler.post(this::exportMetrics);
+
+        // Frames already in flight still finish and get delivered
+        if (pipeline != null) {
+            pipeline.shutdown();
+            pipeline = null;
+        }
+    }
+
+    private void releaseFrames(ImageReader reader) {
+        pendingCaptures.clear();
+        if (captureHandler != null) {
+            captureHandler.removeCallbacks(servePendingCapture);
+        }
+        if (timelapse != null && !timelapse.isFinished()) {
+            timelapse.stop();
+            Log.i(TAG, "Timelapse ended with the session: " + timelapse);
+        }
+        if (deltaRecorder != null) {
+            // Keeps what was recorded so far
+            finishDeltaRecording(deltaRecorder, timelapse);
+            deltaRecorder = null;
+        }
+        if (scrollCapture != null) {
+            scrollCapture.cancel();
+            scrollCapture = null;
+        }
+
+        if (latestImage != null) {
+            latestImage.close();
+            latestImage = null;
+        }
+
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    // Left on the device after every session, for pulling from test devices with adb
+    private void exportMetrics() {
+        File dir = getExternalFilesDir(null);
+        if (dir == null) {
+            return;
+        }
+        try {
+            metrics.writeJson(new File(dir, METRICS_FILE_NAME));
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to export capture metrics", e);
+        }
+    }
+
+    /**
+     * {@code adb shell dumpsys activity service com.screenroaster.app/com.example.myapplication.ScreenshotService [json|timelapse|reset]}
+     * while a session is running.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        String command = args != null && args.length > 0 ? args[0] : "";
+        if ("json".equals(command)) {
+            writer.println(metrics.toJson());
+            return;
+        }
+        if ("timelapse".equals(command)) {
+            TimelapseScheduler scheduler = timelapse;
+            writer.println(scheduler != null ? scheduler.toJson() : "{}");
+            return;
+        }
+        if ("reset".equals(command)) {
+            metrics.reset();
+            writer.println("Capture metrics reset");
+            return;
+        }
+        writer.println("Session active: " + sessionActive + ", policy: "
+                + (pipeline != null ? pipeline.getPolicy() : "none") + ", encoder: " + sessionEncoder
+                + ", storage: " + storage.getName() + ", duplicates: " + duplicatePolicy
+                + ", profile: " + profile + (layout != null ? " (" + layout + ")" : ""));
+        if (timelapse != null) {
+            writer.println("Timelapse" + (timelapse.isFinished() ? " (finished): " : ": ") + timelapse);
+        }
+        DeltaRecorder recorder = deltaRecorder;
+        if (recorder != null) {
+            writer.println("Delta capture: " + recorder);
+        }
+        writer.println("Retention: " + RetentionEngine.getInstance(this));
+        if (events.getMissedDropped() > 0) {
+            writer.println("Capture events dropped while nobody was subscribed: " + events.getMissedDropped());
+        }
+        metrics.dump(writer);
     }
 
     @Override
     public void onDestroy() {
-        cleanup();
+        releaseProjection();
+        captureThread.quitSafely();
+        pixelPool.clear();
+        bitmapPool.clear();
         super.onDestroy();
     }
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+package com.example.myapplication;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Where saved screenshots live. Entries are identified by their absolute path in
+ * {@link ScreenshotIndex#getScreenshotsDir()}, whichever backend wrote them, so the index,
+ * thumbnails and change feed work the same with either. See {@link ScreenshotStorages}.
+ */
+public interface ScreenshotStorage {
+    /** Returned by {@link #getGeneration()} when the backend cannot tell whether anything changed. */
+    String GENERATION_UNKNOWN = null;
+
+    /** How hard a commit works to make the screenshot survive a crash or power loss. */
+    enum Durability {
+        /** Leaves writeback to the kernel; a power cut shortly after a capture can lose it. */
+        NONE,
+        /** Syncs the file contents before the screenshot is published. */
+        DATA,
+        /** Also syncs file metadata such as the size. */
+        FULL
+    }
+
+    /** A screenshot being written. It is not visible to the gallery until committed. */
+    interface PendingWrite {
+        /** Buffered; the encoder writes straight into it. Closed by commit or abort. */
+        OutputStream getOutputStream();
+
+        /** Publishes the screenshot. The name may differ from the requested one. */
+        Entry commit() throws IOException;
+
+        /** Drops whatever was written so far. Safe to call after a failed commit. */
+        void abort();
+    }
+
+    String getName();
+
+    PendingWrite create(String displayName, String mimeType, long captureTime, int width, int height)
+            throws IOException;
+
+    /** The stored entry for a path, or null if it no longer exists. */
+    Entry query(String path);
+
+    List<Entry> list();
+
+    /**
+     * A value that changes whenever entries may have been added, removed or edited, so that an
+     * unchanged collection can be recognised without listing it. Only compared for equality.
+     */
+    String getGeneration();
+
+    boolean delete(String path);
+
+    /**
+     * Deletes several entries in as few storage round trips as the backend allows. Returns the
+     * paths that were deleted; the others are still there.
+     */
+    List<String> delete(List<String> paths);
+
+    /**
+     * Removes writes that were never committed, as left behind by a process that died while
+     * encoding. Only writes started before {@code startedBefore} are touched. Returns how many
+     * were removed.
+     */
+    int sweepOrphans(long startedBefore);
+
+    final class Entry {
+        private final String path;
+        private final long timestamp;
+        private final long size;
+        private final int width;
+        private final int height;
+
+        /** Width and height are 0 when the backend does not know them. */
+        public Entry(String path, long timestamp, long size, int width, int height) {
+            this.path = path;
+            this.timestamp = timestamp;
+            this.size = size;
+            this.width = width;
+            this.height = height;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /** Last modification in milliseconds, at the backend's own resolution. */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.myapplication;
+
+import android.content.Context;
+import android.os.Build;
+
+public final class ScreenshotStorages {
+    public static final String BACKEND_MEDIA_STORE = "media_store";
+    public static final String BACKEND_FILE = "file";
+
+    private static final String PREFS_NAME = "storage_settings";
+    private static final String KEY_BACKEND = "backend";
+    private static final String KEY_DURABILITY = "durability";
+    // Survives an app crash through the rename or pending flag, and a power cut through fsync
+    private static final ScreenshotStorage.Durability DEFAULT_DURABILITY = ScreenshotStorage.Durability.DATA;
+
+    private static ScreenshotStorage mediaStore;
+    private static ScreenshotStorage file;
+
+    private ScreenshotStorages() {
+    }
+
+    public static String[] getBackends() {
+        return new String[] {BACKEND_MEDIA_STORE, BACKEND_FILE};
+    }
+
+    public static synchronized ScreenshotStorage create(Context context, String backend) {
+        switch (backend) {
+            case BACKEND_MEDIA_STORE:
+                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+                    throw new IllegalArgumentException("MediaStore storage needs Android 10 or later");
+                }
+                if (mediaStore == null) {
+                    mediaStore = new MediaStoreScreenshotStorage(context, ScreenshotIndex.getScreenshotsDir(),
+                            getDurability(context));
+                }
+                return mediaStore;
+            case BACKEND_FILE:
+                if (file == null) {
+                    file = new FileScreenshotStorage(ScreenshotIndex.getScreenshotsDir(), getDurability(context));
+                }
+                return file;
+            default:
+                throw new IllegalArgumentException("Unknown storage backend " + backend);
+        }
+    }
+
+    public static ScreenshotStorage getDefault(Context context) {
+        String fallback = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q ? BACKEND_MEDIA_STORE : BACKEND_FILE;
+        String backend = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .getString(KEY_BACKEND, fallback);
+        try {
+            return create(context, backend);
+        } catch (IllegalArgumentException e) {
+            return create(context, BACKEND_FILE);
+        }
+    }
+
+    /**
+     * Both backends use the same directory, so switching keeps existing screenshots. The running
+     * capture service picks the change up with its next start.
+     */
+    public static void setDefault(Context context, String backend) {
+        // Validate before persisting so a bad value can't break every later capture
+        create(context, backend);
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putString(KEY_BACKEND, backend)
+                .apply();
+    }
+
+    public static ScreenshotStorage.Durability getDurability(Context context) {
+        String name = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .getString(KEY_DURABILITY, DEFAULT_DURABILITY.name());
+        try {
+            return ScreenshotStorage.Durability.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return DEFAULT_DURABILITY;
+        }
+    }
+
+    /** Like the backend, applies from the next start of the capture service. */
+    public static synchronized void setDurability(Context context, ScreenshotStorage.Durability durability) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putString(KEY_DURABILITY, durability.name())
+                .apply();
+        // Rebuilt with the new policy on next use
+        mediaStore = null;
+        file = null;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.myapplication;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One long screenshot in the making. Frames that arrive while the user scrolls are stitched on a
+ * background thread by a {@link ScrollStitcher}. At most one frame waits for the stitcher; a newer
+ * one replaces it, which is fine as long as the user does not scroll a whole screen in between.
+ */
+class ScrollCapture {
+    private static final String TAG = "ScrollCapture";
+    // Screens the image may span, which bounds both the spool and the decode cost in viewers
+    private static final int MAX_SCREENS = 16;
+
+    interface Listener {
+        void onSaved(ScreenshotStorage.Entry entry);
+        void onFailed(Exception error);
+    }
+
+    private final int width;
+    private final int height;
+    private final IntArrayPool pixelPool;
+    private final ScrollStitcher stitcher;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "scroll-stitch"));
+    private final AtomicReference<int[]> waitingFrame = new AtomicReference<>();
+    private int framesMissed;
+    // A failed spool write leaves a gap, so the image can no longer be saved
+    private IOException spoolError;
+
+    ScrollCapture(int width, int height, File spoolFile, IntArrayPool pixelPool) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.pixelPool = pixelPool;
+        this.stitcher = new ScrollStitcher(width, height, height * MAX_SCREENS, spoolFile);
+    }
+
+    /** Hands a frame to the stitcher, which releases it to the pool when done. */
+    void offer(int[] pixels) {
+        int[] replaced = waitingFrame.getAndSet(pixels);
+        if (replaced != null) {
+            // The stitch already scheduled will take the newer frame instead
+            pixelPool.release(replaced);
+        } else {
+            executor.execute(this::stitchWaitingFrame);
+        }
+    }
+
+    /**
+     * Stitches what is still waiting and writes the image through {@code storage}, then reports
+     * to the listener from the stitch thread.
+     */
+    void finish(ScreenshotStorage storage, String displayName, long captureTime, ParallelPngWriter writer,
+                Listener listener) {
+        executor.execute(() -> {
+            stitchWaitingFrame();
+            ScreenshotStorage.PendingWrite write = null;
+            try {
+                if (spoolError != null) {
+                    throw spoolError;
+                }
+                write = storage.create(displayName, "image/png", captureTime, width, stitcher.getHeight());
+                stitcher.writePng(writer, write.getOutputStream());
+                ScreenshotStorage.Entry entry = write.commit();
+                write = null;
+                if (framesMissed > 0) {
+                    Log.w(TAG, framesMissed + " frames did not line up; scrolling may have been too fast");
+                }
+                listener.onSaved(entry);
+            } catch (IOException | RuntimeException e) {
+                listener.onFailed(e);
+            } finally {
+                if (write != null) {
+                    write.abort();
+                }
+                close();
+            }
+        });
+        executor.shutdown();
+    }
+
+    /** Drops the image. */
+    void cancel() {
+        executor.execute(() -> {
+            int[] waiting = waitingFrame.getAndSet(null);
+            pixelPool.release(waiting);
+            close();
+        });
+        executor.shutdown();
+    }
+
+    private void stitchWaitingFrame() {
+        int[] pixels = waitingFrame.getAndSet(null);
+        if (pixels == null) {
+            return;
+        }
+        try {
+            if (spoolError == null && stitcher.add(pixels) < 0) {
+                framesMissed++;
+            }
+        } catch (IOException e) {
+            spoolError = e;
+        } finally {
+            pixelPool.release(pixels);
+        }
+    }
+
+    private void close() {
+        try {
+            stitcher.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to delete the scroll spool", e);
+        }
+    }
+}
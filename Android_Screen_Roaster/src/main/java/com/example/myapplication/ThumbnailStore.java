@@ -0,0 +1,309 @@
+package com.example.myapplication;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Small WebP thumbnails for the gallery, kept in the app cache directory under a byte cap with
+ * least-recently-used eviction. Entries are keyed by path and mtime, so an overwritten file
+ * never shows a stale thumbnail. New captures get their thumbnail from the pipeline; files that
+ * predate the store are backfilled on demand from a subsampled decode.
+ */
+public class ThumbnailStore {
+    private static final String TAG = "ThumbnailStore";
+    private static final String DIRECTORY_NAME = "thumbnails";
+    private static final String EXTENSION = ".webp";
+    // The gallery shows 60dp squares, which is 240 px at xxxhdpi
+    public static final int THUMBNAIL_SIZE = 240;
+    private static final int THUMBNAIL_QUALITY = 80;
+    private static final long MAX_BYTES = 32L * 1024 * 1024;
+    // Size of a seeded entry until the directory scan finds its file
+    private static final long UNKNOWN_BYTES = -1;
+    // A few screens of rows; requests beyond that are for rows long scrolled past
+    private static final int MAX_QUEUED_BACKFILLS = 64;
+
+    public interface BackfillCallback {
+        void onThumbnailReady(String path, File thumbnail);
+    }
+
+    private static ThumbnailStore instance;
+
+    private final File directory;
+    private final ScreenshotEncoder encoder = new WebpEncoder(false, THUMBNAIL_QUALITY);
+    // In access order, so the eldest entry is the least recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Set<String> pendingBackfills = new HashSet<>();
+    // Newest first, so that the rows on screen are decoded before the ones flung past
+    private final ArrayDeque<Backfill> backfillQueue = new ArrayDeque<>();
+    // Keys of files that could not be decoded; the key changes with the mtime if the file does
+    private final Set<String> failedBackfills = new HashSet<>();
+    private final ExecutorService backfillExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final long createdAt = System.currentTimeMillis();
+    private long totalBytes;
+    private boolean loaded;
+
+    public static synchronized ThumbnailStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new ThumbnailStore(new File(context.getApplicationContext().getCacheDir(), DIRECTORY_NAME));
+        }
+        return instance;
+    }
+
+    private ThumbnailStore(File directory) {
+        this.directory = directory;
+        // Scanned off the calling thread; backfill requests queued meanwhile find the entries once it ran
+        backfillExecutor.execute(this::loadEntries);
+    }
+
+    private void loadEntries() {
+        directory.mkdirs();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            files = new File[0];
+        }
+
+        // Recency is only tracked in memory, so a cold start falls back to creation order
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        synchronized (this) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(EXTENSION)) {
+                    String key = name.substring(0, name.length() - EXTENSION.length());
+                    Entry existing = entries.get(key);
+                    if (existing == null || existing.bytes == UNKNOWN_BYTES) {
+                        entries.put(key, new Entry(file, file.length()));
+                        totalBytes += file.length();
+                    }
+                } else if (file.lastModified() < createdAt) {
+                    // Leftover from a write interrupted in an earlier process
+                    file.delete();
+                }
+            }
+            // Seeded keys whose file has gone since the snapshot was taken
+            entries.values().removeIf(entry -> entry.bytes == UNKNOWN_BYTES);
+            loaded = true;
+            trim();
+        }
+    }
+
+    /**
+     * Makes {@link #lookup} find the thumbnails a {@link GallerySnapshot} says were cached,
+     * before the directory scan that confirms them has run.
+     */
+    public synchronized void seed(List<String> keys) {
+        if (loaded) {
+            // The scan already knows what is there
+            return;
+        }
+        for (String key : keys) {
+            if (!entries.containsKey(key)) {
+                entries.put(key, new Entry(fileOf(key), UNKNOWN_BYTES));
+            }
+        }
+    }
+
+    /**
+     * Returns the cached thumbnail for a key from {@link #keyOf}, or null. Neither touches the
+     * disk nor allocates, so it is safe to call while binding.
+     */
+    public synchronized File lookup(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.file : null;
+    }
+
+    /** Downscales a frame that is still in memory as ARGB pixels to thumbnail size. */
+    public static Bitmap createThumbnail(int[] pixels, int width, int height) {
+        int[] size = thumbnailSize(width, height);
+        int[] scaled = size[0] == width && size[1] == height
+                ? pixels
+                : PixelScaler.downscale(pixels, width, height, size[0], size[1]);
+        return Bitmap.createBitmap(scaled, size[0], size[1], Bitmap.Config.ARGB_8888);
+    }
+
+    public void put(String path, long mtime, Bitmap thumbnail) throws IOException {
+        String key = keyOf(path, mtime);
+        File file = fileOf(key);
+        directory.mkdirs();
+        File temp = new File(directory, key + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+            encoder.encode(thumbnail, out);
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Failed to store thumbnail for " + path);
+        }
+
+        synchronized (this) {
+            Entry previous = entries.put(key, new Entry(file, file.length()));
+            if (previous != null) {
+                totalBytes -= Math.max(0, previous.bytes);
+            }
+            totalBytes += file.length();
+            trim();
+        }
+    }
+
+    /**
+     * Builds the thumbnail for a file that has none yet, off the calling thread, and reports it
+     * on the main thread. The newest request runs first and the oldest are dropped once too many
+     * wait. Repeated requests for the same file while one is waiting, and requests for a file
+     * that could not be decoded before, are ignored.
+     */
+    public void requestBackfill(String path, long mtime, BackfillCallback callback) {
+        String key = keyOf(path, mtime);
+        synchronized (this) {
+            if (failedBackfills.contains(key) || !pendingBackfills.add(key)) {
+                return;
+            }
+            backfillQueue.addFirst(new Backfill(path, mtime, key, callback));
+            if (backfillQueue.size() > MAX_QUEUED_BACKFILLS) {
+                // Asked for again if its row is bound again
+                pendingBackfills.remove(backfillQueue.removeLast().key);
+            }
+        }
+        backfillExecutor.execute(this::runNextBackfill);
+    }
+
+    // One run per request; runs left over by dropped requests find the queue empty
+    private void runNextBackfill() {
+        Backfill backfill;
+        synchronized (this) {
+            backfill = backfillQueue.pollFirst();
+        }
+        if (backfill == null) {
+            return;
+        }
+        String path = backfill.path;
+        try {
+            File existing = lookup(backfill.key);
+            if (existing != null) {
+                mainHandler.post(() -> backfill.callback.onThumbnailReady(path, existing));
+                return;
+            }
+            Bitmap bitmap = decodeSampled(path);
+            if (bitmap == null) {
+                synchronized (this) {
+                    failedBackfills.add(backfill.key);
+                }
+                return;
+            }
+            try {
+                put(path, backfill.mtime, bitmap);
+            } finally {
+                bitmap.recycle();
+            }
+            File thumbnail = fileOf(backfill.key);
+            mainHandler.post(() -> backfill.callback.onThumbnailReady(path, thumbnail));
+        } catch (IOException e) {
+            Log.w(TAG, "Thumbnail backfill failed for " + path, e);
+        } finally {
+            synchronized (this) {
+                pendingBackfills.remove(backfill.key);
+            }
+        }
+    }
+
+    public static int[] thumbnailSize(int width, int height) {
+        int shortSide = Math.min(width, height);
+        if (shortSide <= THUMBNAIL_SIZE) {
+            return new int[] {width, height};
+        }
+        return new int[] {
+                Math.max(1, (int) ((long) width * THUMBNAIL_SIZE / shortSide)),
+                Math.max(1, (int) ((long) height * THUMBNAIL_SIZE / shortSide))
+        };
+    }
+
+    // Decodes at the smallest power-of-two subsample that still covers the thumbnail size
+    static Bitmap decodeSampled(String path) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int shortSide = Math.min(options.outWidth, options.outHeight);
+        int sampleSize = 1;
+        while (shortSide / (sampleSize * 2) >= THUMBNAIL_SIZE) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap decoded = BitmapFactory.decodeFile(path, options);
+        if (decoded == null) {
+            return null;
+        }
+
+        int[] size = thumbnailSize(decoded.getWidth(), decoded.getHeight());
+        if (size[0] == decoded.getWidth() && size[1] == decoded.getHeight()) {
+            return decoded;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(decoded, size[0], size[1], true);
+        decoded.recycle();
+        return scaled;
+    }
+
+    private void trim() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (totalBytes > MAX_BYTES && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            entry.file.delete();
+            totalBytes -= Math.max(0, entry.bytes);
+            eldest.remove();
+        }
+    }
+
+    private File fileOf(String key) {
+        return new File(directory, key + EXTENSION);
+    }
+
+    // Path hash plus mtime, both in hex, which keeps the name short and filesystem-safe
+    public static String keyOf(String path, long mtime) {
+        return Long.toHexString(Screenshot.hashPath(path)) + "_" + Long.toHexString(mtime);
+    }
+
+    private static final class Backfill {
+        final String path;
+        final long mtime;
+        final String key;
+        final BackfillCallback callback;
+
+        Backfill(String path, long mtime, String key, BackfillCallback callback) {
+            this.path = path;
+            this.mtime = mtime;
+            this.key = key;
+            this.callback = callback;
+        }
+    }
+
+    private static class Entry {
+        final File file;
+        final long bytes;
+
+        Entry(File file, long bytes) {
+            this.file = file;
+            this.bytes = bytes;
+        }
+    }
+}
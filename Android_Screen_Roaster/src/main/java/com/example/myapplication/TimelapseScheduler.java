@@ -0,0 +1,138 @@
+package com.example.myapplication;
+
+import java.util.Locale;
+
+/**
+ * Fixed-rate schedule for timelapse capture. Tick n is due at {@code start + n * interval},
+ * computed from the start rather than from the previous tick, so a late timer never shifts the
+ * ticks after it. Ticks the timer missed altogether are dropped rather than fired in a burst.
+ * The clock is whatever the caller passes in, in milliseconds. Thread-safe.
+ */
+public class TimelapseScheduler {
+
+    /** What a tick does while frames from earlier ticks are still being encoded. */
+    public enum DropPolicy {
+        /** Skip the tick, so no frame is copied that would only wait. */
+        SKIP,
+        /** Capture anyway; the pipeline's backpressure policy decides which frame gives way. */
+        SUBMIT
+    }
+
+    public static final long FINISHED = -1;
+
+    private final long start;
+    private final long interval;
+    private final long end;
+    private final int maxFrames;
+    private final DropPolicy policy;
+    private long lastTick = -1;
+    private int framesCaptured;
+    private int framesSaved;
+    private int droppedLate;
+    private int droppedBusy;
+    private int droppedByPipeline;
+    private long lastSavedAt;
+    private boolean stopped;
+
+    /** {@code duration} and {@code maxFrames} of 0 mean no limit. */
+    public TimelapseScheduler(long start, long interval, long duration, int maxFrames, DropPolicy policy) {
+        if (interval <= 0 || duration < 0 || maxFrames < 0) {
+            throw new IllegalArgumentException("Invalid timelapse every " + interval + " ms for " + duration
+                    + " ms, up to " + maxFrames + " frames");
+        }
+        this.start = start;
+        this.interval = interval;
+        this.end = duration > 0 ? start + duration : Long.MAX_VALUE;
+        this.maxFrames = maxFrames > 0 ? maxFrames : Integer.MAX_VALUE;
+        this.policy = policy;
+    }
+
+    /** When the first tick is due. */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Call when the timer fires at {@code now}. Returns whether to capture a frame; {@code busy}
+     * says whether earlier frames are still being encoded.
+     */
+    public synchronized boolean onTick(long now, boolean busy) {
+        if (isFinished() || now < start) {
+            return false;
+        }
+        // Only ticks due before the end count, however late the timer is
+        long tick = (Math.min(now, end - 1) - start) / interval;
+        if (tick <= lastTick) {
+            return false;
+        }
+        droppedLate += (int) (tick - lastTick - 1);
+        lastTick = tick;
+        if (busy && policy == DropPolicy.SKIP) {
+            droppedBusy++;
+            return false;
+        }
+        framesCaptured++;
+        return true;
+    }
+
+    /** When to fire next, or {@link #FINISHED}. */
+    public synchronized long getNextTickAt() {
+        if (isFinished()) {
+            return FINISHED;
+        }
+        return start + (lastTick + 1) * interval;
+    }
+
+    public synchronized boolean isFinished() {
+        return stopped || framesCaptured >= maxFrames || start + (lastTick + 1) * interval >= end;
+    }
+
+    public synchronized void stop() {
+        stopped = true;
+    }
+
+    public synchronized void onFrameSaved(long now) {
+        framesSaved++;
+        lastSavedAt = now;
+    }
+
+    /** A captured frame that the pipeline dropped or failed to save. */
+    public synchronized void onFrameDropped() {
+        droppedByPipeline++;
+    }
+
+    public synchronized int getFramesSaved() {
+        return framesSaved;
+    }
+
+    public synchronized int getFramesDropped() {
+        return droppedLate + droppedBusy + droppedByPipeline;
+    }
+
+    /** Saved frames per second, over the span from the first tick to the last saved frame. */
+    public synchronized double getAchievedFps() {
+        if (framesSaved < 2 || lastSavedAt <= start) {
+            return 0;
+        }
+        return (framesSaved - 1) * 1000.0 / (lastSavedAt - start);
+    }
+
+    public double getTargetFps() {
+        return 1000.0 / interval;
+    }
+
+    public synchronized String toJson() {
+        return String.format(Locale.US, "{\"interval_ms\":%d,\"policy\":\"%s\",\"finished\":%b,"
+                        + "\"frames_captured\":%d,\"frames_saved\":%d,\"dropped_late\":%d,\"dropped_busy\":%d,"
+                        + "\"dropped_pipeline\":%d,\"target_fps\":%.3f,\"achieved_fps\":%.3f}",
+                interval, policy, isFinished(), framesCaptured, framesSaved, droppedLate, droppedBusy,
+                droppedByPipeline, getTargetFps(), getAchievedFps());
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "%d saved at %.2f fps (target %.2f), %d dropped (%d late, %d busy, %d pipeline)",
+                framesSaved, getAchievedFps(), getTargetFps(), getFramesDropped(), droppedLate, droppedBusy,
+                droppedByPipeline);
+    }
+}
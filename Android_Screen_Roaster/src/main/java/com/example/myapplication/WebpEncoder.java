@@ -0,0 +1,51 @@
+package com.example.myapplication;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+public class WebpEncoder extends BitmapCompressEncoder {
+    private final boolean lossless;
+
+    public WebpEncoder(boolean lossless, int quality) {
+        super(quality);
+        this.lossless = lossless;
+    }
+
+    public boolean isLossless() {
+        return lossless;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    protected Bitmap.CompressFormat getCompressFormat() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return lossless ? Bitmap.CompressFormat.WEBP_LOSSLESS : Bitmap.CompressFormat.WEBP_LOSSY;
+        }
+        // The legacy format switches to lossless at quality 100 from Android 10 on; ScreenshotEncoders
+        // hands out PNG instead of lossless WebP before that
+        return Bitmap.CompressFormat.WEBP;
+    }
+
+    @Override
+    public int getQuality() {
+        if (lossless && Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+            return 100;
+        }
+        return super.getQuality();
+    }
+
+    @Override
+    public String getName() {
+        return lossless ? ScreenshotEncoders.FORMAT_WEBP_LOSSLESS : ScreenshotEncoders.FORMAT_WEBP;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return "webp";
+    }
+
+    @Override
+    public String getMimeType() {
+        return "image/webp";
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CaptureEventBusTest {
+
+    // Runs scheduled flushes only when told to, like a main thread busy until then
+    private static class ManualScheduler implements CaptureEventBus.Scheduler {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            List<Runnable> due = new ArrayList<>(tasks);
+            tasks.clear();
+            for (Runnable task : due) {
+                task.run();
+            }
+        }
+    }
+
+    private static class RecordingListener implements CaptureEventBus.Listener {
+        final List<List<CaptureEvent>> batches = new ArrayList<>();
+
+        @Override
+        public void onCaptureEvents(List<CaptureEvent> events) {
+            batches.add(new ArrayList<>(events));
+        }
+    }
+
+    @Test
+    public void burstIsDeliveredAsOneBatch() {
+        ManualScheduler scheduler = new ManualScheduler();
+        CaptureEventBus bus = new CaptureEventBus(scheduler);
+        RecordingListener listener = new RecordingListener();
+        bus.register(listener);
+
+        for (int i = 0; i < 30; i++) {
+            bus.publish(CaptureEvent.saved("/shot" + i + ".png"));
+        }
+        assertEquals(1, scheduler.tasks.size());
+        scheduler.runAll();
+
+        assertEquals(1, listener.batches.size());
+        assertEquals(30, listener.batches.get(0).size());
+        assertEquals("/shot0.png", listener.batches.get(0).get(0).getPath());
+    }
+
+    @Test
+    public void everySubscriberGetsTheBatch() {
+        ManualScheduler scheduler = new ManualScheduler();
+        CaptureEventBus bus = new CaptureEventBus(scheduler);
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        bus.register(first);
+        bus.register(second);
+
+        bus.publish(CaptureEvent.failed("no frame"));
+        scheduler.runAll();
+
+        assertEquals(1, first.batches.size());
+        assertEquals(1, second.batches.size());
+        assertEquals(CaptureEvent.Type.FAILED, second.batches.get(0).get(0).getType());
+    }
+
+    @Test
+    public void eventsWithoutSubscribersAreReplayedToTheNextOne() {
+        ManualScheduler scheduler = new ManualScheduler();
+        CaptureEventBus bus = new CaptureEventBus(scheduler);
+        RecordingListener gone = new RecordingListener();
+        bus.register(gone);
+        bus.unregister(gone);
+
+        bus.publish(CaptureEvent.saved("/a.png"));
+        bus.publish(CaptureEvent.timelapseFinished("3 saved"));
+        scheduler.runAll();
+        assertTrue(gone.batches.isEmpty());
+
+        RecordingListener back = new RecordingListener();
+        bus.register(back);
+        assertEquals(1, back.batches.size());
+        assertEquals(2, back.batches.get(0).size());
+        assertEquals("3 saved", back.batches.get(0).get(1).getMessage());
+
+        // Replayed once only
+        RecordingListener another = new RecordingListener();
+        bus.register(another);
+        assertTrue(another.batches.isEmpty());
+    }
+
+    @Test
+    public void replayKeepsTheNewestEvents() {
+        ManualScheduler scheduler = new ManualScheduler();
+        CaptureEventBus bus = new CaptureEventBus(scheduler);
+        int published = CaptureEventBus.MAX_MISSED_EVENTS + 5;
+        for (int i = 0; i < published; i++) {
+            bus.publish(CaptureEvent.skipped("/dup" + i + ".png"));
+        }
+        scheduler.runAll();
+
+        RecordingListener listener = new RecordingListener();
+        bus.register(listener);
+
+        List<CaptureEvent> replayed = listener.batches.get(0);
+        assertEquals(CaptureEventBus.MAX_MISSED_EVENTS, replayed.size());
+        assertEquals("/dup5.png", replayed.get(0).getPath());
+        assertEquals(5, bus.getMissedDropped());
+    }
+
+    @Test
+    public void publishingAfterAFlushSchedulesAnother() {
+        ManualScheduler scheduler = new ManualScheduler();
+        CaptureEventBus bus = new CaptureEventBus(scheduler);
+        RecordingListener listener = new RecordingListener();
+        bus.register(listener);
+
+        bus.publish(CaptureEvent.saved("/a.png"));
+        scheduler.runAll();
+        bus.publish(CaptureEvent.saved("/b.png"));
+        scheduler.runAll();
+
+        assertEquals(2, listener.batches.size());
+    }
+}
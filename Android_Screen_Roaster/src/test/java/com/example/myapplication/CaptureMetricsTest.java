@@ -0,0 +1,62 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class CaptureMetricsTest {
+
+    @Test
+    public void jsonHasCountersAndEveryStage() {
+        CaptureMetrics metrics = new CaptureMetrics();
+        metrics.record(CaptureMetrics.Stage.ENCODE, 12_000_000);
+        metrics.onFrameWritten(345_678);
+        metrics.onFrameDropped();
+        metrics.onFrameSkipped();
+
+        String json = metrics.toJson();
+
+        assertTrue(json, json.contains("\"frames_written\":1"));
+        assertTrue(json, json.contains("\"bytes_written\":345678"));
+        assertTrue(json, json.contains("\"frames_dropped\":1"));
+        assertTrue(json, json.contains("\"frames_skipped\":1"));
+        assertTrue(json, json.contains("\"encode\":{\"count\":1,\"mean_ns\":12000000"));
+        for (CaptureMetrics.Stage stage : CaptureMetrics.Stage.values()) {
+            assertTrue(stage.getKey(), json.contains("\"" + stage.getKey() + "\":{"));
+        }
+        assertTrue(json.startsWith("{") && json.endsWith("}}"));
+    }
+
+    @Test
+    public void dumpListsStagesInMilliseconds() {
+        CaptureMetrics metrics = new CaptureMetrics();
+        metrics.record(CaptureMetrics.Stage.FILE_WRITE, 2_500_000);
+        StringWriter out = new StringWriter();
+
+        metrics.dump(new PrintWriter(out));
+
+        String text = out.toString();
+        assertTrue(text, text.contains("file_write"));
+        assertTrue(text, text.contains("2.500"));
+    }
+
+    @Test
+    public void resetClearsCounters() {
+        CaptureMetrics metrics = new CaptureMetrics();
+        metrics.record(CaptureMetrics.Stage.ENCODE, 1);
+        metrics.onFrameWritten(10);
+        metrics.onFrameFailed();
+        metrics.onFrameSkipped();
+
+        metrics.reset();
+
+        assertEquals(0, metrics.getFramesWritten());
+        assertEquals(0, metrics.getBytesWritten());
+        assertEquals(0, metrics.getFramesFailed());
+        assertEquals(0, metrics.getFramesSkipped());
+        assertEquals(0, metrics.getHistogram(CaptureMetrics.Stage.ENCODE).getCount());
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class CapturePipelineTest {
+    private static final long TIMEOUT_MS = 5_000;
+
+    private final List<Integer> completed = new CopyOnWriteArrayList<>();
+    private final List<Integer> dropped = new CopyOnWriteArrayList<>();
+    private final List<Integer> failed = new CopyOnWriteArrayList<>();
+    // Job 0 holds the first stage until released, so later jobs pile up in its queue
+    private final CountDownLatch firstJobStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseFirstJob = new CountDownLatch(1);
+    private CapturePipeline<Integer> pipeline;
+
+    private final CapturePipeline.Listener<Integer> listener = new CapturePipeline.Listener<Integer>() {
+        @Override
+        public void onCompleted(Integer job) {
+            completed.add(job);
+        }
+
+        @Override
+        public void onFailed(Integer job, Exception error) {
+            failed.add(job);
+        }
+
+        @Override
+        public void onDropped(Integer job) {
+            dropped.add(job);
+        }
+    };
+
+    private final CapturePipeline.Stage<Integer> gate = job -> {
+        if (job == 0) {
+            firstJobStarted.countDown();
+            assertTrue(releaseFirstJob.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+    };
+
+    private CapturePipeline<Integer> startGated(CapturePipeline.BackpressurePolicy policy) throws InterruptedException {
+        pipeline = new CapturePipeline<>(1, policy, listener);
+        pipeline.addStage("gate", gate).start();
+        assertTrue(pipeline.submit(0));
+        assertTrue(firstJobStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        return pipeline;
+    }
+
+    private void finish() throws InterruptedException {
+        releaseFirstJob.countDown();
+        pipeline.shutdown();
+        pipeline.awaitTermination(TIMEOUT_MS);
+    }
+
+    @After
+    public void tearDown() {
+        releaseFirstJob.countDown();
+        if (pipeline != null) {
+            pipeline.shutdownNow();
+        }
+    }
+
+    @Test
+    public void dropOldest_evictsTheQueuedJobAndCountsIt() throws InterruptedException {
+        startGated(CapturePipeline.BackpressurePolicy.DROP_OLDEST);
+
+        assertTrue(pipeline.submit(1));
+        assertTrue(pipeline.submit(2));
+        finish();
+
+        assertEquals(Collections.singletonList(1), dropped);
+        assertEquals(1, pipeline.getDroppedCount());
+        assertEquals(Arrays.asList(0, 2), completed);
+    }
+
+    @Test
+    public void reject_refusesTheNewJob() throws InterruptedException {
+        startGated(CapturePipeline.BackpressurePolicy.REJECT);
+
+        assertTrue(pipeline.submit(1));
+        assertFalse(pipeline.submit(2));
+        finish();
+
+        assertEquals(Collections.singletonList(2), dropped);
+        assertEquals(1, pipeline.getDroppedCount());
+        assertEquals(Arrays.asList(0, 1), completed);
+    }
+
+    @Test
+    public void block_makesTheProducerWaitForRoom() throws InterruptedException {
+        startGated(CapturePipeline.BackpressurePolicy.BLOCK);
+        assertTrue(pipeline.submit(1));
+
+        AtomicBoolean accepted = new AtomicBoolean();
+        Thread producer = new Thread(() -> accepted.set(pipeline.submit(2)));
+        producer.start();
+        producer.join(200);
+        assertTrue("Producer should wait while the queue is full", producer.isAlive());
+
+        releaseFirstJob.countDown();
+        producer.join(TIMEOUT_MS);
+        assertFalse(producer.isAlive());
+        assertTrue(accepted.get());
+        finish();
+
+        assertTrue(dropped.isEmpty());
+        assertEquals(Arrays.asList(0, 1, 2), completed);
+    }
+
+    @Test
+    public void shutdown_drainsEveryStageBeforeStopping() throws InterruptedException {
+        List<String> trace = new CopyOnWriteArrayList<>();
+        pipeline = new CapturePipeline<>(8, CapturePipeline.BackpressurePolicy.BLOCK, listener);
+        pipeline.addStage("first", job -> trace.add("first " + job))
+                .addStage("second", job -> {
+                    if (job == 3) {
+                        throw new IllegalStateException("stage failure");
+                    }
+                    trace.add("second " + job);
+                })
+                .start();
+        for (int i = 0; i < 6; i++) {
+            assertTrue(pipeline.submit(i));
+        }
+
+        pipeline.shutdown();
+        assertFalse("Jobs after shutdown are refused", pipeline.submit(6));
+        pipeline.awaitTermination(TIMEOUT_MS);
+
+        assertEquals(Arrays.asList(0, 1, 2, 4, 5), completed);
+        assertEquals(Collections.singletonList(3), failed);
+        assertEquals(Collections.singletonList(6), dropped);
+        assertEquals(6, trace.stream().filter(step -> step.startsWith("first")).count());
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CaptureProfileTest {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 2400;
+    private static final int DENSITY = 420;
+    private static final int STATUS_BAR = 63;
+    private static final int NAVIGATION_BAR = 126;
+
+    private static CaptureProfile.Layout resolve(CaptureProfile profile) {
+        return profile.resolve(WIDTH, HEIGHT, DENSITY, STATUS_BAR, NAVIGATION_BAR);
+    }
+
+    @Test
+    public void fullProfileKeepsTheWholeScreen() {
+        CaptureProfile.Layout layout = resolve(CaptureProfile.FULL);
+
+        assertEquals(WIDTH, layout.getDisplayWidth());
+        assertEquals(HEIGHT, layout.getDisplayHeight());
+        assertEquals(DENSITY, layout.getDensityDpi());
+        assertEquals(0, layout.getLeft());
+        assertEquals(0, layout.getTop());
+        assertEquals(WIDTH, layout.getWidth());
+        assertEquals(HEIGHT, layout.getHeight());
+    }
+
+    @Test
+    public void halfProfileShrinksTheDisplay() {
+        CaptureProfile.Layout layout = resolve(CaptureProfile.preset(CaptureProfile.PROFILE_HALF));
+
+        assertEquals(540, layout.getDisplayWidth());
+        assertEquals(1200, layout.getDisplayHeight());
+        assertEquals(210, layout.getDensityDpi());
+        assertEquals(540, layout.getWidth());
+        assertEquals(1200, layout.getHeight());
+    }
+
+    @Test
+    public void contentProfileCropsTheSystemBars() {
+        CaptureProfile.Layout portrait = resolve(CaptureProfile.preset(CaptureProfile.PROFILE_CONTENT));
+        assertEquals(STATUS_BAR, portrait.getTop());
+        assertEquals(HEIGHT - STATUS_BAR - NAVIGATION_BAR, portrait.getHeight());
+        assertEquals(WIDTH, portrait.getWidth());
+
+        // In landscape the navigation bar sits on the right
+        CaptureProfile.Layout landscape = CaptureProfile.preset(CaptureProfile.PROFILE_CONTENT)
+                .resolve(HEIGHT, WIDTH, DENSITY, STATUS_BAR, NAVIGATION_BAR);
+        assertEquals(HEIGHT - NAVIGATION_BAR, landscape.getWidth());
+        assertEquals(WIDTH - STATUS_BAR, landscape.getHeight());
+    }
+
+    @Test
+    public void scaledCropIsRoundedOutwards() {
+        CaptureProfile profile = CaptureProfile.FULL.withScale(0.5f).withCrop("101, 201, 303, 403");
+        CaptureProfile.Layout layout = resolve(profile);
+
+        assertEquals(50, layout.getLeft());
+        assertEquals(100, layout.getTop());
+        assertEquals(152 - 50, layout.getWidth());
+        assertEquals(202 - 100, layout.getHeight());
+    }
+
+    @Test
+    public void cropIsClampedToTheScreen() {
+        CaptureProfile.Layout layout = resolve(CaptureProfile.FULL.withCrop("0,2000,5000,5000"));
+
+        assertEquals(WIDTH, layout.getWidth());
+        assertEquals(400, layout.getHeight());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCropOffTheScreen() {
+        resolve(CaptureProfile.FULL.withCrop("0,2500,100,2600"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsScaleAboveOne() {
+        CaptureProfile.FULL.withScale(2f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMalformedCrop() {
+        CaptureProfile.FULL.withCrop("10,10,5");
+    }
+}
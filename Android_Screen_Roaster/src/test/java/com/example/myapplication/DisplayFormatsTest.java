@@ -0,0 +1,48 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class DisplayFormatsTest {
+
+    // What Screenshot.getFormattedSize() used to do
+    private static String legacySize(long bytes, Locale locale) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        } else if (bytes < 1024 * 1024) {
+            return String.format(locale, "%.1f KB", bytes / 1024.0);
+        } else {
+            return String.format(locale, "%.1f MB", bytes / (1024.0 * 1024.0));
+        }
+    }
+
+    @Test
+    public void sizesMatchStringFormat() {
+        long[] sizes = {0, 1, 1023, 1024, 1075, 1126, 10_239, 1_048_575, 1_048_576, 3_456_789, 5_000_000_000L};
+        for (Locale locale : new Locale[] {Locale.US, Locale.GERMANY, Locale.FRANCE}) {
+            DisplayFormats formats = DisplayFormats.forLocale(locale);
+            for (long size : sizes) {
+                assertEquals(locale + " " + size, legacySize(size, locale), formats.formatSize(size));
+            }
+        }
+    }
+
+    @Test
+    public void dateMatchesSimpleDateFormat() {
+        long time = 1_700_000_000_000L;
+        String expected = new SimpleDateFormat("MMM d, yyyy • h:mm a", Locale.US).format(new Date(time));
+
+        assertEquals(expected, DisplayFormats.forLocale(Locale.US).formatDate(time));
+    }
+
+    @Test
+    public void formattersAreSharedPerLocale() {
+        assertSame(DisplayFormats.forLocale(Locale.US), DisplayFormats.forLocale(Locale.US));
+        assertNotSame(DisplayFormats.forLocale(Locale.US), DisplayFormats.forLocale(Locale.GERMANY));
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class FileScreenshotStorageTest {
+    private File directory;
+    private FileScreenshotStorage storage;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("screenshots").toFile();
+        storage = new FileScreenshotStorage(directory, ScreenshotStorage.Durability.DATA);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private ScreenshotStorage.Entry save(String name, byte[] data) throws IOException {
+        ScreenshotStorage.PendingWrite write = storage.create(name, "image/png", 0, 1080, 2400);
+        write.getOutputStream().write(data);
+        return write.commit();
+    }
+
+    @Test
+    public void commit_movesIntoPlaceUnderRequestedName() throws IOException {
+        ScreenshotStorage.Entry entry = save("Screenshot_1.png", new byte[] {1, 2, 3});
+
+        File file = new File(directory, "Screenshot_1.png");
+        assertEquals(file.getAbsolutePath(), entry.getPath());
+        assertEquals(3, entry.getSize());
+        assertEquals(1080, entry.getWidth());
+        assertEquals(2400, entry.getHeight());
+        assertArrayEquals(new byte[] {1, 2, 3}, Files.readAllBytes(file.toPath()));
+        assertArrayEquals(new String[] {"Screenshot_1.png"}, directory.list());
+    }
+
+    @Test
+    public void uncommittedWrite_isNotListed() throws IOException {
+        ScreenshotStorage.PendingWrite write = storage.create("Screenshot_1.png", "image/png", 0, 1, 1);
+        write.getOutputStream().write(new byte[100]);
+        write.getOutputStream().flush();
+
+        assertTrue(storage.list().isEmpty());
+        assertNull(storage.query(new File(directory, "Screenshot_1.png").getPath()));
+        write.abort();
+    }
+
+    @Test
+    public void commit_neverReplacesAnExistingScreenshot() throws IOException {
+        save("Screenshot_1.png", new byte[] {1});
+        ScreenshotStorage.Entry second = save("Screenshot_1.png", new byte[] {2});
+        ScreenshotStorage.Entry third = save("Screenshot_1.png", new byte[] {3});
+
+        assertEquals(new File(directory, "Screenshot_1_1.png").getAbsolutePath(), second.getPath());
+        assertEquals(new File(directory, "Screenshot_1_2.png").getAbsolutePath(), third.getPath());
+        assertArrayEquals(new byte[] {1}, Files.readAllBytes(new File(directory, "Screenshot_1.png").toPath()));
+    }
+
+    @Test
+    public void sameNameWritesInFlight_doNotShareATempFile() throws IOException {
+        ScreenshotStorage.PendingWrite first = storage.create("Screenshot_1.png", "image/png", 0, 1, 1);
+        ScreenshotStorage.PendingWrite second = storage.create("Screenshot_1.png", "image/png", 0, 1, 1);
+        first.getOutputStream().write(new byte[] {1});
+        second.getOutputStream().write(new byte[] {2, 2});
+
+        assertEquals(1, first.commit().getSize());
+        assertEquals(2, second.commit().getSize());
+    }
+
+    @Test
+    public void concurrentCommitsOfOneName_neverReplaceEachOther() throws Exception {
+        int writers = 8;
+        // Separate instances, like one built before a durability change and one after
+        ScreenshotStorage other = new FileScreenshotStorage(directory, ScreenshotStorage.Durability.NONE);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            List<Future<ScreenshotStorage.Entry>> commits = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                ScreenshotStorage target = i % 2 == 0 ? storage : other;
+                ScreenshotStorage.PendingWrite write = target.create("Screenshot_1.png", "image/png", 0, 1, 1);
+                write.getOutputStream().write(new byte[i + 1]);
+                commits.add(executor.submit(() -> {
+                    start.await();
+                    return write.commit();
+                }));
+            }
+            start.countDown();
+
+            Set<String> paths = new HashSet<>();
+            Set<Long> sizes = new HashSet<>();
+            for (Future<ScreenshotStorage.Entry> commit : commits) {
+                ScreenshotStorage.Entry entry = commit.get();
+                paths.add(entry.getPath());
+                sizes.add(new File(entry.getPath()).length());
+            }
+            assertEquals(writers, paths.size());
+            assertEquals(writers, sizes.size());
+            assertEquals(writers, storage.list().size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void abort_removesThePartialWrite() throws IOException {
+        ScreenshotStorage.PendingWrite write = storage.create("Screenshot_1.png", "image/png", 0, 1, 1);
+        write.getOutputStream().write(new byte[1000]);
+        write.abort();
+
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void sweepOrphans_removesOnlyUncommittedWritesFromBefore() throws IOException {
+        save("Screenshot_1.png", new byte[] {1});
+        storage.create("Screenshot_2.png", "image/png", 0, 1, 1).getOutputStream().write(new byte[10]);
+        long before = System.currentTimeMillis() + 10_000;
+
+        assertEquals(0, storage.sweepOrphans(0));
+        assertEquals(2, directory.list().length);
+        assertEquals(1, storage.sweepOrphans(before));
+
+        List<String> left = Arrays.asList(directory.list());
+        assertEquals(Arrays.asList("Screenshot_1.png"), left);
+    }
+
+    @Test
+    public void batchDelete_returnsOnlyThePathsThatWereDeleted() throws IOException {
+        String first = save("Screenshot_1.png", new byte[] {1}).getPath();
+        String second = save("Screenshot_2.png", new byte[] {2}).getPath();
+        String missing = new File(directory, "Screenshot_3.png").getAbsolutePath();
+
+        List<String> deleted = storage.delete(Arrays.asList(first, missing, second));
+
+        assertEquals(Arrays.asList(first, second), deleted);
+        assertEquals(0, directory.list().length);
+    }
+}
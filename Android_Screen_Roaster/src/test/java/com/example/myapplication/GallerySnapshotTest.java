@@ -0,0 +1,71 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class GallerySnapshotTest {
+    private static final DisplayFormats FORMATS = DisplayFormats.forLocale(Locale.US);
+
+    private static final List<Screenshot> ROWS = Arrays.asList(
+            new Screenshot("/sdcard/Pictures/Screenshots/Screenshot_2.png", 1_700_000_060_000L, 210_000L,
+                    1080, 2400, "png", false, FORMATS),
+            new Screenshot("/sdcard/Pictures/Screenshots/Schermata_ü.webp", 1_700_000_000_000L, 90_000L,
+                    0, 0, "webp", true, FORMATS));
+
+    @Test
+    public void roundTripKeepsRowsAndCachedThumbnails() {
+        byte[] data = GallerySnapshot.encode(120, ROWS, new boolean[] {true, false});
+
+        GallerySnapshot snapshot = GallerySnapshot.decode(ByteBuffer.wrap(data), FORMATS);
+
+        assertNotNull(snapshot);
+        assertEquals(120, snapshot.getCount());
+        assertEquals(2, snapshot.getRows().size());
+        for (int i = 0; i < ROWS.size(); i++) {
+            Screenshot expected = ROWS.get(i);
+            Screenshot actual = snapshot.getRows().get(i);
+            assertEquals(expected.getFilePath(), actual.getFilePath());
+            assertEquals(expected.getDateCreated(), actual.getDateCreated());
+            assertEquals(expected.getFileSize(), actual.getFileSize());
+            assertEquals(expected.getSizeInfo(), actual.getSizeInfo());
+            assertEquals(expected.getFormat(), actual.getFormat());
+            assertEquals(expected.isDuplicate(), actual.isDuplicate());
+        }
+        assertEquals(Arrays.asList(ROWS.get(0).getThumbnailKey()), snapshot.getThumbnailKeys());
+    }
+
+    @Test
+    public void damagedOrTruncatedDataIsIgnored() {
+        byte[] data = GallerySnapshot.encode(2, ROWS, new boolean[2]);
+
+        byte[] flipped = data.clone();
+        flipped[20] ^= 1;
+        assertNull(GallerySnapshot.decode(ByteBuffer.wrap(flipped), FORMATS));
+        assertNull(GallerySnapshot.decode(ByteBuffer.wrap(Arrays.copyOf(data, data.length - 9)), FORMATS));
+        assertNull(GallerySnapshot.decode(ByteBuffer.wrap(new byte[0]), FORMATS));
+    }
+
+    @Test
+    public void fileIsReadThroughAMap() throws IOException {
+        File dir = Files.createTempDirectory("snapshot").toFile();
+        File file = new File(dir, "gallery_snapshot");
+        assertNull(GallerySnapshot.read(file, FORMATS));
+
+        GallerySnapshot.write(file, 2, ROWS, new boolean[] {false, true});
+        GallerySnapshot snapshot = GallerySnapshot.read(file, FORMATS);
+
+        assertNotNull(snapshot);
+        assertEquals(ROWS.get(1).getFilePath(), snapshot.getRows().get(1).getFilePath());
+        assertEquals(Arrays.asList(ROWS.get(1).getThumbnailKey()), snapshot.getThumbnailKeys());
+        assertFalse(new File(dir, "gallery_snapshot.tmp").exists());
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+public class ImageHeaderParserTest {
+
+    private static byte[] encode(String format, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(image, format, out));
+        return out.toByteArray();
+    }
+
+    private static int[] parse(byte[] data) throws IOException {
+        return ImageHeaderParser.readDimensions(new ByteArrayInputStream(data));
+    }
+
+    private static byte[] webp(String chunk, byte[] payload) {
+        byte[] data = new byte[20 + payload.length];
+        System.arraycopy("RIFF".getBytes(), 0, data, 0, 4);
+        System.arraycopy("WEBP".getBytes(), 0, data, 8, 4);
+        System.arraycopy(chunk.getBytes(), 0, data, 12, 4);
+        data[16] = (byte) payload.length;
+        System.arraycopy(payload, 0, data, 20, payload.length);
+        return data;
+    }
+
+    @Test
+    public void png() throws IOException {
+        assertArrayEquals(new int[] {1080, 2400}, parse(encode("png", 1080, 2400)));
+    }
+
+    @Test
+    public void jpeg() throws IOException {
+        assertArrayEquals(new int[] {1440, 3200}, parse(encode("jpg", 1440, 3200)));
+    }
+
+    @Test
+    public void jpeg_skipsLargeSegmentsBeforeFrame() throws IOException {
+        byte[] plain = encode("jpg", 720, 1600);
+        // Splice a 40 KB APP1 segment, as EXIF data would be, right after SOI
+        int appLength = 40_000;
+        byte[] data = new byte[plain.length + appLength + 2];
+        data[0] = (byte) 0xFF;
+        data[1] = (byte) 0xD8;
+        data[2] = (byte) 0xFF;
+        data[3] = (byte) 0xE1;
+        data[4] = (byte) (appLength >>> 8);
+        data[5] = (byte) appLength;
+        System.arraycopy(plain, 2, data, 4 + appLength, plain.length - 2);
+
+        assertArrayEquals(new int[] {720, 1600}, parse(data));
+    }
+
+    @Test
+    public void webpLossless() throws IOException {
+        int bits = (1080 - 1) | ((2400 - 1) << 14);
+        byte[] payload = {0x2F, (byte) bits, (byte) (bits >>> 8), (byte) (bits >>> 16), (byte) (bits >>> 24), 0, 0, 0, 0, 0};
+
+        assertArrayEquals(new int[] {1080, 2400}, parse(webp("VP8L", payload)));
+    }
+
+    @Test
+    public void webpLossy() throws IOException {
+        byte[] payload = {0, 0, 0, (byte) 0x9D, 0x01, 0x2A,
+                (byte) (1080 & 0xFF), (byte) (1080 >>> 8), (byte) (2400 & 0xFF), (byte) (2400 >>> 8)};
+
+        assertArrayEquals(new int[] {1080, 2400}, parse(webp("VP8 ", payload)));
+    }
+
+    @Test
+    public void webpExtended() throws IOException {
+        int w = 1439;
+        int h = 3199;
+        byte[] payload = {0x10, 0, 0, 0, (byte) w, (byte) (w >>> 8), 0, (byte) h, (byte) (h >>> 8), 0};
+
+        assertArrayEquals(new int[] {1440, 3200}, parse(webp("VP8X", payload)));
+    }
+
+    @Test
+    public void unknownFormat() throws IOException {
+        assertNull(parse("GIF89a-not-supported-here-at-all".getBytes()));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedPng() throws IOException {
+        byte[] png = encode("png", 10, 10);
+        byte[] truncated = new byte[20];
+        System.arraycopy(png, 0, truncated, 0, truncated.length);
+        parse(truncated);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0.99));
+        assertEquals(0, histogram.getMean());
+    }
+
+    @Test
+    public void bucketsCoverEveryValueWithinPrecision() {
+        long[] values = {0, 1, 7, 8, 15, 16, 17, 1_000, 999_999, 16_666_667, 1L << 40, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            long upper = LatencyHistogram.upperBoundOf(bucket);
+            assertTrue(value + " above its bucket", value <= upper);
+            // Upper bound is within 12.5% of the value
+            assertTrue(value + " bucket too wide", upper - value <= value / 8);
+            if (bucket > 0) {
+                assertTrue(value + " below its bucket", value > LatencyHistogram.upperBoundOf(bucket - 1));
+            }
+        }
+    }
+
+    @Test
+    public void percentilesOfUniformDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long millis = 1; millis <= 1000; millis++) {
+            histogram.record(millis * 1_000_000);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000_000L, histogram.getMax());
+        assertEquals(500_500_000L, histogram.getMean());
+        assertWithin(500_000_000L, histogram.getPercentile(0.5));
+        assertWithin(950_000_000L, histogram.getPercentile(0.95));
+        assertWithin(990_000_000L, histogram.getPercentile(0.99));
+        assertEquals(1_000_000_000L, histogram.getPercentile(1.0));
+    }
+
+    @Test
+    public void percentilesMatchSortedSamples() {
+        Random random = new Random(3);
+        long[] samples = new long[10_000];
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < samples.length; i++) {
+            // Log-normal-ish latencies around 20 ms with a long tail
+            samples[i] = (long) (20_000_000 * Math.exp(random.nextGaussian() * 0.7));
+            histogram.record(samples[i]);
+        }
+        Arrays.sort(samples);
+
+        for (double quantile : new double[] {0.5, 0.95, 0.99}) {
+            long exact = samples[(int) Math.ceil(quantile * samples.length) - 1];
+            assertWithin(exact, histogram.getPercentile(quantile));
+        }
+    }
+
+    @Test
+    public void negativeDurationsAreClampedToZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(0.5));
+    }
+
+    @Test
+    public void concurrentRecordingLosesNothing() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40_000, histogram.getCount());
+        assertEquals(9_999, histogram.getMax());
+    }
+
+    // Reported percentiles are bucket upper bounds: never below the exact value, at most 12.5% above
+    private static void assertWithin(long exact, long reported) {
+        assertTrue(reported + " < " + exact, reported >= exact);
+        assertTrue(reported + " too far above " + exact, reported - exact <= exact / 8);
+    }
+}
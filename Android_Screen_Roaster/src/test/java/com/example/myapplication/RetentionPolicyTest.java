@@ -0,0 +1,73 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RetentionPolicyTest {
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final long NOW = 100 * DAY;
+
+    private static final List<RetentionPolicy.Candidate> CANDIDATES = Arrays.asList(
+            new RetentionPolicy.Candidate("a", 400, NOW - 30 * DAY),
+            new RetentionPolicy.Candidate("b", 300, NOW - 10 * DAY),
+            new RetentionPolicy.Candidate("c", 200, NOW - 2 * DAY),
+            new RetentionPolicy.Candidate("d", 100, NOW - DAY));
+
+    private static String paths(List<RetentionPolicy.Candidate> candidates) {
+        StringBuilder builder = new StringBuilder();
+        for (RetentionPolicy.Candidate candidate : candidates) {
+            builder.append(candidate.getPath());
+        }
+        return builder.toString();
+    }
+
+    @Test
+    public void noLimitsEvictNothing() {
+        assertFalse(RetentionPolicy.NONE.hasLimits());
+        assertFalse(RetentionPolicy.NONE.isOverQuota(Long.MAX_VALUE, Integer.MAX_VALUE));
+        assertEquals("", paths(RetentionPolicy.NONE.selectEvictions(1000, 4, CANDIDATES, NOW)));
+    }
+
+    @Test
+    public void byteLimitEvictsLeastRecentlyUsedUntilWithin() {
+        RetentionPolicy policy = new RetentionPolicy(500, 0, 0, 0);
+
+        assertTrue(policy.isOverQuota(1000, 4));
+        assertEquals("ab", paths(policy.selectEvictions(1000, 4, CANDIDATES, NOW)));
+        assertFalse(policy.isOverQuota(500, 4));
+    }
+
+    @Test
+    public void countLimitEvictsTheOldestOnes() {
+        RetentionPolicy policy = new RetentionPolicy(0, 3, 0, 0);
+
+        assertEquals("a", paths(policy.selectEvictions(1000, 4, CANDIDATES, NOW)));
+    }
+
+    @Test
+    public void maxAgeEvictsEverythingUnusedForLonger() {
+        RetentionPolicy policy = new RetentionPolicy(0, 0, 5 * DAY, 0);
+
+        assertFalse(policy.isOverQuota(1000, 4));
+        assertTrue(policy.isExpired(NOW - 6 * DAY, NOW));
+        assertEquals("ab", paths(policy.selectEvictions(1000, 4, CANDIDATES, NOW)));
+    }
+
+    @Test
+    public void limitsCombine() {
+        RetentionPolicy policy = new RetentionPolicy(250, 0, 20 * DAY, 0);
+
+        assertEquals("abc", paths(policy.selectEvictions(1000, 4, CANDIDATES, NOW)));
+        assertEquals("", paths(policy.selectEvictions(1000, 4, Collections.emptyList(), NOW)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeLimitsAreRejected() {
+        new RetentionPolicy(-1, 0, 0, 0);
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.myapplication;
+
+import android.os.Build;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScreenshotEncodersTest {
+
+    @Test
+    public void losslessWebpFallsBackToPngBeforeAndroid10() {
+        ScreenshotEncoder encoder = ScreenshotEncoders.create(ScreenshotEncoders.FORMAT_WEBP_LOSSLESS,
+                ScreenshotEncoders.DEFAULT_QUALITY, Build.VERSION_CODES.P);
+
+        assertTrue(encoder instanceof PngEncoder);
+        assertEquals("png", encoder.getFileExtension());
+    }
+
+    @Test
+    public void losslessWebpFromAndroid10On() {
+        ScreenshotEncoder encoder = ScreenshotEncoders.create(ScreenshotEncoders.FORMAT_WEBP_LOSSLESS,
+                ScreenshotEncoders.DEFAULT_QUALITY, Build.VERSION_CODES.Q);
+
+        assertTrue(encoder instanceof WebpEncoder);
+        assertTrue(((WebpEncoder) encoder).isLossless());
+        assertEquals(ScreenshotEncoders.FORMAT_WEBP_LOSSLESS, encoder.getName());
+    }
+
+    @Test
+    public void lossyWebpIsAvailableOnEveryVersion() {
+        ScreenshotEncoder encoder = ScreenshotEncoders.create(ScreenshotEncoders.FORMAT_WEBP,
+                ScreenshotEncoders.DEFAULT_QUALITY, Build.VERSION_CODES.O);
+
+        assertTrue(encoder instanceof WebpEncoder);
+        assertFalse(((WebpEncoder) encoder).isLossless());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownFormats() {
+        ScreenshotEncoders.create("bmp", ScreenshotEncoders.DEFAULT_QUALITY, Build.VERSION_CODES.Q);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TimelapseSchedulerTest {
+
+    @Test
+    public void ticksStayOnTheGridWhenTheTimerRunsLate() {
+        TimelapseScheduler scheduler = new TimelapseScheduler(1000, 100, 0, 0, TimelapseScheduler.DropPolicy.SKIP);
+
+        assertEquals(1000, scheduler.getNextTickAt());
+        assertTrue(scheduler.onTick(1000, false));
+        assertTrue(scheduler.onTick(1130, false));
+        // Still due at 1200, not 1230
+        assertEquals(1200, scheduler.getNextTickAt());
+        assertTrue(scheduler.onTick(1205, false));
+        assertEquals(1300, scheduler.getNextTickAt());
+        assertEquals(0, scheduler.getFramesDropped());
+    }
+
+    @Test
+    public void missedTicksAreDroppedNotBurst() {
+        TimelapseScheduler scheduler = new TimelapseScheduler(0, 100, 0, 0, TimelapseScheduler.DropPolicy.SKIP);
+
+        assertTrue(scheduler.onTick(0, false));
+        // The timer stalled past the ticks at 100, 200 and 300
+        assertTrue(scheduler.onTick(350, false));
+        assertFalse(scheduler.onTick(360, false));
+
+        assertEquals(400, scheduler.getNextTickAt());
+        assertEquals(2, scheduler.getFramesDropped());
+    }
+
+    @Test
+    public void skipPolicyDropsTicksWhileBusy() {
+        TimelapseScheduler skip = new TimelapseScheduler(0, 100, 0, 0, TimelapseScheduler.DropPolicy.SKIP);
+        TimelapseScheduler submit = new TimelapseScheduler(0, 100, 0, 0, TimelapseScheduler.DropPolicy.SUBMIT);
+
+        assertFalse(skip.onTick(0, true));
+        assertTrue(submit.onTick(0, true));
+        assertEquals(1, skip.getFramesDropped());
+        assertEquals(0, submit.getFramesDropped());
+    }
+
+    @Test
+    public void stopsAfterDurationOrFrameCount() {
+        TimelapseScheduler timed = new TimelapseScheduler(0, 100, 250, 0, TimelapseScheduler.DropPolicy.SKIP);
+        assertTrue(timed.onTick(0, false));
+        assertTrue(timed.onTick(100, false));
+        assertTrue(timed.onTick(200, false));
+        assertTrue(timed.isFinished());
+        assertEquals(TimelapseScheduler.FINISHED, timed.getNextTickAt());
+        assertFalse(timed.onTick(300, false));
+
+        TimelapseScheduler counted = new TimelapseScheduler(0, 100, 0, 2, TimelapseScheduler.DropPolicy.SKIP);
+        assertTrue(counted.onTick(0, false));
+        assertTrue(counted.onTick(100, false));
+        assertTrue(counted.isFinished());
+    }
+
+    @Test
+    public void lateTimerDoesNotCaptureAfterTheEnd() {
+        TimelapseScheduler scheduler = new TimelapseScheduler(0, 100, 300, 0, TimelapseScheduler.DropPolicy.SKIP);
+
+        assertTrue(scheduler.onTick(0, false));
+        assertTrue(scheduler.onTick(5000, false));
+
+        // Ticks 100 and 200 were due before the end; the capture stands in for the last of them
+        assertEquals(1, scheduler.getFramesDropped());
+        assertTrue(scheduler.isFinished());
+    }
+
+    @Test
+    public void reportsAchievedRateAndDrops() {
+        TimelapseScheduler scheduler = new TimelapseScheduler(0, 100, 0, 0, TimelapseScheduler.DropPolicy.SUBMIT);
+        for (int i = 0; i < 5; i++) {
+            scheduler.onTick(i * 100, false);
+            scheduler.onFrameSaved(i * 100 + 40);
+        }
+        scheduler.onTick(500, false);
+        scheduler.onFrameDropped();
+
+        assertEquals(5, scheduler.getFramesSaved());
+        assertEquals(1, scheduler.getFramesDropped());
+        assertEquals(4 * 1000.0 / 440, scheduler.getAchievedFps(), 1e-9);
+        String json = scheduler.toJson();
+        assertTrue(json, json.contains("\"frames_saved\":5"));
+        assertTrue(json, json.contains("\"dropped_pipeline\":1"));
+    }
+}
@@ -0,0 +1,72 @@
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+// Pure-Java capture pixel path, shared by the app and benchmarked on the JVM
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmhCore)
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    resultFormat.set("JSON")
+}
+
+// Fails when a benchmark got slower than jmh-baseline.json allows. Scores only compare on the
+// machine that recorded them, so the baseline is recorded on the CI runner with -PjmhRecordBaseline.
+val jmhResults = layout.buildDirectory.file("results/jmh/results.json")
+val jmhBaseline = layout.projectDirectory.file("jmh-baseline.json")
+
+tasks.register("jmhCheck") {
+    group = "verification"
+    description = "Compares the last JMH run with the recorded baseline."
+    mustRunAfter("jmh")
+    val recordBaseline = providers.gradleProperty("jmhRecordBaseline").isPresent
+    // Allowed slowdown as a fraction of the baseline score
+    val tolerance = providers.gradleProperty("jmhTolerance").map { it.toDouble() }.getOrElse(0.15)
+    doLast {
+        val results = jmhResults.get().asFile
+        val baseline = jmhBaseline.asFile
+        if (!results.isFile) {
+            throw GradleException("No JMH results at $results; run the jmh task first")
+        }
+        if (recordBaseline) {
+            results.copyTo(baseline, overwrite = true)
+            logger.lifecycle("Recorded $baseline")
+            return@doLast
+        }
+        if (!baseline.isFile) {
+            throw GradleException("No baseline at $baseline; record one with -PjmhRecordBaseline")
+        }
+
+        @Suppress("UNCHECKED_CAST")
+        fun scores(file: File): Map<String, Pair<String, Double>> =
+            (groovy.json.JsonSlurper().parse(file) as List<Map<String, Any?>>).associate { run ->
+                val params = (run["params"] as Map<String, Any?>?)?.toSortedMap()?.toString() ?: ""
+                val metric = run["primaryMetric"] as Map<String, Any?>
+                "${run["benchmark"]}$params" to Pair(run["mode"] as String, (metric["score"] as Number).toDouble())
+            }
+
+        val before = scores(baseline)
+        val regressions = scores(results).mapNotNull { (name, current) ->
+            val (mode, score) = current
+            val reference = before[name]?.second ?: return@mapNotNull null
+            // Throughput drops when slower, every other mode measures time and grows
+            val slowdown = if (mode == "thrpt") 1 - score / reference else score / reference - 1
+            if (slowdown > tolerance) "$name: %.3f -> %.3f (%+.0f%%)".format(reference, score, slowdown * 100) else null
+        }
+        if (regressions.isNotEmpty()) {
+            throw GradleException("Benchmarks slower than the baseline allows:\n" + regressions.joinToString("\n"))
+        }
+        logger.lifecycle("${before.size} baseline benchmarks within ${(tolerance * 100).toInt()}%")
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.myapplication;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The capture pixel path on frames laid out the way ImageReader hands out RGBA_8888 planes:
+ * a direct buffer with four bytes per pixel, rows padded to the driver's alignment, and the
+ * last row without its padding. Run with {@code ./gradlew :Pixel_Pipeline:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PixelPipelineBenchmark {
+    private static final int THUMBNAIL_SIZE = 240;
+    private static final int PNG_LEVEL = 6;
+
+    @Param({"720x1280", "1080x1920", "1080x2400", "1440x3200"})
+    public String resolution;
+
+    /** Row alignment in bytes; 0 means rows are tightly packed. */
+    @Param({"0", "64", "256"})
+    public int rowAlignment;
+
+    private int width;
+    private int height;
+    private int rowStride;
+    private ByteBuffer plane;
+    private int[] pixels;
+    private int thumbnailWidth;
+    private int thumbnailHeight;
+    private ForkJoinPool singleThread;
+    private ParallelPngWriter parallelWriter;
+    private ParallelPngWriter serialWriter;
+    private ByteArrayOutputStream encoded;
+    private long[] rowHashes;
+    private int[] scrolled;
+    private long[] scrolledHashes;
+    private TileChecksums tiles;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] size = resolution.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        int rowBytes = width * 4;
+        rowStride = rowAlignment == 0 ? rowBytes : (rowBytes + rowAlignment - 1) / rowAlignment * rowAlignment;
+
+        plane = ByteBuffer.allocateDirect(rowStride * (height - 1) + rowBytes).order(ByteOrder.LITTLE_ENDIAN);
+        int[] screen = createScreen(width, height);
+        for (int y = 0; y < height; y++) {
+            plane.position(y * rowStride);
+            for (int x = 0; x < width; x++) {
+                int argb = screen[y * width + x];
+                // RGBA byte order, as ImageReader delivers it
+                plane.put((byte) (argb >>> 16)).put((byte) (argb >>> 8)).put((byte) argb).put((byte) (argb >>> 24));
+            }
+        }
+        plane.clear();
+
+        pixels = new int[width * height];
+        PixelExtractor.extractArgb(plane, width, height, 4, rowStride, pixels);
+
+        int shortSide = Math.min(width, height);
+        thumbnailWidth = width * THUMBNAIL_SIZE / shortSide;
+        thumbnailHeight = height * THUMBNAIL_SIZE / shortSide;
+
+        singleThread = new ForkJoinPool(1);
+        parallelWriter = new ParallelPngWriter(ForkJoinPool.commonPool(), PNG_LEVEL);
+        serialWriter = new ParallelPngWriter(singleThread, PNG_LEVEL);
+        encoded = new ByteArrayOutputStream(width * height);
+
+        // The same screen with the content between the bars scrolled by a tenth of its height
+        int barHeight = height / 25;
+        int shift = height / 10;
+        scrolled = pixels.clone();
+        System.arraycopy(pixels, (barHeight + shift) * width, scrolled, barHeight * width,
+                (height - 2 * barHeight - shift) * width);
+        rowHashes = ScrollOverlapFinder.rowHashes(pixels, width, height);
+        scrolledHashes = new long[height];
+        tiles = new TileChecksums(width, height, 64);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        singleThread.shutdown();
+    }
+
+    /** Stride cropping plus the RGBA to ARGB conversion. */
+    @Benchmark
+    public int[] extractArgb() {
+        PixelExtractor.extractArgb(plane, width, height, 4, rowStride, pixels);
+        return pixels;
+    }
+
+    /** The same copy with the tile checksums for delta capture taken along the way. */
+    @Benchmark
+    public TileChecksums extractArgbWithTileChecksums() {
+        PixelExtractor.extractArgb(plane, width, height, 4, rowStride, pixels, tiles);
+        return tiles;
+    }
+
+    @Benchmark
+    public int[] downscaleThumbnail() {
+        return PixelScaler.downscale(pixels, width, height, thumbnailWidth, thumbnailHeight);
+    }
+
+    @Benchmark
+    public long perceptualHash() {
+        return PerceptualHash.dHash(pixels, width, height);
+    }
+
+    /** Row hashes of a new frame plus the overlap search against the previous one. */
+    @Benchmark
+    public int scrollOverlap() {
+        ScrollOverlapFinder.rowHashes(scrolled, width, height, scrolledHashes);
+        return ScrollOverlapFinder.find(rowHashes, scrolledHashes).getShift();
+    }
+
+    @Benchmark
+    public int encodePngParallel() throws IOException {
+        encoded.reset();
+        parallelWriter.write(pixels, width, height, encoded);
+        return encoded.size();
+    }
+
+    @Benchmark
+    public int encodePngSingleThread() throws IOException {
+        encoded.reset();
+        serialWriter.write(pixels, width, height, encoded);
+        return encoded.size();
+    }
+
+    // A settings-style screen: status bar, text lines of varying length and a few solid cards
+    private static int[] createScreen(int width, int height) {
+        int[] screen = new int[width * height];
+        Random random = new Random(1);
+        int barHeight = height / 25;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            if (y < barHeight || y >= height - barHeight) {
+                Arrays.fill(screen, row, row + width, 0xFF000000);
+                continue;
+            }
+            Arrays.fill(screen, row, row + width, 0xFFF6F2FA);
+        }
+
+        int lineHeight = Math.max(8, height / 48);
+        for (int top = barHeight * 2; top + lineHeight < height - barHeight * 2; top += lineHeight * 2) {
+            boolean card = random.nextInt(5) == 0;
+            int color = card ? 0xFF6750A4 : 0xFF49454F;
+            int x = width / 20;
+            int end = card ? width - width / 20 : x + random.nextInt(width * 3 / 4);
+            while (x < end) {
+                int glyph = card ? end - x : 2 + random.nextInt(width / 40 + 1);
+                for (int y = top; y < top + lineHeight; y++) {
+                    Arrays.fill(screen, y * width + x, y * width + Math.min(x + glyph, end), color);
+                }
+                x += glyph + (card ? 0 : 1 + random.nextInt(4));
+            }
+        }
+        return screen;
+    }
+}
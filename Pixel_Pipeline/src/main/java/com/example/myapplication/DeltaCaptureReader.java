@@ -0,0 +1,217 @@
+package com.example.myapplication;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads frames back from a file written by {@link DeltaCaptureWriter}. Opening scans the record
+ * headers only; a frame is rebuilt from the last keyframe before it plus the deltas in between.
+ * Reading frames in order only applies one delta each. A record cut short, as left by a capture
+ * that died mid-write, ends the file. Not thread-safe.
+ */
+public class DeltaCaptureReader implements Closeable {
+    private final RandomAccessFile file;
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int columns;
+    private final Inflater inflater = new Inflater();
+    private final ByteBuffer raw;
+    private final int[] current;
+    private long[] offsets = new long[64];
+    private long[] timestamps = new long[64];
+    private boolean[] keyframes = new boolean[64];
+    private int count;
+    private byte[] compressed = new byte[64 * 1024];
+    // The frame held in current, or -1
+    private int currentIndex = -1;
+
+    public DeltaCaptureReader(File source) throws IOException {
+        this.file = new RandomAccessFile(source, "r");
+        try {
+            if (file.readInt() != DeltaCaptureWriter.MAGIC) {
+                throw new IOException("Not a delta capture: " + source);
+            }
+            int version = file.readInt();
+            if (version != DeltaCaptureWriter.VERSION) {
+                throw new IOException("Unsupported delta capture version " + version);
+            }
+            width = file.readInt();
+            height = file.readInt();
+            tileSize = file.readInt();
+            if (width <= 0 || height <= 0 || tileSize <= 0) {
+                throw new IOException("Invalid delta capture of " + width + "x" + height + " in tiles of " + tileSize);
+            }
+        } catch (EOFException e) {
+            file.close();
+            throw new IOException("Delta capture header cut short: " + source, e);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        this.columns = (width + tileSize - 1) / tileSize;
+        int tiles = columns * ((height + tileSize - 1) / tileSize);
+        this.raw = ByteBuffer.allocate(4 + tiles * 4 + width * height * 4).order(ByteOrder.BIG_ENDIAN);
+        this.current = new int[width * height];
+        scan();
+    }
+
+    private void scan() throws IOException {
+        long length = file.length();
+        long position = DeltaCaptureWriter.HEADER_BYTES;
+        while (position + DeltaCaptureWriter.RECORD_HEADER_BYTES <= length) {
+            file.seek(position);
+            byte type = file.readByte();
+            long timestamp = file.readLong();
+            int payload = file.readInt();
+            long end = position + DeltaCaptureWriter.RECORD_HEADER_BYTES + payload;
+            if (payload < 0 || end > length) {
+                break;
+            }
+            if (type != DeltaCaptureWriter.KEYFRAME && type != DeltaCaptureWriter.DELTA) {
+                throw new IOException("Unknown record type " + type + " at " + position);
+            }
+            if (count == 0 && type != DeltaCaptureWriter.KEYFRAME) {
+                throw new IOException("Delta capture does not start with a keyframe");
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                timestamps = Arrays.copyOf(timestamps, count * 2);
+                keyframes = Arrays.copyOf(keyframes, count * 2);
+            }
+            offsets[count] = position;
+            timestamps[count] = timestamp;
+            keyframes[count] = type == DeltaCaptureWriter.KEYFRAME;
+            count++;
+            position = end;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFrameCount() {
+        return count;
+    }
+
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return timestamps[index];
+    }
+
+    public boolean isKeyframe(int index) {
+        checkIndex(index);
+        return keyframes[index];
+    }
+
+    /** Rebuilds frame {@code index} into {@code target} as ARGB pixels. */
+    public void readFrame(int index, int[] target) throws IOException {
+        checkIndex(index);
+        if (target.length < width * height) {
+            throw new IllegalArgumentException("Target holds " + target.length + " pixels, need " + width * height);
+        }
+        int keyframe = index;
+        while (!keyframes[keyframe]) {
+            keyframe--;
+        }
+        // Carry on from the frame already rebuilt when it lies between the keyframe and this one
+        int from = currentIndex >= keyframe && currentIndex <= index ? currentIndex + 1 : keyframe;
+        try {
+            for (int i = from; i <= index; i++) {
+                apply(i);
+                currentIndex = i;
+            }
+        } catch (IOException | RuntimeException e) {
+            currentIndex = -1;
+            throw e;
+        }
+        System.arraycopy(current, 0, target, 0, width * height);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        file.close();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Frame " + index + " of " + count);
+        }
+    }
+
+    private void apply(int index) throws IOException {
+        file.seek(offsets[index] + DeltaCaptureWriter.RECORD_HEADER_BYTES - 4);
+        int length = file.readInt();
+        if (compressed.length < length) {
+            compressed = new byte[length];
+        }
+        file.readFully(compressed, 0, length);
+        inflate(length);
+
+        if (keyframes[index]) {
+            if (raw.remaining() != width * height * 4) {
+                throw new IOException("Keyframe " + index + " holds " + raw.remaining() + " bytes");
+            }
+            raw.asIntBuffer().get(current, 0, width * height);
+            return;
+        }
+        int tiles = raw.getInt();
+        int tileCount = columns * ((height + tileSize - 1) / tileSize);
+        if (tiles < 0 || tiles > tileCount) {
+            throw new IOException("Delta " + index + " lists " + tiles + " tiles");
+        }
+        int indexes = raw.position();
+        int pixels = indexes + tiles * 4;
+        for (int i = 0; i < tiles; i++) {
+            int tile = raw.getInt(indexes + i * 4);
+            if (tile < 0 || tile >= tileCount) {
+                throw new IOException("Delta " + index + " has tile " + tile);
+            }
+            int left = tile % columns * tileSize;
+            int top = tile / columns * tileSize;
+            int tileWidth = Math.min(tileSize, width - left);
+            int bottom = Math.min(top + tileSize, height);
+            raw.position(pixels);
+            if (raw.remaining() < (bottom - top) * tileWidth * 4) {
+                throw new IOException("Delta " + index + " cut short in tile " + tile);
+            }
+            for (int y = top; y < bottom; y++) {
+                raw.asIntBuffer().get(current, y * width + left, tileWidth);
+                raw.position(raw.position() + tileWidth * 4);
+            }
+            pixels = raw.position();
+        }
+    }
+
+    private void inflate(int length) throws IOException {
+        inflater.reset();
+        inflater.setInput(compressed, 0, length);
+        raw.clear();
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(raw.array(), raw.position(), raw.remaining());
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary() || !raw.hasRemaining())) {
+                    throw new IOException("Corrupt delta capture record");
+                }
+                raw.position(raw.position() + n);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt delta capture record", e);
+        }
+        raw.flip();
+    }
+}
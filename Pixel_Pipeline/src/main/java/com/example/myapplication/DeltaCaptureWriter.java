@@ -0,0 +1,149 @@
+package com.example.myapplication;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a sequence of frames as keyframes plus the tiles that changed since the frame before,
+ * so a long capture of a mostly still screen costs little more than its first frame. The format:
+ *
+ * <pre>
+ * header: magic "SRDC", version, width, height, tile size (ints)
+ * record: type (byte), timestamp (long), payload length (int), payload
+ * </pre>
+ *
+ * A keyframe payload is the deflated ARGB pixels of the whole frame. A delta payload is the
+ * deflated tile count, tile indexes and then each tile's pixels row by row; tiles on the right
+ * and bottom edges are cut to the frame. Numbers are big-endian. Read back with
+ * {@link DeltaCaptureReader}. Not thread-safe.
+ */
+public class DeltaCaptureWriter implements Closeable {
+    static final int MAGIC = 0x53524443;
+    static final int VERSION = 1;
+    static final byte KEYFRAME = 1;
+    static final byte DELTA = 2;
+    static final int HEADER_BYTES = 20;
+    static final int RECORD_HEADER_BYTES = 13;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int columns;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final ByteBuffer raw;
+    private byte[] compressed = new byte[64 * 1024];
+    private long bytesWritten;
+    private int frames;
+    private boolean hasKeyframe;
+
+    public DeltaCaptureWriter(OutputStream out, int width, int height, int tileSize) throws IOException {
+        if (width <= 0 || height <= 0 || tileSize <= 0) {
+            throw new IllegalArgumentException("Invalid tiles of " + tileSize + " over " + width + "x" + height);
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.columns = (width + tileSize - 1) / tileSize;
+        int tiles = columns * ((height + tileSize - 1) / tileSize);
+        // Room for every tile's index as well as every pixel
+        this.raw = ByteBuffer.allocate(4 + tiles * 4 + width * height * 4).order(ByteOrder.BIG_ENDIAN);
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+        this.out.writeInt(width);
+        this.out.writeInt(height);
+        this.out.writeInt(tileSize);
+        bytesWritten = HEADER_BYTES;
+    }
+
+    public void writeKeyframe(long timestamp, int[] argb) throws IOException {
+        checkFrame(argb);
+        raw.clear();
+        raw.asIntBuffer().put(argb, 0, width * height);
+        raw.position(width * height * 4);
+        writeRecord(KEYFRAME, timestamp);
+        hasKeyframe = true;
+    }
+
+    /**
+     * Writes the tiles of {@code argb} listed in the first {@code count} entries of {@code tiles},
+     * which must be in ascending order, as found by {@link TileChecksums#diff}.
+     */
+    public void writeDelta(long timestamp, int[] argb, int[] tiles, int count) throws IOException {
+        checkFrame(argb);
+        if (!hasKeyframe) {
+            throw new IllegalStateException("A delta needs a keyframe before it");
+        }
+        raw.clear();
+        raw.putInt(count);
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && tiles[i] <= tiles[i - 1]) {
+                throw new IllegalArgumentException("Tiles out of order at " + i);
+            }
+            raw.putInt(tiles[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            int left = tiles[i] % columns * tileSize;
+            int top = tiles[i] / columns * tileSize;
+            int tileWidth = Math.min(tileSize, width - left);
+            int bottom = Math.min(top + tileSize, height);
+            for (int y = top; y < bottom; y++) {
+                raw.asIntBuffer().put(argb, y * width + left, tileWidth);
+                raw.position(raw.position() + tileWidth * 4);
+            }
+        }
+        writeRecord(DELTA, timestamp);
+    }
+
+    /** Bytes written so far, header included. */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public int getFrameCount() {
+        return frames;
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        out.close();
+    }
+
+    private void checkFrame(int[] argb) {
+        if (argb.length < width * height) {
+            throw new IllegalArgumentException("Frame holds " + argb.length + " pixels, need " + width * height);
+        }
+    }
+
+    private void writeRecord(byte type, long timestamp) throws IOException {
+        deflater.reset();
+        deflater.setInput(raw.array(), 0, raw.position());
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        out.writeByte(type);
+        out.writeLong(timestamp);
+        out.writeInt(length);
+        out.write(compressed, 0, length);
+        bytesWritten += RECORD_HEADER_BYTES + length;
+        frames++;
+    }
+}
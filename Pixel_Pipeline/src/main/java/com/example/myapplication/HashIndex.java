@@ -0,0 +1,168 @@
+package com.example.myapplication;
+
+import java.util.Arrays;
+
+/**
+ * Hamming-distance lookups over 64-bit hashes by multi-index hashing. Each hash is split into
+ * four 16-bit chunks with a bucket table per chunk. Two hashes within distance {@code r} must
+ * agree to within {@code r / 4} bits on at least one chunk, so a query probes only the buckets
+ * of those chunk variants instead of comparing against every entry. Everything is kept in
+ * primitive arrays, with buckets chained through entry indexes. Not thread-safe.
+ */
+public final class HashIndex {
+    private static final int CHUNKS = 4;
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private static final int NONE = -1;
+    /** Largest supported query distance; probing cost grows quickly past two flipped bits per chunk. */
+    public static final int MAX_DISTANCE = 3 * CHUNKS - 1;
+
+    public interface Visitor {
+        void visit(long id, long hash, int distance);
+    }
+
+    // First entry of each bucket, per chunk; allocated with the first entry
+    private int[][] heads;
+    // Next entry in the same bucket, per chunk
+    private int[][] next = new int[CHUNKS][16];
+    private long[] hashes = new long[16];
+    private long[] ids = new long[16];
+    private boolean[] removed = new boolean[16];
+    // Query stamp per entry, so that an entry found through several chunks is visited once
+    private int[] seen = new int[16];
+    private int stamp;
+    private int count;
+    private int live;
+
+    public int size() {
+        return live;
+    }
+
+    public void add(long hash, long id) {
+        if (heads == null) {
+            heads = new int[CHUNKS][1 << CHUNK_BITS];
+            for (int[] table : heads) {
+                Arrays.fill(table, NONE);
+            }
+        }
+        if (count == hashes.length) {
+            grow();
+        }
+        int entry = count++;
+        hashes[entry] = hash;
+        ids[entry] = id;
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            int key = chunkOf(hash, chunk);
+            next[chunk][entry] = heads[chunk][key];
+            heads[chunk][key] = entry;
+        }
+        live++;
+    }
+
+    /** Removes every entry with the id. Returns whether there was one. */
+    public boolean remove(long id) {
+        boolean found = false;
+        for (int entry = 0; entry < count; entry++) {
+            if (ids[entry] == id && !removed[entry]) {
+                removed[entry] = true;
+                live--;
+                found = true;
+            }
+        }
+        // Removed entries stay chained in their buckets; rebuild once they are the majority
+        if (found && live < count / 2) {
+            compact();
+        }
+        return found;
+    }
+
+    /** Visits every entry within {@code maxDistance} of the hash, in no particular order. */
+    public void search(long hash, int maxDistance, Visitor visitor) {
+        if (maxDistance < 0 || maxDistance > MAX_DISTANCE) {
+            throw new IllegalArgumentException("Distance must be between 0 and " + MAX_DISTANCE);
+        }
+        if (live == 0) {
+            return;
+        }
+        if (++stamp == 0) {
+            Arrays.fill(seen, 0);
+            stamp = 1;
+        }
+        int flips = maxDistance / CHUNKS;
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            probe(chunk, chunkOf(hash, chunk), flips, 0, hash, maxDistance, visitor);
+        }
+    }
+
+    /** Id of the closest entry within {@code maxDistance}, or {@code absent} if there is none. */
+    public long nearest(long hash, int maxDistance, long absent) {
+        long[] best = {absent, maxDistance + 1};
+        search(hash, maxDistance, (id, candidate, distance) -> {
+            if (distance < best[1]) {
+                best[0] = id;
+                best[1] = distance;
+            }
+        });
+        return best[0];
+    }
+
+    // Walks the bucket of the chunk value and of every variant with up to {@code flips} more bits
+    // flipped, flipping only bits from {@code lowestBit} up so each variant is generated once
+    private void probe(int chunk, int key, int flips, int lowestBit, long hash, int maxDistance, Visitor visitor) {
+        for (int entry = heads[chunk][key]; entry != NONE; entry = next[chunk][entry]) {
+            if (removed[entry] || seen[entry] == stamp) {
+                continue;
+            }
+            seen[entry] = stamp;
+            int distance = Long.bitCount(hashes[entry] ^ hash);
+            if (distance <= maxDistance) {
+                visitor.visit(ids[entry], hashes[entry], distance);
+            }
+        }
+        if (flips > 0) {
+            for (int bit = lowestBit; bit < CHUNK_BITS; bit++) {
+                probe(chunk, key ^ (1 << bit), flips - 1, bit + 1, hash, maxDistance, visitor);
+            }
+        }
+    }
+
+    private void grow() {
+        int capacity = hashes.length * 2;
+        hashes = Arrays.copyOf(hashes, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        removed = Arrays.copyOf(removed, capacity);
+        seen = Arrays.copyOf(seen, capacity);
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            next[chunk] = Arrays.copyOf(next[chunk], capacity);
+        }
+    }
+
+    private void compact() {
+        long[] oldHashes = hashes;
+        long[] oldIds = ids;
+        boolean[] oldRemoved = removed;
+        int oldCount = count;
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, live)) * 2);
+
+        hashes = new long[capacity];
+        ids = new long[capacity];
+        removed = new boolean[capacity];
+        seen = new int[capacity];
+        next = new int[CHUNKS][capacity];
+        stamp = 0;
+        count = 0;
+        live = 0;
+        for (int[] table : heads) {
+            Arrays.fill(table, NONE);
+        }
+        for (int entry = 0; entry < oldCount; entry++) {
+            if (!oldRemoved[entry]) {
+                add(oldHashes[entry], oldIds[entry]);
+            }
+        }
+    }
+
+    private static int chunkOf(long hash, int chunk) {
+        return (int) (hash >>> (chunk * CHUNK_BITS)) & CHUNK_MASK;
+    }
+}
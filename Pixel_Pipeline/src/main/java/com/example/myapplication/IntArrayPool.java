@@ -0,0 +1,24 @@
+package com.example.myapplication;
+
+public class IntArrayPool extends SizedPool<int[]> {
+
+    public IntArrayPool(long maxBytes) {
+        super(maxBytes);
+    }
+
+    public int[] acquire(int length) {
+        int[] array = take(length);
+        return array != null ? array : new int[length];
+    }
+
+    public void release(int[] array) {
+        if (array != null) {
+            put(array.length, array);
+        }
+    }
+
+    @Override
+    protected long sizeOf(int[] array) {
+        return (long) array.length * Integer.BYTES;
+    }
+}
@@ -0,0 +1,424 @@
+package com.example.myapplication;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Pure-Java PNG writer that filters and deflates horizontal strips of the image in parallel,
+ * in the style of pigz. Each strip is compressed into raw deflate data ending on a sync flush
+ * so the strips concatenate into one valid zlib stream; the last strip finishes the stream.
+ * Each strip is primed with the previous 32 KB of filtered data as its dictionary, which keeps
+ * the ratio close to a single-threaded encoder.
+ */
+public class ParallelPngWriter {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_RGBA = 6;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int MIN_STRIP_ROWS = 32;
+    private static final int STRIPS_PER_THREAD = 2;
+
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+    private static final int FILTER_AVERAGE = 3;
+    private static final int FILTER_PAETH = 4;
+    // Without a row above, Up/Average/Paeth degenerate into None/Sub
+    private static final int[] FIRST_ROW_FILTERS = {FILTER_NONE, FILTER_SUB};
+    private static final int[] ALL_FILTERS = {FILTER_NONE, FILTER_SUB, FILTER_UP, FILTER_AVERAGE, FILTER_PAETH};
+
+    /** Supplies an image a band of rows at a time, for images too large to hold in memory. */
+    public interface RowSource {
+        /** Copies rows {@code firstRow} to {@code firstRow + rowCount}, packed, to the start of {@code target}. */
+        void readRows(int firstRow, int rowCount, int[] target) throws IOException;
+    }
+
+    private final ForkJoinPool pool;
+    private final int compressionLevel;
+
+    public ParallelPngWriter() {
+        this(ForkJoinPool.commonPool(), Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public ParallelPngWriter(ForkJoinPool pool, int compressionLevel) {
+        this.pool = pool;
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public void write(int[] argb, int width, int height, OutputStream out) throws IOException {
+        if (width <= 0 || height <= 0 || argb.length < width * height) {
+            throw new IllegalArgumentException("Invalid image " + width + "x" + height + " for " + argb.length + " pixels");
+        }
+
+        boolean hasAlpha = hasAlpha(argb, width * height);
+        writeStart(out, width, height, hasAlpha);
+        long adler = writeStrips(out, argb, 0, width, hasAlpha ? 4 : 3, 0, height, height, 1);
+        writeEnd(out, adler);
+    }
+
+    /**
+     * Encodes an image read from {@code source} in bands of {@code bandRows} rows, so that only
+     * one band is in memory at a time; the strips of each band are compressed in parallel. The
+     * caller says whether the image has alpha, since finding out would take a pass over it all.
+     */
+    public void write(RowSource source, int width, int height, boolean hasAlpha, int bandRows, OutputStream out)
+            throws IOException {
+        if (width <= 0 || height <= 0 || bandRows <= 0) {
+            throw new IllegalArgumentException("Invalid image " + width + "x" + height + " in bands of " + bandRows);
+        }
+
+        int bytesPerPixel = hasAlpha ? 4 : 3;
+        int rowBytes = width * bytesPerPixel + 1;
+        // Rows above each band that its first strip filters against and takes its dictionary from
+        int contextRows = (DICTIONARY_SIZE + rowBytes - 1) / rowBytes + 1;
+        int[] band = new int[(Math.min(bandRows, height) + contextRows) * width];
+
+        writeStart(out, width, height, hasAlpha);
+        long adler = 1;
+        for (int firstRow = 0; firstRow < height; firstRow += bandRows) {
+            int lastRow = Math.min(firstRow + bandRows, height);
+            int baseRow = Math.max(0, firstRow - contextRows);
+            source.readRows(baseRow, lastRow - baseRow, band);
+            adler = writeStrips(out, band, baseRow, width, bytesPerPixel, firstRow, lastRow, height, adler);
+        }
+        writeEnd(out, adler);
+    }
+
+    private void writeStart(OutputStream out, int width, int height, boolean hasAlpha) throws IOException {
+        out.write(SIGNATURE);
+        writeHeader(out, width, height, hasAlpha ? COLOR_TYPE_RGBA : COLOR_TYPE_RGB);
+    }
+
+    private static void writeEnd(OutputStream out, long adler) throws IOException {
+        byte[] trailer = {(byte) (adler >>> 24), (byte) (adler >>> 16), (byte) (adler >>> 8), (byte) adler};
+        writeChunk(out, "IDAT", trailer, null, 0);
+        writeChunk(out, "IEND", new byte[0], null, 0);
+    }
+
+    // Compresses rows firstRow to lastRow of the image in parallel strips and writes them as IDAT
+    // chunks. Row y of the image is row y - baseRow of argb. Returns the running Adler-32.
+    private long writeStrips(OutputStream out, int[] argb, int baseRow, int width, int bytesPerPixel,
+                             int firstRow, int lastRow, int height, long adler) throws IOException {
+        int rowBytes = width * bytesPerPixel + 1;
+        int stripRows = stripRows(lastRow - firstRow);
+        int stripCount = (lastRow - firstRow + stripRows - 1) / stripRows;
+        int dictionaryRows = Math.min((DICTIONARY_SIZE + rowBytes - 1) / rowBytes, stripRows);
+
+        List<Future<Strip>> strips = new ArrayList<>(stripCount);
+        for (int i = 0; i < stripCount; i++) {
+            int stripFirst = firstRow + i * stripRows;
+            int stripLast = Math.min(stripFirst + stripRows, lastRow);
+            boolean finalStrip = stripLast == height;
+            strips.add(pool.submit(() -> compressStrip(argb, baseRow, width, bytesPerPixel,
+                    stripFirst, stripLast, dictionaryRows, finalStrip)));
+        }
+
+        // Strips are written in order as they finish; the zlib header rides on the first IDAT
+        try {
+            for (int i = 0; i < stripCount; i++) {
+                Strip strip = strips.get(i).get();
+                adler = adler32Combine(adler, strip.adler, strip.uncompressedLength);
+                byte[] prefix = firstRow == 0 && i == 0 ? zlibHeader() : new byte[0];
+                writeChunk(out, "IDAT", prefix, strip.data, strip.length);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(strips);
+            throw new IOException("Interrupted while encoding PNG", e);
+        } catch (ExecutionException e) {
+            cancel(strips);
+            throw new IOException("Failed to encode PNG strip", e.getCause());
+        }
+        return adler;
+    }
+
+    private int stripRows(int height) {
+        int targetStrips = Math.max(1, pool.getParallelism() * STRIPS_PER_THREAD);
+        return Math.max(MIN_STRIP_ROWS, (height + targetStrips - 1) / targetStrips);
+    }
+
+    private static boolean hasAlpha(int[] argb, int count) {
+        for (int i = 0; i < count; i++) {
+            if ((argb[i] >>> 24) != 0xFF) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Strip {
+        final byte[] data;
+        final int length;
+        final long adler;
+        final long uncompressedLength;
+
+        Strip(byte[] data, int length, long adler, long uncompressedLength) {
+            this.data = data;
+            this.length = length;
+            this.adler = adler;
+            this.uncompressedLength = uncompressedLength;
+        }
+    }
+
+    private static final class StripBuffer {
+        private static final int MIN_FREE = 256;
+
+        byte[] data;
+        int length;
+
+        StripBuffer(int capacity) {
+            data = new byte[capacity];
+        }
+
+        // Returns true if deflate filled all the space it was given
+        boolean deflate(Deflater deflater, int flush) {
+            if (data.length - length < MIN_FREE) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            int free = data.length - length;
+            int written = deflater.deflate(data, length, free, flush);
+            length += written;
+            return written == free;
+        }
+    }
+
+    private Strip compressStrip(int[] argb, int baseRow, int width, int bytesPerPixel, int firstRow, int lastRow,
+                                int dictionaryRows, boolean finalStrip) {
+        int rowBytes = width * bytesPerPixel + 1;
+        byte[] previous = new byte[rowBytes - 1];
+        byte[] current = new byte[rowBytes - 1];
+        byte[][] candidates = new byte[5][rowBytes];
+
+        Deflater deflater = new Deflater(compressionLevel, true);
+        try {
+            // Re-filter the rows just above this strip so they can serve as the deflate dictionary
+            int dictionaryStart = Math.max(0, firstRow - dictionaryRows);
+            if (dictionaryStart < firstRow) {
+                byte[] dictionary = new byte[(firstRow - dictionaryStart) * rowBytes];
+                loadRow(argb, baseRow, width, bytesPerPixel, dictionaryStart - 1, previous);
+                for (int y = dictionaryStart; y < firstRow; y++) {
+                    loadRow(argb, baseRow, width, bytesPerPixel, y, current);
+                    byte[] filtered = filterRow(previous, current, bytesPerPixel, candidates, y == 0);
+                    System.arraycopy(filtered, 0, dictionary, (y - dictionaryStart) * rowBytes, rowBytes);
+                    byte[] swap = previous;
+                    previous = current;
+                    current = swap;
+                }
+                int offset = Math.max(0, dictionary.length - DICTIONARY_SIZE);
+                deflater.setDictionary(dictionary, offset, dictionary.length - offset);
+            } else {
+                loadRow(argb, baseRow, width, bytesPerPixel, firstRow - 1, previous);
+            }
+
+            int rows = lastRow - firstRow;
+            StripBuffer output = new StripBuffer(Math.max(1024, rows * rowBytes / 4));
+            Adler32 adler = new Adler32();
+
+            for (int y = firstRow; y < lastRow; y++) {
+                loadRow(argb, baseRow, width, bytesPerPixel, y, current);
+                byte[] filtered = filterRow(previous, current, bytesPerPixel, candidates, y == 0);
+                adler.update(filtered, 0, rowBytes);
+
+                // The candidate buffers are reused for the next row, so drain the input fully
+                deflater.setInput(filtered, 0, rowBytes);
+                while (!deflater.needsInput()) {
+                    output.deflate(deflater, Deflater.NO_FLUSH);
+                }
+
+                byte[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+
+            if (finalStrip) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    output.deflate(deflater, Deflater.NO_FLUSH);
+                }
+            } else {
+                // A sync flush is complete once deflate leaves room in the output buffer
+                while (output.deflate(deflater, Deflater.SYNC_FLUSH)) {
+                    // keep flushing
+                }
+            }
+
+            return new Strip(output.data, output.length, adler.getValue(), (long) rows * rowBytes);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // Unpacks one row of ARGB pixels into PNG byte order; rows above the image are all zero
+    private static void loadRow(int[] argb, int baseRow, int width, int bytesPerPixel, int y, byte[] row) {
+        if (y < 0) {
+            Arrays.fill(row, (byte) 0);
+            return;
+        }
+        int offset = (y - baseRow) * width;
+        int out = 0;
+        for (int x = 0; x < width; x++) {
+            int pixel = argb[offset + x];
+            row[out++] = (byte) (pixel >>> 16);
+            row[out++] = (byte) (pixel >>> 8);
+            row[out++] = (byte) pixel;
+            if (bytesPerPixel == 4) {
+                row[out++] = (byte) (pixel >>> 24);
+            }
+        }
+    }
+
+    // Picks the filter with the smallest sum of absolute signed bytes, the usual libpng heuristic
+    private static byte[] filterRow(byte[] previous, byte[] current, int bpp, byte[][] candidates, boolean firstRow) {
+        int length = current.length;
+        int bestFilter = FILTER_NONE;
+        long bestScore = Long.MAX_VALUE;
+
+        for (int filter : firstRow ? FIRST_ROW_FILTERS : ALL_FILTERS) {
+            byte[] target = candidates[filter];
+            target[0] = (byte) filter;
+            long score = 0;
+            for (int i = 0; i < length; i++) {
+                int raw = current[i] & 0xFF;
+                int left = i >= bpp ? current[i - bpp] & 0xFF : 0;
+                int up = previous[i] & 0xFF;
+                int upLeft = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+                int value;
+                switch (filter) {
+                    case FILTER_SUB:
+                        value = raw - left;
+                        break;
+                    case FILTER_UP:
+                        value = raw - up;
+                        break;
+                    case FILTER_AVERAGE:
+                        value = raw - ((left + up) >>> 1);
+                        break;
+                    case FILTER_PAETH:
+                        value = raw - paeth(left, up, upLeft);
+                        break;
+                    default:
+                        value = raw;
+                        break;
+                }
+                byte b = (byte) value;
+                target[i + 1] = b;
+                score += Math.abs((int) b);
+                if (score >= bestScore) {
+                    break;
+                }
+            }
+            if (score < bestScore) {
+                bestScore = score;
+                bestFilter = filter;
+            }
+        }
+        return candidates[bestFilter];
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    private byte[] zlibHeader() {
+        // CMF: deflate with a 32K window. FLG: informational level, no preset dictionary, FCHECK
+        int level;
+        if (compressionLevel == Deflater.DEFAULT_COMPRESSION) {
+            level = 2;
+        } else if (compressionLevel < 2) {
+            level = 0;
+        } else if (compressionLevel < 6) {
+            level = 1;
+        } else {
+            level = compressionLevel == 6 ? 2 : 3;
+        }
+        int cmf = 0x78;
+        int flg = level << 6;
+        flg += 31 - ((cmf << 8) + flg) % 31;
+        return new byte[] {(byte) cmf, (byte) flg};
+    }
+
+    static long adler32Combine(long adler1, long adler2, long length2) {
+        final long base = 65521;
+        long remainder = length2 % base;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (remainder * sum1) % base;
+        sum1 += (adler2 & 0xFFFF) + base - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + base - remainder;
+        if (sum1 >= base) sum1 -= base;
+        if (sum1 >= base) sum1 -= base;
+        if (sum2 >= (base << 1)) sum2 -= (base << 1);
+        if (sum2 >= base) sum2 -= base;
+        return sum1 | (sum2 << 16);
+    }
+
+    private static void writeHeader(OutputStream out, int width, int height, int colorType) throws IOException {
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;
+        header[9] = (byte) colorType;
+        header[10] = 0;
+        header[11] = 0;
+        header[12] = 0;
+        writeChunk(out, "IHDR", header, null, 0);
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] prefix, byte[] data, int dataLength)
+            throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        byte[] lengthBytes = new byte[4];
+        putInt(lengthBytes, 0, prefix.length + dataLength);
+
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(prefix);
+        if (data != null) {
+            crc.update(data, 0, dataLength);
+        }
+
+        out.write(lengthBytes);
+        out.write(typeBytes);
+        out.write(prefix);
+        if (data != null) {
+            out.write(data, 0, dataLength);
+        }
+        byte[] crcBytes = new byte[4];
+        putInt(crcBytes, 0, (int) crc.getValue());
+        out.write(crcBytes);
+    }
+
+    private static void putInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+
+    private static void cancel(List<Future<Strip>> strips) {
+        for (Future<Strip> strip : strips) {
+            strip.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.myapplication;
+
+/**
+ * 64-bit difference hash (dHash) of ARGB pixels. The frame is area-averaged down to 8x9 luma
+ * cells in one pass, and each bit says whether a cell is brighter than the one below it.
+ * Screens are mostly stacked rows of content, which the usual left-to-right comparison barely
+ * tells apart, so the gradient is taken vertically. Near-identical frames, such as the same
+ * screen with a different clock, differ in a few bits; the hash is also stable across scaling,
+ * so a frame and its thumbnail hash alike.
+ */
+public final class PerceptualHash {
+    private static final int COLUMNS = 8;
+    private static final int ROWS = 9;
+
+    private PerceptualHash() {
+    }
+
+    public static long dHash(int[] argb, int width, int height) {
+        if (width < COLUMNS || height < ROWS) {
+            throw new IllegalArgumentException("Cannot hash " + width + "x" + height + " pixels");
+        }
+        if (argb.length < width * height) {
+            throw new IllegalArgumentException("Source holds " + argb.length + " pixels, need " + width * height);
+        }
+
+        long[] sums = new long[COLUMNS * ROWS];
+        int[] columnMap = new int[width];
+        for (int x = 0; x < width; x++) {
+            columnMap[x] = (int) ((long) x * COLUMNS / width);
+        }
+        for (int y = 0; y < height; y++) {
+            int cellRow = (int) ((long) y * ROWS / height) * COLUMNS;
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int pixel = argb[offset + x];
+                // BT.601 luma weights scaled to 256
+                sums[cellRow + columnMap[x]] += ((pixel >>> 16) & 0xFF) * 77 + ((pixel >>> 8) & 0xFF) * 150 + (pixel & 0xFF) * 29;
+            }
+        }
+
+        // Cells in a column cover different row counts, so compare averages, not sums
+        long[] cellHeights = new long[ROWS];
+        for (int y = 0; y < height; y++) {
+            cellHeights[(int) ((long) y * ROWS / height)]++;
+        }
+        long hash = 0;
+        for (int row = 0; row < ROWS - 1; row++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                int cell = row * COLUMNS + column;
+                hash <<= 1;
+                if (sums[cell] * cellHeights[row + 1] > sums[cell + COLUMNS] * cellHeights[row]) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
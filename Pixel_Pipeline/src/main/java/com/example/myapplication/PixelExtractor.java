@@ -0,0 +1,101 @@
+package com.example.myapplication;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Copies RGBA_8888 image planes into tightly packed ARGB pixels, skipping the row padding
+ * that ImageReader adds. Kept free of Android types so it can be tested on the JVM.
+ */
+public final class PixelExtractor {
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private PixelExtractor() {
+    }
+
+    public static void extractArgb(ByteBuffer plane, int width, int height,
+                                   int pixelStride, int rowStride, int[] dst) {
+        extractArgb(plane, width, height, pixelStride, rowStride, dst, null);
+    }
+
+    /** As above, also taking the tile checksums of the frame while each row is still in cache. */
+    public static void extractArgb(ByteBuffer plane, int width, int height,
+                                   int pixelStride, int rowStride, int[] dst, TileChecksums tiles) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size " + width + "x" + height);
+        }
+        if (pixelStride < BYTES_PER_PIXEL || rowStride < width * pixelStride) {
+            throw new IllegalArgumentException("Invalid strides: pixel " + pixelStride + ", row " + rowStride);
+        }
+        if (dst.length < width * height) {
+            throw new IllegalArgumentException("Destination holds " + dst.length + " pixels, need " + width * height);
+        }
+        if (tiles != null && (tiles.getWidth() != width || tiles.getHeight() != height)) {
+            throw new IllegalArgumentException("Tiles cover " + tiles.getWidth() + "x" + tiles.getHeight());
+        }
+        // The last row is not required to carry its padding
+        long required = (long) rowStride * (height - 1) + (long) width * pixelStride;
+        if (plane.capacity() < required) {
+            throw new IllegalArgumentException("Plane holds " + plane.capacity() + " bytes, need " + required);
+        }
+
+        if (tiles != null) {
+            tiles.reset();
+        }
+        if (pixelStride == BYTES_PER_PIXEL && rowStride % BYTES_PER_PIXEL == 0) {
+            copyRowsBulk(plane, width, height, rowStride, dst, tiles);
+        } else {
+            copyPixels(plane, width, height, pixelStride, rowStride, dst, tiles);
+        }
+    }
+
+    private static void copyRowsBulk(ByteBuffer plane, int width, int height, int rowStride, int[] dst,
+                                     TileChecksums tiles) {
+        // Little-endian ints over RGBA bytes read as ABGR; one bulk get per row, then swap R and B
+        ByteBuffer src = plane.duplicate();
+        src.clear();
+        IntBuffer rows = src.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        int rowInts = rowStride / BYTES_PER_PIXEL;
+        for (int y = 0; y < height; y++) {
+            rows.position(y * rowInts);
+            rows.get(dst, y * width, width);
+        }
+
+        if (tiles == null) {
+            int count = width * height;
+            for (int i = 0; i < count; i++) {
+                dst[i] = abgrToArgb(dst[i]);
+            }
+            return;
+        }
+        for (int y = 0; y < height; y++) {
+            int offset = y * width;
+            for (int i = offset; i < offset + width; i++) {
+                dst[i] = abgrToArgb(dst[i]);
+            }
+            tiles.addRow(dst, offset, y);
+        }
+    }
+
+    private static void copyPixels(ByteBuffer plane, int width, int height,
+                                   int pixelStride, int rowStride, int[] dst, TileChecksums tiles) {
+        ByteBuffer src = plane.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int out = 0;
+        for (int y = 0; y < height; y++) {
+            int offset = y * rowStride;
+            for (int x = 0; x < width; x++) {
+                dst[out++] = abgrToArgb(src.getInt(offset));
+                offset += pixelStride;
+            }
+            if (tiles != null) {
+                tiles.addRow(dst, out - width, y);
+            }
+        }
+    }
+
+    static int abgrToArgb(int abgr) {
+        return (abgr & 0xFF00FF00) | ((abgr & 0xFF) << 16) | ((abgr >>> 16) & 0xFF);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.myapplication;
+
+import java.util.Arrays;
+
+/**
+ * Area-averaging downscaler for ARGB pixels. Every source pixel contributes to exactly one
+ * destination pixel, so the cost is one pass over the source regardless of the scale.
+ */
+public final class PixelScaler {
+
+    private PixelScaler() {
+    }
+
+    public static int[] downscale(int[] src, int width, int height, int dstWidth, int dstHeight) {
+        if (dstWidth <= 0 || dstHeight <= 0 || dstWidth > width || dstHeight > height) {
+            throw new IllegalArgumentException("Cannot scale " + width + "x" + height + " to " + dstWidth + "x" + dstHeight);
+        }
+        if (src.length < width * height) {
+            throw new IllegalArgumentException("Source holds " + src.length + " pixels, need " + width * height);
+        }
+
+        int[] dst = new int[dstWidth * dstHeight];
+        long[] sums = new long[dstWidth * 4];
+        int[] counts = new int[dstWidth];
+        // Destination column for every source column, computed once
+        int[] columnMap = new int[width];
+        for (int x = 0; x < width; x++) {
+            columnMap[x] = (int) ((long) x * dstWidth / width);
+        }
+
+        int srcY = 0;
+        for (int dy = 0; dy < dstHeight; dy++) {
+            int rowEnd = (int) ((long) (dy + 1) * height / dstHeight);
+            Arrays.fill(sums, 0);
+            Arrays.fill(counts, 0);
+
+            for (; srcY < rowEnd; srcY++) {
+                int offset = srcY * width;
+                for (int x = 0; x < width; x++) {
+                    int pixel = src[offset + x];
+                    int dx = columnMap[x];
+                    int base = dx * 4;
+                    sums[base] += pixel >>> 24;
+                    sums[base + 1] += (pixel >>> 16) & 0xFF;
+                    sums[base + 2] += (pixel >>> 8) & 0xFF;
+                    sums[base + 3] += pixel & 0xFF;
+                    counts[dx]++;
+                }
+            }
+
+            int out = dy * dstWidth;
+            for (int dx = 0; dx < dstWidth; dx++) {
+                int count = counts[dx];
+                int half = count / 2;
+                int base = dx * 4;
+                int a = (int) ((sums[base] + half) / count);
+                int r = (int) ((sums[base + 1] + half) / count);
+                int g = (int) ((sums[base + 2] + half) / count);
+                int b = (int) ((sums[base + 3] + half) / count);
+                dst[out + dx] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+        return dst;
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.myapplication;
+
+/**
+ * Finds how far the content moved between two frames of a scrolling screen. Each row is reduced
+ * to a 64-bit hash once, so frames are compared as short arrays of row hashes rather than pixel
+ * by pixel. A window of rows from the new frame is located in the old one with a rolling
+ * (Rabin-Karp) hash over the row hashes, and each place it occurs is verified row by row. Rows
+ * that did not change at the top and bottom, such as the status bar and a toolbar or navigation
+ * bar, are excluded from the search.
+ */
+public final class ScrollOverlapFinder {
+    // Rows in the window searched for; long enough that a match by chance is unlikely
+    private static final int WINDOW_ROWS = 32;
+    // Share of the overlapping rows that must match, leaving room for a small animation
+    private static final double MIN_MATCH = 0.95;
+    // Windows tried, and places each may match, before giving up
+    private static final int ANCHORS = 4;
+    private static final int MAX_CANDIDATES = 64;
+    private static final long ROW_MULTIPLIER = 0x100000001B3L;
+    private static final long WINDOW_BASE = 0x9E3779B97F4A7C15L;
+    // Right-hand share of each row left out of its hash, where a fading scrollbar is drawn over content
+    private static final int SCROLLBAR_DIVISOR = 32;
+
+    /** How a frame relates to the one before it. */
+    public static final class Overlap {
+        private final int top;
+        private final int bottom;
+        private final int shift;
+
+        Overlap(int top, int bottom, int shift) {
+            this.top = top;
+            this.bottom = bottom;
+            this.shift = shift;
+        }
+
+        /** Rows at the top that are the same in both frames. */
+        public int getTop() {
+            return top;
+        }
+
+        /** Rows at the bottom that are the same in both frames. */
+        public int getBottom() {
+            return bottom;
+        }
+
+        /** Rows the content scrolled up by; 0 when nothing moved. */
+        public int getShift() {
+            return shift;
+        }
+    }
+
+    private ScrollOverlapFinder() {
+    }
+
+    /** One hash per row of the frame, leaving out the scrollbar edge. */
+    public static long[] rowHashes(int[] argb, int width, int height) {
+        if (argb.length < width * height) {
+            throw new IllegalArgumentException("Source holds " + argb.length + " pixels, need " + width * height);
+        }
+        long[] hashes = new long[height];
+        rowHashes(argb, width, height, hashes);
+        return hashes;
+    }
+
+    public static void rowHashes(int[] argb, int width, int height, long[] target) {
+        int hashedWidth = width - width / SCROLLBAR_DIVISOR;
+        for (int y = 0; y < height; y++) {
+            // FNV-1a style over whole pixels, one multiply per pixel
+            long hash = 0xCBF29CE484222325L;
+            int offset = y * width;
+            for (int x = 0; x < hashedWidth; x++) {
+                hash = (hash ^ argb[offset + x]) * ROW_MULTIPLIER;
+            }
+            target[y] = hash;
+        }
+    }
+
+    /**
+     * Finds the downward scroll from {@code previous} to {@code next}, both row hashes of frames
+     * of the same size. Returns null if the frames share no content, e.g. because the user
+     * scrolled more than a screen between them or scrolled back up.
+     */
+    public static Overlap find(long[] previous, long[] next) {
+        if (previous.length != next.length) {
+            throw new IllegalArgumentException("Frames have " + previous.length + " and " + next.length + " rows");
+        }
+        int height = next.length;
+        int top = 0;
+        while (top < height && previous[top] == next[top]) {
+            top++;
+        }
+        if (top == height) {
+            return new Overlap(height, 0, 0);
+        }
+        int bottom = 0;
+        while (previous[height - 1 - bottom] == next[height - 1 - bottom]) {
+            bottom++;
+        }
+        int end = height - bottom;
+        int window = Math.min(WINDOW_ROWS, (end - top) / 2);
+        if (window == 0) {
+            return null;
+        }
+
+        // The new frame's content starts with rows the old one showed further down. Several
+        // windows are tried, since the first rows that changed may be a clock rather than content
+        long power = 1;
+        for (int i = 1; i < window; i++) {
+            power *= WINDOW_BASE;
+        }
+        Overlap best = null;
+        int bestMatched = 0;
+        int anchor = top;
+        for (int attempt = 0; attempt < ANCHORS && anchor + window <= end; attempt++) {
+            anchor = distinctiveWindow(next, anchor, end, window);
+            long target = windowHash(next, anchor, window);
+            long hash = windowHash(previous, anchor, window);
+            int candidates = 0;
+            for (int start = anchor; start + window <= end && candidates < MAX_CANDIDATES; start++) {
+                if (start > anchor) {
+                    hash = (hash - previous[start - 1] * power) * WINDOW_BASE + previous[start + window - 1];
+                }
+                if (hash != target) {
+                    continue;
+                }
+                candidates++;
+                int shift = start - anchor;
+                int matched = matchedRows(previous, next, top, end, shift);
+                if (matched > bestMatched) {
+                    best = new Overlap(top, bottom, shift);
+                    bestMatched = matched;
+                }
+            }
+            anchor += window;
+        }
+        return best;
+    }
+
+    // First window from {@code from} that is not mostly one repeated row, so that it matches in few places
+    private static int distinctiveWindow(long[] rows, int from, int end, int window) {
+        for (int start = from; start + window <= end; start++) {
+            int changes = 0;
+            for (int i = start + 1; i < start + window; i++) {
+                if (rows[i] != rows[i - 1]) {
+                    changes++;
+                }
+            }
+            if (changes >= window / 4) {
+                return start;
+            }
+        }
+        return from;
+    }
+
+    private static long windowHash(long[] rows, int start, int window) {
+        long hash = 0;
+        for (int i = start; i < start + window; i++) {
+            hash = hash * WINDOW_BASE + rows[i];
+        }
+        return hash;
+    }
+
+    // Rows that line up at the shift, or -1 if too few do. Rows that are the same at the same place
+    // in both frames, like a fixed bar inside the content area, say nothing about the shift and
+    // are not counted either way
+    private static int matchedRows(long[] previous, long[] next, int top, int end, int shift) {
+        int matched = 0;
+        int compared = 0;
+        for (int y = top; y + shift < end; y++) {
+            if (shift > 0 && next[y] == previous[y]) {
+                continue;
+            }
+            compared++;
+            if (next[y] == previous[y + shift]) {
+                matched++;
+            }
+        }
+        return matched >= MIN_MATCH * compared ? matched : -1;
+    }
+}
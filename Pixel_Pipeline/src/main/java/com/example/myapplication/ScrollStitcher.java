@@ -0,0 +1,172 @@
+package com.example.myapplication;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Stitches frames of a scrolling screen into one tall image. Only the latest frame is kept in
+ * memory; rows that no later frame can change are appended to a spool file as raw pixels, and
+ * the finished image is encoded from the spool a band at a time. Frames that moved the wrong
+ * way, or too far to line up, are left out. Not thread-safe.
+ */
+public class ScrollStitcher implements Closeable {
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final int ENCODE_BAND_ROWS = 512;
+
+    private final int width;
+    private final int height;
+    private final int maxRows;
+    private final File spoolFile;
+    private final RandomAccessFile spool;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private int[] previous;
+    private long[] previousHashes;
+    private long[] hashes;
+    // Rows of the previous frame that are already in the spool
+    private int committed;
+    private int spooledRows;
+    private boolean hasAlpha;
+    private boolean finished;
+
+    /** Frames are {@code width} by {@code height}; the image stops growing at {@code maxRows}. */
+    public ScrollStitcher(int width, int height, int maxRows, File spoolFile) throws IOException {
+        if (width <= 0 || height <= 0 || maxRows < height) {
+            throw new IllegalArgumentException("Invalid frames " + width + "x" + height + " up to " + maxRows + " rows");
+        }
+        this.width = width;
+        this.height = height;
+        this.maxRows = maxRows;
+        this.spoolFile = spoolFile;
+        this.spool = new RandomAccessFile(spoolFile, "rw");
+        // Left over if an earlier capture died before closing
+        spool.setLength(0);
+        this.channel = spool.getChannel();
+        this.buffer = ByteBuffer.allocateDirect(width * BYTES_PER_PIXEL * 64);
+        this.hashes = new long[height];
+        this.previousHashes = new long[height];
+    }
+
+    /**
+     * Adds the next frame. Returns the rows it added to the image, 0 if it showed nothing new or
+     * would grow the image past its limit, or -1 if it could not be lined up with the previous
+     * frame. Frames that add nothing are left out. {@code argb} may be reused once this returns.
+     */
+    public int add(int[] argb) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Image already written");
+        }
+        if (argb.length < width * height) {
+            throw new IllegalArgumentException("Frame holds " + argb.length + " pixels, need " + width * height);
+        }
+        ScrollOverlapFinder.rowHashes(argb, width, height, hashes);
+        if (previous == null) {
+            previous = argb.clone();
+            swapHashes();
+            return height;
+        }
+
+        ScrollOverlapFinder.Overlap overlap = ScrollOverlapFinder.find(previousHashes, hashes);
+        if (overlap == null) {
+            return -1;
+        }
+        int shift = overlap.getShift();
+        if (shift == 0 || getHeight() + shift > maxRows) {
+            return 0;
+        }
+
+        // Everything of the previous frame above its fixed footer is final now
+        int end = height - overlap.getBottom();
+        spoolRows(previous, committed, end);
+        committed = end - shift;
+        System.arraycopy(argb, 0, previous, 0, width * height);
+        swapHashes();
+        return shift;
+    }
+
+    /** Height of the image so far. */
+    public int getHeight() {
+        return previous == null ? 0 : spooledRows + height - committed;
+    }
+
+    /** Encodes the image as PNG. No frames can be added afterwards. */
+    public void writePng(ParallelPngWriter writer, OutputStream out) throws IOException {
+        if (previous == null) {
+            throw new IllegalStateException("No frames added");
+        }
+        if (!finished) {
+            // The last frame, footer included, ends the image
+            spoolRows(previous, committed, height);
+            committed = height;
+            finished = true;
+        }
+        writer.write(this::readRows, width, spooledRows, hasAlpha, ENCODE_BAND_ROWS, out);
+    }
+
+    /** Releases the frame and deletes the spool. */
+    @Override
+    public void close() throws IOException {
+        previous = null;
+        try {
+            spool.close();
+        } finally {
+            spoolFile.delete();
+        }
+    }
+
+    private void swapHashes() {
+        long[] swap = previousHashes;
+        previousHashes = hashes;
+        hashes = swap;
+    }
+
+    private void spoolRows(int[] argb, int from, int to) throws IOException {
+        int rowBytes = width * BYTES_PER_PIXEL;
+        for (int y = from; y < to; y++) {
+            if (buffer.remaining() < rowBytes) {
+                drain();
+            }
+            buffer.asIntBuffer().put(argb, y * width, width);
+            buffer.position(buffer.position() + rowBytes);
+            for (int x = y * width; x < (y + 1) * width && !hasAlpha; x++) {
+                hasAlpha = (argb[x] >>> 24) != 0xFF;
+            }
+        }
+        drain();
+        spooledRows += Math.max(0, to - from);
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, channel.size());
+        }
+        buffer.clear();
+    }
+
+    private void readRows(int firstRow, int rowCount, int[] target) throws IOException {
+        int rowBytes = width * BYTES_PER_PIXEL;
+        int rowsPerRead = buffer.capacity() / rowBytes;
+        int done = 0;
+        while (done < rowCount) {
+            int rows = Math.min(rowsPerRead, rowCount - done);
+            long position = (long) (firstRow + done) * rowBytes;
+            buffer.clear();
+            buffer.limit(rows * rowBytes);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Spool ended at row " + (firstRow + done));
+                }
+            }
+            buffer.flip();
+            buffer.asIntBuffer().get(target, done * width, rows * width);
+            done += rows;
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.myapplication;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recycles large buffers by size. Released items are kept until the total retained
+ * bytes exceed the cap, at which point the least recently released items are evicted.
+ */
+public abstract class SizedPool<T> {
+
+    private static class Entry<T> {
+        final long key;
+        final T item;
+        final long bytes;
+
+        Entry(long key, T item, long bytes) {
+            this.key = key;
+            this.item = item;
+            this.bytes = bytes;
+        }
+    }
+
+    // Oldest first; pools only ever hold a handful of frames so linear scans are fine
+    private final List<Entry<T>> entries = new ArrayList<>();
+    private final long maxBytes;
+    private long retainedBytes;
+    private int hits;
+    private int misses;
+
+    protected SizedPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    protected abstract long sizeOf(T item);
+
+    protected void onEvicted(T item) {
+    }
+
+    protected synchronized T take(long key) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry<T> entry = entries.get(i);
+            if (entry.key == key) {
+                entries.remove(i);
+                retainedBytes -= entry.bytes;
+                hits++;
+                return entry.item;
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    protected void put(long key, T item) {
+        long bytes = sizeOf(item);
+        List<T> evicted = new ArrayList<>();
+        synchronized (this) {
+            if (bytes > maxBytes) {
+                evicted.add(item);
+            } else {
+                entries.add(new Entry<>(key, item, bytes));
+                retainedBytes += bytes;
+                while (retainedBytes > maxBytes) {
+                    Entry<T> oldest = entries.remove(0);
+                    retainedBytes -= oldest.bytes;
+                    evicted.add(oldest.item);
+                }
+            }
+        }
+        for (T victim : evicted) {
+            onEvicted(victim);
+        }
+    }
+
+    public synchronized void clear() {
+        for (Entry<T> entry : entries) {
+            onEvicted(entry.item);
+        }
+        entries.clear();
+        retainedBytes = 0;
+    }
+
+    public synchronized long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    public synchronized int getHitCount() {
+        return hits;
+    }
+
+    public synchronized int getMissCount() {
+        return misses;
+    }
+}
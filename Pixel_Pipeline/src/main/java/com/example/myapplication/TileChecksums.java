@@ -0,0 +1,109 @@
+package com.example.myapplication;
+
+import java.util.Arrays;
+
+/**
+ * A checksum per square tile of a frame, for finding which parts of the screen changed between
+ * two frames without keeping the earlier frame. Each tile is summed Fletcher-style, two additions
+ * per pixel, so the checksums can be taken in the same pass that copies the frame (see
+ * {@link PixelExtractor}). Equal checksums are taken to mean an unchanged tile.
+ */
+public final class TileChecksums {
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int columns;
+    private final int rows;
+    private final long[] sums;
+    private final long[] weightedSums;
+
+    public TileChecksums(int width, int height, int tileSize) {
+        if (width <= 0 || height <= 0 || tileSize <= 0) {
+            throw new IllegalArgumentException("Invalid tiles of " + tileSize + " over " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.columns = (width + tileSize - 1) / tileSize;
+        this.rows = (height + tileSize - 1) / tileSize;
+        this.sums = new long[columns * rows];
+        this.weightedSums = new long[columns * rows];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getCount() {
+        return sums.length;
+    }
+
+    /** Takes the checksums of a whole frame. */
+    public void compute(int[] argb) {
+        if (argb.length < width * height) {
+            throw new IllegalArgumentException("Frame holds " + argb.length + " pixels, need " + width * height);
+        }
+        reset();
+        for (int y = 0; y < height; y++) {
+            addRow(argb, y * width, y);
+        }
+    }
+
+    void reset() {
+        Arrays.fill(sums, 0);
+        Arrays.fill(weightedSums, 0);
+    }
+
+    // Adds row y, which starts at offset in argb; rows must be added top to bottom
+    void addRow(int[] argb, int offset, int y) {
+        int tile = y / tileSize * columns;
+        for (int left = 0; left < width; left += tileSize, tile++) {
+            long sum = sums[tile];
+            long weighted = weightedSums[tile];
+            int end = offset + Math.min(left + tileSize, width);
+            for (int i = offset + left; i < end; i++) {
+                sum += argb[i] & 0xFFFFFFFFL;
+                weighted += sum;
+            }
+            sums[tile] = sum;
+            weightedSums[tile] = weighted;
+        }
+    }
+
+    /**
+     * Writes the indexes of tiles that differ from {@code previous} to {@code changed}, in order,
+     * and returns how many there are.
+     */
+    public int diff(TileChecksums previous, int[] changed) {
+        if (previous.width != width || previous.height != height || previous.tileSize != tileSize) {
+            throw new IllegalArgumentException("Tile grids differ");
+        }
+        int count = 0;
+        for (int tile = 0; tile < sums.length; tile++) {
+            if (sums[tile] != previous.sums[tile] || weightedSums[tile] != previous.weightedSums[tile]) {
+                changed[count++] = tile;
+            }
+        }
+        return count;
+    }
+
+    public void copyFrom(TileChecksums other) {
+        if (other.sums.length != sums.length) {
+            throw new IllegalArgumentException("Tile grids differ");
+        }
+        System.arraycopy(other.sums, 0, sums, 0, sums.length);
+        System.arraycopy(other.weightedSums, 0, weightedSums, 0, weightedSums.length);
+    }
+}
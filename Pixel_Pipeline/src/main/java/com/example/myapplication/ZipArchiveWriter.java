@@ -0,0 +1,438 @@
+package com.example.myapplication;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Streams files into a ZIP archive without staging copies. Entries that are already compressed
+ * are stored as they are and copied with {@link FileChannel#transferTo}, after a first read for
+ * their CRC. Other entries are deflated in blocks on a pool in the style of
+ * {@link ParallelPngWriter}: each block ends on a sync flush and is primed with the 32 KB before
+ * it as its dictionary, and only a few blocks per thread are in flight, so memory stays the same
+ * however large the archive gets. Archives past 4 GB or 65535 entries get ZIP64 end records;
+ * a single entry must stay under 4 GB. Not thread-safe, apart from {@link #cancel}.
+ */
+public class ZipArchiveWriter implements Closeable {
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final short ZIP64_EXTRA = 0x0001;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+
+    private static final int BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int BLOCKS_PER_THREAD = 2;
+    // Large enough to amortise a transfer, small enough for progress and cancelling to stay responsive
+    private static final long TRANSFER_CHUNK = 1024 * 1024;
+
+    private static final String[] COMPRESSED_EXTENSIONS = {
+            ".png", ".jpg", ".jpeg", ".webp", ".gif", ".mp4", ".zip", ".gz", ".srdc"
+    };
+
+    public interface ProgressListener {
+        /** Bytes of entry data read so far, across the whole archive. */
+        void onProgress(long bytesRead);
+    }
+
+    private final WritableByteChannel out;
+    private final ForkJoinPool pool;
+    private final int compressionLevel;
+    private final ByteBuffer header = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+    private final List<Entry> entries = new ArrayList<>();
+    private ProgressListener progressListener;
+    private volatile boolean cancelled;
+    private long bytesWritten;
+    private long bytesRead;
+    private boolean finished;
+
+    public ZipArchiveWriter(WritableByteChannel out) {
+        this(out, ForkJoinPool.commonPool(), Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public ZipArchiveWriter(WritableByteChannel out, ForkJoinPool pool, int compressionLevel) {
+        this.out = out;
+        this.pool = pool;
+        this.compressionLevel = compressionLevel;
+    }
+
+    /** Whether a file of this name is compressed already, so deflating it would only cost time. */
+    public static boolean isCompressed(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        for (String extension : COMPRESSED_EXTENSIONS) {
+            if (lower.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this.progressListener = listener;
+    }
+
+    /** Makes the entry being written, or the next one, fail with an {@link InterruptedIOException}. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    /** Adds {@code source} from its current position to its end, uncompressed. */
+    public void addStored(String name, long modifiedTime, FileChannel source) throws IOException {
+        checkWritable();
+        long start = source.position();
+        long size = source.size() - start;
+        if (size > MAX_32) {
+            throw new IOException(name + " is too large for a ZIP entry: " + size + " bytes");
+        }
+        CRC32 crc = new CRC32();
+        long position = start;
+        while (position < start + size) {
+            readBuffer.clear();
+            int n = source.read(readBuffer, position);
+            if (n < 0) {
+                throw new IOException(name + " shrank while being archived");
+            }
+            readBuffer.flip();
+            crc.update(readBuffer);
+            position += n;
+        }
+
+        Entry entry = new Entry(name, modifiedTime, METHOD_STORED, 0, bytesWritten);
+        entry.crc = crc.getValue();
+        entry.compressedSize = size;
+        entry.size = size;
+        writeLocalHeader(entry);
+        // File to file this is a kernel copy; the pixels never come up into the Java heap
+        position = start;
+        while (position < start + size) {
+            checkCancelled();
+            long n = source.transferTo(position, Math.min(TRANSFER_CHUNK, start + size - position), out);
+            if (n <= 0) {
+                throw new IOException(name + " shrank while being archived");
+            }
+            position += n;
+            bytesWritten += n;
+            reportRead(n);
+        }
+        source.position(start + size);
+        entries.add(entry);
+    }
+
+    /** Adds everything left in {@code source}, deflated on the pool. */
+    public void addDeflated(String name, long modifiedTime, ReadableByteChannel source) throws IOException {
+        checkWritable();
+        Entry entry = new Entry(name, modifiedTime, METHOD_DEFLATED, FLAG_DATA_DESCRIPTOR, bytesWritten);
+        writeLocalHeader(entry);
+
+        CRC32 crc = new CRC32();
+        int maxInFlight = Math.max(1, pool.getParallelism() * BLOCKS_PER_THREAD);
+        ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<>();
+        byte[] dictionary = null;
+        // One block is held back until the next read shows whether it is the last
+        byte[] block = readBlock(source);
+        if (block == null) {
+            block = new byte[0];
+        }
+        try {
+            while (true) {
+                checkCancelled();
+                byte[] next = readBlock(source);
+                boolean last = next == null;
+                crc.update(block);
+                entry.size += block.length;
+                if (entry.size > MAX_32) {
+                    throw new IOException(name + " is too large for a ZIP entry");
+                }
+                byte[] input = block;
+                byte[] primer = dictionary;
+                inFlight.add(pool.submit(() -> deflateBlock(input, primer, last)));
+                dictionary = tail(block, dictionary);
+                while (inFlight.size() >= maxInFlight || (last && !inFlight.isEmpty())) {
+                    byte[] compressed = inFlight.remove().get();
+                    write(ByteBuffer.wrap(compressed));
+                    entry.compressedSize += compressed.length;
+                }
+                reportRead(block.length);
+                if (last) {
+                    break;
+                }
+                block = next;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelAll(inFlight);
+            throw new InterruptedIOException("Interrupted while deflating " + name);
+        } catch (ExecutionException e) {
+            cancelAll(inFlight);
+            throw new IOException("Failed to deflate " + name, e.getCause());
+        } catch (IOException | RuntimeException e) {
+            cancelAll(inFlight);
+            throw e;
+        }
+        entry.crc = crc.getValue();
+
+        header.clear();
+        header.putInt(DATA_DESCRIPTOR);
+        header.putInt((int) entry.crc);
+        header.putInt((int) entry.compressedSize);
+        header.putInt((int) entry.size);
+        header.flip();
+        write(header);
+        entries.add(entry);
+    }
+
+    /** Writes the central directory. The archive is complete once this returns. */
+    public void finish() throws IOException {
+        checkWritable();
+        finished = true;
+        long directoryStart = bytesWritten;
+        for (Entry entry : entries) {
+            writeCentralHeader(entry);
+        }
+        long directorySize = bytesWritten - directoryStart;
+        boolean zip64 = entries.size() >= MAX_16 || directoryStart >= MAX_32 || directorySize >= MAX_32;
+        if (zip64) {
+            long recordStart = bytesWritten;
+            header.clear();
+            header.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY);
+            header.putLong(44);
+            header.putShort((short) VERSION_ZIP64);
+            header.putShort((short) VERSION_ZIP64);
+            header.putInt(0);
+            header.putInt(0);
+            header.putLong(entries.size());
+            header.putLong(entries.size());
+            header.putLong(directorySize);
+            header.putLong(directoryStart);
+            header.putInt(ZIP64_LOCATOR);
+            header.putInt(0);
+            header.putLong(recordStart);
+            header.putInt(1);
+            header.flip();
+            write(header);
+        }
+        header.clear();
+        header.putInt(END_OF_CENTRAL_DIRECTORY);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putShort((short) Math.min(entries.size(), MAX_16));
+        header.putShort((short) Math.min(entries.size(), MAX_16));
+        header.putInt((int) Math.min(directorySize, MAX_32));
+        header.putInt((int) Math.min(directoryStart, MAX_32));
+        header.putShort((short) 0);
+        header.flip();
+        write(header);
+    }
+
+    /** Closes the output. An archive that was not finished is left incomplete. */
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        out.close();
+    }
+
+    private void writeLocalHeader(Entry entry) throws IOException {
+        header.clear();
+        header.putInt(LOCAL_HEADER);
+        header.putShort((short) VERSION_DEFAULT);
+        header.putShort((short) (entry.flags | FLAG_UTF8));
+        header.putShort((short) entry.method);
+        header.putInt(entry.dosTime);
+        // Deflated entries give these in the data descriptor instead
+        header.putInt((int) entry.crc);
+        header.putInt((int) entry.compressedSize);
+        header.putInt((int) entry.size);
+        header.putShort((short) entry.name.length);
+        header.putShort((short) 0);
+        header.flip();
+        write(header);
+        write(ByteBuffer.wrap(entry.name));
+    }
+
+    private void writeCentralHeader(Entry entry) throws IOException {
+        boolean zip64 = entry.offset >= MAX_32;
+        header.clear();
+        header.putInt(CENTRAL_HEADER);
+        header.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT));
+        header.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT));
+        header.putShort((short) (entry.flags | FLAG_UTF8));
+        header.putShort((short) entry.method);
+        header.putInt(entry.dosTime);
+        header.putInt((int) entry.crc);
+        header.putInt((int) entry.compressedSize);
+        header.putInt((int) entry.size);
+        header.putShort((short) entry.name.length);
+        header.putShort((short) (zip64 ? 12 : 0));
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putInt(0);
+        header.putInt((int) Math.min(entry.offset, MAX_32));
+        header.flip();
+        write(header);
+        write(ByteBuffer.wrap(entry.name));
+        if (zip64) {
+            header.clear();
+            header.putShort(ZIP64_EXTRA);
+            header.putShort((short) 8);
+            header.putLong(entry.offset);
+            header.flip();
+            write(header);
+        }
+    }
+
+    private byte[] deflateBlock(byte[] input, byte[] dictionary, boolean last) {
+        Deflater deflater = new Deflater(compressionLevel, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(input);
+            if (last) {
+                deflater.finish();
+            }
+            byte[] output = new byte[Math.max(1024, input.length / 2)];
+            int length = 0;
+            while (true) {
+                if (output.length - length < 256) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                int free = output.length - length;
+                int n = deflater.deflate(output, length, free, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                length += n;
+                // A sync flush is complete once deflate leaves room in the output buffer
+                if (last ? deflater.finished() : n < free && deflater.needsInput()) {
+                    break;
+                }
+            }
+            return Arrays.copyOf(output, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // Null at the end of the channel; a short block only at the end
+    private static byte[] readBlock(ReadableByteChannel source) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer) < 0) {
+                break;
+            }
+        }
+        if (buffer.position() == 0) {
+            return null;
+        }
+        return buffer.position() == BLOCK_SIZE ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    // The last 32 KB of input up to the end of block, for the next block's dictionary
+    private static byte[] tail(byte[] block, byte[] previous) {
+        if (block.length >= DICTIONARY_SIZE || previous == null) {
+            return Arrays.copyOfRange(block, Math.max(0, block.length - DICTIONARY_SIZE), block.length);
+        }
+        byte[] joined = new byte[Math.min(DICTIONARY_SIZE, previous.length + block.length)];
+        int fromPrevious = joined.length - block.length;
+        System.arraycopy(previous, previous.length - fromPrevious, joined, 0, fromPrevious);
+        System.arraycopy(block, 0, joined, fromPrevious, block.length);
+        return joined;
+    }
+
+    private static void cancelAll(ArrayDeque<Future<byte[]>> inFlight) {
+        for (Future<byte[]> future : inFlight) {
+            future.cancel(true);
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            bytesWritten += out.write(buffer);
+        }
+    }
+
+    private void reportRead(long n) {
+        bytesRead += n;
+        if (progressListener != null) {
+            progressListener.onProgress(bytesRead);
+        }
+    }
+
+    private void checkWritable() throws IOException {
+        if (finished) {
+            throw new IOException("ZIP archive already finished");
+        }
+        checkCancelled();
+    }
+
+    private void checkCancelled() throws InterruptedIOException {
+        if (cancelled) {
+            throw new InterruptedIOException("ZIP export cancelled");
+        }
+    }
+
+    // MS-DOS date and time in local time, as ZIP readers expect; 1980 is the earliest it can hold
+    private static int dosTime(long time) {
+        LocalDateTime local = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        if (local.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (local.getYear() - 1980) << 25 | local.getMonthValue() << 21 | local.getDayOfMonth() << 16
+                | local.getHour() << 11 | local.getMinute() << 5 | local.getSecond() >> 1;
+    }
+
+    private static final class Entry {
+        final byte[] name;
+        final int dosTime;
+        final int method;
+        final int flags;
+        final long offset;
+        long crc;
+        long compressedSize;
+        long size;
+
+        Entry(String name, long modifiedTime, int method, int flags, long offset) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.dosTime = dosTime(modifiedTime);
+            this.method = method;
+            this.flags = flags;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DeltaCaptureTest {
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 70;
+    private static final int TILE = 32;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("delta", ".srdc");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    // A still screen with a small box that moves a few pixels each frame
+    private static List<int[]> frames(int count) {
+        Random random = new Random(5);
+        int[] background = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < background.length; i++) {
+            background[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        List<int[]> frames = new ArrayList<>();
+        for (int n = 0; n < count; n++) {
+            int[] pixels = background.clone();
+            for (int y = 10; y < 20; y++) {
+                for (int x = n * 7; x < n * 7 + 10 && x < WIDTH; x++) {
+                    pixels[y * WIDTH + x] = 0xFFFF0000 + n;
+                }
+            }
+            frames.add(pixels);
+        }
+        return frames;
+    }
+
+    // Writes each frame as a delta against the one before, and a keyframe every keyframeInterval
+    private static int write(File file, List<int[]> frames, int keyframeInterval) throws IOException {
+        TileChecksums previous = new TileChecksums(WIDTH, HEIGHT, TILE);
+        TileChecksums current = new TileChecksums(WIDTH, HEIGHT, TILE);
+        int[] changed = new int[current.getCount()];
+        int tilesWritten = 0;
+        try (DeltaCaptureWriter writer = new DeltaCaptureWriter(new FileOutputStream(file), WIDTH, HEIGHT, TILE)) {
+            for (int n = 0; n < frames.size(); n++) {
+                current.compute(frames.get(n));
+                if (n % keyframeInterval == 0) {
+                    writer.writeKeyframe(1000 + n, frames.get(n));
+                } else {
+                    int count = current.diff(previous, changed);
+                    writer.writeDelta(1000 + n, frames.get(n), changed, count);
+                    tilesWritten += count;
+                }
+                previous.copyFrom(current);
+            }
+            assertEquals(frames.size(), writer.getFrameCount());
+        }
+        return tilesWritten;
+    }
+
+    @Test
+    public void rebuildsEveryFrame() throws IOException {
+        List<int[]> frames = frames(12);
+        int tilesWritten = write(file, frames, 5);
+        // The box spans at most two tile columns of the one tile row it is in, before and after moving
+        assertTrue("wrote " + tilesWritten + " tiles", tilesWritten <= 9 * 3);
+
+        try (DeltaCaptureReader reader = new DeltaCaptureReader(file)) {
+            assertEquals(12, reader.getFrameCount());
+            assertEquals(WIDTH, reader.getWidth());
+            assertTrue(reader.isKeyframe(5));
+            assertFalse(reader.isKeyframe(6));
+            int[] pixels = new int[WIDTH * HEIGHT];
+            // Out of order, so some reads start again from a keyframe
+            for (int n : new int[]{3, 4, 0, 11, 7, 8, 9, 2}) {
+                reader.readFrame(n, pixels);
+                assertEquals(1000 + n, reader.getTimestamp(n));
+                assertArrayEquals("frame " + n, frames.get(n), pixels);
+            }
+        }
+    }
+
+    @Test
+    public void deltasAreSmallerThanKeyframes() throws IOException {
+        List<int[]> frames = frames(10);
+        write(file, frames, 100);
+        long deltas = file.length();
+        write(file, frames, 1);
+
+        assertTrue(deltas * 3 < file.length());
+    }
+
+    @Test
+    public void truncatedRecordEndsTheFile() throws IOException {
+        List<int[]> frames = frames(4);
+        write(file, frames, 100);
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(raw.length() - 3);
+        }
+
+        try (DeltaCaptureReader reader = new DeltaCaptureReader(file)) {
+            assertEquals(3, reader.getFrameCount());
+            int[] pixels = new int[WIDTH * HEIGHT];
+            reader.readFrame(2, pixels);
+            assertArrayEquals(frames.get(2), pixels);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[64]);
+        }
+        new DeltaCaptureReader(file).close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void deltaNeedsAKeyframe() throws IOException {
+        try (DeltaCaptureWriter writer = new DeltaCaptureWriter(new FileOutputStream(file), WIDTH, HEIGHT, TILE)) {
+            writer.writeDelta(0, new int[WIDTH * HEIGHT], new int[0], 0);
+        }
+    }
+}
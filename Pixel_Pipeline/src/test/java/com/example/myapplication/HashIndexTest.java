@@ -0,0 +1,106 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class HashIndexTest {
+
+    private static Set<Long> search(HashIndex index, long hash, int maxDistance) {
+        Set<Long> found = new HashSet<>();
+        index.search(hash, maxDistance, (id, candidate, distance) -> {
+            assertEquals(Long.bitCount(candidate ^ hash), distance);
+            assertTrue("visited twice: " + id, found.add(id));
+        });
+        return found;
+    }
+
+    private static long flipBits(long hash, int bits, Random random) {
+        long flipped = hash;
+        while (Long.bitCount(flipped ^ hash) < bits) {
+            flipped ^= 1L << random.nextInt(64);
+        }
+        return flipped;
+    }
+
+    @Test
+    public void matchesLinearScanAtEveryDistance() {
+        Random random = new Random(7);
+        int size = 2000;
+        long[] hashes = new long[size];
+        HashIndex index = new HashIndex();
+        for (int i = 0; i < size; i++) {
+            // Clusters of near copies, as repeated captures of one screen produce
+            hashes[i] = i % 4 == 0 ? random.nextLong() : flipBits(hashes[i - i % 4], random.nextInt(12), random);
+            index.add(hashes[i], i);
+        }
+
+        for (int query = 0; query < 200; query++) {
+            long hash = flipBits(hashes[random.nextInt(size)], random.nextInt(8), random);
+            for (int maxDistance = 0; maxDistance <= HashIndex.MAX_DISTANCE; maxDistance++) {
+                Set<Long> expected = new HashSet<>();
+                for (int i = 0; i < size; i++) {
+                    if (Long.bitCount(hashes[i] ^ hash) <= maxDistance) {
+                        expected.add((long) i);
+                    }
+                }
+                assertEquals("distance " + maxDistance, expected, search(index, hash, maxDistance));
+            }
+        }
+    }
+
+    @Test
+    public void nearestPrefersTheClosestEntry() {
+        HashIndex index = new HashIndex();
+        index.add(0b1111L, 1);
+        index.add(0b0001L, 2);
+        index.add(-1L, 3);
+
+        assertEquals(2, index.nearest(0L, 5, -1));
+        assertEquals(-1, index.nearest(0L, 0, -1));
+        assertEquals(3, index.nearest(-2L, 1, -1));
+    }
+
+    @Test
+    public void removedEntriesAreNotFound() {
+        HashIndex index = new HashIndex();
+        for (int i = 0; i < 100; i++) {
+            index.add(i, i);
+        }
+
+        assertTrue(index.remove(42));
+        assertFalse(index.remove(42));
+        assertEquals(99, index.size());
+        assertEquals(-1, index.nearest(42, 0, -1));
+        assertEquals(43, index.nearest(43, 0, -1));
+    }
+
+    @Test
+    public void compactionKeepsTheRemainingEntries() {
+        HashIndex index = new HashIndex();
+        for (int i = 0; i < 1000; i++) {
+            index.add((long) i << 20, i);
+        }
+        for (int i = 0; i < 1000; i += 3) {
+            index.remove(i);
+        }
+        for (int i = 1; i < 1000; i += 3) {
+            index.remove(i);
+        }
+
+        assertEquals(333, index.size());
+        for (int i = 0; i < 1000; i++) {
+            long expected = i % 3 == 2 ? i : -1;
+            assertEquals(expected, index.nearest((long) i << 20, 0, -1));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDistancesBeyondTheProbeLimit() {
+        new HashIndex().search(0, HashIndex.MAX_DISTANCE + 1, (id, hash, distance) -> { });
+    }
+}
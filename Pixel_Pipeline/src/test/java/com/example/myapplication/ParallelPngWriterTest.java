@@ -0,0 +1,157 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+public class ParallelPngWriterTest {
+
+    private static int[] screenLikeImage(int width, int height, boolean withAlpha) {
+        Random random = new Random(width * 31L + height);
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int pixel;
+                if (y < height / 3) {
+                    // Flat UI band
+                    pixel = (x / 16 + y / 16) % 2 == 0 ? 0xFFF6F2FA : 0xFF6750A4;
+                } else if (y < 2 * height / 3) {
+                    // Gradient band
+                    pixel = 0xFF000000 | (x * 255 / width) << 16 | (y * 255 / height) << 8 | 0x40;
+                } else {
+                    // Noise band
+                    pixel = 0xFF000000 | random.nextInt(0x1000000);
+                }
+                if (withAlpha) {
+                    pixel = (pixel & 0x00FFFFFF) | ((x + y) & 0xFF) << 24;
+                }
+                pixels[y * width + x] = pixel;
+            }
+        }
+        return pixels;
+    }
+
+    private static byte[] encode(int[] pixels, int width, int height, int threads) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new ParallelPngWriter(pool, Deflater.DEFAULT_COMPRESSION).write(pixels, width, height, out);
+            return out.toByteArray();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertDecodesTo(byte[] png, int[] pixels, int width, int height) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertNotNull("PNG could not be decoded", image);
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        int[] decoded = image.getRGB(0, 0, width, height, null, 0, width);
+        assertArrayEquals(pixels, decoded);
+    }
+
+    @Test
+    public void write_opaqueImageRoundTrips() throws IOException {
+        int[] pixels = screenLikeImage(320, 700, false);
+
+        assertDecodesTo(encode(pixels, 320, 700, 4), pixels, 320, 700);
+    }
+
+    @Test
+    public void write_translucentImageRoundTrips() throws IOException {
+        int[] pixels = screenLikeImage(200, 301, true);
+
+        assertDecodesTo(encode(pixels, 200, 301, 3), pixels, 200, 301);
+    }
+
+    @Test
+    public void write_outputIsIndependentOfThreadCount() throws IOException {
+        int[] pixels = screenLikeImage(256, 513, false);
+
+        byte[] single = encode(pixels, 256, 513, 1);
+        for (int threads = 2; threads <= 8; threads *= 2) {
+            assertDecodesTo(encode(pixels, 256, 513, threads), pixels, 256, 513);
+        }
+        assertDecodesTo(single, pixels, 256, 513);
+    }
+
+    @Test
+    public void write_tinyImages() throws IOException {
+        int[] single = {0xFF123456};
+        assertDecodesTo(encode(single, 1, 1, 4), single, 1, 1);
+
+        int[] row = screenLikeImage(97, 1, false);
+        assertDecodesTo(encode(row, 97, 1, 4), row, 97, 1);
+
+        int[] column = screenLikeImage(1, 150, false);
+        assertDecodesTo(encode(column, 1, 150, 4), column, 1, 150);
+    }
+
+    @Test
+    public void write_compressesComparablyToSingleStrip() throws IOException {
+        int[] pixels = screenLikeImage(540, 1200, false);
+
+        int single = encode(pixels, 540, 1200, 1).length;
+        int parallel = encode(pixels, 540, 1200, 8).length;
+
+        // Dictionary priming keeps the strip overhead small
+        assertTrue("parallel " + parallel + " vs single " + single, parallel < single * 1.05);
+    }
+
+    @Test
+    public void write_fromRowSourceInBandsRoundTrips() throws IOException {
+        int width = 300;
+        int height = 1000;
+        int[] pixels = screenLikeImage(width, height, false);
+        int[] maxRead = new int[1];
+        ParallelPngWriter.RowSource source = (firstRow, rowCount, target) -> {
+            maxRead[0] = Math.max(maxRead[0], rowCount);
+            System.arraycopy(pixels, firstRow * width, target, 0, rowCount * width);
+        };
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new ParallelPngWriter(pool, Deflater.DEFAULT_COMPRESSION).write(source, width, height, false, 128, out);
+            assertDecodesTo(out.toByteArray(), pixels, width, height);
+        } finally {
+            pool.shutdown();
+        }
+        // One band plus the rows above it that its first strip is primed with
+        assertTrue("read " + maxRead[0] + " rows at once", maxRead[0] < 128 + 40);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void write_rejectsShortPixelArray() throws IOException {
+        encode(new int[10], 4, 4, 1);
+    }
+
+    @Test
+    public void adler32Combine_matchesSequentialChecksum() {
+        byte[] data = new byte[100_000];
+        new Random(7).nextBytes(data);
+        int split = 37_123;
+
+        Adler32 whole = new Adler32();
+        whole.update(data);
+        Adler32 first = new Adler32();
+        first.update(data, 0, split);
+        Adler32 second = new Adler32();
+        second.update(data, split, data.length - split);
+
+        assertEquals(whole.getValue(),
+                ParallelPngWriter.adler32Combine(first.getValue(), second.getValue(), data.length - split));
+    }
+}
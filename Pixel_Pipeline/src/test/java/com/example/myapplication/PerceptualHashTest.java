@@ -0,0 +1,82 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PerceptualHashTest {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 2400;
+
+    // Light background with dark text-like lines whose lengths depend on the seed
+    private static int[] screen(long seed) {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Arrays.fill(pixels, 0xFFF6F2FA);
+        Random random = new Random(seed);
+        for (int top = 200; top < HEIGHT - 100; top += 60) {
+            int end = 60 + random.nextInt(WIDTH - 120);
+            for (int y = top; y < top + 30; y++) {
+                Arrays.fill(pixels, y * WIDTH + 60, y * WIDTH + end, 0xFF49454F);
+            }
+        }
+        return pixels;
+    }
+
+    private static void fillRect(int[] pixels, int left, int top, int right, int bottom, int color) {
+        for (int y = top; y < bottom; y++) {
+            Arrays.fill(pixels, y * WIDTH + left, y * WIDTH + right, color);
+        }
+    }
+
+    @Test
+    public void identicalFramesHashAlike() {
+        assertEquals(PerceptualHash.dHash(screen(1), WIDTH, HEIGHT), PerceptualHash.dHash(screen(1), WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void smallChangeFlipsFewBits() {
+        int[] before = screen(1);
+        int[] after = screen(1);
+        // A status bar clock ticking over
+        fillRect(after, 900, 20, 1040, 70, 0xFF000000);
+
+        int distance = PerceptualHash.distance(
+                PerceptualHash.dHash(before, WIDTH, HEIGHT), PerceptualHash.dHash(after, WIDTH, HEIGHT));
+        assertTrue("distance " + distance, distance <= 2);
+    }
+
+    @Test
+    public void differentScreensAreFarApart() {
+        long a = PerceptualHash.dHash(screen(1), WIDTH, HEIGHT);
+        long b = PerceptualHash.dHash(screen(2), WIDTH, HEIGHT);
+
+        assertTrue("distance " + PerceptualHash.distance(a, b), PerceptualHash.distance(a, b) > 10);
+    }
+
+    @Test
+    public void thumbnailHashesLikeTheFullFrame() {
+        int[] pixels = screen(3);
+        int[] thumbnail = PixelScaler.downscale(pixels, WIDTH, HEIGHT, 240, 533);
+
+        int distance = PerceptualHash.distance(
+                PerceptualHash.dHash(pixels, WIDTH, HEIGHT), PerceptualHash.dHash(thumbnail, 240, 533));
+        assertTrue("distance " + distance, distance <= 3);
+    }
+
+    @Test
+    public void comparesAveragesOfUnevenCells() {
+        // 10 rows over 9 cells: one cell is twice as tall, but a flat frame is still flat
+        int[] flat = new int[8 * 10];
+        Arrays.fill(flat, 0xFF808080);
+
+        assertEquals(0, PerceptualHash.dHash(flat, 8, 10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFramesSmallerThanTheGrid() {
+        PerceptualHash.dHash(new int[8 * 8], 8, 8);
+    }
+}
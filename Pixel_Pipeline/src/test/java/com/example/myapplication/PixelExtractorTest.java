@@ -0,0 +1,148 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class PixelExtractorTest {
+
+    // Builds an RGBA_8888 plane the way ImageReader lays it out, with junk in the padding
+    private static ByteBuffer paddedPlane(int width, int height, int pixelStride, int rowStride, boolean trimLastRow) {
+        int size = rowStride * height - (trimLastRow ? rowStride - width * pixelStride : 0);
+        ByteBuffer plane = ByteBuffer.allocateDirect(size);
+        for (int i = 0; i < size; i++) {
+            plane.put(i, (byte) 0xEE);
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int offset = y * rowStride + x * pixelStride;
+                plane.put(offset, (byte) x);
+                plane.put(offset + 1, (byte) y);
+                plane.put(offset + 2, (byte) (x + y));
+                plane.put(offset + 3, (byte) 0xFF);
+            }
+        }
+        return plane;
+    }
+
+    private static int expectedArgb(int x, int y) {
+        return 0xFF000000 | ((x & 0xFF) << 16) | ((y & 0xFF) << 8) | ((x + y) & 0xFF);
+    }
+
+    private static void assertFrame(int[] pixels, int width, int height) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals("pixel " + x + "," + y, expectedArgb(x, y), pixels[y * width + x]);
+            }
+        }
+    }
+
+    @Test
+    public void extract_withoutPadding() {
+        ByteBuffer plane = paddedPlane(7, 5, 4, 28, false);
+        int[] pixels = new int[35];
+
+        PixelExtractor.extractArgb(plane, 7, 5, 4, 28, pixels);
+
+        assertFrame(pixels, 7, 5);
+    }
+
+    @Test
+    public void extract_skipsRowPadding() {
+        ByteBuffer plane = paddedPlane(13, 9, 4, 64, false);
+        int[] pixels = new int[13 * 9];
+
+        PixelExtractor.extractArgb(plane, 13, 9, 4, 64, pixels);
+
+        assertFrame(pixels, 13, 9);
+    }
+
+    @Test
+    public void extract_lastRowWithoutPadding() {
+        ByteBuffer plane = paddedPlane(10, 4, 4, 48, true);
+        int[] pixels = new int[40];
+
+        PixelExtractor.extractArgb(plane, 10, 4, 4, 48, pixels);
+
+        assertFrame(pixels, 10, 4);
+    }
+
+    @Test
+    public void extract_unalignedStrideUsesPerPixelPath() {
+        ByteBuffer plane = paddedPlane(6, 3, 5, 33, false);
+        int[] pixels = new int[18];
+
+        PixelExtractor.extractArgb(plane, 6, 3, 5, 33, pixels);
+
+        assertFrame(pixels, 6, 3);
+    }
+
+    @Test
+    public void extract_ignoresBufferPosition() {
+        ByteBuffer plane = paddedPlane(4, 4, 4, 20, false);
+        plane.position(17);
+        int[] pixels = new int[16];
+
+        PixelExtractor.extractArgb(plane, 4, 4, 4, 20, pixels);
+
+        assertFrame(pixels, 4, 4);
+        assertEquals(17, plane.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void extract_rejectsShortPlane() {
+        PixelExtractor.extractArgb(ByteBuffer.allocate(100), 10, 10, 4, 40, new int[100]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void extract_rejectsSmallDestination() {
+        PixelExtractor.extractArgb(ByteBuffer.allocate(400), 10, 10, 4, 40, new int[99]);
+    }
+
+    @Test
+    public void extract_takesTileChecksumsOfTheCopiedFrame() {
+        int[][] strides = {{4, 64}, {5, 73}};
+        for (int[] stride : strides) {
+            ByteBuffer plane = paddedPlane(13, 9, stride[0], stride[1], false);
+            int[] pixels = new int[13 * 9];
+            TileChecksums copied = new TileChecksums(13, 9, 4);
+            TileChecksums computed = new TileChecksums(13, 9, 4);
+
+            PixelExtractor.extractArgb(plane, 13, 9, stride[0], stride[1], pixels, copied);
+            computed.compute(pixels);
+
+            assertFrame(pixels, 13, 9);
+            assertEquals(0, copied.diff(computed, new int[copied.getCount()]));
+        }
+    }
+
+    @Test
+    public void intArrayPool_reusesAndEvictsOldest() {
+        IntArrayPool pool = new IntArrayPool(2 * 100 * Integer.BYTES);
+        int[] first = pool.acquire(100);
+        int[] second = pool.acquire(100);
+        int[] third = pool.acquire(100);
+
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+
+        assertEquals(2 * 100 * Integer.BYTES, pool.getRetainedBytes());
+        assertSame(third, pool.acquire(100));
+        assertSame(second, pool.acquire(100));
+        assertNotSame(first, pool.acquire(100));
+        assertEquals(0, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void intArrayPool_keysBySize() {
+        IntArrayPool pool = new IntArrayPool(1 << 20);
+        int[] small = pool.acquire(10);
+        pool.release(small);
+
+        assertEquals(20, pool.acquire(20).length);
+        assertSame(small, pool.acquire(10));
+    }
+}
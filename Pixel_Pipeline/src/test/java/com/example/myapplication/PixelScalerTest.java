@@ -0,0 +1,59 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PixelScalerTest {
+
+    @Test
+    public void halvesByAveragingBlocks() {
+        int[] src = {
+                0xFF000000, 0xFF0000FF, 0xFFFFFFFF, 0xFFFFFFFF,
+                0xFF00FF00, 0xFFFF0000, 0xFFFFFFFF, 0xFFFFFFFF,
+        };
+
+        int[] dst = PixelScaler.downscale(src, 4, 2, 2, 1);
+
+        assertArrayEquals(new int[] {0xFF404040, 0xFFFFFFFF}, dst);
+    }
+
+    @Test
+    public void averagesAlpha() {
+        int[] src = {0x00000000, 0xFF000000};
+
+        assertArrayEquals(new int[] {0x80000000}, PixelScaler.downscale(src, 2, 1, 1, 1));
+    }
+
+    @Test
+    public void nonIntegerFactorCoversEverySourcePixel() {
+        int width = 1080;
+        int height = 2400;
+        int[] src = new int[width * height];
+        Arrays.fill(src, 0xFF336699);
+
+        int[] dst = PixelScaler.downscale(src, width, height, 240, 533);
+
+        assertEquals(240 * 533, dst.length);
+        for (int pixel : dst) {
+            assertEquals(0xFF336699, pixel);
+        }
+    }
+
+    @Test
+    public void sameSizeIsACopy() {
+        int[] src = {1, 2, 3, 4};
+
+        int[] dst = PixelScaler.downscale(src, 2, 2, 2, 2);
+
+        assertArrayEquals(src, dst);
+        assertNotSame(src, dst);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUpscaling() {
+        PixelScaler.downscale(new int[4], 2, 2, 3, 3);
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ScrollOverlapFinderTest {
+    private static final int WIDTH = 360;
+    private static final int HEIGHT = 800;
+    private static final int STATUS_BAR = 48;
+    private static final int NAVIGATION_BAR = 96;
+    private static final int VIEWPORT = HEIGHT - STATUS_BAR - NAVIGATION_BAR;
+
+    // A long list of text-like lines with blank gaps, as a feed or settings screen would scroll
+    static int[] page(int height, long seed) {
+        int[] pixels = new int[WIDTH * height];
+        Arrays.fill(pixels, 0xFFFFFFFF);
+        Random random = new Random(seed);
+        for (int top = 10; top + 20 < height; top += 28 + random.nextInt(20)) {
+            int left = 16 + random.nextInt(40);
+            int right = left + 40 + random.nextInt(WIDTH - left - 60);
+            int color = 0xFF000000 | random.nextInt(0x1000000);
+            for (int y = top; y < top + 14 + random.nextInt(6); y++) {
+                Arrays.fill(pixels, y * WIDTH + left, y * WIDTH + right, color);
+            }
+        }
+        return pixels;
+    }
+
+    // The page scrolled to {@code offset}, between a status bar and a navigation bar
+    static int[] frame(int[] page, int offset) {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Arrays.fill(pixels, 0, STATUS_BAR * WIDTH, 0xFF1C1B1F);
+        System.arraycopy(page, offset * WIDTH, pixels, STATUS_BAR * WIDTH, VIEWPORT * WIDTH);
+        Arrays.fill(pixels, (HEIGHT - NAVIGATION_BAR) * WIDTH, HEIGHT * WIDTH, 0xFF2B2930);
+        // The clock also differs between the two bars
+        pixels[20 * WIDTH + 300] = 0xFF000000 | offset;
+        return pixels;
+    }
+
+    private static ScrollOverlapFinder.Overlap find(int[] previous, int[] next) {
+        return ScrollOverlapFinder.find(ScrollOverlapFinder.rowHashes(previous, WIDTH, HEIGHT),
+                ScrollOverlapFinder.rowHashes(next, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void find_measuresScrollBetweenFixedBars() {
+        int[] page = page(3000, 1);
+
+        for (int shift : new int[] {1, 37, 200, 511}) {
+            ScrollOverlapFinder.Overlap overlap = find(frame(page, 400), frame(page, 400 + shift));
+
+            assertNotNull("shift " + shift, overlap);
+            assertEquals(shift, overlap.getShift());
+            assertTrue(overlap.getBottom() >= NAVIGATION_BAR);
+        }
+    }
+
+    @Test
+    public void find_reportsNoMovementForTheSameScreen() {
+        int[] page = page(3000, 2);
+
+        ScrollOverlapFinder.Overlap overlap = find(frame(page, 100), frame(page, 100));
+
+        assertNotNull(overlap);
+        assertEquals(0, overlap.getShift());
+    }
+
+    @Test
+    public void find_ignoresAScrollbarDrawnOverContent() {
+        int[] page = page(3000, 3);
+        int[] next = frame(page, 150);
+        for (int y = 300; y < 400; y++) {
+            Arrays.fill(next, y * WIDTH + WIDTH - 6, y * WIDTH + WIDTH - 2, 0x80000000);
+        }
+
+        ScrollOverlapFinder.Overlap overlap = find(frame(page, 0), next);
+
+        assertNotNull(overlap);
+        assertEquals(150, overlap.getShift());
+    }
+
+    @Test
+    public void find_givesUpWhenScrolledPastTheOverlap() {
+        int[] page = page(3000, 4);
+
+        assertNull(find(frame(page, 0), frame(page, VIEWPORT + 100)));
+    }
+
+    @Test
+    public void find_givesUpOnUpwardScroll() {
+        int[] page = page(3000, 5);
+
+        assertNull(find(frame(page, 500), frame(page, 300)));
+    }
+
+    @Test
+    public void find_lineUpsRepeatedRowsByTheLargestOverlap() {
+        // Identical list items every 64 rows only line up by the distinct header above them
+        int[] page = new int[WIDTH * 3000];
+        Arrays.fill(page, 0xFFFFFFFF);
+        for (int y = 0; y < 3000; y++) {
+            if (y < 100) {
+                Arrays.fill(page, y * WIDTH, y * WIDTH + 10 + y * 3, 0xFF6750A4);
+            } else if (y % 64 < 20) {
+                Arrays.fill(page, y * WIDTH + 16, y * WIDTH + 200, 0xFF49454F);
+            }
+        }
+
+        ScrollOverlapFinder.Overlap overlap = find(frame(page, 0), frame(page, 40));
+
+        assertNotNull(overlap);
+        assertEquals(40, overlap.getShift());
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+public class ScrollStitcherTest {
+    private static final int WIDTH = 360;
+    private static final int HEIGHT = 800;
+    private static final int STATUS_BAR = 48;
+    private static final int NAVIGATION_BAR = 96;
+    private static final int VIEWPORT = HEIGHT - STATUS_BAR - NAVIGATION_BAR;
+
+    private File spool;
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+        spool = File.createTempFile("scroll", ".raw");
+        pool = new ForkJoinPool(3);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+        spool.delete();
+    }
+
+    private BufferedImage encode(ScrollStitcher stitcher) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stitcher.writePng(new ParallelPngWriter(pool, Deflater.BEST_SPEED), out);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertNotNull("PNG could not be decoded", image);
+        return image;
+    }
+
+    // Status bar of the last frame, the page down to the last offset's viewport, then the navigation bar
+    private static int[] expected(int[] page, int[] lastFrame, int lastOffset) {
+        int rows = STATUS_BAR + lastOffset + VIEWPORT + NAVIGATION_BAR;
+        int[] pixels = new int[WIDTH * rows];
+        System.arraycopy(lastFrame, 0, pixels, 0, STATUS_BAR * WIDTH);
+        System.arraycopy(page, 0, pixels, STATUS_BAR * WIDTH, (lastOffset + VIEWPORT) * WIDTH);
+        System.arraycopy(lastFrame, (HEIGHT - NAVIGATION_BAR) * WIDTH, pixels,
+                (rows - NAVIGATION_BAR) * WIDTH, NAVIGATION_BAR * WIDTH);
+        return pixels;
+    }
+
+    @Test
+    public void stitchesScrolledFramesIntoThePage() throws IOException {
+        int[] page = ScrollOverlapFinderTest.page(4000, 7);
+        int[] offsets = {0, 120, 120, 480, 700, 1150};
+        int[] last = null;
+
+        try (ScrollStitcher stitcher = new ScrollStitcher(WIDTH, HEIGHT, 10_000, spool)) {
+            for (int offset : offsets) {
+                last = ScrollOverlapFinderTest.frame(page, offset);
+                assertTrue(stitcher.add(last) >= 0);
+            }
+            assertEquals(HEIGHT + 1150, stitcher.getHeight());
+
+            BufferedImage image = encode(stitcher);
+            int rows = HEIGHT + 1150;
+            assertEquals(rows, image.getHeight());
+            // The status bar is taken from the first frame, whose clock pixel differs
+            int[] decoded = image.getRGB(0, STATUS_BAR, WIDTH, rows - STATUS_BAR, null, 0, WIDTH);
+            int[] wanted = expected(page, last, 1150);
+            for (int i = 0; i < decoded.length; i++) {
+                if (decoded[i] != wanted[STATUS_BAR * WIDTH + i]) {
+                    fail("Pixel " + i % WIDTH + "," + (STATUS_BAR + i / WIDTH) + " differs");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void leavesOutFramesThatDoNotLineUp() throws IOException {
+        int[] page = ScrollOverlapFinderTest.page(4000, 8);
+
+        try (ScrollStitcher stitcher = new ScrollStitcher(WIDTH, HEIGHT, 10_000, spool)) {
+            stitcher.add(ScrollOverlapFinderTest.frame(page, 0));
+            assertEquals(-1, stitcher.add(ScrollOverlapFinderTest.frame(page, VIEWPORT + 50)));
+            assertEquals(200, stitcher.add(ScrollOverlapFinderTest.frame(page, 200)));
+
+            assertEquals(HEIGHT + 200, encode(stitcher).getHeight());
+        }
+    }
+
+    @Test
+    public void stopsGrowingAtTheRowLimit() throws IOException {
+        int[] page = ScrollOverlapFinderTest.page(4000, 9);
+
+        try (ScrollStitcher stitcher = new ScrollStitcher(WIDTH, HEIGHT, HEIGHT + 300, spool)) {
+            stitcher.add(ScrollOverlapFinderTest.frame(page, 0));
+            assertEquals(250, stitcher.add(ScrollOverlapFinderTest.frame(page, 250)));
+            assertEquals(0, stitcher.add(ScrollOverlapFinderTest.frame(page, 500)));
+
+            assertEquals(HEIGHT + 250, encode(stitcher).getHeight());
+        }
+    }
+
+    @Test
+    public void closeDeletesTheSpool() throws IOException {
+        ScrollStitcher stitcher = new ScrollStitcher(WIDTH, HEIGHT, 10_000, spool);
+        stitcher.add(ScrollOverlapFinderTest.frame(ScrollOverlapFinderTest.page(2000, 10), 0));
+
+        stitcher.close();
+
+        assertFalse(spool.exists());
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TileChecksumsTest {
+
+    private static int[] frame(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return pixels;
+    }
+
+    @Test
+    public void findsTheTilesThatChanged() {
+        // 3 by 2 tiles, the right and bottom ones cut short
+        int[] pixels = frame(50, 30, 1);
+        TileChecksums before = new TileChecksums(50, 30, 20);
+        TileChecksums after = new TileChecksums(50, 30, 20);
+        before.compute(pixels);
+
+        pixels[5 * 50 + 45] ^= 1;
+        pixels[25 * 50 + 10] ^= 0x100;
+        after.compute(pixels);
+
+        int[] changed = new int[after.getCount()];
+        assertEquals(6, after.getCount());
+        assertEquals(2, after.diff(before, changed));
+        assertEquals(2, changed[0]);
+        assertEquals(3, changed[1]);
+    }
+
+    @Test
+    public void swappedPixelsChangeTheTile() {
+        int[] pixels = frame(16, 16, 2);
+        TileChecksums before = new TileChecksums(16, 16, 16);
+        TileChecksums after = new TileChecksums(16, 16, 16);
+        before.compute(pixels);
+
+        int swap = pixels[3];
+        pixels[3] = pixels[4];
+        pixels[4] = swap;
+        after.compute(pixels);
+
+        assertEquals(1, after.diff(before, new int[1]));
+    }
+
+    @Test
+    public void unchangedFrameHasNoChangedTiles() {
+        TileChecksums before = new TileChecksums(64, 48, 16);
+        TileChecksums after = new TileChecksums(64, 48, 16);
+        before.compute(frame(64, 48, 3));
+        after.compute(frame(64, 48, 3));
+
+        assertEquals(0, after.diff(before, new int[after.getCount()]));
+
+        before.compute(frame(64, 48, 4));
+        before.copyFrom(after);
+        assertEquals(0, after.diff(before, new int[after.getCount()]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDifferentGrids() {
+        new TileChecksums(64, 48, 16).diff(new TileChecksums(64, 48, 8), new int[12]);
+    }
+}
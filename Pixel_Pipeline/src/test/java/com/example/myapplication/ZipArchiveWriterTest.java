@@ -0,0 +1,190 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.*;
+
+public class ZipArchiveWriterTest {
+
+    // Text-like content: compressible, and long enough to span several blocks
+    private static byte[] logLikeContent(int length) {
+        Random random = new Random(length);
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i % 80 == 79 ? '\n' : 'a' + random.nextInt(6));
+        }
+        return content;
+    }
+
+    private static byte[] noise(int length) {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+        return content;
+    }
+
+    private static File tempFile(byte[] content) throws IOException {
+        File file = File.createTempFile("zip-source", ".png");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void storedAndDeflatedEntries_roundTrip() throws IOException {
+        byte[] image = noise(300_000);
+        byte[] log = logLikeContent(1_000_000);
+        File source = tempFile(image);
+        File archive = File.createTempFile("archive", ".zip");
+        archive.deleteOnExit();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try (FileChannel out = FileChannel.open(archive.toPath(), StandardOpenOption.WRITE);
+             FileChannel in = FileChannel.open(source.toPath())) {
+            ZipArchiveWriter writer = new ZipArchiveWriter(out, pool, Deflater.DEFAULT_COMPRESSION);
+            writer.addStored("Screenshot_1.png", 1_700_000_000_000L, in);
+            writer.addDeflated("notes/log.txt", 1_700_000_000_000L, Channels.newChannel(new ByteArrayInputStream(log)));
+            writer.finish();
+            assertEquals(2, writer.getEntryCount());
+            assertEquals(archive.length(), writer.getBytesWritten());
+        } finally {
+            pool.shutdown();
+        }
+
+        try (ZipFile zip = new ZipFile(archive)) {
+            ZipEntry stored = zip.getEntry("Screenshot_1.png");
+            assertEquals(ZipEntry.STORED, stored.getMethod());
+            assertArrayEquals(image, readAll(zip.getInputStream(stored)));
+            ZipEntry deflated = zip.getEntry("notes/log.txt");
+            assertEquals(ZipEntry.DEFLATED, deflated.getMethod());
+            assertTrue("Log should compress", deflated.getCompressedSize() < log.length / 2);
+            assertArrayEquals(log, readAll(zip.getInputStream(deflated)));
+        }
+        // Streaming readers rely on the local headers and data descriptors alone
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(archive.toPath()))) {
+            assertEquals("Screenshot_1.png", zip.getNextEntry().getName());
+            assertArrayEquals(image, readAll(zip));
+            assertEquals("notes/log.txt", zip.getNextEntry().getName());
+            assertArrayEquals(log, readAll(zip));
+            assertNull(zip.getNextEntry());
+        }
+    }
+
+    @Test
+    public void emptyEntries_areValid() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        File empty = tempFile(new byte[0]);
+        try (FileChannel in = FileChannel.open(empty.toPath())) {
+            ZipArchiveWriter writer = new ZipArchiveWriter(Channels.newChannel(out));
+            writer.addStored("empty.png", 0, in);
+            writer.addDeflated("empty.txt", 0, Channels.newChannel(new ByteArrayInputStream(new byte[0])));
+            writer.finish();
+        }
+
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals("empty.png", zip.getNextEntry().getName());
+            assertEquals(0, readAll(zip).length);
+            assertEquals("empty.txt", zip.getNextEntry().getName());
+            assertEquals(0, readAll(zip).length);
+            assertNull(zip.getNextEntry());
+        }
+    }
+
+    @Test
+    public void progress_countsEveryInputByte() throws IOException {
+        byte[] image = noise(3 * 1024 * 1024 + 17);
+        byte[] log = logLikeContent(500_000);
+        AtomicLong last = new AtomicLong();
+        AtomicLong calls = new AtomicLong();
+        File source = tempFile(image);
+        try (FileChannel in = FileChannel.open(source.toPath())) {
+            ZipArchiveWriter writer = new ZipArchiveWriter(Channels.newChannel(new ByteArrayOutputStream()));
+            writer.setProgressListener(bytesRead -> {
+                assertTrue(bytesRead > last.get());
+                last.set(bytesRead);
+                calls.incrementAndGet();
+            });
+            writer.addStored("a.png", 0, in);
+            writer.addDeflated("b.txt", 0, Channels.newChannel(new ByteArrayInputStream(log)));
+            writer.finish();
+        }
+
+        assertEquals(image.length + log.length, last.get());
+        assertTrue("Progress should arrive in chunks, not once per entry", calls.get() > 2);
+    }
+
+    @Test
+    public void cancel_stopsTheEntryBeingWritten() throws IOException {
+        byte[] log = logLikeContent(2_000_000);
+        ZipArchiveWriter writer = new ZipArchiveWriter(Channels.newChannel(new ByteArrayOutputStream()));
+        writer.setProgressListener(bytesRead -> writer.cancel());
+        try {
+            writer.addDeflated("log.txt", 0, Channels.newChannel(new ByteArrayInputStream(log)));
+            fail("Cancelled entry should not complete");
+        } catch (InterruptedIOException expected) {
+            assertEquals(0, writer.getEntryCount());
+        }
+    }
+
+    @Test
+    public void manyEntries_useZip64EndRecords() throws IOException {
+        int count = 70_000;
+        File archive = File.createTempFile("many", ".zip");
+        archive.deleteOnExit();
+        byte[] content = "x".getBytes();
+        try (FileChannel out = FileChannel.open(archive.toPath(), StandardOpenOption.WRITE)) {
+            ZipArchiveWriter writer = new ZipArchiveWriter(out);
+            for (int i = 0; i < count; i++) {
+                writer.addDeflated("f" + i + ".txt", 0, Channels.newChannel(new ByteArrayInputStream(content)));
+            }
+            writer.finish();
+        }
+
+        try (ZipFile zip = new ZipFile(archive)) {
+            assertEquals(count, zip.size());
+            ZipEntry lastEntry = zip.getEntry("f" + (count - 1) + ".txt");
+            assertArrayEquals(content, readAll(zip.getInputStream(lastEntry)));
+            int seen = 0;
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); e.nextElement()) {
+                seen++;
+            }
+            assertEquals(count, seen);
+        }
+    }
+
+    @Test
+    public void compressedNames_areRecognised() {
+        assertTrue(ZipArchiveWriter.isCompressed("Screenshot_1.PNG"));
+        assertTrue(ZipArchiveWriter.isCompressed("a.webp"));
+        assertTrue(ZipArchiveWriter.isCompressed("b.jpeg"));
+        assertFalse(ZipArchiveWriter.isCompressed("notes.txt"));
+        assertFalse(ZipArchiveWriter.isCompressed("raw.bmp"));
+    }
+}
@@ -20,4 +20,5 @@ dependencyResolutionManagement {
 }
 
 rootProject.name = "Screen Roaster"
-include(":Android_Screen_Roaster")
\ No newline at end of file
+include(":Android_Screen_Roaster")
+include(":Pixel_Pipeline")
\ No newline at end of file